@@ -2,8 +2,10 @@ package com.bookkeeping;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class BookkeepingApplication {
     public static void main(String[] args) {
         SpringApplication.run(BookkeepingApplication.class, args);
@@ -0,0 +1,53 @@
+package com.bookkeeping.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 账户金额（账户ID → 金额）与 JSON 文本的转换
+ * 金额以字符串保存，读回时保持原有的小数位数
+ */
+@Converter
+public class AccountAmountsConverter implements AttributeConverter<Map<Long, BigDecimal>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final TypeReference<LinkedHashMap<String, String>> TYPE = new TypeReference<>() {};
+
+    @Override
+    public String convertToDatabaseColumn(Map<Long, BigDecimal> amounts) {
+        if (amounts == null) {
+            return null;
+        }
+        Map<String, String> json = new LinkedHashMap<>();
+        new TreeMap<>(amounts).forEach((accountId, amount) -> json.put(accountId.toString(), amount.toPlainString()));
+        try {
+            return MAPPER.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("账户金额序列化失败", e);
+        }
+    }
+
+    @Override
+    public Map<Long, BigDecimal> convertToEntityAttribute(String dbData) {
+        Map<Long, BigDecimal> amounts = new TreeMap<>();
+        if (dbData == null || dbData.isBlank()) {
+            return amounts;
+        }
+        try {
+            MAPPER.readValue(dbData, TYPE).forEach((accountId, amount) ->
+                    amounts.put(Long.valueOf(accountId), new BigDecimal(amount)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("无法解析账户金额: " + dbData, e);
+        }
+        return amounts;
+    }
+}
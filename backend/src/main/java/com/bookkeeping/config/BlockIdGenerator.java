@@ -0,0 +1,130 @@
+package com.bookkeeping.config;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * 按块分配的主键生成器
+ *
+ * 每次从 id_sequences 表中为一个实体取走一段连续的 ID（默认 50 个），之后在内存中逐个发放，
+ * 取完再取下一段。相比 IncrementGenerator（启动时 SELECT MAX(id) 后在内存中自增）：
+ * - 号段记录在数据库中，多个进程同时写入也不会分到相同的 ID
+ * - ID 在插入前就已确定，Hibernate 可以把多条 INSERT 合并成 JDBC 批量执行
+ *
+ * 写连接池只有一个连接，不能像 TableGenerator 那样另开连接取号（会等待自己持有的写锁），
+ * 所以号段在当前事务中分配：事务回滚时号段的分配也一起回滚，这里同时丢弃内存中的号段，
+ * 避免之后重复发放。写事务是串行的，一个号段只会被分配它的那个事务使用到事务结束。
+ *
+ * 分配号段时取 next_val 与表中 MAX(id) + 1 的较大者，绕过生成器直接插入的数据（如导入脚本）不会造成主键冲突。
+ */
+public class BlockIdGenerator implements IdentifierGenerator {
+
+    /** 序列名称参数，默认使用实体对应的表名 */
+    public static final String SEQUENCE_NAME_PARAM = "sequence_name";
+
+    /** 每次分配的 ID 数量参数 */
+    public static final String BLOCK_SIZE_PARAM = "block_size";
+
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    private String sequenceName;
+
+    private String tableName;
+
+    private int blockSize;
+
+    /** 当前号段中下一个可用的 ID */
+    private long nextId;
+
+    /** 当前号段的上界（不含） */
+    private long limit;
+
+    /** 当前号段的标识，用于事务回滚时判断要丢弃的是不是当前号段 */
+    private Object currentBlock;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        tableName = params.getProperty(PersistentIdentifierGenerator.TABLE);
+        sequenceName = params.getProperty(SEQUENCE_NAME_PARAM, tableName);
+        blockSize = Integer.parseInt(params.getProperty(BLOCK_SIZE_PARAM, String.valueOf(DEFAULT_BLOCK_SIZE)));
+        if (tableName == null || blockSize <= 0) {
+            throw new MappingException("BlockIdGenerator 配置错误: table=" + tableName + ", block_size=" + blockSize);
+        }
+    }
+
+    @Override
+    public synchronized Object generate(SharedSessionContractImplementor session, Object object) {
+        if (nextId >= limit) {
+            allocateBlock(session);
+        }
+        return nextId++;
+    }
+
+    private void allocateBlock(SharedSessionContractImplementor session) {
+        Connection conn = session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+        try {
+            nextId = reserve(conn, sequenceName, tableName, blockSize);
+        } catch (SQLException e) {
+            throw new HibernateException("分配 ID 号段失败: " + sequenceName, e);
+        }
+        limit = nextId + blockSize;
+        Object block = new Object();
+        currentBlock = block;
+
+        // 事务回滚后号段分配也被回滚，丢弃内存中剩余的号段
+        if (session instanceof EventSource eventSource) {
+            eventSource.getActionQueue().registerProcess((success, s) -> {
+                if (!success) {
+                    discardBlock(block);
+                }
+            });
+        }
+    }
+
+    private synchronized void discardBlock(Object block) {
+        if (currentBlock == block) {
+            nextId = limit;
+        }
+    }
+
+    /**
+     * 在 conn 的当前事务中从序列预留 count 个连续 ID，返回第一个 ID
+     * 预留的 ID 从序列的下一个值与表中 MAX(id) + 1 的较大者开始，不会与生成器已发放的号段重叠
+     */
+    public static long reserve(Connection conn, String sequenceName, String tableName, int count) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT OR IGNORE INTO id_sequences (name, next_val) VALUES (?, 1)")) {
+            stmt.setString(1, sequenceName);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE id_sequences SET next_val = MAX(next_val, " +
+                "(SELECT COALESCE(MAX(id), 0) + 1 FROM " + tableName + ")) + ? WHERE name = ?")) {
+            stmt.setInt(1, count);
+            stmt.setString(2, sequenceName);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT next_val FROM id_sequences WHERE name = ?")) {
+            stmt.setString(1, sequenceName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("ID 序列不存在: " + sequenceName);
+                }
+                return rs.getLong(1) - count;
+            }
+        }
+    }
+}
@@ -1,28 +1,147 @@
 package com.bookkeeping.config;
 
-import jakarta.annotation.PostConstruct;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
 
+import javax.sql.DataSource;
 import java.io.File;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * SQLite 数据源配置
+ *
+ * 数据库以 WAL 模式打开，读写分离为两个连接池：
+ * - 写连接池：只有 1 个连接，所有写事务（以及未声明只读的访问）都走这里，SQLite 本身也只允许一个写者
+ * - 读连接池：多个只读连接，@Transactional(readOnly = true) 的事务走这里，WAL 模式下读不会被写事务阻塞
+ *
+ * 对外暴露的 dataSource 是 LazyConnectionDataSourceProxy，真正取连接推迟到第一条 SQL 执行时，
+ * 此时事务的只读标记已经确定，路由才能选对连接池。
+ */
 @Configuration
 public class DatabaseConfig {
-    
+
+    private static final String READER = "reader";
+    private static final String WRITER = "writer";
+
     @Value("${spring.datasource.url}")
     private String datasourceUrl;
-    
+
+    @Value("${sqlite.reader-pool-size:4}")
+    private int readerPoolSize;
+
+    @Value("${sqlite.busy-timeout:5000}")
+    private int busyTimeout;
+
+    @Value("${sqlite.cache-size:-16000}")
+    private int cacheSize;
+
+    @Value("${sqlite.mmap-size:134217728}")
+    private long mmapSize;
+
+    /**
+     * 写连接池（单连接）
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource writerDataSource() {
+        initDatabaseDirectory();
+
+        SQLiteConfig config = baseConfig();
+        // WAL 模式是持久化在数据库文件中的，由写连接负责开启
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // 写事务在 BEGIN 时即获取写锁，避免读锁升级为写锁时出现 SQLITE_BUSY
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("sqlite-writer");
+        hikari.setDataSource(sqliteDataSource(config));
+        hikari.setMaximumPoolSize(1);
+        hikari.setMinimumIdle(1);
+        return new HikariDataSource(hikari);
+    }
+
+    /**
+     * 只读连接池
+     * 依赖写连接池先初始化：只读连接无法创建 WAL 所需的 -wal/-shm 文件
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource readerDataSource(@Qualifier("writerDataSource") HikariDataSource writerDataSource) {
+        SQLiteConfig config = baseConfig();
+        config.setReadOnly(true);
+
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("sqlite-reader");
+        hikari.setDataSource(sqliteDataSource(config));
+        hikari.setMaximumPoolSize(readerPoolSize);
+        hikari.setMinimumIdle(1);
+        hikari.setReadOnly(true);
+        return new HikariDataSource(hikari);
+    }
+
     /**
-     * 应用启动时自动创建数据库目录
+     * 应用使用的数据源：按当前事务是否只读路由到读/写连接池
      */
-    @PostConstruct
-    public void initDatabaseDirectory() {
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writerDataSource") HikariDataSource writerDataSource,
+                                 @Qualifier("readerDataSource") HikariDataSource readerDataSource) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(WRITER, writerDataSource);
+        targets.put(READER, readerDataSource);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(writerDataSource);
+        routing.afterPropertiesSet();
+
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing);
+        // 显式指定默认值，避免代理初始化时为探测默认值而占用唯一的写连接
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        return proxy;
+    }
+
+    /**
+     * 读写连接共用的 PRAGMA
+     */
+    private SQLiteConfig baseConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        // WAL 模式下 NORMAL 已能保证数据库一致性，只在断电时可能丢失最后几个事务
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(busyTimeout);
+        config.setCacheSize(cacheSize);
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+        config.setExplicitReadOnly(true);
+        return config;
+    }
+
+    private SQLiteDataSource sqliteDataSource(SQLiteConfig config) {
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl(datasourceUrl);
+        return dataSource;
+    }
+
+    /**
+     * 应用启动时自动创建数据库目录（必须在创建连接池之前）
+     */
+    private void initDatabaseDirectory() {
         // 从 jdbc:sqlite:./data/bookkeeping.db 中提取路径
         if (datasourceUrl.startsWith("jdbc:sqlite:")) {
             String dbPath = datasourceUrl.substring("jdbc:sqlite:".length());
             File dbFile = new File(dbPath);
             File dbDir = dbFile.getParentFile();
-            
+
             if (dbDir != null && !dbDir.exists()) {
                 boolean created = dbDir.mkdirs();
                 if (created) {
@@ -33,4 +152,14 @@ public class DatabaseConfig {
             }
         }
     }
+
+    /**
+     * 按事务只读标记选择连接池
+     */
+    static class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READER : WRITER;
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.bookkeeping.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 数据库版本迁移与启动自检
+ *
+ * 表结构仍由 Hibernate（ddl-auto: update）维护，这里只负责执行 db/migration 下 V3 之后的数据迁移脚本，
+ * 已执行的版本记录在 schema_version 表中，不会重复执行。
+ *
+ * 迁移完成后检查所有日期列是否都是 'YYYY-MM-DD' 文本：仓库层的原生 SQL 直接按字符串比较日期（走索引），
+ * 如果仍有时间戳格式的日期，这些查询会漏数据，因此拒绝启动。
+ */
+@Component
+@DependsOn("entityManagerFactory") // 确保 Hibernate 已经建好表
+public class DatabaseMigrationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseMigrationRunner.class);
+
+    private static final String MIGRATION_LOCATION = "db/migration/";
+
+    /**
+     * 日期格式统一脚本（可重复执行）
+     */
+    private static final String NORMALIZE_DATES_SCRIPT = "V3__normalize_date_columns.sql";
+
+    /**
+     * 包含触发器的脚本（BEGIN ... END 内有分号）使用的语句分隔符，单独占一行
+     */
+    private static final String TRIGGER_SCRIPT_SEPARATOR = "$$";
+
+    /**
+     * 需要自动执行的迁移脚本（按版本顺序）
+     * V1、V2 是早期手工执行的建表脚本，不在此列
+     */
+    private static final List<String> MIGRATIONS = List.of(
+            NORMALIZE_DATES_SCRIPT,
+            "V4__create_id_sequences.sql",
+            "V5__deposit_versions_indexes.sql",
+            "V6__monthly_balance_agg.sql",
+            "V7__snapshot_account_totals.sql",
+            "V8__user_data_versions.sql"
+    );
+
+    /**
+     * 统计非 'YYYY-MM-DD' 格式的日期数量
+     */
+    private static final String COUNT_NON_ISO_DATES_SQL =
+            "SELECT " +
+            "(SELECT COUNT(*) FROM deposits WHERE typeof(reconciliation_date) <> 'text' " +
+            "OR reconciliation_date NOT GLOB '[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]') + " +
+            "(SELECT COUNT(*) FROM deposits WHERE typeof(deposit_time) <> 'text' " +
+            "OR deposit_time NOT GLOB '[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]') + " +
+            "(SELECT COUNT(*) FROM reconciliation_snapshots WHERE typeof(reconciliation_date) <> 'text' " +
+            "OR reconciliation_date NOT GLOB '[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]')";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @PostConstruct
+    public void migrate() {
+        try (Connection conn = dataSource.getConnection()) {
+            ensureSchemaVersionTable(conn);
+            for (String script : MIGRATIONS) {
+                String version = script.substring(0, script.indexOf("__"));
+                if (!isApplied(conn, version)) {
+                    logger.info("执行数据库迁移脚本: {}", script);
+                    applyScript(conn, script, version);
+                }
+            }
+
+            // 启动自检：日期必须已全部统一为文本格式
+            long nonIsoDates = countNonIsoDates(conn);
+            if (nonIsoDates > 0) {
+                // 迁移之后又有离线导入的时间戳数据，重新执行一次统一脚本
+                logger.warn("发现 {} 个非 'YYYY-MM-DD' 格式的日期，重新执行日期统一脚本", nonIsoDates);
+                applyScript(conn, NORMALIZE_DATES_SCRIPT, null);
+                nonIsoDates = countNonIsoDates(conn);
+            }
+            if (nonIsoDates > 0) {
+                throw new IllegalStateException("数据库中仍有 " + nonIsoDates
+                        + " 个无法识别格式的日期，请手工修复后再启动（参考 " + MIGRATION_LOCATION + NORMALIZE_DATES_SCRIPT + "）");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("数据库迁移失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureSchemaVersionTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version VARCHAR(50) PRIMARY KEY, " +
+                    "script VARCHAR(255) NOT NULL, " +
+                    "installed_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private boolean isApplied(Connection conn, String version) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM schema_version WHERE version = ?")) {
+            stmt.setString(1, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中执行脚本，version 不为空时同时记录版本
+     */
+    private void applyScript(Connection conn, String script, String version) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            EncodedResource resource = new EncodedResource(new ClassPathResource(MIGRATION_LOCATION + script), StandardCharsets.UTF_8);
+            String separator = readScript(resource).contains(TRIGGER_SCRIPT_SEPARATOR)
+                    ? TRIGGER_SCRIPT_SEPARATOR : ScriptUtils.DEFAULT_STATEMENT_SEPARATOR;
+            ScriptUtils.executeSqlScript(conn, resource, false, false, ScriptUtils.DEFAULT_COMMENT_PREFIX, separator,
+                    ScriptUtils.DEFAULT_BLOCK_COMMENT_START_DELIMITER, ScriptUtils.DEFAULT_BLOCK_COMMENT_END_DELIMITER);
+            if (version != null) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, script) VALUES (?, ?)")) {
+                    stmt.setString(1, version);
+                    stmt.setString(2, script);
+                    stmt.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private String readScript(EncodedResource resource) throws SQLException {
+        try {
+            return resource.getContentAsString();
+        } catch (IOException e) {
+            throw new SQLException("无法读取迁移脚本: " + resource, e);
+        }
+    }
+
+    private long countNonIsoDates(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(COUNT_NON_ISO_DATES_SQL)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
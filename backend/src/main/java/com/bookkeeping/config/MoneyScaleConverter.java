@@ -0,0 +1,32 @@
+package com.bookkeeping.config;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 金额小数位转换器
+ * SQLite 把整数金额（例如 50000.00）按 INTEGER 存储，读回的 BigDecimal 没有小数位；
+ * 读取时统一为两位小数，与写入时的值一致（快照总金额由原生 UPDATE 调整后重新读取）
+ */
+@Converter
+public class MoneyScaleConverter implements AttributeConverter<BigDecimal, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(BigDecimal amount) {
+        return amount;
+    }
+
+    @Override
+    public BigDecimal convertToEntityAttribute(BigDecimal dbData) {
+        return dbData == null ? null : dbData.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 金额换算成整数分（四舍五入，与快照账户合计的换算一致），按差额调整快照总金额时使用
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
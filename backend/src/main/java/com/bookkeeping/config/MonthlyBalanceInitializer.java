@@ -0,0 +1,47 @@
+package com.bookkeeping.config;
+
+import com.bookkeeping.service.MonthlyBalanceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * 月度余额汇总的启动检查与重建命令
+ *
+ * 正常启动时重新计算所有用户待更新的月份（V6 迁移首次执行时会标记全部已有月份）。
+ * 使用 --rebuild-monthly-balance 参数启动时按快照重建所有用户的汇总，完成后退出：
+ * java -jar bookkeeping-backend.jar --rebuild-monthly-balance
+ */
+@Component
+public class MonthlyBalanceInitializer implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MonthlyBalanceInitializer.class);
+
+    public static final String REBUILD_OPTION = "rebuild-monthly-balance";
+
+    @Autowired
+    private MonthlyBalanceService monthlyBalanceService;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(REBUILD_OPTION)) {
+            int months = monthlyBalanceService.rebuildAll();
+            logger.info("月度余额汇总重建完成，共 {} 个月份", months);
+            System.exit(SpringApplication.exit(context));
+            return;
+        }
+
+        int months = monthlyBalanceService.refreshAll();
+        if (months > 0) {
+            logger.info("月度余额汇总已更新 {} 个月份", months);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.bookkeeping.config;
+
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.DepositVersion;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.entity.User;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.DepositVersionRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import com.bookkeeping.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 快照存储 → 时态存储的数据转换（deposit-storage.mode=temporal 时启用）
+ *
+ * 按快照日期从早到晚比对相邻两次快照的存款记录：内容相同的记录沿用同一个版本（延长有效区间），
+ * 上一次有、这一次没有的版本在这一次的日期结束，新出现的记录从这一次的日期开始一个新版本。
+ * 内容按账户、类型、存款时间、金额、利率、期限、备注比对（金额类按数值比较），每个用户在一个事务中转换。
+ *
+ * 转换后删除快照日期上的 deposits 记录；不属于任何快照日期的记录（历史遗留）不转换，保留原样并记录日志。
+ * 已有版本数据的用户视为已转换，跳过。
+ */
+@Component
+@ConditionalOnProperty(name = "deposit-storage.mode", havingValue = "temporal")
+@DependsOn("databaseMigrationRunner") // 确保 deposit_versions 索引已建好
+public class TemporalDepositMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemporalDepositMigration.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private DepositVersionRepository versionRepository;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${deposit-storage.convert-on-startup:true}")
+    private boolean convertOnStartup;
+
+    @PostConstruct
+    public void convertOnStartup() {
+        if (!convertOnStartup) {
+            return;
+        }
+        for (User user : userRepository.findAll()) {
+            convertUser(user.getId());
+        }
+    }
+
+    /**
+     * 转换一个用户的存款记录，返回生成的版本数（已转换过的用户返回 0）
+     */
+    public int convertUser(Long userId) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Integer created = tx.execute(status -> doConvert(userId));
+        return created != null ? created : 0;
+    }
+
+    private int doConvert(Long userId) {
+        if (versionRepository.existsByUserId(userId)) {
+            return 0;
+        }
+
+        List<LocalDate> snapshotDates = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId).stream()
+                .map(ReconciliationSnapshot::getReconciliationDate)
+                .sorted()
+                .toList();
+
+        // 上一次快照中有效的版本，按内容分组（同样内容的记录可能有多条）
+        Map<ContentKey, Deque<DepositVersion>> open = new HashMap<>();
+        List<DepositVersion> versions = new ArrayList<>();
+        int converted = 0;
+        for (LocalDate date : snapshotDates) {
+            List<Deposit> deposits = new ArrayList<>(depositRepository.findByUserIdAndReconciliationDate(userId, date));
+            deposits.sort(Comparator.comparing(Deposit::getId));
+            converted += deposits.size();
+
+            Map<ContentKey, Deque<DepositVersion>> next = new HashMap<>();
+            for (Deposit deposit : deposits) {
+                ContentKey key = ContentKey.of(deposit);
+                Deque<DepositVersion> candidates = open.get(key);
+                DepositVersion version = candidates != null ? candidates.pollFirst() : null;
+                if (version == null) {
+                    version = newVersion(deposit, date);
+                    versions.add(version);
+                }
+                next.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(version);
+            }
+            // 这一次快照中没有的版本在这一次的日期结束
+            open.values().forEach(rest -> rest.forEach(version -> version.setValidToDate(date)));
+            open = next;
+        }
+        versionRepository.saveAll(versions);
+
+        for (LocalDate date : snapshotDates) {
+            depositRepository.deleteByUserIdAndReconciliationDate(userId, date);
+        }
+        int orphans = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId).size();
+        if (orphans > 0) {
+            logger.warn("用户 {} 有 {} 条存款记录不属于任何对账快照，未转换", userId, orphans);
+        }
+        logger.info("用户 {} 转换为时态存储: {} 个快照, {} 条存款记录 -> {} 个版本",
+                userId, snapshotDates.size(), converted, versions.size());
+        return versions.size();
+    }
+
+    private DepositVersion newVersion(Deposit deposit, LocalDate date) {
+        DepositVersion version = new DepositVersion();
+        version.setUserId(deposit.getUserId());
+        version.setAccountId(deposit.getAccountId());
+        version.setDepositType(deposit.getDepositType());
+        version.setDepositTime(deposit.getDepositTime());
+        version.setAmount(deposit.getAmount());
+        version.setInterestRate(deposit.getInterestRate());
+        version.setTerm(deposit.getTerm());
+        version.setNote(deposit.getNote());
+        version.setValidFromDate(date);
+        version.setCreatedAt(deposit.getCreatedAt());
+        version.setUpdatedAt(deposit.getUpdatedAt());
+        return version;
+    }
+
+    /**
+     * 存款记录内容，金额类字段去掉末尾的 0（SQLite 读回的标度不固定）
+     */
+    private record ContentKey(Long accountId, String depositType, LocalDate depositTime,
+                              String amount, String interestRate, String term, String note) {
+
+        static ContentKey of(Deposit deposit) {
+            return new ContentKey(deposit.getAccountId(), deposit.getDepositType(), deposit.getDepositTime(),
+                    normalize(deposit.getAmount()), normalize(deposit.getInterestRate()),
+                    normalize(deposit.getTerm()), deposit.getNote());
+        }
+
+        private static String normalize(BigDecimal value) {
+            return value != null ? value.stripTrailingZeros().toPlainString() : null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.bookkeeping.config;
+
+import com.bookkeeping.service.QueuedWrite;
+import com.bookkeeping.service.SerialWriteExecutor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+/**
+ * 写队列配置
+ *
+ * 为 @QueuedWrite 标注的方法织入拦截器，把调用交给 SerialWriteExecutor 的写线程执行。
+ * 拦截器的优先级高于事务拦截器，这样事务在写线程上开启，多个写操作才能合并到同一个事务中。
+ */
+@Configuration
+public class WriteQueueConfig {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static DefaultPointcutAdvisor queuedWriteAdvisor(ObjectProvider<SerialWriteExecutor> executorProvider) {
+        MethodInterceptor interceptor = invocation -> {
+            ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+            // 每次执行都克隆调用链：合并提交失败后需要单独重新执行，必须再次经过事务拦截器
+            return executorProvider.getObject().execute(() -> proxyInvocation.invocableClone().proceed());
+        };
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(QueuedWrite.class), interceptor);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
@@ -1,14 +1,19 @@
 package com.bookkeeping.controller;
 
 import com.bookkeeping.dto.ApiResponse;
+import com.bookkeeping.dto.BatchDepositRequest;
+import com.bookkeeping.dto.BatchDepositResponse;
 import com.bookkeeping.dto.CreateDepositRequest;
 import com.bookkeeping.dto.DepositResponse;
 import com.bookkeeping.dto.UpdateDepositRequest;
 import com.bookkeeping.service.DepositService;
+import com.bookkeeping.service.ReconciliationService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
@@ -21,6 +26,9 @@ public class DepositController {
     @Autowired
     private DepositService depositService;
     
+    @Autowired
+    private ReconciliationService reconciliationService;
+    
     /**
      * 获取账户在指定日期的存款记录
      */
@@ -39,34 +47,81 @@ public class DepositController {
     
     /**
      * 创建存款记录
+     * 对账日期已有快照时必须在 If-Match 中提交读取时的快照版本，版本已变化时返回 409，缺少时返回 428
      */
     @PostMapping("/deposits")
-    public ApiResponse<DepositResponse> createDeposit(@Valid @RequestBody CreateDepositRequest request,
-                                                      HttpServletRequest httpRequest) {
+    public ResponseEntity<ApiResponse<DepositResponse>> createDeposit(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Valid @RequestBody CreateDepositRequest request,
+            HttpServletRequest httpRequest) {
         Long userId = (Long) httpRequest.getAttribute("userId");
-        DepositResponse deposit = depositService.createDeposit(request, userId);
-        return ApiResponse.success("创建成功", deposit);
+        Long expectedVersion = SnapshotETag.parseIfMatch(ifMatch);
+        reconciliationService.checkSnapshotVersion(userId, request.getReconciliationDate(), expectedVersion);
+        DepositResponse deposit = depositService.createDeposit(request, userId, expectedVersion);
+        return withETag(deposit.getSnapshotVersion()).body(ApiResponse.success("创建成功", deposit));
     }
     
     /**
-     * 更新存款记录
+     * 更新存款记录（date 为记录所在的对账日期，可选）
+     * 记录所在的对账日期已有快照时必须在 If-Match 中提交读取时的快照版本，版本已变化时返回 409，缺少时返回 428
      */
     @PutMapping("/deposits/{id}")
-    public ApiResponse<DepositResponse> updateDeposit(@PathVariable Long id,
-                                                      @Valid @RequestBody UpdateDepositRequest request,
-                                                      HttpServletRequest httpRequest) {
+    public ResponseEntity<ApiResponse<DepositResponse>> updateDeposit(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Valid @RequestBody UpdateDepositRequest request,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            HttpServletRequest httpRequest) {
         Long userId = (Long) httpRequest.getAttribute("userId");
-        DepositResponse deposit = depositService.updateDeposit(id, request, userId);
-        return ApiResponse.success("更新成功", deposit);
+        Long expectedVersion = SnapshotETag.parseIfMatch(ifMatch);
+        // 没有传入日期时记录所在的快照要在写事务中才能确定，只在写事务中校验
+        if (date != null) {
+            reconciliationService.checkSnapshotVersion(userId, date, expectedVersion);
+        }
+        DepositResponse deposit = depositService.updateDeposit(id, request, userId, date, expectedVersion);
+        return withETag(deposit.getSnapshotVersion()).body(ApiResponse.success("更新成功", deposit));
     }
     
     /**
-     * 删除存款记录
+     * 删除存款记录（date 为记录所在的对账日期，可选），返回删除后的快照版本
+     * 记录所在的对账日期已有快照时必须在 If-Match 中提交读取时的快照版本，版本已变化时返回 409，缺少时返回 428
      */
     @DeleteMapping("/deposits/{id}")
-    public ApiResponse<Void> deleteDeposit(@PathVariable Long id, HttpServletRequest request) {
+    public ResponseEntity<ApiResponse<Long>> deleteDeposit(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        depositService.deleteDeposit(id, userId);
-        return ApiResponse.success("删除成功", null);
+        Long expectedVersion = SnapshotETag.parseIfMatch(ifMatch);
+        if (date != null) {
+            reconciliationService.checkSnapshotVersion(userId, date, expectedVersion);
+        }
+        Long version = depositService.deleteDeposit(id, userId, date, expectedVersion);
+        return withETag(version).body(ApiResponse.success("删除成功", version));
+    }
+    
+    /**
+     * 批量新增、更新、删除存款记录（可以跨多个对账日期），在同一个事务中执行，返回每个操作的结果
+     * 一批操作可能涉及多个快照，快照版本在请求体的 snapshotVersions 中按对账日期提交（而不是 If-Match），
+     * 任一版本已变化时返回 409，受影响的快照缺少版本时返回 428
+     */
+    @PostMapping("/deposits/batch")
+    public ApiResponse<BatchDepositResponse> applyBatch(@Valid @RequestBody BatchDepositRequest request,
+                                                        HttpServletRequest httpRequest) {
+        Long userId = (Long) httpRequest.getAttribute("userId");
+        BatchDepositResponse response = depositService.applyBatch(request, userId);
+        return ApiResponse.success("批量操作成功", response);
+    }
+    
+    /**
+     * 写操作的响应：记录所在的对账日期有快照时以写入后的快照版本作为 ETag
+     */
+    private static ResponseEntity.BodyBuilder withETag(Long version) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (version != null) {
+            response.eTag(SnapshotETag.of(version));
+        }
+        return response;
     }
 }
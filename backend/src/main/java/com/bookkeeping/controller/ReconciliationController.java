@@ -1,17 +1,29 @@
 package com.bookkeeping.controller;
 
 import com.bookkeeping.dto.ApiResponse;
+import com.bookkeeping.dto.BulkImportResponse;
 import com.bookkeeping.dto.ReconciliationDataResponse;
 import com.bookkeeping.dto.ReconciliationHistoryResponse;
+import com.bookkeeping.dto.ReconciliationViewResponse;
+import com.bookkeeping.dto.SaveAccountsRequest;
+import com.bookkeeping.dto.SaveAccountsResponse;
 import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.dto.SaveReconciliationResponse;
 import com.bookkeeping.dto.UpdateSnapshotNoteRequest;
+import com.bookkeeping.service.ReconciliationBulkImporter;
 import com.bookkeeping.service.ReconciliationService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.time.LocalDate;
 
 @RestController
@@ -21,14 +33,21 @@ public class ReconciliationController {
     @Autowired
     private ReconciliationService reconciliationService;
     
+    @Autowired
+    private ReconciliationBulkImporter bulkImporter;
+    
     /**
      * 获取对账数据
+     * 指定日期且快照存在时以快照版本作为 ETag；请求带 If-None-Match 且版本未变化时返回 304，不查询对账数据
      */
     @GetMapping
-    public ApiResponse<ReconciliationDataResponse> getReconciliation(
+    public ResponseEntity<ApiResponse<ReconciliationDataResponse>> getReconciliation(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
             HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
+        // 不指定日期时对应的快照会变化，不使用 ETag
+        boolean cacheable = date != null;
         // 如果没有传入日期，返回最近一次快照的日期
         if (date == null) {
             date = reconciliationService.getLatestReconciliationDate(userId);
@@ -37,16 +56,47 @@ public class ReconciliationController {
                 date = LocalDate.now();
             }
         }
+        if (cacheable && ifNoneMatch != null) {
+            Long version = reconciliationService.getSnapshotVersion(userId, date);
+            if (version != null && SnapshotETag.of(version).equals(ifNoneMatch)) {
+                return cached(ResponseEntity.status(HttpStatus.NOT_MODIFIED), version).build();
+            }
+        }
         ReconciliationDataResponse data = reconciliationService.getReconciliationData(userId, date);
-        return ApiResponse.success(data);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (cacheable && data.getVersion() != null) {
+            cached(response, data.getVersion());
+        }
+        return response.body(ApiResponse.success(data));
+    }
+    
+    /**
+     * 获取对账页面一次导航的数据：对账数据以及上一个、下一个、最近一次快照日期
+     * 没有传入日期时取最近一次快照的日期（从未对账时使用今天）
+     */
+    @GetMapping("/view")
+    public ApiResponse<ReconciliationViewResponse> getReconciliationView(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            HttpServletRequest request) {
+        Long userId = (Long) request.getAttribute("userId");
+        if (date == null) {
+            date = reconciliationService.getLatestReconciliationDate(userId);
+            if (date == null) {
+                date = LocalDate.now();
+            }
+        }
+        ReconciliationViewResponse view = reconciliationService.getReconciliationView(userId, date);
+        return ApiResponse.success(view);
     }
     
     /**
      * 保存对账快照
+     * 快照已存在时必须在 If-Match 中提交读取时的快照版本，版本已变化时返回 409，缺少时返回 428
      */
     @PostMapping("/save")
-    public ApiResponse<Void> saveReconciliation(
+    public ResponseEntity<ApiResponse<SaveReconciliationResponse>> saveReconciliation(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody SaveReconciliationRequest request,
             HttpServletRequest httpRequest) {
         Long userId = (Long) httpRequest.getAttribute("userId");
@@ -60,8 +110,37 @@ public class ReconciliationController {
         if (date == null) {
             date = LocalDate.now();
         }
-        reconciliationService.saveReconciliation(userId, date, request);
-        return ApiResponse.success("保存成功", null);
+        Long expectedVersion = SnapshotETag.parseIfMatch(ifMatch);
+        reconciliationService.checkSnapshotVersion(userId, date, expectedVersion);
+        SaveReconciliationResponse result = reconciliationService.saveReconciliation(userId, date, request, expectedVersion);
+        return ResponseEntity.ok().eTag(SnapshotETag.of(result.getVersion())).body(ApiResponse.success("保存成功", result));
+    }
+    
+    /**
+     * 按账户保存对账快照：只保存请求中的账户，其他账户的存款记录不变
+     * 每个账户需带上读取时的版本，该账户已被其他页面修改时返回 409（不需要 If-Match，其他账户的修改不影响保存）
+     */
+    @PostMapping("/save-accounts")
+    public ResponseEntity<ApiResponse<SaveAccountsResponse>> saveAccounts(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @Valid @RequestBody SaveAccountsRequest request,
+            HttpServletRequest httpRequest) {
+        Long userId = (Long) httpRequest.getAttribute("userId");
+        SaveAccountsResponse result = reconciliationService.saveAccounts(userId, date, request);
+        return ResponseEntity.ok().eTag(SnapshotETag.of(result.getSnapshotVersion())).body(ApiResponse.success("保存成功", result));
+    }
+    
+    /**
+     * 批量导入多个日期的对账快照：请求体为快照数组（与保存对账快照的请求体相同），流式解析、分块提交
+     * 快照必须按对账日期升序排列，日期不能重复
+     * 每个快照整体替换该日期已有的快照和存款记录，不需要 If-Match，也不校验快照版本（导入期间其他页面的修改被覆盖）
+     * 不是整体原子的：每 chunk-size 个快照一个事务，后面的快照出错时之前的分块已提交、不回滚，错误信息给出已导入的快照数
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ApiResponse<BulkImportResponse> bulkImport(HttpServletRequest httpRequest) throws IOException {
+        Long userId = (Long) httpRequest.getAttribute("userId");
+        BulkImportResponse result = bulkImporter.importSnapshots(userId, httpRequest.getInputStream());
+        return ApiResponse.success("导入成功", result);
     }
     
     /**
@@ -78,9 +157,12 @@ public class ReconciliationController {
      * 获取历史对账记录
      */
     @GetMapping("/history")
-    public ApiResponse<ReconciliationHistoryResponse> getReconciliationHistory(HttpServletRequest request) {
+    public ApiResponse<ReconciliationHistoryResponse> getReconciliationHistory(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before,
+            @RequestParam(required = false) Integer limit,
+            HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        ReconciliationHistoryResponse history = reconciliationService.getReconciliationHistory(userId);
+        ReconciliationHistoryResponse history = reconciliationService.getReconciliationHistory(userId, before, limit);
         return ApiResponse.success(history);
     }
     
@@ -112,25 +194,29 @@ public class ReconciliationController {
      * 新建对账：将选中日期之前最近一次快照复制到选中日期并保存到数据库
      */
     @PostMapping("/create-new")
-    public ApiResponse<Void> createNewReconciliation(
+    public ResponseEntity<ApiResponse<Void>> createNewReconciliation(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
             HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        reconciliationService.createNewReconciliation(userId, date);
-        return ApiResponse.success("新建对账成功", null);
+        Long version = reconciliationService.createNewReconciliation(userId, date);
+        return ResponseEntity.ok().eTag(SnapshotETag.of(version)).body(ApiResponse.success("新建对账成功", null));
     }
     
     /**
-     * 更新快照备注
+     * 更新快照备注，返回更新后的快照版本
+     * 必须在 If-Match 中提交读取时的快照版本，版本已变化时返回 409，缺少时返回 428
      */
     @PutMapping("/note")
-    public ApiResponse<Void> updateSnapshotNote(
+    public ResponseEntity<ApiResponse<Long>> updateSnapshotNote(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody UpdateSnapshotNoteRequest request,
             HttpServletRequest httpRequest) {
         Long userId = (Long) httpRequest.getAttribute("userId");
-        reconciliationService.updateSnapshotNote(userId, date, request.getNote());
-        return ApiResponse.success("更新备注成功", null);
+        Long expectedVersion = SnapshotETag.parseIfMatch(ifMatch);
+        reconciliationService.checkSnapshotVersion(userId, date, expectedVersion);
+        Long version = reconciliationService.updateSnapshotNote(userId, date, request.getNote(), expectedVersion);
+        return ResponseEntity.ok().eTag(SnapshotETag.of(version)).body(ApiResponse.success("更新备注成功", version));
     }
     
     /**
@@ -142,4 +228,13 @@ public class ReconciliationController {
         java.util.List<LocalDate> dates = reconciliationService.getSnapshotDates(userId);
         return ApiResponse.success(dates);
     }
+    
+    /**
+     * 条件 GET 的响应头：ETag，按 Authorization 区分缓存，每次使用前向服务器验证
+     */
+    private static <B extends ResponseEntity.HeadersBuilder<B>> B cached(B builder, Long version) {
+        return builder.eTag(SnapshotETag.of(version))
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.AUTHORIZATION);
+    }
 }
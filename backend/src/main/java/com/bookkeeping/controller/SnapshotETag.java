@@ -0,0 +1,38 @@
+package com.bookkeeping.controller;
+
+/**
+ * 快照版本与 ETag / If-Match 请求头之间的转换（对账、存款记录接口共用）
+ */
+final class SnapshotETag {
+
+    private SnapshotETag() {
+    }
+
+    /**
+     * 快照版本对应的 ETag
+     */
+    static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * 解析 If-Match 中的快照版本（可以带 W/ 前缀和引号），没有请求头时为 null
+     */
+    static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("If-Match 格式不正确");
+        }
+    }
+}
@@ -2,15 +2,23 @@ package com.bookkeeping.controller;
 
 import com.bookkeeping.dto.AccountTrendStatisticsResponse;
 import com.bookkeeping.dto.ApiResponse;
+import com.bookkeeping.dto.DashboardStatisticsResponse;
 import com.bookkeeping.dto.MaturityStatisticsResponse;
 import com.bookkeeping.dto.MonthlyStatisticsResponse;
 import com.bookkeeping.dto.TrendStatisticsResponse;
 import com.bookkeeping.dto.YearlyStatisticsResponse;
+import com.bookkeeping.service.StatisticsCache;
+import com.bookkeeping.service.StatisticsDashboardService;
 import com.bookkeeping.service.StatisticsService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.YearMonth;
+
+/**
+ * 统计接口，结果经 StatisticsCache 缓存，用户数据变化时丢弃
+ */
 @RestController
 @RequestMapping("/api/statistics")
 public class StatisticsController {
@@ -18,6 +26,12 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
     
+    @Autowired
+    private StatisticsCache statisticsCache;
+    
+    @Autowired
+    private StatisticsDashboardService statisticsDashboardService;
+    
     /**
      * 按月统计
      */
@@ -26,7 +40,8 @@ public class StatisticsController {
             @RequestParam String month,
             HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        MonthlyStatisticsResponse response = statisticsService.getMonthlyStatistics(userId, month);
+        MonthlyStatisticsResponse response = statisticsCache.get(userId, "monthly", month,
+                () -> statisticsService.getMonthlyStatistics(userId, month));
         return ApiResponse.success(response);
     }
     
@@ -38,7 +53,8 @@ public class StatisticsController {
             @RequestParam String period,
             HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        TrendStatisticsResponse response = statisticsService.getTrendStatistics(userId, period);
+        TrendStatisticsResponse response = statisticsCache.get(userId, "trend", period,
+                () -> statisticsService.getTrendStatistics(userId, period));
         return ApiResponse.success(response);
     }
 
@@ -50,7 +66,8 @@ public class StatisticsController {
             @RequestParam String period,
             HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        AccountTrendStatisticsResponse response = statisticsService.getAccountTrendStatistics(userId, period);
+        AccountTrendStatisticsResponse response = statisticsCache.get(userId, "account-trend", period,
+                () -> statisticsService.getAccountTrendStatistics(userId, period));
         return ApiResponse.success(response);
     }
     
@@ -60,7 +77,8 @@ public class StatisticsController {
     @GetMapping("/yearly")
     public ApiResponse<YearlyStatisticsResponse> getYearlyStatistics(HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        YearlyStatisticsResponse response = statisticsService.getYearlyStatistics(userId);
+        YearlyStatisticsResponse response = statisticsCache.get(userId, "yearly", null,
+                () -> statisticsService.getYearlyStatistics(userId));
         return ApiResponse.success(response);
     }
     
@@ -70,7 +88,24 @@ public class StatisticsController {
     @GetMapping("/maturity")
     public ApiResponse<MaturityStatisticsResponse> getMaturityStatistics(HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
-        MaturityStatisticsResponse response = statisticsService.getMaturityStatistics(userId);
+        MaturityStatisticsResponse response = statisticsCache.get(userId, "maturity", null,
+                () -> statisticsService.getMaturityStatistics(userId));
+        return ApiResponse.success(response);
+    }
+    
+    /**
+     * 统计看板：按月、趋势、账户趋势、年度、到期五项统计一次返回
+     * month 默认为当月，period 默认为最近 12 个月
+     */
+    @GetMapping("/dashboard")
+    public ApiResponse<DashboardStatisticsResponse> getDashboardStatistics(
+            @RequestParam(required = false) String month,
+            @RequestParam(defaultValue = "1y") String period,
+            HttpServletRequest request) {
+        Long userId = (Long) request.getAttribute("userId");
+        String targetMonth = month != null ? month : YearMonth.now().toString();
+        DashboardStatisticsResponse response = statisticsCache.get(userId, "dashboard", targetMonth + "," + period,
+                () -> statisticsDashboardService.getDashboard(userId, targetMonth, period));
         return ApiResponse.success(response);
     }
 }
@@ -0,0 +1,50 @@
+package com.bookkeeping.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量存款记录操作：一次请求提交一组新增、更新、删除，可以跨多个对账日期，在同一个事务中执行
+ */
+@Data
+public class BatchDepositRequest {
+    
+    @NotEmpty(message = "操作列表不能为空")
+    @Valid
+    private List<Operation> operations;
+    
+    // 受影响的对账日期已有快照时必须提交读取时的快照版本（对账日期 -> 版本），
+    // 一批操作可能涉及多个快照，无法用一个 If-Match 表示
+    private Map<LocalDate, Long> snapshotVersions;
+    
+    public enum OperationType {
+        CREATE, UPDATE, DELETE
+    }
+    
+    @Data
+    public static class Operation {
+        @NotNull(message = "操作类型不能为空")
+        private OperationType type;
+        
+        private Long id; // 更新、删除的存款记录ID
+        
+        private LocalDate reconciliationDate; // 新增时必填；更新、删除时为记录所在的对账日期（可选）
+        
+        private Long accountId; // 新增时必填
+        
+        // 以下字段新增、更新时使用
+        private String depositType;
+        private LocalDate depositTime;
+        private BigDecimal amount;
+        private BigDecimal interestRate;
+        private BigDecimal term;
+        private String note;
+    }
+}
@@ -0,0 +1,27 @@
+package com.bookkeeping.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量存款记录操作的结果，与请求中的操作一一对应
+ */
+@Data
+@AllArgsConstructor
+public class BatchDepositResponse {
+    private List<OperationResult> results;
+    private Map<LocalDate, Long> snapshotVersions;          // 受影响的快照更新后的版本（对账日期 -> 版本）
+    
+    @Data
+    @AllArgsConstructor
+    public static class OperationResult {
+        private int index;                                  // 操作在请求中的位置（从 0 开始）
+        private BatchDepositRequest.OperationType type;
+        private Long id;                                    // 存款记录ID
+        private DepositResponse deposit;                    // 新增、更新后的存款记录（删除时为空）
+    }
+}
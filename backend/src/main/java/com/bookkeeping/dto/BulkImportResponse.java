@@ -0,0 +1,15 @@
+package com.bookkeeping.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 批量导入对账快照的结果
+ */
+@Data
+@AllArgsConstructor
+public class BulkImportResponse {
+    private int inserted;   // 新建的快照数
+    private int replaced;   // 整体替换的已有快照数
+    private int deposits;   // 写入的存款记录数
+}
@@ -0,0 +1,17 @@
+package com.bookkeeping.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 统计看板：五项统计一次返回（GET /api/statistics/dashboard）
+ */
+@Data
+@AllArgsConstructor
+public class DashboardStatisticsResponse {
+    private MonthlyStatisticsResponse monthly;
+    private TrendStatisticsResponse trend;
+    private AccountTrendStatisticsResponse accountTrend;
+    private YearlyStatisticsResponse yearly;
+    private MaturityStatisticsResponse maturity;
+}
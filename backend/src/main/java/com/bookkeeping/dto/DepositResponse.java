@@ -17,6 +17,7 @@ public class DepositResponse {
     private BigDecimal term;
     private String note;
     private LocalDate reconciliationDate;
+    private Long snapshotVersion; // 写操作后该对账日期的快照版本（没有快照或查询时为空）
     
     public DepositResponse(Long id, Long accountId, String depositType, LocalDate depositTime,
                           BigDecimal amount, BigDecimal interestRate, BigDecimal term,
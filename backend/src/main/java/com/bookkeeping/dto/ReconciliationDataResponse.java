@@ -13,6 +13,11 @@ public class ReconciliationDataResponse {
     private String note; // 快照备注
     private java.math.BigDecimal totalAmount; // 快照总金额
     private List<AccountDepositData> accounts;
+    private Long version; // 快照版本（ETag），修改快照时通过 If-Match 提交；没有快照时为 null
+    
+    public ReconciliationDataResponse(LocalDate date, String note, java.math.BigDecimal totalAmount, List<AccountDepositData> accounts) {
+        this(date, note, totalAmount, accounts, null);
+    }
     
     @Data
     @AllArgsConstructor
@@ -20,5 +25,10 @@ public class ReconciliationDataResponse {
         private Long accountId;
         private String accountName;
         private List<DepositResponse> deposits;
+        private String version; // 该账户存款记录的版本，按账户保存时原样提交（见 AccountDepositsVersion）
+        
+        public AccountDepositData(Long accountId, String accountName, List<DepositResponse> deposits) {
+            this(accountId, accountName, deposits, null);
+        }
     }
 }
@@ -3,6 +3,7 @@ package com.bookkeeping.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -11,10 +12,22 @@ import java.util.List;
 public class ReconciliationHistoryResponse {
     private List<HistoryItem> dates;
     
+    /**
+     * 下一页的 before 参数（本页最后一个日期），没有更多记录时为 null
+     */
+    private LocalDate nextBefore;
+    
+    public ReconciliationHistoryResponse(List<HistoryItem> dates) {
+        this(dates, null);
+    }
+    
     @Data
     @AllArgsConstructor
     public static class HistoryItem {
         private LocalDate date;
         private Long recordCount;
+        private BigDecimal totalAmount;
+        private String note;
+        private Long version; // 快照版本
     }
 }
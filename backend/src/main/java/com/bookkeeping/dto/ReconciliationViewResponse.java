@@ -0,0 +1,18 @@
+package com.bookkeeping.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 对账页面一次导航需要的全部数据：对账数据以及上一个、下一个、最近一次快照日期
+ */
+@Data
+@AllArgsConstructor
+public class ReconciliationViewResponse {
+    private ReconciliationDataResponse data;
+    private LocalDate previousDate; // 没有更早的快照时为 null
+    private LocalDate nextDate; // 没有更新的快照时为 null
+    private LocalDate latestDate; // 从未对账时为 null
+}
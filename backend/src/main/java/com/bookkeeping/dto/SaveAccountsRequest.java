@@ -0,0 +1,18 @@
+package com.bookkeeping.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 按账户保存对账快照：只提交被修改的账户及其全部存款记录，其他账户的记录不变
+ */
+@Data
+public class SaveAccountsRequest {
+    
+    @NotEmpty(message = "账户列表不能为空")
+    @Valid
+    private List<SaveReconciliationRequest.AccountDepositData> accounts;
+}
@@ -0,0 +1,20 @@
+package com.bookkeeping.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 按账户保存对账快照的结果：实际写入的存款记录数，以及保存后各账户的新版本（继续编辑时提交）
+ */
+@Data
+@AllArgsConstructor
+public class SaveAccountsResponse {
+    private int inserted;
+    private int updated;
+    private int deleted;
+    private int unchanged;
+    private Map<Long, String> versions; // 账户ID -> 保存后的版本
+    private Long snapshotVersion; // 保存后的快照版本
+}
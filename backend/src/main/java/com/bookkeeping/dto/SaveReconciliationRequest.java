@@ -25,6 +25,8 @@ public class SaveReconciliationRequest {
         
         @Valid
         private List<DepositData> deposits;
+        
+        private String version; // 按账户保存时必填：读取时该账户的版本（ReconciliationDataResponse 中返回），整体保存时忽略
     }
     
     @Data
@@ -0,0 +1,17 @@
+package com.bookkeeping.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 保存对账快照的结果：实际写入的存款记录数
+ */
+@Data
+@AllArgsConstructor
+public class SaveReconciliationResponse {
+    private int inserted;   // 新增的存款记录数
+    private int updated;    // 内容有变化而更新的存款记录数
+    private int deleted;    // 删除的存款记录数
+    private int unchanged;  // 内容未变化、没有写入的存款记录数
+    private Long version;   // 保存后的快照版本
+}
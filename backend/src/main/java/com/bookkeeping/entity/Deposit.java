@@ -1,5 +1,7 @@
 package com.bookkeeping.entity;
 
+import com.bookkeeping.config.BlockIdGenerator;
+import com.bookkeeping.config.MoneyScaleConverter;
 import jakarta.persistence.*;
 import lombok.Data;
 import org.hibernate.annotations.GenericGenerator;
@@ -12,8 +14,8 @@ import java.time.LocalDateTime;
 @Data
 public class Deposit {
     @Id
-    @GeneratedValue(generator = "increment")
-    @GenericGenerator(name = "increment", type = org.hibernate.id.IncrementGenerator.class)
+    @GeneratedValue(generator = "block")
+    @GenericGenerator(name = "block", type = BlockIdGenerator.class)
     private Long id;
 
     @Column(nullable = false)
@@ -29,6 +31,7 @@ public class Deposit {
     private LocalDate depositTime;
 
     @Column(nullable = false, precision = 15, scale = 2)
+    @Convert(converter = MoneyScaleConverter.class)
     private BigDecimal amount;
 
     @Column(precision = 5, scale = 2)
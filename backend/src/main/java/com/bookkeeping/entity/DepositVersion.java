@@ -0,0 +1,75 @@
+package com.bookkeeping.entity;
+
+import com.bookkeeping.config.BlockIdGenerator;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 存款记录版本（时态存储模式）
+ *
+ * 一个版本对 [validFromDate, validToDate) 区间内的所有对账快照有效，validToDate 为空表示一直有效。
+ * 区间的两端都是对账快照日期，新建快照时沿用上一次快照的版本，不再复制存款记录。
+ */
+@Entity
+@Table(name = "deposit_versions")
+@Data
+public class DepositVersion {
+    @Id
+    @GeneratedValue(generator = "block")
+    @GenericGenerator(name = "block", type = BlockIdGenerator.class)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false, length = 50)
+    private String depositType;
+
+    @Column(nullable = false)
+    private LocalDate depositTime;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Column(precision = 5, scale = 2)
+    private BigDecimal interestRate;
+
+    @Column(precision = 3, scale = 1)
+    private BigDecimal term;
+
+    @Column(columnDefinition = "TEXT")
+    private String note;
+
+    @Column(nullable = false)
+    private LocalDate validFromDate;
+
+    private LocalDate validToDate;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (updatedAt == null) {
+            updatedAt = LocalDateTime.now();
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,62 @@
+package com.bookkeeping.entity;
+
+import com.bookkeeping.config.AccountAmountsConverter;
+import com.bookkeeping.config.MoneyScaleConverter;
+import com.bookkeeping.config.StringListConverter;
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 月度余额汇总（每个用户每个有快照的月份一行）
+ *
+ * 保存该月最后一次快照的日期、总金额、各账户金额，以及该月所有快照的备注，
+ * 统计接口按月份范围读取，不再逐月查询快照和存款记录。由 MonthlyBalanceService 维护。
+ */
+@Entity
+@Table(name = "monthly_balance_agg")
+@IdClass(MonthlyBalanceId.class)
+@Data
+public class MonthlyBalance {
+    @Id
+    private Long userId;
+
+    /** 月份（yyyy-MM） */
+    @Id
+    @Column(length = 7)
+    private String month;
+
+    /** 该月最后一次快照日期 */
+    @Column(nullable = false)
+    private LocalDate lastDate;
+
+    /** 该月最后一次快照的总金额 */
+    @Convert(converter = MoneyScaleConverter.class)
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalAmount;
+
+    /** 该月最后一次快照中各账户的金额（按账户ID排序） */
+    @Convert(converter = AccountAmountsConverter.class)
+    @Column(columnDefinition = "TEXT")
+    private Map<Long, BigDecimal> accountAmounts = new TreeMap<>();
+
+    /** 该月有备注的快照，格式为 "yyyy-MM-dd: 备注"，按日期排序 */
+    @Convert(converter = StringListConverter.class)
+    @Column(columnDefinition = "TEXT")
+    private List<String> notes = new ArrayList<>();
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,18 @@
+package com.bookkeeping.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 月度余额汇总的主键（用户 + 月份）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MonthlyBalanceId implements Serializable {
+    private Long userId;
+    private String month;
+}
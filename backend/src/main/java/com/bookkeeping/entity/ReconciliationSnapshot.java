@@ -1,5 +1,8 @@
 package com.bookkeeping.entity;
 
+import com.bookkeeping.config.BlockIdGenerator;
+import com.bookkeeping.config.MoneyScaleConverter;
+import com.bookkeeping.service.SnapshotDateIndexListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import org.hibernate.annotations.GenericGenerator;
@@ -11,11 +14,12 @@ import java.time.LocalDateTime;
 @Table(name = "reconciliation_snapshots", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"user_id", "reconciliation_date"})
 })
+@EntityListeners(SnapshotDateIndexListener.class)
 @Data
 public class ReconciliationSnapshot {
     @Id
-    @GeneratedValue(generator = "increment")
-    @GenericGenerator(name = "increment", type = org.hibernate.id.IncrementGenerator.class)
+    @GeneratedValue(generator = "block")
+    @GenericGenerator(name = "block", type = BlockIdGenerator.class)
     private Long id;
 
     @Column(nullable = false)
@@ -25,11 +29,20 @@ public class ReconciliationSnapshot {
     private LocalDate reconciliationDate;
 
     @Column(nullable = false, precision = 15, scale = 2)
+    @Convert(converter = MoneyScaleConverter.class)
     private BigDecimal totalAmount;
 
     @Column(columnDefinition = "TEXT")
     private String note;
 
+    /**
+     * 乐观锁版本：快照、快照中的存款记录或账户每次修改都递增
+     * 读取时随对账数据返回（ETag），写请求通过 If-Match 提交，不一致时返回 409
+     */
+    @Version
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    private Long version;
+
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -0,0 +1,37 @@
+package com.bookkeeping.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * 快照账户合计（每个用户每个对账日期每个账户一行）
+ *
+ * 保存该日期该账户的存款金额合计（分）和记录数，月度分布、账户趋势、对账页面的账户列表直接读取，
+ * 不再加载存款记录在内存中分组。只由 V7 迁移建立的触发器在 deposits / deposit_versions / reconciliation_snapshots
+ * 写入时同步维护，应用代码只读，读取时使用投影（不作为托管实体缓存，避免读到触发器更新前的值）。
+ */
+@Entity
+@Table(name = "snapshot_account_totals")
+@IdClass(SnapshotAccountTotalId.class)
+@Immutable
+@Data
+public class SnapshotAccountTotal {
+    @Id
+    private Long userId;
+
+    /** 对账日期（'YYYY-MM-DD'，与触发器写入的格式一致） */
+    @Id
+    @Column(length = 10)
+    private String reconciliationDate;
+
+    @Id
+    private Long accountId;
+
+    /** 金额合计（分），按分累加避免浮点误差 */
+    @Column(nullable = false)
+    private Long amountCents;
+
+    @Column(nullable = false)
+    private Integer depositCount;
+}
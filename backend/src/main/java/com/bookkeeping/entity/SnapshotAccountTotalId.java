@@ -0,0 +1,19 @@
+package com.bookkeeping.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 快照账户合计的主键（用户 + 对账日期 + 账户）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnapshotAccountTotalId implements Serializable {
+    private Long userId;
+    private String reconciliationDate;
+    private Long accountId;
+}
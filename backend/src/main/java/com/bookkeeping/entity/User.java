@@ -1,5 +1,6 @@
 package com.bookkeeping.entity;
 
+import com.bookkeeping.config.BlockIdGenerator;
 import jakarta.persistence.*;
 import lombok.Data;
 import org.hibernate.annotations.GenericGenerator;
@@ -10,8 +11,8 @@ import java.time.LocalDateTime;
 @Data
 public class User {
     @Id
-    @GeneratedValue(generator = "increment")
-    @GenericGenerator(name = "increment", type = org.hibernate.id.IncrementGenerator.class)
+    @GeneratedValue(generator = "block")
+    @GenericGenerator(name = "block", type = BlockIdGenerator.class)
     private Long id;
 
     @Column(nullable = false, unique = true, length = 50)
@@ -0,0 +1,19 @@
+package com.bookkeeping.event;
+
+/**
+ * 用户的账户、存款记录或快照发生变化
+ *
+ * 写操作在事务中发布，缓存了该用户派生数据的组件收到后丢弃缓存（提交或回滚后还会再丢弃一次，见 ReconciliationViewCache）。
+ */
+public class UserDataChangedEvent {
+
+    private final Long userId;
+
+    public UserDataChangedEvent(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+}
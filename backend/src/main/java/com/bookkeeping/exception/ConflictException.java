@@ -0,0 +1,11 @@
+package com.bookkeeping.exception;
+
+/**
+ * 并发修改冲突：请求基于的数据已被其他请求修改（返回 409，前端刷新后重试）
+ */
+public class ConflictException extends RuntimeException {
+    
+    public ConflictException(String message) {
+        super(message);
+    }
+}
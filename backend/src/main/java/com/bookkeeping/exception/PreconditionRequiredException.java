@@ -0,0 +1,11 @@
+package com.bookkeeping.exception;
+
+/**
+ * 写请求缺少必需的版本（If-Match 请求头），返回 428
+ */
+public class PreconditionRequiredException extends RuntimeException {
+    
+    public PreconditionRequiredException(String message) {
+        super(message);
+    }
+}
@@ -2,8 +2,11 @@ package com.bookkeeping.repository;
 
 import com.bookkeeping.entity.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,4 +52,15 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
      * 根据用户ID和账户ID列表查询账户（用于历史快照显示）
      */
     List<Account> findByUserIdAndIdIn(Long userId, List<Long> accountIds);
+    
+    /**
+     * 统计 accountIds 中属于用户的账户数量（一次 IN 查询批量校验账户归属）
+     */
+    long countByUserIdAndIdIn(Long userId, Collection<Long> accountIds);
+    
+    /**
+     * 查询用户所有账户的ID（批量导入时一次加载，在内存中校验账户归属）
+     */
+    @Query("SELECT a.id FROM Account a WHERE a.userId = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
 }
@@ -7,14 +7,87 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+/**
+ * 存款记录仓库
+ * 按对账日期查询的原生 SQL 直接以 'YYYY-MM-DD' 字符串比较 reconciliation_date（V3 迁移已统一日期格式），
+ * 从而命中 (user_id, reconciliation_date)、(account_id, reconciliation_date) 索引
+ */
 @Repository
 public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
+    /**
+     * 对账数据的一行：快照备注、总金额、版本，一个要显示的账户及其一条存款记录（账户没有存款记录时存款字段为空）
+     * 金额、利率、期限按列定义的小数位换算成整数读取，再还原为与实体相同小数位的 BigDecimal
+     */
+    interface ReconciliationRow {
+        String getNote();
+        
+        Long getTotalCents();
+        
+        Long getSnapshotVersion();
+        
+        Long getAccountId();
+        
+        String getAccountName();
+        
+        Long getDepositId();
+        
+        String getDepositType();
+        
+        String getDepositTime();
+        
+        Long getAmountCents();
+        
+        Long getInterestRateHundredths();
+        
+        Long getTermTenths();
+        
+        String getDepositNote();
+        
+        default BigDecimal getTotalAmount() {
+            return BigDecimal.valueOf(getTotalCents(), 2);
+        }
+        
+        default BigDecimal getAmount() {
+            return BigDecimal.valueOf(getAmountCents(), 2);
+        }
+        
+        default BigDecimal getInterestRate() {
+            return getInterestRateHundredths() == null ? null : BigDecimal.valueOf(getInterestRateHundredths(), 2);
+        }
+        
+        default BigDecimal getTerm() {
+            return getTermTenths() == null ? null : BigDecimal.valueOf(getTermTenths(), 1);
+        }
+    }
+    
+    /**
+     * 一次联表查询指定日期的对账数据，没有快照时不返回任何行
+     * 快照存在时每个要显示的账户至少一行：快照中有存款记录的账户（即使当前已禁用）在前，其余启用的账户在后，
+     * 各自按账户ID排序，同一账户的存款记录按ID排序；快照中没有要显示的账户时返回一行账户字段为空的快照行
+     */
+    @Query(value = "SELECT s.note AS note, CAST(ROUND(s.total_amount * 100) AS INTEGER) AS totalCents, s.version AS snapshotVersion, " +
+           "a.id AS accountId, a.name AS accountName, d.id AS depositId, d.deposit_type AS depositType, " +
+           "d.deposit_time AS depositTime, CAST(ROUND(d.amount * 100) AS INTEGER) AS amountCents, " +
+           "CAST(ROUND(d.interest_rate * 100) AS INTEGER) AS interestRateHundredths, " +
+           "CAST(ROUND(d.term * 10) AS INTEGER) AS termTenths, d.note AS depositNote " +
+           "FROM reconciliation_snapshots s " +
+           "LEFT JOIN (SELECT a.id AS id, a.name AS name, t.account_id IS NULL AS activeOnly FROM accounts a " +
+           "LEFT JOIN snapshot_account_totals t ON t.user_id = a.user_id AND t.reconciliation_date = :date AND t.account_id = a.id " +
+           "WHERE a.user_id = :userId AND (t.account_id IS NOT NULL OR a.status = 'ACTIVE')) a ON 1 = 1 " +
+           "LEFT JOIN deposits d ON d.account_id = a.id AND d.reconciliation_date = s.reconciliation_date AND d.user_id = s.user_id " +
+           "WHERE s.user_id = :userId AND s.reconciliation_date = :date " +
+           "ORDER BY a.activeOnly, a.id, d.id",
+           nativeQuery = true)
+    List<ReconciliationRow> findReconciliationRows(@Param("userId") Long userId, @Param("date") String date);
+    
     /**
      * 检查账户是否有存款记录
      */
@@ -22,29 +95,16 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
     /**
      * 查询账户的所有存款记录
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
-     */
-    @Query(value = "SELECT id, user_id, account_id, deposit_type, " +
-           "CAST(CASE WHEN typeof(deposit_time) = 'integer' THEN date(deposit_time/1000, 'unixepoch') ELSE deposit_time END AS TEXT) as deposit_time, " +
-           "amount, interest_rate, term, note, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "created_at, updated_at " +
-           "FROM deposits WHERE account_id = :accountId", 
+     */
+    @Query(value = "SELECT * FROM deposits WHERE account_id = :accountId", 
            nativeQuery = true)
     List<Deposit> findByAccountId(@Param("accountId") Long accountId);
     
     /**
      * 查询指定用户和日期的所有存款记录
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
-     */
-    @Query(value = "SELECT id, user_id, account_id, deposit_type, " +
-           "CAST(CASE WHEN typeof(deposit_time) = 'integer' THEN date(deposit_time/1000, 'unixepoch') ELSE deposit_time END AS TEXT) as deposit_time, " +
-           "amount, interest_rate, term, note, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "created_at, updated_at " +
-           "FROM deposits WHERE user_id = :userId " +
-           "AND (CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END) = :date", 
+     */
+    @Query(value = "SELECT * FROM deposits WHERE user_id = :userId " +
+           "AND reconciliation_date = :date", 
            nativeQuery = true)
     List<Deposit> findByUserIdAndReconciliationDate(@Param("userId") Long userId, @Param("date") String date);
     
@@ -57,16 +117,9 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
     /**
      * 查询指定账户和日期的存款记录
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
-     */
-    @Query(value = "SELECT id, user_id, account_id, deposit_type, " +
-           "CAST(CASE WHEN typeof(deposit_time) = 'integer' THEN date(deposit_time/1000, 'unixepoch') ELSE deposit_time END AS TEXT) as deposit_time, " +
-           "amount, interest_rate, term, note, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "created_at, updated_at " +
-           "FROM deposits WHERE account_id = :accountId " +
-           "AND (CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END) = :date", 
+     */
+    @Query(value = "SELECT * FROM deposits WHERE account_id = :accountId " +
+           "AND reconciliation_date = :date", 
            nativeQuery = true)
     List<Deposit> findByAccountIdAndReconciliationDate(@Param("accountId") Long accountId, @Param("date") String date);
     
@@ -79,14 +132,8 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
     /**
      * 查询用户的所有记录，按日期倒序
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
-     */
-    @Query(value = "SELECT id, user_id, account_id, deposit_type, " +
-           "CAST(CASE WHEN typeof(deposit_time) = 'integer' THEN date(deposit_time/1000, 'unixepoch') ELSE deposit_time END AS TEXT) as deposit_time, " +
-           "amount, interest_rate, term, note, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "created_at, updated_at " +
-           "FROM deposits WHERE user_id = :userId " +
+     */
+    @Query(value = "SELECT * FROM deposits WHERE user_id = :userId " +
            "ORDER BY reconciliation_date DESC", 
            nativeQuery = true)
     List<Deposit> findByUserIdOrderByReconciliationDateDesc(@Param("userId") Long userId);
@@ -99,16 +146,9 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
     /**
      * 批量查询指定日期的记录（用于统计）
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
-     */
-    @Query(value = "SELECT id, user_id, account_id, deposit_type, " +
-           "CAST(CASE WHEN typeof(deposit_time) = 'integer' THEN date(deposit_time/1000, 'unixepoch') ELSE deposit_time END AS TEXT) as deposit_time, " +
-           "amount, interest_rate, term, note, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "created_at, updated_at " +
-           "FROM deposits WHERE user_id = :userId " +
-           "AND (CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END) IN (" +
+     */
+    @Query(value = "SELECT * FROM deposits WHERE user_id = :userId " +
+           "AND reconciliation_date IN (" +
            "SELECT value FROM json_each(:dates))", 
            nativeQuery = true)
     List<Deposit> findByUserIdAndReconciliationDateInNative(@Param("userId") Long userId, @Param("dates") String datesJson);
@@ -120,21 +160,13 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
         if (dates == null || dates.isEmpty()) {
             return new java.util.ArrayList<>();
         }
-        // 使用循环查询（如果日期数量不多）
-        if (dates.size() <= 10) {
-            return dates.stream()
-                    .flatMap(date -> findByUserIdAndReconciliationDate(userId, date).stream())
-                    .collect(Collectors.toList());
-        } else {
-            // 如果日期很多，使用原生查询
-            return findByUserIdAndReconciliationDateInNative(userId, 
-                dates.stream().map(d -> "\"" + d.toString() + "\"").collect(Collectors.joining(",", "[", "]")));
-        }
+        // 日期统一为字符串后 IN 子查询同样走索引，一次查询即可
+        return findByUserIdAndReconciliationDateInNative(userId, 
+            dates.stream().map(d -> "\"" + d.toString() + "\"").collect(Collectors.joining(",", "[", "]")));
     }
     
     /**
      * 删除指定日期的所有记录（保存快照时先删除旧数据）
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
      */
     @Modifying
     @Query(value = "DELETE FROM deposits WHERE user_id = :userId " +
@@ -156,7 +188,6 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
     /**
      * 检查指定日期的对账数据是否存在
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
      * 注意：SQLite 返回整数，需要手动转换
      */
     @Query(value = "SELECT COUNT(*) FROM deposits WHERE user_id = :userId " +
@@ -180,7 +211,6 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     
     /**
      * 统计指定用户和日期的存款记录数
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
      */
     @Query(value = "SELECT COUNT(*) FROM deposits WHERE user_id = :userId " +
            "AND reconciliation_date = :date", 
@@ -193,4 +223,43 @@ public interface DepositRepository extends JpaRepository<Deposit, Long> {
     default long countByUserIdAndReconciliationDate(Long userId, LocalDate date) {
         return countByUserIdAndReconciliationDate(userId, date.toString());
     }
+    
+    /**
+     * 在数据库内把一个日期的存款记录复制到另一个日期（不加载实体）
+     * ID 从 firstId 开始连续分配，调用方需先通过 IdSequenceService 预留 sourceDate 记录数个 ID
+     */
+    @Modifying
+    @Query(value = "INSERT INTO deposits (id, user_id, account_id, deposit_type, deposit_time, amount, " +
+           "interest_rate, term, note, reconciliation_date, created_at, updated_at) " +
+           "SELECT :firstId + ROW_NUMBER() OVER (ORDER BY id) - 1, user_id, account_id, deposit_type, deposit_time, amount, " +
+           "interest_rate, term, note, :targetDate, :now, :now " +
+           "FROM deposits WHERE user_id = :userId AND reconciliation_date = :sourceDate",
+           nativeQuery = true)
+    int copyByUserIdAndReconciliationDate(@Param("userId") Long userId, @Param("sourceDate") String sourceDate,
+                                          @Param("targetDate") String targetDate, @Param("firstId") long firstId,
+                                          @Param("now") LocalDateTime now);
+    
+    /**
+     * 在数据库内复制存款记录（使用 LocalDate）
+     */
+    default int copyByUserIdAndReconciliationDate(Long userId, LocalDate sourceDate, LocalDate targetDate, long firstId) {
+        return copyByUserIdAndReconciliationDate(userId, sourceDate.toString(), targetDate.toString(),
+                firstId, LocalDateTime.now());
+    }
+    
+    /**
+     * 统计指定用户和日期的存款总金额（单位：分）
+     * 金额列是 NUMERIC 亲和性，SQLite 按浮点数求和会有误差，先逐行换算成整数分再求和
+     */
+    @Query(value = "SELECT COALESCE(SUM(CAST(ROUND(amount * 100) AS INTEGER)), 0) FROM deposits " +
+           "WHERE user_id = :userId AND reconciliation_date = :date",
+           nativeQuery = true)
+    long sumAmountCentsByUserIdAndReconciliationDate(@Param("userId") Long userId, @Param("date") String date);
+    
+    /**
+     * 统计指定用户和日期的存款总金额（精确到分）
+     */
+    default BigDecimal sumAmountByUserIdAndReconciliationDate(Long userId, LocalDate date) {
+        return BigDecimal.valueOf(sumAmountCentsByUserIdAndReconciliationDate(userId, date.toString()), 2);
+    }
 }
@@ -0,0 +1,110 @@
+package com.bookkeeping.repository;
+
+import com.bookkeeping.entity.DepositVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 存款记录版本（时态存储模式）
+ * 日期均为 'YYYY-MM-DD' 字符串，区间查询命中 (user_id, valid_from_date) / (account_id, valid_from_date) 索引
+ */
+@Repository
+public interface DepositVersionRepository extends JpaRepository<DepositVersion, Long> {
+
+    /**
+     * 查询指定日期有效的版本（区间包含查询）
+     */
+    @Query(value = "SELECT * FROM deposit_versions WHERE user_id = :userId " +
+           "AND valid_from_date <= :date AND (valid_to_date IS NULL OR valid_to_date > :date) " +
+           "ORDER BY id",
+           nativeQuery = true)
+    List<DepositVersion> findValidAt(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 查询指定日期有效的版本（使用 LocalDate）
+     */
+    default List<DepositVersion> findValidAt(Long userId, LocalDate date) {
+        return findValidAt(userId, date.toString());
+    }
+
+    /**
+     * 查询账户在指定日期有效的版本
+     */
+    @Query(value = "SELECT * FROM deposit_versions WHERE account_id = :accountId " +
+           "AND valid_from_date <= :date AND (valid_to_date IS NULL OR valid_to_date > :date) " +
+           "ORDER BY id",
+           nativeQuery = true)
+    List<DepositVersion> findValidAtByAccountId(@Param("accountId") Long accountId, @Param("date") String date);
+
+    /**
+     * 查询账户在指定日期有效的版本（使用 LocalDate）
+     */
+    default List<DepositVersion> findValidAtByAccountId(Long accountId, LocalDate date) {
+        return findValidAtByAccountId(accountId, date.toString());
+    }
+
+    /**
+     * 统计指定日期有效的版本数
+     */
+    @Query(value = "SELECT COUNT(*) FROM deposit_versions WHERE user_id = :userId " +
+           "AND valid_from_date <= :date AND (valid_to_date IS NULL OR valid_to_date > :date)",
+           nativeQuery = true)
+    long countValidAt(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 统计指定日期有效版本的总金额（单位：分，逐行换算成整数分再求和）
+     */
+    @Query(value = "SELECT COALESCE(SUM(CAST(ROUND(amount * 100) AS INTEGER)), 0) FROM deposit_versions " +
+           "WHERE user_id = :userId " +
+           "AND valid_from_date <= :date AND (valid_to_date IS NULL OR valid_to_date > :date)",
+           nativeQuery = true)
+    long sumAmountCentsValidAt(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 一次联表查询指定日期的对账数据（与 DepositRepository.findReconciliationRows 相同，存款记录取该日期有效的版本）
+     */
+    @Query(value = "SELECT s.note AS note, CAST(ROUND(s.total_amount * 100) AS INTEGER) AS totalCents, s.version AS snapshotVersion, " +
+           "a.id AS accountId, a.name AS accountName, d.id AS depositId, d.deposit_type AS depositType, " +
+           "d.deposit_time AS depositTime, CAST(ROUND(d.amount * 100) AS INTEGER) AS amountCents, " +
+           "CAST(ROUND(d.interest_rate * 100) AS INTEGER) AS interestRateHundredths, " +
+           "CAST(ROUND(d.term * 10) AS INTEGER) AS termTenths, d.note AS depositNote " +
+           "FROM reconciliation_snapshots s " +
+           "LEFT JOIN (SELECT a.id AS id, a.name AS name, t.account_id IS NULL AS activeOnly FROM accounts a " +
+           "LEFT JOIN snapshot_account_totals t ON t.user_id = a.user_id AND t.reconciliation_date = :date AND t.account_id = a.id " +
+           "WHERE a.user_id = :userId AND (t.account_id IS NOT NULL OR a.status = 'ACTIVE')) a ON 1 = 1 " +
+           "LEFT JOIN deposit_versions d ON d.account_id = a.id AND d.user_id = s.user_id " +
+           "AND d.valid_from_date <= s.reconciliation_date " +
+           "AND (d.valid_to_date IS NULL OR d.valid_to_date > s.reconciliation_date) " +
+           "WHERE s.user_id = :userId AND s.reconciliation_date = :date " +
+           "ORDER BY a.activeOnly, a.id, d.id",
+           nativeQuery = true)
+    List<DepositRepository.ReconciliationRow> findReconciliationRows(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 查询用户的所有版本
+     */
+    @Query(value = "SELECT * FROM deposit_versions WHERE user_id = :userId ORDER BY valid_from_date, id",
+           nativeQuery = true)
+    List<DepositVersion> findByUserIdOrderByValidFromDate(@Param("userId") Long userId);
+
+    /**
+     * 根据ID和用户ID查询版本（防止跨用户访问）
+     */
+    Optional<DepositVersion> findByIdAndUserId(Long id, Long userId);
+
+    /**
+     * 检查账户是否有存款记录
+     */
+    boolean existsByAccountId(Long accountId);
+
+    /**
+     * 检查用户是否已有版本数据（已转换为时态存储）
+     */
+    boolean existsByUserId(Long userId);
+}
@@ -0,0 +1,122 @@
+package com.bookkeeping.repository;
+
+import com.bookkeeping.entity.MonthlyBalance;
+import com.bookkeeping.entity.MonthlyBalanceId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 月度余额汇总
+ * 月份为 'yyyy-MM' 字符串，范围查询命中 (user_id, month) 索引
+ */
+@Repository
+public interface MonthlyBalanceRepository extends JpaRepository<MonthlyBalance, MonthlyBalanceId> {
+
+    /**
+     * 月末快照的账户合计（一个账户一行，快照没有存款记录时只有一行，账户ID为空）
+     */
+    interface MonthEndRow {
+        String getMonth();
+
+        String getLastDate();
+
+        /** 快照总金额（分） */
+        Long getTotalCents();
+
+        Long getAccountId();
+
+        Long getAmountCents();
+    }
+
+    /**
+     * 有备注的快照
+     */
+    interface SnapshotNoteRow {
+        String getReconciliationDate();
+
+        String getNote();
+    }
+
+    /**
+     * 查询用户在 [fromDate, toDate) 内每个月最后一次快照及其账户合计，按月份、账户ID排序
+     * 月末快照用 ROW_NUMBER 在一次范围查询中选出，不再逐月查询
+     */
+    @Query(value = "SELECT s.month AS month, s.reconciliation_date AS lastDate, s.total_cents AS totalCents, " +
+           "t.account_id AS accountId, t.amount_cents AS amountCents " +
+           "FROM (SELECT substr(reconciliation_date, 1, 7) AS month, reconciliation_date, " +
+           "CAST(ROUND(total_amount * 100) AS INTEGER) AS total_cents, " +
+           "ROW_NUMBER() OVER (PARTITION BY substr(reconciliation_date, 1, 7) ORDER BY reconciliation_date DESC) AS rn " +
+           "FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "AND reconciliation_date >= :fromDate AND reconciliation_date < :toDate) s " +
+           "LEFT JOIN snapshot_account_totals t ON t.user_id = :userId AND t.reconciliation_date = s.reconciliation_date " +
+           "WHERE s.rn = 1 ORDER BY s.month, t.account_id",
+           nativeQuery = true)
+    List<MonthEndRow> findMonthEnds(@Param("userId") Long userId,
+                                    @Param("fromDate") String fromDate,
+                                    @Param("toDate") String toDate);
+
+    /**
+     * 查询用户在 [fromDate, toDate) 内有备注的快照，按日期排序（只有空白字符的备注由调用方过滤）
+     */
+    @Query(value = "SELECT reconciliation_date AS reconciliationDate, note AS note FROM reconciliation_snapshots " +
+           "WHERE user_id = :userId AND reconciliation_date >= :fromDate AND reconciliation_date < :toDate " +
+           "AND note IS NOT NULL AND note <> '' ORDER BY reconciliation_date",
+           nativeQuery = true)
+    List<SnapshotNoteRow> findSnapshotNotes(@Param("userId") Long userId,
+                                            @Param("fromDate") String fromDate,
+                                            @Param("toDate") String toDate);
+
+    /**
+     * 查询用户在 [fromMonth, toMonth] 范围内的汇总，按月份排序
+     */
+    @Query(value = "SELECT * FROM monthly_balance_agg WHERE user_id = :userId " +
+           "AND month >= :fromMonth AND month <= :toMonth ORDER BY month",
+           nativeQuery = true)
+    List<MonthlyBalance> findByUserIdAndMonthRange(@Param("userId") Long userId,
+                                                   @Param("fromMonth") String fromMonth,
+                                                   @Param("toMonth") String toMonth);
+
+    /**
+     * 查询用户在指定月份之前最近的汇总
+     */
+    @Query(value = "SELECT * FROM monthly_balance_agg WHERE user_id = :userId " +
+           "AND month < :month ORDER BY month DESC LIMIT 1",
+           nativeQuery = true)
+    Optional<MonthlyBalance> findLatestBefore(@Param("userId") Long userId, @Param("month") String month);
+
+    /**
+     * 删除用户的所有汇总（重建时使用），执行后清空持久化上下文，避免重建时读到已删除的汇总实体
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM monthly_balance_agg WHERE user_id = :userId", nativeQuery = true)
+    void deleteByUserId(@Param("userId") Long userId);
+
+    /**
+     * 查询用户待重新计算的月份（由触发器记录）
+     */
+    @Query(value = "SELECT month FROM monthly_balance_dirty WHERE user_id = :userId ORDER BY month",
+           nativeQuery = true)
+    List<String> findDirtyMonths(@Param("userId") Long userId);
+
+    /**
+     * 清除用户待重新计算的月份标记
+     */
+    @Modifying
+    @Query(value = "DELETE FROM monthly_balance_dirty WHERE user_id = :userId", nativeQuery = true)
+    void clearDirtyMonths(@Param("userId") Long userId);
+
+    /**
+     * 把用户所有有快照的月份标记为待重新计算（重建时使用）
+     */
+    @Modifying
+    @Query(value = "INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) " +
+           "SELECT user_id, substr(reconciliation_date, 1, 7) FROM reconciliation_snapshots WHERE user_id = :userId",
+           nativeQuery = true)
+    void markAllMonthsDirty(@Param("userId") Long userId);
+}
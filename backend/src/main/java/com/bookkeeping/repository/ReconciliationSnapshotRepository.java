@@ -7,23 +7,65 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * 对账快照仓库（按对账日期的原生 SQL 与 DepositRepository 一样直接比较日期字符串）
+ */
 @Repository
 public interface ReconciliationSnapshotRepository extends JpaRepository<ReconciliationSnapshot, Long> {
     
+    /**
+     * 对账历史中的一行：快照日期、存款记录数、总金额（分）和备注
+     */
+    interface HistoryRow {
+        String getReconciliationDate();
+        
+        Long getRecordCount();
+        
+        Long getTotalCents();
+        
+        String getNote();
+        
+        Long getVersion();
+        
+        default BigDecimal getTotalAmount() {
+            return BigDecimal.valueOf(getTotalCents(), 2);
+        }
+    }
+    
+    /**
+     * 余额序列中的一个快照：日期、总金额（分）和备注
+     */
+    interface SeriesRow {
+        String getReconciliationDate();
+        
+        Long getTotalCents();
+        
+        String getNote();
+    }
+    
+    /**
+     * 快照总金额与存款记录合计（均为分）
+     */
+    interface TotalCheckRow {
+        String getReconciliationDate();
+        
+        Long getTotalCents();
+        
+        Long getDepositCents();
+    }
+    
     /**
      * 根据用户ID和对账日期查找快照
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
      */
-    @Query(value = "SELECT id, user_id, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "total_amount, note, created_at, updated_at " +
-           "FROM reconciliation_snapshots WHERE user_id = :userId " +
-           "AND (CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END) = :date", 
+    @Query(value = "SELECT * FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "AND reconciliation_date = :date", 
            nativeQuery = true)
     Optional<ReconciliationSnapshot> findByUserIdAndReconciliationDate(@Param("userId") Long userId, @Param("date") String date);
     
@@ -34,18 +76,30 @@ public interface ReconciliationSnapshotRepository extends JpaRepository<Reconcil
         return findByUserIdAndReconciliationDate(userId, date.toString());
     }
     
+    /**
+     * 根据用户ID和多个对账日期查找快照（批量导入时一次查询一个分块的已有快照）
+     */
+    @Query(value = "SELECT * FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "AND reconciliation_date IN (:dates)",
+           nativeQuery = true)
+    List<ReconciliationSnapshot> findByUserIdAndReconciliationDateIn(@Param("userId") Long userId, @Param("dates") Collection<String> dates);
+    
     /**
      * 根据用户ID查找所有快照，按日期倒序
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
      */
-    @Query(value = "SELECT id, user_id, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "total_amount, note, created_at, updated_at " +
-           "FROM reconciliation_snapshots WHERE user_id = :userId " +
+    @Query(value = "SELECT * FROM reconciliation_snapshots WHERE user_id = :userId " +
            "ORDER BY reconciliation_date DESC", 
            nativeQuery = true)
     List<ReconciliationSnapshot> findByUserIdOrderByReconciliationDateDesc(@Param("userId") Long userId);
     
+    /**
+     * 查询用户所有快照日期，按日期正序（只读索引，不加载快照实体）
+     */
+    @Query(value = "SELECT reconciliation_date FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "ORDER BY reconciliation_date",
+           nativeQuery = true)
+    List<String> findDatesByUserId(@Param("userId") Long userId);
+    
     /**
      * 根据用户ID查找指定日期范围内的快照
      */
@@ -60,21 +114,16 @@ public interface ReconciliationSnapshotRepository extends JpaRepository<Reconcil
     
     /**
      * 根据用户ID查找指定月份的所有快照，返回该月的最后一次快照
-     * 迁移后：使用原生 SQL，因为日期已统一为字符串格式
-     * 注意：显式转换日期字段为字符串，以兼容可能的时间戳格式
-     */
-    @Query(value = "SELECT id, user_id, " +
-           "CAST(CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END AS TEXT) as reconciliation_date, " +
-           "total_amount, note, created_at, updated_at " +
-           "FROM reconciliation_snapshots WHERE user_id = :userId " +
-           "AND strftime('%Y', CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END) = :yearStr " +
-           "AND strftime('%m', CASE WHEN typeof(reconciliation_date) = 'integer' THEN date(reconciliation_date/1000, 'unixepoch') ELSE reconciliation_date END) = :monthStr " +
+     * 使用 [月初, 下月初) 范围条件而不是 strftime，以命中 (user_id, reconciliation_date) 索引
+     */
+    @Query(value = "SELECT * FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "AND reconciliation_date >= :monthStart AND reconciliation_date < :nextMonthStart " +
            "ORDER BY reconciliation_date DESC", 
            nativeQuery = true)
-    List<ReconciliationSnapshot> findByUserIdAndYearAndMonthNative(
+    List<ReconciliationSnapshot> findByUserIdAndMonthRangeNative(
         @Param("userId") Long userId,
-        @Param("yearStr") String yearStr,
-        @Param("monthStr") String monthStr
+        @Param("monthStart") String monthStart,
+        @Param("nextMonthStart") String nextMonthStart
     );
     
     /**
@@ -85,14 +134,12 @@ public interface ReconciliationSnapshotRepository extends JpaRepository<Reconcil
         int year,
         int month
     ) {
-        String yearStr = String.valueOf(year);
-        String monthStr = String.format("%02d", month); // 确保月份是两位数，如 "01", "02"
-        return findByUserIdAndYearAndMonthNative(userId, yearStr, monthStr);
+        LocalDate monthStart = LocalDate.of(year, month, 1);
+        return findByUserIdAndMonthRangeNative(userId, monthStart.toString(), monthStart.plusMonths(1).toString());
     }
     
     /**
      * 根据用户ID和对账日期删除快照
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
      */
     @Modifying
     @Query(value = "DELETE FROM reconciliation_snapshots WHERE user_id = :userId " +
@@ -109,7 +156,6 @@ public interface ReconciliationSnapshotRepository extends JpaRepository<Reconcil
     
     /**
      * 检查是否存在指定用户和日期的快照
-     * 迁移后：所有日期已统一为字符串格式，直接使用字符串比较
      * 注意：SQLite 返回整数，需要手动转换
      */
     @Query(value = "SELECT COUNT(*) FROM reconciliation_snapshots WHERE user_id = :userId " +
@@ -136,4 +182,165 @@ public interface ReconciliationSnapshotRepository extends JpaRepository<Reconcil
      */
     @Query("SELECT MAX(s.reconciliationDate) FROM ReconciliationSnapshot s WHERE s.userId = :userId")
     Optional<LocalDate> findMaxReconciliationDateByUserId(@Param("userId") Long userId);
+
+    /**
+     * 查找指定日期之后最近的快照日期
+     */
+    @Query("SELECT MIN(s.reconciliationDate) FROM ReconciliationSnapshot s WHERE s.userId = :userId " +
+           "AND s.reconciliationDate > :date")
+    Optional<LocalDate> findNextReconciliationDate(@Param("userId") Long userId, @Param("date") LocalDate date);
+
+    /**
+     * 查找指定日期之前最近的快照日期
+     * 沿 (user_id, reconciliation_date) 索引倒序取第一行，读取行数与快照总数无关
+     */
+    @Query(value = "SELECT reconciliation_date FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "AND reconciliation_date < :date ORDER BY reconciliation_date DESC LIMIT 1",
+           nativeQuery = true)
+    Optional<String> findLatestDateBeforeNative(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 查找指定日期之前最近的快照日期（使用 LocalDate）
+     */
+    default Optional<LocalDate> findLatestDateBefore(Long userId, LocalDate date) {
+        return findLatestDateBeforeNative(userId, date.toString()).map(LocalDate::parse);
+    }
+
+    /**
+     * 查询用户早于 before 的快照及每个日期的存款记录数、总金额，按日期倒序，最多 limit 行（-1 表示不限）
+     * 总金额取快照自身的 total_amount（与对账页面一致），记录数取自快照账户合计，一次 GROUP BY 查询得到；
+     * before 作为键集分页的游标
+     */
+    @Query(value = "SELECT s.reconciliation_date AS reconciliationDate, " +
+           "COALESCE(SUM(t.deposit_count), 0) AS recordCount, " +
+           "COALESCE(CAST(ROUND(s.total_amount * 100) AS INTEGER), 0) AS totalCents, " +
+           "s.note AS note, s.version AS version " +
+           "FROM reconciliation_snapshots s LEFT JOIN snapshot_account_totals t " +
+           "ON t.user_id = s.user_id AND t.reconciliation_date = s.reconciliation_date " +
+           "WHERE s.user_id = :userId AND s.reconciliation_date < :before " +
+           "GROUP BY s.reconciliation_date ORDER BY s.reconciliation_date DESC LIMIT :limit",
+           nativeQuery = true)
+    List<HistoryRow> findHistoryBefore(@Param("userId") Long userId, @Param("before") String before, @Param("limit") int limit);
+
+    /**
+     * 把快照总金额加上 deltaCents 分并递增版本（原子更新，不读取存款记录），返回更新的行数（该日期没有快照时为 0）
+     * 执行前刷新、执行后清空持久化上下文，避免之后读到缓存中的旧快照实体
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE reconciliation_snapshots " +
+           "SET total_amount = (CAST(ROUND(total_amount * 100) AS INTEGER) + :deltaCents) / 100.0, updated_at = :updatedAt, " +
+           "version = version + 1 " +
+           "WHERE user_id = :userId AND reconciliation_date = :date",
+           nativeQuery = true)
+    int addTotalAmountCents(@Param("userId") Long userId, @Param("date") String date,
+                            @Param("deltaCents") long deltaCents, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * 把快照总金额加上 deltaCents 分（使用 LocalDate）
+     */
+    default int addTotalAmountCents(Long userId, LocalDate date, long deltaCents) {
+        return addTotalAmountCents(userId, date.toString(), deltaCents, LocalDateTime.now());
+    }
+
+    /**
+     * 把快照总金额设为 totalCents 分，不递增版本（总金额校验修正偏差用：快照内容没有变化，客户端持有的版本仍然有效）
+     * 执行前刷新、执行后清空持久化上下文，与 addTotalAmountCents 相同
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE reconciliation_snapshots SET total_amount = :totalCents / 100.0, updated_at = :updatedAt " +
+           "WHERE user_id = :userId AND reconciliation_date = :date",
+           nativeQuery = true)
+    int repairTotalAmountCents(@Param("userId") Long userId, @Param("date") String date,
+                               @Param("totalCents") long totalCents, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * 把快照总金额设为 totalCents 分，不递增版本（使用 LocalDate）
+     */
+    default int repairTotalAmountCents(Long userId, LocalDate date, long totalCents) {
+        return repairTotalAmountCents(userId, date.toString(), totalCents, LocalDateTime.now());
+    }
+
+    /**
+     * 查询快照的版本（不加载快照实体）
+     */
+    @Query(value = "SELECT version FROM reconciliation_snapshots WHERE user_id = :userId " +
+           "AND reconciliation_date = :date",
+           nativeQuery = true)
+    Optional<Long> findVersion(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 查询快照的版本（使用 LocalDate）
+     */
+    default Optional<Long> findVersion(Long userId, LocalDate date) {
+        return findVersion(userId, date.toString());
+    }
+
+    /**
+     * 递增快照版本（快照中的存款记录有变化而总金额不变时），返回更新的行数
+     * 执行前刷新、执行后清空持久化上下文，与 addTotalAmountCents 相同
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE reconciliation_snapshots SET version = version + 1 " +
+           "WHERE user_id = :userId AND reconciliation_date = :date",
+           nativeQuery = true)
+    int incrementVersion(@Param("userId") Long userId, @Param("date") String date);
+
+    /**
+     * 递增快照版本（使用 LocalDate）
+     */
+    default int incrementVersion(Long userId, LocalDate date) {
+        return incrementVersion(userId, date.toString());
+    }
+
+    /**
+     * 递增用户多个日期快照的版本（批量导入替换已有快照的存款记录后）
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE reconciliation_snapshots SET version = version + 1 " +
+           "WHERE user_id = :userId AND reconciliation_date IN (:dates)",
+           nativeQuery = true)
+    int incrementVersions(@Param("userId") Long userId, @Param("dates") Collection<String> dates);
+
+    /**
+     * 递增用户所有快照的版本（账户名称、状态变化会改变每个快照的对账数据）
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE reconciliation_snapshots SET version = version + 1 WHERE user_id = :userId",
+           nativeQuery = true)
+    int incrementVersionsByUserId(@Param("userId") Long userId);
+
+    /**
+     * 查询用户总金额与存款记录合计（快照账户合计表）不一致的快照，按日期排序
+     */
+    @Query(value = "SELECT s.reconciliation_date AS reconciliationDate, " +
+           "CAST(ROUND(s.total_amount * 100) AS INTEGER) AS totalCents, COALESCE(SUM(t.amount_cents), 0) AS depositCents " +
+           "FROM reconciliation_snapshots s LEFT JOIN snapshot_account_totals t " +
+           "ON t.user_id = s.user_id AND t.reconciliation_date = s.reconciliation_date " +
+           "WHERE s.user_id = :userId " +
+           "GROUP BY s.reconciliation_date HAVING totalCents <> depositCents ORDER BY s.reconciliation_date",
+           nativeQuery = true)
+    List<TotalCheckRow> findTotalMismatches(@Param("userId") Long userId);
+    
+    /**
+     * 查询用户全部快照的日期、总金额（分）和备注，按日期排序（构建 BalanceSeries）
+     */
+    @Query(value = "SELECT reconciliation_date AS reconciliationDate, " +
+           "CAST(ROUND(total_amount * 100) AS INTEGER) AS totalCents, note AS note " +
+           "FROM reconciliation_snapshots WHERE user_id = :userId ORDER BY reconciliation_date",
+           nativeQuery = true)
+    List<SeriesRow> findSeriesRows(@Param("userId") Long userId);
+    
+    /**
+     * 查询用户的数据版本（V8 触发器在快照或快照账户合计变化时加一，没有记录时为 0）
+     */
+    @Query(value = "SELECT COALESCE(MAX(version), 0) FROM user_data_versions WHERE user_id = :userId",
+           nativeQuery = true)
+    Long findDataVersion(@Param("userId") Long userId);
+    
+    /**
+     * 查询全部用户中最大的数据版本（版本只增不减，变小说明数据库被替换或恢复过）
+     */
+    @Query(value = "SELECT COALESCE(MAX(version), 0) FROM user_data_versions",
+           nativeQuery = true)
+    Long findMaxDataVersion();
 }
@@ -0,0 +1,111 @@
+package com.bookkeeping.repository;
+
+import com.bookkeeping.entity.SnapshotAccountTotal;
+import com.bookkeeping.entity.SnapshotAccountTotalId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 快照账户合计（由触发器维护，只读）
+ * 查询返回投影而不是实体，命中 (user_id, reconciliation_date, account_id) 索引
+ */
+@Repository
+public interface SnapshotAccountTotalRepository extends JpaRepository<SnapshotAccountTotal, SnapshotAccountTotalId> {
+
+    /**
+     * 账户合计
+     */
+    interface AccountTotal {
+        String getReconciliationDate();
+
+        Long getAccountId();
+
+        /** 账户名称（账户已不存在时为空） */
+        String getAccountName();
+
+        Long getAmountCents();
+
+        Integer getDepositCount();
+
+        default BigDecimal getAmount() {
+            return BigDecimal.valueOf(getAmountCents(), 2);
+        }
+    }
+
+    /**
+     * 账户合计（分），不带账户名称
+     */
+    interface AccountCents {
+        String getReconciliationDate();
+
+        Long getAccountId();
+
+        Long getAmountCents();
+    }
+
+    /**
+     * 查询用户在指定日期各账户的合计及账户名称，按账户ID排序
+     */
+    @Query(value = "SELECT t.reconciliation_date AS reconciliationDate, t.account_id AS accountId, a.name AS accountName, " +
+           "t.amount_cents AS amountCents, t.deposit_count AS depositCount " +
+           "FROM snapshot_account_totals t LEFT JOIN accounts a ON a.id = t.account_id " +
+           "WHERE t.user_id = :userId AND t.reconciliation_date = :date ORDER BY t.account_id",
+           nativeQuery = true)
+    List<AccountTotal> findByUserIdAndDate(@Param("userId") Long userId, @Param("date") String date);
+
+    default List<AccountTotal> findByUserIdAndDate(Long userId, LocalDate date) {
+        return findByUserIdAndDate(userId, date.toString());
+    }
+
+    /**
+     * 查询用户从指定日期起每个月最后一个有存款记录的日期的各账户合计，按日期、账户ID排序
+     * 月末日期用 DENSE_RANK 在一次范围查询中选出（同一日期有多个账户，排名相同）
+     */
+    @Query(value = "SELECT reconciliationDate, accountId, accountName, amountCents, depositCount FROM (" +
+           "SELECT t.reconciliation_date AS reconciliationDate, t.account_id AS accountId, a.name AS accountName, " +
+           "t.amount_cents AS amountCents, t.deposit_count AS depositCount, " +
+           "DENSE_RANK() OVER (PARTITION BY substr(t.reconciliation_date, 1, 7) ORDER BY t.reconciliation_date DESC) AS rk " +
+           "FROM snapshot_account_totals t LEFT JOIN accounts a ON a.id = t.account_id " +
+           "WHERE t.user_id = :userId AND t.reconciliation_date >= :fromDate) " +
+           "WHERE rk = 1 ORDER BY reconciliationDate, accountId",
+           nativeQuery = true)
+    List<AccountTotal> findMonthEndsFromDate(@Param("userId") Long userId, @Param("fromDate") String fromDate);
+
+    default List<AccountTotal> findMonthEndsFromDate(Long userId, LocalDate fromDate) {
+        return findMonthEndsFromDate(userId, fromDate.toString());
+    }
+
+    /**
+     * 查询用户不晚于指定日期的最近一个有存款记录的日期
+     */
+    @Query(value = "SELECT MAX(reconciliation_date) FROM snapshot_account_totals " +
+           "WHERE user_id = :userId AND reconciliation_date <= :date",
+           nativeQuery = true)
+    Optional<String> findLatestDateOnOrBefore(@Param("userId") Long userId, @Param("date") String date);
+
+    default Optional<LocalDate> findLatestDateOnOrBefore(Long userId, LocalDate date) {
+        return findLatestDateOnOrBefore(userId, date.toString()).map(LocalDate::parse);
+    }
+
+    /**
+     * 查询用户最早的有存款记录的日期
+     */
+    @Query(value = "SELECT MIN(reconciliation_date) FROM snapshot_account_totals WHERE user_id = :userId",
+           nativeQuery = true)
+    Optional<String> findEarliestDate(@Param("userId") Long userId);
+
+    /**
+     * 查询用户全部日期的各账户合计，按日期、账户ID排序（构建 BalanceSeries）
+     */
+    @Query(value = "SELECT reconciliation_date AS reconciliationDate, account_id AS accountId, amount_cents AS amountCents " +
+           "FROM snapshot_account_totals WHERE user_id = :userId ORDER BY reconciliation_date, account_id",
+           nativeQuery = true)
+    List<AccountCents> findCentsByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,45 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.dto.DepositResponse;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 账户在某个对账日期的存款记录版本（用于按账户保存时的乐观并发校验）
+ *
+ * 版本是存款记录内容（按 ID 排序，金额按列定义的小数位取整）的 CRC32，只要该账户的任一记录被新增、修改或删除，版本就会变化；
+ * 其他账户的修改不影响该账户的版本，两个页面分别编辑不同账户时互不冲突。
+ */
+public final class AccountDepositsVersion {
+
+    private AccountDepositsVersion() {
+    }
+
+    public static String of(List<DepositResponse> deposits) {
+        List<DepositResponse> sorted = new ArrayList<>(deposits);
+        sorted.sort(Comparator.comparing(DepositResponse::getId));
+        StringBuilder content = new StringBuilder();
+        for (DepositResponse deposit : sorted) {
+            content.append(deposit.getId()).append('|')
+                    .append(deposit.getDepositType()).append('|')
+                    .append(deposit.getDepositTime()).append('|')
+                    .append(scaled(deposit.getAmount(), 2)).append('|')
+                    .append(scaled(deposit.getInterestRate(), 2)).append('|')
+                    .append(scaled(deposit.getTerm(), 1)).append('|')
+                    .append(deposit.getNote()).append('\n');
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static Long scaled(BigDecimal value, int scale) {
+        return value == null ? null : value.movePointRight(scale).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
@@ -4,9 +4,11 @@ import com.bookkeeping.dto.AccountResponse;
 import com.bookkeeping.dto.CreateAccountRequest;
 import com.bookkeeping.dto.UpdateAccountRequest;
 import com.bookkeeping.entity.Account;
+import com.bookkeeping.event.UserDataChangedEvent;
 import com.bookkeeping.repository.AccountRepository;
-import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,12 +23,19 @@ public class AccountService {
     private AccountRepository accountRepository;
     
     @Autowired
-    private DepositRepository depositRepository;
+    private DepositStore depositStore;
+    
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
     
     /**
      * 获取用户的所有账户列表
      * 先显示启用的账户，后显示未启用的账户，同一状态下按创建时间倒序
      */
+    @Transactional(readOnly = true)
     public List<AccountResponse> getAccounts(Long userId) {
         List<Account> accounts = accountRepository.findByUserId(userId);
         return accounts.stream()
@@ -42,6 +51,7 @@ public class AccountService {
     /**
      * 获取用户启用的账户列表（用于对账管理等场景）
      */
+    @Transactional(readOnly = true)
     public List<AccountResponse> getActiveAccounts(Long userId) {
         List<Account> accounts = accountRepository.findByUserIdAndStatus(userId, Account.AccountStatus.ACTIVE);
         return accounts.stream()
@@ -52,6 +62,7 @@ public class AccountService {
     /**
      * 获取单个账户详情
      */
+    @Transactional(readOnly = true)
     public AccountResponse getAccount(Long id, Long userId) {
         Account account = accountRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new RuntimeException("账户不存在"));
@@ -61,6 +72,7 @@ public class AccountService {
     /**
      * 创建账户
      */
+    @QueuedWrite
     @Transactional
     public AccountResponse createAccount(CreateAccountRequest request, Long userId) {
         // 检查账户名称是否已存在
@@ -76,12 +88,14 @@ public class AccountService {
         account.setStatus(Account.AccountStatus.ACTIVE);
         
         account = accountRepository.save(account);
+        accountsChanged(userId);
         return AccountResponse.fromEntity(account);
     }
     
     /**
      * 更新账户
      */
+    @QueuedWrite
     @Transactional
     public AccountResponse updateAccount(Long id, UpdateAccountRequest request, Long userId) {
         Account account = accountRepository.findByIdAndUserId(id, userId)
@@ -97,6 +111,7 @@ public class AccountService {
         account.setNote(request.getNote());
         
         account = accountRepository.save(account);
+        accountsChanged(userId);
         return AccountResponse.fromEntity(account);
     }
     
@@ -104,13 +119,14 @@ public class AccountService {
      * 删除账户
      * 如果有存款记录，标记为停用；如果没有，物理删除
      */
+    @QueuedWrite
     @Transactional
     public void deleteAccount(Long id, Long userId) {
         Account account = accountRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new RuntimeException("账户不存在"));
         
         // 检查是否有存款记录
-        if (depositRepository.existsByAccountId(id)) {
+        if (depositStore.existsByAccountId(id)) {
             // 有记录，标记为停用
             account.setStatus(Account.AccountStatus.DISABLED);
             accountRepository.save(account);
@@ -118,11 +134,13 @@ public class AccountService {
             // 无记录，物理删除
             accountRepository.delete(account);
         }
+        accountsChanged(userId);
     }
     
     /**
      * 启用账户
      */
+    @QueuedWrite
     @Transactional
     public AccountResponse enableAccount(Long id, Long userId) {
         Account account = accountRepository.findByIdAndUserId(id, userId)
@@ -130,12 +148,14 @@ public class AccountService {
         
         account.setStatus(Account.AccountStatus.ACTIVE);
         account = accountRepository.save(account);
+        accountsChanged(userId);
         return AccountResponse.fromEntity(account);
     }
     
     /**
      * 禁用账户
      */
+    @QueuedWrite
     @Transactional
     public AccountResponse disableAccount(Long id, Long userId) {
         Account account = accountRepository.findByIdAndUserId(id, userId)
@@ -143,6 +163,15 @@ public class AccountService {
         
         account.setStatus(Account.AccountStatus.DISABLED);
         account = accountRepository.save(account);
+        accountsChanged(userId);
         return AccountResponse.fromEntity(account);
     }
+    
+    /**
+     * 账户变化后：账户名称、状态会出现在每个快照的对账数据中，递增用户所有快照的版本，然后通知数据变化
+     */
+    private void accountsChanged(Long userId) {
+        snapshotRepository.incrementVersionsByUserId(userId);
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+    }
 }
@@ -0,0 +1,258 @@
+package com.bookkeeping.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 用户余额的列式时间序列（统计计算用，只读）
+ *
+ * 每个快照一列：日期（epochDay）、月份键（年 * 12 + 月 - 1）、总金额（分）、备注；
+ * 每个账户一列按快照下标存放账户合计（分），账户按ID排序分配连续的槽位，该快照没有该账户的合计时为 ABSENT。
+ * 月份分桶、沿用前一个月、年度增值都在这些数组上计算，循环中不分配对象。
+ */
+public final class BalanceSeries {
+
+    /** 该快照没有该账户的合计 / 该年没有快照 */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    private final int[] epochDays;
+    private final int[] monthKeys;
+    private final long[] totalCents;
+    private final String[] notes;
+    private final long[] accountIds;
+    private final long[][] accountCents;
+
+    private BalanceSeries(int[] epochDays, long[] totalCents, String[] notes, long[] accountIds, long[][] accountCents) {
+        this.epochDays = epochDays;
+        this.totalCents = totalCents;
+        this.notes = notes;
+        this.accountIds = accountIds;
+        this.accountCents = accountCents;
+        this.monthKeys = new int[epochDays.length];
+        for (int i = 0; i < epochDays.length; i++) {
+            monthKeys[i] = monthKey(LocalDate.ofEpochDay(epochDays[i]));
+        }
+    }
+
+    /**
+     * 由各列直接构造（BalanceSeriesStore 从文件读取时使用），日期必须升序、账户ID必须升序，数组不再修改
+     */
+    static BalanceSeries of(int[] epochDays, long[] totalCents, String[] notes, long[] accountIds, long[][] accountCents) {
+        return new BalanceSeries(epochDays, totalCents, notes, accountIds, accountCents);
+    }
+
+    /**
+     * 月份键：年 * 12 + 月 - 1，相邻月份的键相差 1
+     */
+    public static int monthKey(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * 快照数
+     */
+    public int size() {
+        return epochDays.length;
+    }
+
+    public boolean isEmpty() {
+        return epochDays.length == 0;
+    }
+
+    public int epochDay(int index) {
+        return epochDays[index];
+    }
+
+    public LocalDate date(int index) {
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+
+    public int monthKey(int index) {
+        return monthKeys[index];
+    }
+
+    public long totalCents(int index) {
+        return totalCents[index];
+    }
+
+    /**
+     * 快照备注（没有备注或只有空白字符时为 null）
+     */
+    public String note(int index) {
+        return notes[index];
+    }
+
+    /**
+     * 有合计的账户数（槽位数）
+     */
+    public int accountCount() {
+        return accountIds.length;
+    }
+
+    public long accountId(int slot) {
+        return accountIds[slot];
+    }
+
+    /**
+     * 账户的槽位，没有该账户的合计时为 -1
+     */
+    public int slotOf(long accountId) {
+        int slot = Arrays.binarySearch(accountIds, accountId);
+        return slot >= 0 ? slot : -1;
+    }
+
+    /**
+     * 账户在快照中的合计（分），没有时为 ABSENT
+     */
+    public long accountCents(int slot, int index) {
+        return accountCents[slot][index];
+    }
+
+    /**
+     * 月份键不晚于 monthKey 的最后一个快照的下标，没有时为 -1
+     */
+    public int lastIndexInOrBeforeMonth(int monthKey) {
+        int low = 0;
+        int high = monthKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (monthKeys[mid] <= monthKey) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * 把从 fromMonth 开始的 out.length 个月的月末快照下标写入 out：
+     * 有快照的月份为该月最后一个快照，没有快照的月份沿用前一个月，范围内第一个有快照的月份之前为 -1
+     */
+    public void monthEnds(int fromMonth, int[] out) {
+        int index = lastIndexInOrBeforeMonth(fromMonth - 1) + 1;
+        int last = -1;
+        for (int k = 0; k < out.length; k++) {
+            int month = fromMonth + k;
+            while (index < monthKeys.length && monthKeys[index] == month) {
+                last = index;
+                index++;
+            }
+            out[k] = last;
+        }
+    }
+
+    /**
+     * 第一个快照所在的年份
+     */
+    public int firstYear() {
+        return Math.floorDiv(monthKeys[0], 12);
+    }
+
+    /**
+     * 从第一个快照所在年份到最后一个快照所在年份每年的增值（分），下标 0 对应 firstYear()，没有快照的年份为 ABSENT
+     * 第一年为最后一次减第一次（只有一次快照时为该次总金额），之后每年为该年最后一次减之前最近一年的最后一次
+     */
+    public long[] yearlyIncreaseCents() {
+        int firstYear = firstYear();
+        long[] increases = new long[Math.floorDiv(monthKeys[monthKeys.length - 1], 12) - firstYear + 1];
+        Arrays.fill(increases, ABSENT);
+        long previousYearLast = 0;
+        int start = 0;
+        while (start < monthKeys.length) {
+            int year = Math.floorDiv(monthKeys[start], 12);
+            int end = start + 1;
+            while (end < monthKeys.length && Math.floorDiv(monthKeys[end], 12) == year) {
+                end++;
+            }
+            long last = totalCents[end - 1];
+            if (year == firstYear) {
+                increases[0] = end - start == 1 ? last : last - totalCents[start];
+            } else {
+                increases[year - firstYear] = last - previousYearLast;
+            }
+            previousYearLast = last;
+            start = end;
+        }
+        return increases;
+    }
+
+    /**
+     * 按日期顺序添加快照，再添加账户合计（顺序不限），最后 build
+     */
+    public static final class Builder {
+
+        private int[] epochDays = new int[16];
+        private long[] totalCents = new long[16];
+        private String[] notes = new String[16];
+        private int size;
+
+        private int[] totalEpochDays = new int[16];
+        private long[] totalAccountIds = new long[16];
+        private long[] totalAmounts = new long[16];
+        private int totalSize;
+
+        /**
+         * 添加快照，日期必须晚于之前添加的快照
+         */
+        public Builder addSnapshot(LocalDate date, long cents, String note) {
+            int epochDay = (int) date.toEpochDay();
+            if (size > 0 && epochDay <= epochDays[size - 1]) {
+                throw new IllegalArgumentException("快照必须按日期顺序添加");
+            }
+            if (size == epochDays.length) {
+                epochDays = Arrays.copyOf(epochDays, size * 2);
+                totalCents = Arrays.copyOf(totalCents, size * 2);
+                notes = Arrays.copyOf(notes, size * 2);
+            }
+            epochDays[size] = epochDay;
+            totalCents[size] = cents;
+            notes[size] = note == null || note.trim().isEmpty() ? null : note;
+            size++;
+            return this;
+        }
+
+        /**
+         * 添加账户合计（没有对应快照的日期在 build 时忽略）
+         */
+        public Builder addAccountCents(LocalDate date, long accountId, long cents) {
+            if (totalSize == totalEpochDays.length) {
+                totalEpochDays = Arrays.copyOf(totalEpochDays, totalSize * 2);
+                totalAccountIds = Arrays.copyOf(totalAccountIds, totalSize * 2);
+                totalAmounts = Arrays.copyOf(totalAmounts, totalSize * 2);
+            }
+            totalEpochDays[totalSize] = (int) date.toEpochDay();
+            totalAccountIds[totalSize] = accountId;
+            totalAmounts[totalSize] = cents;
+            totalSize++;
+            return this;
+        }
+
+        public BalanceSeries build() {
+            int[] days = Arrays.copyOf(epochDays, size);
+
+            // 账户ID去重排序后作为槽位
+            long[] ids = Arrays.copyOf(totalAccountIds, totalSize);
+            Arrays.sort(ids);
+            int distinct = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (distinct == 0 || ids[i] != ids[distinct - 1]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            ids = Arrays.copyOf(ids, distinct);
+
+            long[][] columns = new long[distinct][size];
+            for (long[] column : columns) {
+                Arrays.fill(column, ABSENT);
+            }
+            for (int i = 0; i < totalSize; i++) {
+                int index = Arrays.binarySearch(days, totalEpochDays[i]);
+                if (index >= 0) {
+                    columns[Arrays.binarySearch(ids, totalAccountIds[i])][index] = totalAmounts[i];
+                }
+            }
+            return new BalanceSeries(days, Arrays.copyOf(totalCents, size), Arrays.copyOf(notes, size), ids, columns);
+        }
+    }
+}
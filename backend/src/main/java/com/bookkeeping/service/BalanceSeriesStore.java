@@ -0,0 +1,559 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * 余额序列存储（内存 + 持久化文件，重启后不需要重新查询数据库）
+ *
+ * 每个用户的 BalanceSeries 连同读取时的数据版本（user_data_versions，V8 触发器在快照或快照账户合计变化时加一）一起保存，
+ * 版本与数据库当前版本相同时直接使用，否则重新加载。版本和序列在同一个只读事务中读取，保存的序列就是该版本的数据；
+ * 写事务（包括测试事务）中读到的可能是之后被回滚的数据，回滚后版本会被重复使用，所以只读事务之外不经过存储。
+ *
+ * 内存中最多保留 max-users 个用户，超出时先清除空闲用户，再淘汰最久未访问的用户；超过 idle-seconds 秒未访问的用户被清除。
+ * 被清除的用户下次请求时从 path 指定的文件读取：启动和每次写入后用 FileChannel.map 映射该文件，从映射区解码，
+ * 不再执行快照和账户合计查询。从数据库新加载的序列在写入文件之前一直保留（pending），定期或达到 max-users 个时追加到文件末尾；
+ * 文件中被新版本取代的记录超过有效记录且超过 1MB 时，把有效记录复制到新文件（先写临时文件再原子替换）。
+ *
+ * 文件格式（大端，定长部分按固定宽度排列）：
+ * - 文件头 32 字节：魔数、格式版本、保留
+ * - 之后是依次追加的记录，同一用户以最后一条为准。记录头 32 字节：用户ID、数据版本、数据块长度、数据块 CRC32、
+ *   记录头前 24 字节的 CRC32、保留；记录头之后是数据块
+ * - 数据块：快照数 n、账户数 a；n 个 20 字节的快照（epochDay、总金额分、备注偏移、备注长度，没有备注时长度为 -1）；
+ *   a 个账户ID；a * n 个账户合计（分，按槽位依次排列，没有合计为 BalanceSeries.ABSENT）；最后是 UTF-8 备注
+ *
+ * 魔数或格式版本不符、文件中的最大版本大于数据库（数据库被替换或恢复过）时忽略整个文件，下次写入时重建；
+ * 记录头校验和不符或长度超出文件（追加时中断）时忽略该记录及之后的内容，下次追加时覆盖；单个数据块校验和不符时只忽略该用户。
+ */
+@Component
+@DependsOn("databaseMigrationRunner") // 启动时需要读取 user_data_versions
+public class BalanceSeriesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceSeriesStore.class);
+
+    /** "BSER" */
+    static final int MAGIC = 0x42534552;
+
+    static final int FORMAT_VERSION = 2;
+
+    static final int HEADER_BYTES = 32;
+
+    static final int RECORD_HEADER_BYTES = 32;
+
+    static final int SNAPSHOT_BYTES = 20;
+
+    /** 失效记录超过有效记录且超过该大小时整理文件 */
+    static final long COMPACT_MIN_BYTES = 1 << 20;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${balance-series-store.path:./data/balance-series.bin}")
+    private String path;
+
+    @Value("${balance-series-store.max-users:1000}")
+    private int maxUsers;
+
+    @Value("${balance-series-store.idle-seconds:600}")
+    private long idleSeconds;
+
+    private final Map<Long, Stamped> series = new ConcurrentHashMap<>();
+
+    /** 从数据库加载、尚未写入文件的序列，写入后移除 */
+    private final Map<Long, Stamped> pending = new ConcurrentHashMap<>();
+
+    /** 启动时映射的文件，每次写入后重新映射 */
+    private volatile MappedFile mapped;
+
+    private Counter memoryLoads;
+
+    private Counter fileLoads;
+
+    private Counter databaseLoads;
+
+    private Counter sizeEvictions;
+
+    private Counter idleEvictions;
+
+    @PostConstruct
+    public void start() {
+        memoryLoads = loadCounter("memory", "从内存返回余额序列的次数");
+        fileLoads = loadCounter("file", "从持久化文件解码余额序列的次数");
+        databaseLoads = loadCounter("database", "从数据库重新加载余额序列的次数");
+        sizeEvictions = evictionCounter("size", "内存已满时淘汰的用户数");
+        idleEvictions = evictionCounter("idle", "空闲超时清除的用户数");
+        Gauge.builder("bookkeeping.balance-series.users", series, Map::size)
+                .description("内存中的余额序列用户数")
+                .register(meterRegistry);
+
+        Path file = Paths.get(path);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            MappedFile loaded = MappedFile.open(file);
+            long databaseVersion = snapshotRepository.findMaxDataVersion();
+            if (loaded.maxVersion > databaseVersion) {
+                logger.warn("余额序列文件 {} 的数据版本 {} 大于数据库的 {}，数据库可能被替换或恢复过，忽略该文件",
+                        file, loaded.maxVersion, databaseVersion);
+                return;
+            }
+            // 预先读入映射的页面，第一次请求不再等待磁盘
+            loaded.buffer.load();
+            mapped = loaded;
+            logger.info("已映射余额序列文件 {}：{} 个用户", file, loaded.index.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("余额序列文件 {} 无法读取，忽略该文件: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取用户的余额序列：内存或文件中保存的版本与 version 相同时直接返回，否则调用 loader 加载并保存
+     *
+     * @param version 与 loader 在同一个只读事务中读取的用户数据版本
+     */
+    public BalanceSeries get(Long userId, long version, Supplier<BalanceSeries> loader) {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return loader.get();
+        }
+        Stamped cached = series.get(userId);
+        if (cached != null && cached.version == version) {
+            memoryLoads.increment();
+            cached.lastAccess = System.nanoTime();
+            return cached.series;
+        }
+        // 已被清除但还没有写入文件
+        Stamped unwritten = pending.get(userId);
+        if (unwritten != null && unwritten.version == version) {
+            memoryLoads.increment();
+            unwritten.lastAccess = System.nanoTime();
+            keep(userId, unwritten);
+            return unwritten.series;
+        }
+        MappedFile file = mapped;
+        if (file != null) {
+            BalanceSeries decoded = file.read(userId, version);
+            if (decoded != null) {
+                fileLoads.increment();
+                keep(userId, new Stamped(version, decoded));
+                return decoded;
+            }
+        }
+        databaseLoads.increment();
+        BalanceSeries loaded = loader.get();
+        Stamped stamped = new Stamped(version, loaded);
+        keep(userId, stamped);
+        pending.merge(userId, stamped, (old, neu) -> neu.version >= old.version ? neu : old);
+        if (pending.size() >= maxUsers) {
+            flush();
+        }
+        return loaded;
+    }
+
+    /**
+     * 把尚未写入的序列追加到文件末尾（失效记录过多时整理文件），然后重新映射
+     */
+    @Scheduled(fixedDelayString = "${balance-series-store.flush-interval-ms:60000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Stamped>> entries = new ArrayList<>(pending.entrySet());
+        entries.sort(Map.Entry.comparingByKey(Comparator.naturalOrder()));
+        try {
+            write(entries);
+            entries.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("写入余额序列文件 {} 失败: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * 定期清除空闲超时的用户（之后从文件读取）
+     */
+    @Scheduled(fixedDelayString = "${balance-series-store.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long deadline = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleSeconds);
+        series.entrySet().removeIf(e -> {
+            if (e.getValue().lastAccess < deadline) {
+                idleEvictions.increment();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    /**
+     * 内存中的用户数
+     */
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * 放入内存（保留版本较大的序列），内存已满时先腾出位置
+     */
+    private void keep(Long userId, Stamped stamped) {
+        if (!series.containsKey(userId)) {
+            makeRoom();
+        }
+        series.merge(userId, stamped, (old, neu) -> neu.version >= old.version ? neu : old);
+    }
+
+    /**
+     * 内存已满时先清除空闲用户，仍然满时淘汰最久未访问的用户
+     */
+    private void makeRoom() {
+        if (series.size() < maxUsers) {
+            return;
+        }
+        evictIdle();
+        while (series.size() >= maxUsers) {
+            Map.Entry<Long, Stamped> oldest = null;
+            for (Map.Entry<Long, Stamped> e : series.entrySet()) {
+                if (oldest == null || e.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = e;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (series.remove(oldest.getKey(), oldest.getValue())) {
+                sizeEvictions.increment();
+            }
+        }
+    }
+
+    private void write(List<Map.Entry<Long, Stamped>> entries) throws IOException {
+        Set<Long> written = new HashSet<>();
+        List<byte[]> records = new ArrayList<>(entries.size());
+        long appended = 0;
+        for (Map.Entry<Long, Stamped> entry : entries) {
+            written.add(entry.getKey());
+            byte[] record = record(entry.getKey(), entry.getValue().version, encode(entry.getValue().series));
+            records.add(record);
+            appended += record.length;
+        }
+
+        Path target = Paths.get(path);
+        MappedFile file = mapped;
+        if (file == null || !Files.exists(target)) {
+            rewrite(target, null, written, records);
+            return;
+        }
+        long live = appended;
+        for (IndexEntry entry : file.index.values()) {
+            if (!written.contains(entry.userId)) {
+                live += RECORD_HEADER_BYTES + entry.length;
+            }
+        }
+        long garbage = file.end - HEADER_BYTES + appended - live;
+        if (garbage > live && garbage > COMPACT_MIN_BYTES) {
+            rewrite(target, file, written, records);
+            return;
+        }
+
+        if (file.end + appended > Integer.MAX_VALUE) {
+            throw new IOException("余额序列文件超过 2GB");
+        }
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            // 覆盖上次追加时中断留下的不完整记录
+            channel.truncate(file.end);
+            channel.position(file.end);
+            for (byte[] record : records) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+        }
+        mapped = MappedFile.open(target);
+    }
+
+    /**
+     * 写入新文件：原文件中没有被新记录取代的记录（按原样复制，不解码）加上新记录，替换原文件后重新映射
+     */
+    private void rewrite(Path target, MappedFile file, Set<Long> written, List<byte[]> records) throws IOException {
+        List<ByteBuffer> kept = new ArrayList<>();
+        long size = HEADER_BYTES;
+        if (file != null) {
+            for (IndexEntry entry : file.index.values()) {
+                if (!written.contains(entry.userId)) {
+                    ByteBuffer record = file.buffer.slice(entry.offset - RECORD_HEADER_BYTES, RECORD_HEADER_BYTES + entry.length);
+                    kept.add(record);
+                    size += record.capacity();
+                }
+            }
+        }
+        for (byte[] record : records) {
+            size += record.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("余额序列文件超过 2GB");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).rewind();
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<ByteBuffer> buffers = new ArrayList<>(kept.size() + records.size() + 1);
+            buffers.add(header);
+            buffers.addAll(kept);
+            for (byte[] record : records) {
+                buffers.add(ByteBuffer.wrap(record));
+            }
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        mapped = MappedFile.open(target);
+    }
+
+    /**
+     * 记录头加数据块
+     */
+    static byte[] record(long userId, long version, byte[] block) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + block.length);
+        record.putLong(userId)
+                .putLong(version)
+                .putInt(block.length)
+                .putInt(crc(ByteBuffer.wrap(block)));
+        record.putInt(crc(record.slice(0, 24)))
+                .putInt(0)
+                .put(block);
+        return record.array();
+    }
+
+    static byte[] encode(BalanceSeries series) {
+        int n = series.size();
+        int a = series.accountCount();
+        byte[][] notes = new byte[n][];
+        int notesLength = 0;
+        for (int i = 0; i < n; i++) {
+            if (series.note(i) != null) {
+                notes[i] = series.note(i).getBytes(StandardCharsets.UTF_8);
+                notesLength += notes[i].length;
+            }
+        }
+        ByteBuffer block = ByteBuffer.allocate(8 + SNAPSHOT_BYTES * n + 8 * a + 8 * a * n + notesLength);
+        block.putInt(n).putInt(a);
+        int noteOffset = 0;
+        for (int i = 0; i < n; i++) {
+            block.putInt(series.epochDay(i)).putLong(series.totalCents(i));
+            if (notes[i] == null) {
+                block.putInt(0).putInt(-1);
+            } else {
+                block.putInt(noteOffset).putInt(notes[i].length);
+                noteOffset += notes[i].length;
+            }
+        }
+        for (int slot = 0; slot < a; slot++) {
+            block.putLong(series.accountId(slot));
+        }
+        for (int slot = 0; slot < a; slot++) {
+            for (int i = 0; i < n; i++) {
+                block.putLong(series.accountCents(slot, i));
+            }
+        }
+        for (byte[] note : notes) {
+            if (note != null) {
+                block.put(note);
+            }
+        }
+        return block.array();
+    }
+
+    static BalanceSeries decode(ByteBuffer block) {
+        int n = block.getInt(0);
+        int a = block.getInt(4);
+        long fixed = 8 + (long) SNAPSHOT_BYTES * n + 8L * a + 8L * a * n;
+        if (n < 0 || a < 0 || fixed > block.capacity()) {
+            throw new IllegalStateException("数据块长度不符");
+        }
+        int notesStart = (int) fixed;
+        int[] epochDays = new int[n];
+        long[] totalCents = new long[n];
+        String[] notes = new String[n];
+        for (int i = 0; i < n; i++) {
+            int at = 8 + SNAPSHOT_BYTES * i;
+            epochDays[i] = block.getInt(at);
+            totalCents[i] = block.getLong(at + 4);
+            int noteLength = block.getInt(at + 16);
+            if (noteLength >= 0) {
+                byte[] note = new byte[noteLength];
+                block.get(notesStart + block.getInt(at + 12), note);
+                notes[i] = new String(note, StandardCharsets.UTF_8);
+            }
+        }
+        long[] accountIds = new long[a];
+        block.slice(8 + SNAPSHOT_BYTES * n, 8 * a).asLongBuffer().get(accountIds);
+        long[][] accountCents = new long[a][n];
+        int columns = 8 + SNAPSHOT_BYTES * n + 8 * a;
+        for (int slot = 0; slot < a; slot++) {
+            block.slice(columns + 8 * n * slot, 8 * n).asLongBuffer().get(accountCents[slot]);
+        }
+        return BalanceSeries.of(epochDays, totalCents, notes, accountIds, accountCents);
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private Counter loadCounter(String source, String description) {
+        return Counter.builder("bookkeeping.balance-series.load")
+                .tag("source", source)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    private Counter evictionCounter(String reason, String description) {
+        return Counter.builder("bookkeeping.balance-series.evictions")
+                .tag("reason", reason)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    private static class Stamped {
+        final long version;
+        final BalanceSeries series;
+        volatile long lastAccess;
+
+        Stamped(long version, BalanceSeries series) {
+            this.version = version;
+            this.series = series;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    private record IndexEntry(long userId, long version, int offset, int length, int crc) {
+    }
+
+    /**
+     * 映射的文件：打开时校验文件头并扫描记录头建立索引，读取时校验数据块
+     */
+    private static final class MappedFile {
+
+        final MappedByteBuffer buffer;
+
+        final long maxVersion;
+
+        /** 最后一条完整记录的结尾，之后的内容在下次追加时覆盖 */
+        final int end;
+
+        final Map<Long, IndexEntry> index;
+
+        private MappedFile(MappedByteBuffer buffer, long maxVersion, int end, Map<Long, IndexEntry> index) {
+            this.buffer = buffer;
+            this.maxVersion = maxVersion;
+            this.end = end;
+            this.index = index;
+        }
+
+        static MappedFile open(Path file) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("文件长度不符");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("不是余额序列文件或格式版本不符");
+            }
+            Map<Long, IndexEntry> index = new ConcurrentHashMap<>();
+            long maxVersion = 0;
+            int at = HEADER_BYTES;
+            while (at + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(at + 16);
+                if (crc(buffer.slice(at, 24)) != buffer.getInt(at + 24)
+                        || length < 0 || (long) at + RECORD_HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                IndexEntry entry = new IndexEntry(buffer.getLong(at), buffer.getLong(at + 8),
+                        at + RECORD_HEADER_BYTES, length, buffer.getInt(at + 20));
+                index.put(entry.userId, entry);
+                maxVersion = Math.max(maxVersion, entry.version);
+                at += RECORD_HEADER_BYTES + length;
+            }
+            return new MappedFile(buffer, maxVersion, at, index);
+        }
+        /**
+         * 读取用户保存的序列，版本不同或数据块损坏时为 null（损坏的数据块从索引中移除）
+         */
+        BalanceSeries read(long userId, long version) {
+            IndexEntry entry = index.get(userId);
+            if (entry == null || entry.version != version) {
+                return null;
+            }
+            ByteBuffer block = buffer.slice(entry.offset, entry.length);
+            try {
+                if (crc(block.duplicate()) != entry.crc) {
+                    throw new IllegalStateException("数据块校验和不符");
+                }
+                return decode(block);
+            } catch (RuntimeException e) {
+                logger.warn("余额序列文件中用户 {} 的数据无法读取，重新加载: {}", userId, e.getMessage());
+                index.remove(userId);
+                return null;
+            }
+        }
+    }
+}
@@ -1,23 +1,31 @@
 package com.bookkeeping.service;
 
+import com.bookkeeping.config.MoneyScaleConverter;
+import com.bookkeeping.dto.BatchDepositRequest;
+import com.bookkeeping.dto.BatchDepositResponse;
 import com.bookkeeping.dto.CreateDepositRequest;
 import com.bookkeeping.dto.DepositResponse;
 import com.bookkeeping.dto.UpdateDepositRequest;
 import com.bookkeeping.entity.Deposit;
-import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.event.UserDataChangedEvent;
 import com.bookkeeping.repository.AccountRepository;
-import com.bookkeeping.repository.DepositRepository;
 import com.bookkeeping.repository.ReconciliationSnapshotRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,7 +34,7 @@ public class DepositService {
     private static final Logger logger = LoggerFactory.getLogger(DepositService.class);
     
     @Autowired
-    private DepositRepository depositRepository;
+    private DepositStore depositStore;
     
     @Autowired
     private AccountRepository accountRepository;
@@ -34,9 +42,16 @@ public class DepositService {
     @Autowired
     private ReconciliationSnapshotRepository snapshotRepository;
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Value("${deposit-batch.max-operations:1000}")
+    private int maxBatchOperations;
+    
     /**
      * 获取账户在指定日期的存款记录
      */
+    @Transactional(readOnly = true)
     public List<DepositResponse> getDepositsByAccount(Long accountId, Long userId, LocalDate date) {
         // 验证账户是否属于用户
         if (!accountRepository.existsByIdAndUserId(accountId, userId)) {
@@ -45,7 +60,7 @@ public class DepositService {
         
         logger.info("[DepositService] 准备查询账户存款记录 - accountId: {}, userId: {}, date: {}", accountId, userId, date);
         try {
-            List<Deposit> deposits = depositRepository.findByAccountIdAndReconciliationDate(accountId, date);
+            List<Deposit> deposits = depositStore.findByAccountIdAndDate(accountId, date);
             logger.info("[DepositService] 查询账户存款记录成功 - count: {}", deposits.size());
             return deposits.stream()
                     .map(DepositResponse::fromEntity)
@@ -58,8 +73,21 @@ public class DepositService {
     }
     
     /**
-     * 创建存款记录
+     * 创建存款记录：对账日期已有快照时必须提交读取时的快照版本，返回的记录带上写入后的快照版本
      */
+    @QueuedWrite
+    @Transactional
+    public DepositResponse createDeposit(CreateDepositRequest request, Long userId, Long expectedVersion) {
+        ReconciliationService.checkVersion(findSnapshotVersion(userId, request.getReconciliationDate()), expectedVersion);
+        DepositResponse response = createDeposit(request, userId);
+        response.setSnapshotVersion(findSnapshotVersion(userId, request.getReconciliationDate()));
+        return response;
+    }
+    
+    /**
+     * 创建存款记录（不校验快照版本，供服务内部和测试数据准备使用）
+     */
+    @QueuedWrite
     @Transactional
     public DepositResponse createDeposit(CreateDepositRequest request, Long userId) {
         // 验证账户是否属于用户
@@ -78,10 +106,11 @@ public class DepositService {
         deposit.setNote(request.getNote());
         deposit.setReconciliationDate(request.getReconciliationDate());
         
-        deposit = depositRepository.save(deposit);
+        deposit = depositStore.insert(deposit);
         
-        // 如果该日期有快照，更新快照总金额
-        updateSnapshotTotalAmount(userId, request.getReconciliationDate());
+        // 如果该日期有快照，快照总金额加上新记录的金额
+        adjustSnapshotTotalAmount(userId, request.getReconciliationDate(), MoneyScaleConverter.toCents(deposit.getAmount()));
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
         
         return DepositResponse.fromEntity(deposit);
     }
@@ -89,12 +118,39 @@ public class DepositService {
     /**
      * 更新存款记录（允许编辑历史快照）
      */
+    @QueuedWrite
     @Transactional
     public DepositResponse updateDeposit(Long id, UpdateDepositRequest request, Long userId) {
-        Deposit deposit = depositRepository.findByIdAndUserId(id, userId)
-                .orElseThrow(() -> new RuntimeException("存款记录不存在"));
-        
+        return updateDeposit(id, request, userId, null);
+    }
+    
+    /**
+     * 更新存款记录在指定对账日期的内容（date 为空时按记录本身的日期）
+     * 记录所在的对账日期已有快照时必须提交读取时的快照版本，返回的记录带上写入后的快照版本
+     */
+    @QueuedWrite
+    @Transactional
+    public DepositResponse updateDeposit(Long id, UpdateDepositRequest request, Long userId, LocalDate date,
+                                         Long expectedVersion) {
+        Deposit deposit = findDeposit(id, userId, date);
+        ReconciliationService.checkVersion(findSnapshotVersion(userId, deposit.getReconciliationDate()), expectedVersion);
+        DepositResponse response = update(deposit, request, userId);
+        response.setSnapshotVersion(findSnapshotVersion(userId, deposit.getReconciliationDate()));
+        return response;
+    }
+    
+    /**
+     * 更新存款记录在指定对账日期的内容（date 为空时按记录本身的日期，不校验快照版本）
+     */
+    @QueuedWrite
+    @Transactional
+    public DepositResponse updateDeposit(Long id, UpdateDepositRequest request, Long userId, LocalDate date) {
+        return update(findDeposit(id, userId, date), request, userId);
+    }
+    
+    private DepositResponse update(Deposit deposit, UpdateDepositRequest request, Long userId) {
         LocalDate reconciliationDate = deposit.getReconciliationDate();
+        long oldCents = MoneyScaleConverter.toCents(deposit.getAmount());
         
         // 允许编辑所有快照的存款记录（包括历史快照）
         deposit.setDepositType(request.getDepositType());
@@ -104,10 +160,11 @@ public class DepositService {
         deposit.setTerm(request.getTerm());
         deposit.setNote(request.getNote());
         
-        deposit = depositRepository.save(deposit);
+        deposit = depositStore.update(deposit);
         
-        // 如果该记录属于快照，更新快照总金额
-        updateSnapshotTotalAmount(userId, reconciliationDate);
+        // 如果该记录属于快照，快照总金额加上金额的变化
+        adjustSnapshotTotalAmount(userId, reconciliationDate, MoneyScaleConverter.toCents(deposit.getAmount()) - oldCents);
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
         
         return DepositResponse.fromEntity(deposit);
     }
@@ -115,60 +172,251 @@ public class DepositService {
     /**
      * 删除存款记录（允许删除历史快照的记录）
      */
+    @QueuedWrite
     @Transactional
     public void deleteDeposit(Long id, Long userId) {
-        Deposit deposit = depositRepository.findByIdAndUserId(id, userId)
-                .orElseThrow(() -> new RuntimeException("存款记录不存在"));
-        
+        deleteDeposit(id, userId, null);
+    }
+    
+    /**
+     * 删除存款记录在指定对账日期的内容（date 为空时按记录本身的日期），返回删除后的快照版本（没有快照时为 null）
+     * 记录所在的对账日期已有快照时必须提交读取时的快照版本
+     */
+    @QueuedWrite
+    @Transactional
+    public Long deleteDeposit(Long id, Long userId, LocalDate date, Long expectedVersion) {
+        Deposit deposit = findDeposit(id, userId, date);
+        ReconciliationService.checkVersion(findSnapshotVersion(userId, deposit.getReconciliationDate()), expectedVersion);
+        delete(deposit, userId);
+        return findSnapshotVersion(userId, deposit.getReconciliationDate());
+    }
+    
+    /**
+     * 删除存款记录在指定对账日期的内容（date 为空时按记录本身的日期，不校验快照版本）
+     */
+    @QueuedWrite
+    @Transactional
+    public void deleteDeposit(Long id, Long userId, LocalDate date) {
+        delete(findDeposit(id, userId, date), userId);
+    }
+    
+    private void delete(Deposit deposit, Long userId) {
         LocalDate reconciliationDate = deposit.getReconciliationDate();
         
         // 允许删除所有快照的存款记录（包括历史快照）
-        depositRepository.delete(deposit);
+        depositStore.delete(deposit);
         
-        // 如果该记录属于快照，更新快照总金额
-        updateSnapshotTotalAmount(userId, reconciliationDate);
+        // 如果该记录属于快照，快照总金额减去该记录的金额
+        adjustSnapshotTotalAmount(userId, reconciliationDate, -MoneyScaleConverter.toCents(deposit.getAmount()));
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
     }
     
     /**
-     * 更新快照总金额
+     * 批量执行存款记录的新增、更新、删除（可以跨多个对账日期），在同一个事务中完成
+     * 删除、更新、新增分别批量写入；每个受影响的快照总金额只按差额调整一次。
+     * 受影响的对账日期已有快照时必须在 snapshotVersions 中提交读取时的版本，任一版本过期时整批不执行。
+     * 任一操作失败时整批回滚，错误信息指出是第几个操作。
      */
-    private void updateSnapshotTotalAmount(Long userId, LocalDate reconciliationDate) {
-        Optional<ReconciliationSnapshot> snapshotOpt = snapshotRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate);
-        if (snapshotOpt.isPresent()) {
-            ReconciliationSnapshot snapshot = snapshotOpt.get();
-            // 重新计算该日期的所有存款记录总金额
-            List<Deposit> deposits = depositRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate);
-            BigDecimal totalAmount = deposits.stream()
-                    .map(Deposit::getAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            snapshot.setTotalAmount(totalAmount);
-            snapshotRepository.save(snapshot);
+    @QueuedWrite
+    @Transactional
+    public BatchDepositResponse applyBatch(BatchDepositRequest request, Long userId) {
+        List<BatchDepositRequest.Operation> operations = request.getOperations();
+        if (operations.size() > maxBatchOperations) {
+            throw new RuntimeException("批量操作最多 " + maxBatchOperations + " 个");
+        }
+        
+        // 校验参数，新增记录的账户一次 IN 查询校验归属
+        Set<Long> accountIds = new HashSet<>();
+        Set<Long> targetIds = new HashSet<>();
+        for (int i = 0; i < operations.size(); i++) {
+            BatchDepositRequest.Operation operation = operations.get(i);
+            validateOperation(i, operation);
+            if (operation.getType() == BatchDepositRequest.OperationType.CREATE) {
+                accountIds.add(operation.getAccountId());
+            } else if (!targetIds.add(operation.getId())) {
+                throw new RuntimeException(operationError(i, "同一存款记录只能操作一次"));
+            }
         }
+        if (!accountIds.isEmpty() && accountRepository.countByUserIdAndIdIn(userId, accountIds) != accountIds.size()) {
+            throw new RuntimeException("账户不存在或不属于当前用户");
+        }
+        
+        Deposit[] deposits = new Deposit[operations.size()];
+        List<Deposit> toInsert = new ArrayList<>();
+        List<Deposit> toUpdate = new ArrayList<>();
+        List<Deposit> toDelete = new ArrayList<>();
+        Map<LocalDate, Long> deltaCentsByDate = new LinkedHashMap<>();
+        // 每个受影响的对账日期在修改任何记录之前校验一次快照版本
+        Map<LocalDate, Long> expectedVersions = request.getSnapshotVersions() != null ? request.getSnapshotVersions() : Map.of();
+        Set<LocalDate> checkedDates = new HashSet<>();
+        for (int i = 0; i < operations.size(); i++) {
+            BatchDepositRequest.Operation operation = operations.get(i);
+            Deposit deposit;
+            long deltaCents;
+            if (operation.getType() == BatchDepositRequest.OperationType.CREATE) {
+                if (checkedDates.add(operation.getReconciliationDate())) {
+                    checkBatchVersion(userId, operation.getReconciliationDate(), expectedVersions);
+                }
+                deposit = new Deposit();
+                deposit.setUserId(userId);
+                deposit.setAccountId(operation.getAccountId());
+                deposit.setReconciliationDate(operation.getReconciliationDate());
+                applyContent(deposit, operation);
+                deltaCents = MoneyScaleConverter.toCents(deposit.getAmount());
+                toInsert.add(deposit);
+            } else {
+                int index = i;
+                deposit = depositStore.findById(operation.getId(), userId, operation.getReconciliationDate())
+                        .orElseThrow(() -> new RuntimeException(operationError(index, "存款记录不存在")));
+                if (checkedDates.add(deposit.getReconciliationDate())) {
+                    checkBatchVersion(userId, deposit.getReconciliationDate(), expectedVersions);
+                }
+                long oldCents = MoneyScaleConverter.toCents(deposit.getAmount());
+                if (operation.getType() == BatchDepositRequest.OperationType.UPDATE) {
+                    applyContent(deposit, operation);
+                    deltaCents = MoneyScaleConverter.toCents(deposit.getAmount()) - oldCents;
+                    toUpdate.add(deposit);
+                } else {
+                    deltaCents = -oldCents;
+                    toDelete.add(deposit);
+                }
+            }
+            deposits[i] = deposit;
+            deltaCentsByDate.merge(deposit.getReconciliationDate(), deltaCents, Long::sum);
+        }
+        
+        depositStore.deleteAll(toDelete);
+        depositStore.updateAll(toUpdate);
+        List<Deposit> inserted = depositStore.insertAll(toInsert);
+        
+        Map<LocalDate, Long> snapshotVersions = new LinkedHashMap<>();
+        deltaCentsByDate.forEach((date, deltaCents) -> {
+            adjustSnapshotTotalAmount(userId, date, deltaCents);
+            Long version = findSnapshotVersion(userId, date);
+            if (version != null) {
+                snapshotVersions.put(date, version);
+            }
+        });
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        
+        // 按请求顺序返回每个操作的结果（新增记录按插入顺序对应）
+        List<BatchDepositResponse.OperationResult> results = new ArrayList<>(operations.size());
+        int insertedIndex = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            BatchDepositRequest.OperationType type = operations.get(i).getType();
+            Deposit deposit = type == BatchDepositRequest.OperationType.CREATE ? inserted.get(insertedIndex++) : deposits[i];
+            DepositResponse response = type == BatchDepositRequest.OperationType.DELETE ? null : DepositResponse.fromEntity(deposit);
+            results.add(new BatchDepositResponse.OperationResult(i, type, deposit.getId(), response));
+        }
+        logger.debug("批量存款记录操作 - userId: {}, 新增: {}, 更新: {}, 删除: {}, 对账日期: {}",
+                userId, toInsert.size(), toUpdate.size(), toDelete.size(), deltaCentsByDate.keySet());
+        return new BatchDepositResponse(results, snapshotVersions);
+    }
+    
+    /**
+     * 校验单个批量操作的参数（与单条新增、更新接口的校验规则一致）
+     */
+    private void validateOperation(int index, BatchDepositRequest.Operation operation) {
+        if (operation.getType() == BatchDepositRequest.OperationType.CREATE) {
+            if (operation.getAccountId() == null) {
+                throw new RuntimeException(operationError(index, "账户ID不能为空"));
+            }
+            if (operation.getReconciliationDate() == null) {
+                throw new RuntimeException(operationError(index, "对账日期不能为空"));
+            }
+        } else if (operation.getId() == null) {
+            throw new RuntimeException(operationError(index, "存款记录ID不能为空"));
+        }
+        if (operation.getType() == BatchDepositRequest.OperationType.DELETE) {
+            return;
+        }
+        if (operation.getDepositType() == null || operation.getDepositType().isBlank()) {
+            throw new RuntimeException(operationError(index, "存款类型不能为空"));
+        }
+        if (operation.getDepositTime() == null) {
+            throw new RuntimeException(operationError(index, "存款时间不能为空"));
+        }
+        if (operation.getAmount() == null) {
+            throw new RuntimeException(operationError(index, "金额不能为空"));
+        }
+        if (operation.getAmount().signum() <= 0) {
+            throw new RuntimeException(operationError(index, "金额必须大于0"));
+        }
+    }
+    
+    private void checkBatchVersion(Long userId, LocalDate date, Map<LocalDate, Long> expectedVersions) {
+        ReconciliationService.checkVersion(findSnapshotVersion(userId, date), expectedVersions.get(date));
+    }
+    
+    private static String operationError(int index, String message) {
+        return "第 " + (index + 1) + " 个操作：" + message;
+    }
+    
+    private void applyContent(Deposit deposit, BatchDepositRequest.Operation operation) {
+        deposit.setDepositType(operation.getDepositType());
+        deposit.setDepositTime(operation.getDepositTime());
+        deposit.setAmount(operation.getAmount());
+        deposit.setInterestRate(operation.getInterestRate());
+        deposit.setTerm(operation.getTerm());
+        deposit.setNote(operation.getNote());
+    }
+    
+    private Deposit findDeposit(Long id, Long userId, LocalDate date) {
+        return depositStore.findById(id, userId, date)
+                .orElseThrow(() -> new RuntimeException("存款记录不存在"));
+    }
+    
+    private Long findSnapshotVersion(Long userId, LocalDate date) {
+        return snapshotRepository.findVersion(userId, date).orElse(null);
+    }
+    
+    /**
+     * 按金额变化（分）调整快照总金额并递增快照版本：一条原子 UPDATE，不读取该日期的其他存款记录
+     * 金额没有变化时只递增版本；总金额偏差由 SnapshotTotalVerifier 定期检查修正
+     */
+    private void adjustSnapshotTotalAmount(Long userId, LocalDate reconciliationDate, long deltaCents) {
+        if (deltaCents != 0) {
+            snapshotRepository.addTotalAmountCents(userId, reconciliationDate, deltaCents);
+        } else {
+            snapshotRepository.incrementVersion(userId, reconciliationDate);
+        }
+    }
+    
+    /**
+     * 检查用户快照总金额与存款记录合计是否一致，不一致时按存款记录合计修正，返回修正的快照数
+     * 修正不递增快照版本，客户端持有的 ETag 仍然有效
+     */
+    @QueuedWrite
+    @Transactional
+    public int verifySnapshotTotals(Long userId) {
+        List<ReconciliationSnapshotRepository.TotalCheckRow> mismatches = snapshotRepository.findTotalMismatches(userId);
+        if (mismatches.isEmpty()) {
+            return 0;
+        }
+        for (ReconciliationSnapshotRepository.TotalCheckRow row : mismatches) {
+            logger.warn("快照总金额与存款记录合计不一致，已修正 - userId: {}, date: {}, total: {}, deposits: {}",
+                    userId, row.getReconciliationDate(),
+                    BigDecimal.valueOf(row.getTotalCents(), 2), BigDecimal.valueOf(row.getDepositCents(), 2));
+            snapshotRepository.repairTotalAmountCents(userId, LocalDate.parse(row.getReconciliationDate()),
+                    row.getDepositCents());
+        }
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        return mismatches.size();
     }
     
     /**
      * 复制存款记录（用于初始化对账）
      */
+    @QueuedWrite
     @Transactional
     public List<DepositResponse> copyDepositsFromDate(Long userId, LocalDate sourceDate, LocalDate targetDate) {
-        List<Deposit> sourceDeposits = depositRepository.findByUserIdAndReconciliationDate(userId, sourceDate);
-        
-        return sourceDeposits.stream()
-                .map(source -> {
-                    Deposit newDeposit = new Deposit();
-                    newDeposit.setUserId(userId);
-                    newDeposit.setAccountId(source.getAccountId());
-                    newDeposit.setDepositType(source.getDepositType());
-                    newDeposit.setDepositTime(source.getDepositTime());
-                    newDeposit.setAmount(source.getAmount());
-                    newDeposit.setInterestRate(source.getInterestRate());
-                    newDeposit.setTerm(source.getTerm());
-                    newDeposit.setNote(source.getNote());
-                    newDeposit.setReconciliationDate(targetDate);
-                    
-                    newDeposit = depositRepository.save(newDeposit);
-                    return DepositResponse.fromEntity(newDeposit);
-                })
+        if (depositStore.copy(userId, sourceDate, targetDate) == 0) {
+            return new ArrayList<>();
+        }
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        
+        return depositStore.findByUserIdAndDate(userId, targetDate).stream()
+                .map(DepositResponse::fromEntity)
                 .collect(Collectors.toList());
     }
 }
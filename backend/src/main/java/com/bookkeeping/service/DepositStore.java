@@ -0,0 +1,100 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.repository.DepositRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 存款记录存储
+ *
+ * 服务层按对账日期读写存款记录都通过这里，由 deposit-storage.mode 选择实现：
+ * - snapshot（默认）：每个对账日期保存一份完整的存款记录（deposits 表）
+ * - temporal：存款记录按版本保存有效区间（deposit_versions 表），只有变化的记录才产生写入
+ *
+ * 两种实现对外表现一致：返回的 Deposit 的 reconciliationDate 是查询的对账日期，
+ * 修改、删除只影响该对账日期，不影响其他日期的快照。
+ * 调用方修改返回的 Deposit 后必须调用 update 保存（时态模式下返回的不是受管理的实体）。
+ */
+public interface DepositStore {
+
+    /**
+     * 查询用户在指定日期的所有存款记录
+     */
+    List<Deposit> findByUserIdAndDate(Long userId, LocalDate date);
+
+    /**
+     * 一次查询指定日期的对账数据：快照备注和总金额、要显示的账户及其存款记录，按账户顺序（见 DepositRepository.findReconciliationRows）
+     */
+    List<DepositRepository.ReconciliationRow> findReconciliationRows(Long userId, LocalDate date);
+
+    /**
+     * 查询账户在指定日期的存款记录
+     */
+    List<Deposit> findByAccountIdAndDate(Long accountId, LocalDate date);
+
+    /**
+     * 查询用户所有日期的存款记录，按对账日期倒序
+     */
+    List<Deposit> findByUserId(Long userId);
+
+    /**
+     * 统计用户在指定日期的存款记录数
+     */
+    long countByUserIdAndDate(Long userId, LocalDate date);
+
+    /**
+     * 统计用户在指定日期的存款总金额（精确到分）
+     */
+    BigDecimal sumAmountByUserIdAndDate(Long userId, LocalDate date);
+
+    /**
+     * 检查账户是否有存款记录
+     */
+    boolean existsByAccountId(Long accountId);
+
+    /**
+     * 根据ID查询存款记录（防止跨用户访问）
+     * date 为该记录所在的对账日期；为空时按记录本身的日期（时态模式下记录跨多个日期时报错）
+     */
+    Optional<Deposit> findById(Long id, Long userId, LocalDate date);
+
+    /**
+     * 新增存款记录（reconciliationDate 为所属对账日期）
+     */
+    Deposit insert(Deposit deposit);
+
+    /**
+     * 批量新增存款记录
+     */
+    List<Deposit> insertAll(List<Deposit> deposits);
+
+    /**
+     * 保存对 findById / findByUserIdAndDate 返回的存款记录的修改，只影响其 reconciliationDate
+     */
+    Deposit update(Deposit deposit);
+
+    /**
+     * 批量保存修改
+     */
+    void updateAll(Collection<Deposit> deposits);
+
+    /**
+     * 删除存款记录，只影响其 reconciliationDate
+     */
+    void delete(Deposit deposit);
+
+    /**
+     * 批量删除存款记录
+     */
+    void deleteAll(Collection<Deposit> deposits);
+
+    /**
+     * 把 sourceDate 的存款记录复制到 targetDate，返回复制的记录数
+     */
+    int copy(Long userId, LocalDate sourceDate, LocalDate targetDate);
+}
@@ -0,0 +1,32 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.config.BlockIdGenerator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * ID 序列服务
+ *
+ * 为绕过实体直接在数据库内批量插入的语句（INSERT ... SELECT）预留连续的 ID，
+ * 与 BlockIdGenerator 共用 id_sequences 表，保证两种方式分配的 ID 不重叠。
+ */
+@Service
+public class IdSequenceService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 在当前事务中为指定表预留 count 个连续 ID，返回第一个 ID
+     * 预留随当前事务提交或回滚
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long reserve(String tableName, int count) {
+        return entityManager.unwrap(Session.class)
+                .doReturningWork(conn -> BlockIdGenerator.reserve(conn, tableName, tableName, count));
+    }
+}
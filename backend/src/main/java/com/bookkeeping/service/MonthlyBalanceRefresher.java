@@ -0,0 +1,54 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.User;
+import com.bookkeeping.repository.MonthlyBalanceRepository;
+import com.bookkeeping.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 月度余额汇总定期刷新
+ *
+ * 写操作只由触发器标记受影响的月份（见 V6 迁移），不在写线程上重新计算汇总。
+ * 这里定期检查每个用户待更新的月份，有标记时通过写队列重新计算，每个用户一个写操作。
+ */
+@Component
+public class MonthlyBalanceRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MonthlyBalanceRefresher.class);
+
+    @Autowired
+    private MonthlyBalanceService monthlyBalanceService;
+
+    @Autowired
+    private MonthlyBalanceRepository monthlyBalanceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    /**
+     * 重新计算所有用户待更新的月份，返回重新计算的月份数
+     */
+    @Scheduled(initialDelayString = "${monthly-balance-refresher.interval-ms:60000}",
+               fixedDelayString = "${monthly-balance-refresher.interval-ms:60000}")
+    public int refreshAll() {
+        int months = 0;
+        for (User user : userRepository.findAll()) {
+            if (monthlyBalanceRepository.findDirtyMonths(user.getId()).isEmpty()) {
+                continue;
+            }
+            try {
+                months += monthlyBalanceService.refresh(user.getId());
+            } catch (RuntimeException e) {
+                logger.error("刷新月度余额汇总失败 - userId: {}", user.getId(), e);
+            }
+        }
+        if (months > 0) {
+            logger.debug("月度余额汇总刷新完成，共 {} 个月份", months);
+        }
+        return months;
+    }
+}
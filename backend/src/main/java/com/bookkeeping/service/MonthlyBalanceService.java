@@ -0,0 +1,224 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.MonthlyBalance;
+import com.bookkeeping.entity.User;
+import com.bookkeeping.repository.MonthlyBalanceRepository;
+import com.bookkeeping.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * 月度余额汇总（monthly_balance_agg）的维护与读取
+ *
+ * 存款记录、快照、存款版本的写入由数据库触发器把受影响的月份记入 monthly_balance_dirty，
+ * 写操作本身不重新计算汇总；MonthlyBalanceRefresher 定期通过写队列调用 refresh 重新计算这些月份。
+ * 读取时如果范围内仍有未重新计算的月份，在内存中现算，不写入，因此汇总的读取结果不受刷新间隔影响。
+ * 统计接口从余额序列（BalanceSeries）计算，不读取本表。
+ */
+@Service
+public class MonthlyBalanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MonthlyBalanceService.class);
+
+    public static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    @Autowired
+    private MonthlyBalanceRepository monthlyBalanceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 重新计算用户待更新的月份，返回重新计算的月份数
+     */
+    @QueuedWrite
+    @Transactional
+    public int refresh(Long userId) {
+        List<String> months = monthlyBalanceRepository.findDirtyMonths(userId);
+        if (months.isEmpty()) {
+            return 0;
+        }
+        // 待更新月份的最小、最大值之间一次计算，一次读取已有汇总
+        String fromMonth = months.get(0);
+        String toMonth = months.get(months.size() - 1);
+        Map<String, MonthlyBalance> computed = computeRange(userId, fromMonth, toMonth);
+        Map<String, MonthlyBalance> existing = new HashMap<>();
+        for (MonthlyBalance balance : monthlyBalanceRepository.findByUserIdAndMonthRange(userId, fromMonth, toMonth)) {
+            existing.put(balance.getMonth(), balance);
+        }
+        for (String month : months) {
+            MonthlyBalance value = computed.get(month);
+            MonthlyBalance balance = existing.get(month);
+            if (value != null) {
+                if (balance == null) {
+                    balance = value;
+                } else {
+                    copyValues(value, balance);
+                }
+                monthlyBalanceRepository.save(balance);
+            } else if (balance != null) {
+                // 该月已没有快照
+                monthlyBalanceRepository.delete(balance);
+            }
+        }
+        monthlyBalanceRepository.clearDirtyMonths(userId);
+        logger.debug("重新计算月度汇总 - userId: {}, months: {}", userId, months);
+        return months.size();
+    }
+
+    /**
+     * 按快照重建用户的全部月度汇总
+     */
+    @Transactional
+    public int rebuild(Long userId) {
+        monthlyBalanceRepository.deleteByUserId(userId);
+        monthlyBalanceRepository.markAllMonthsDirty(userId);
+        return refresh(userId);
+    }
+
+    /**
+     * 重建所有用户的月度汇总，每个用户一个事务
+     */
+    public int rebuildAll() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        int total = 0;
+        for (User user : userRepository.findAll()) {
+            Integer months = tx.execute(status -> rebuild(user.getId()));
+            total += months != null ? months : 0;
+        }
+        return total;
+    }
+
+    /**
+     * 重新计算所有用户待更新的月份（启动时处理迁移或离线写入留下的标记），每个用户一个事务
+     */
+    public int refreshAll() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        int total = 0;
+        for (User user : userRepository.findAll()) {
+            Integer months = tx.execute(status -> refresh(user.getId()));
+            total += months != null ? months : 0;
+        }
+        return total;
+    }
+
+    /**
+     * 查询用户在 [fromMonth, toMonth] 范围内有快照的月份的汇总，按月份排序
+     */
+    @Transactional(readOnly = true)
+    public List<MonthlyBalance> findByMonthRange(Long userId, String fromMonth, String toMonth) {
+        Map<String, MonthlyBalance> byMonth = new TreeMap<>();
+        for (MonthlyBalance balance : monthlyBalanceRepository.findByUserIdAndMonthRange(userId, fromMonth, toMonth)) {
+            byMonth.put(balance.getMonth(), balance);
+        }
+        List<String> dirtyMonths = monthlyBalanceRepository.findDirtyMonths(userId).stream()
+                .filter(month -> month.compareTo(fromMonth) >= 0 && month.compareTo(toMonth) <= 0)
+                .collect(Collectors.toList());
+        if (!dirtyMonths.isEmpty()) {
+            Map<String, MonthlyBalance> computed = computeRange(userId, dirtyMonths.get(0), dirtyMonths.get(dirtyMonths.size() - 1));
+            for (String month : dirtyMonths) {
+                if (computed.containsKey(month)) {
+                    byMonth.put(month, computed.get(month));
+                } else {
+                    byMonth.remove(month);
+                }
+            }
+        }
+        return new ArrayList<>(byMonth.values());
+    }
+
+    /**
+     * 查询用户指定月份的汇总（该月没有快照时为空）
+     */
+    @Transactional(readOnly = true)
+    public Optional<MonthlyBalance> findByMonth(Long userId, String month) {
+        return findByMonthRange(userId, month, month).stream().findFirst();
+    }
+
+    /**
+     * 查询用户在指定月份之前最近一个有快照的月份的汇总
+     */
+    @Transactional(readOnly = true)
+    public Optional<MonthlyBalance> findLatestBefore(Long userId, String month) {
+        TreeSet<String> dirtyMonths = new TreeSet<>(monthlyBalanceRepository.findDirtyMonths(userId));
+        String cursor = month;
+        while (true) {
+            Optional<MonthlyBalance> stored = monthlyBalanceRepository.findLatestBefore(userId, cursor);
+            String dirty = dirtyMonths.lower(cursor);
+            String candidate = stored.map(MonthlyBalance::getMonth).orElse(null);
+            if (dirty != null && (candidate == null || dirty.compareTo(candidate) >= 0)) {
+                candidate = dirty;
+            }
+            if (candidate == null) {
+                return Optional.empty();
+            }
+            if (!dirtyMonths.contains(candidate)) {
+                return stored;
+            }
+            MonthlyBalance computed = computeRange(userId, candidate, candidate).get(candidate);
+            if (computed != null) {
+                return Optional.of(computed);
+            }
+            cursor = candidate;
+        }
+    }
+
+    /**
+     * 计算 [fromMonth, toMonth] 内有快照的月份的汇总（不写入），按月份索引
+     * 月末快照及其账户合计、范围内的快照备注各一次查询，再按月份顺序线性组装
+     */
+    private Map<String, MonthlyBalance> computeRange(Long userId, String fromMonth, String toMonth) {
+        String fromDate = fromMonth + "-01";
+        String toDate = LocalDate.parse(toMonth + "-01").plusMonths(1).toString();
+
+        Map<String, MonthlyBalance> balances = new TreeMap<>();
+        for (MonthlyBalanceRepository.MonthEndRow row : monthlyBalanceRepository.findMonthEnds(userId, fromDate, toDate)) {
+            MonthlyBalance balance = balances.computeIfAbsent(row.getMonth(), month -> {
+                MonthlyBalance value = new MonthlyBalance();
+                value.setUserId(userId);
+                value.setMonth(month);
+                value.setLastDate(LocalDate.parse(row.getLastDate()));
+                value.setTotalAmount(BigDecimal.valueOf(row.getTotalCents(), 2));
+                return value;
+            });
+            if (row.getAccountId() != null) {
+                balance.getAccountAmounts().put(row.getAccountId(), BigDecimal.valueOf(row.getAmountCents(), 2));
+            }
+        }
+
+        for (MonthlyBalanceRepository.SnapshotNoteRow row : monthlyBalanceRepository.findSnapshotNotes(userId, fromDate, toDate)) {
+            MonthlyBalance balance = balances.get(row.getReconciliationDate().substring(0, 7));
+            if (balance != null && !row.getNote().trim().isEmpty()) {
+                balance.getNotes().add(row.getReconciliationDate() + ": " + row.getNote());
+            }
+        }
+        return balances;
+    }
+
+    private void copyValues(MonthlyBalance from, MonthlyBalance to) {
+        to.setLastDate(from.getLastDate());
+        to.setTotalAmount(from.getTotalAmount());
+        to.setAccountAmounts(from.getAccountAmounts());
+        to.setNotes(from.getNotes());
+    }
+}
@@ -0,0 +1,16 @@
+package com.bookkeeping.service;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记写操作的服务方法：调用方不在事务中时，方法交给 SerialWriteExecutor 的写线程排队执行，
+ * 多个排队的写操作可能合并在同一个事务中提交。
+ * 调用方已在事务中时（例如测试、或被其他写操作调用）直接在当前线程执行。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueuedWrite {
+}
@@ -0,0 +1,175 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.dto.BulkImportResponse;
+import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.repository.AccountRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 批量导入多个日期的对账快照（POST /api/reconciliation/bulk）
+ *
+ * 请求体是快照数组，用 Jackson 流式解析逐个读取，不把整个请求体读入内存；
+ * 账户归属在开始时一次查询用户的账户ID，之后每个快照在内存中校验。
+ * 每 chunk-size 个快照作为一个写操作（一个事务）写入，后面的快照出错时已提交的分块保留，错误信息中给出已导入的快照数。
+ * 对账日期必须按升序排列：时态存储按日期顺序替换存款记录，分块之间同样要求升序，
+ * 流式读取不能整体排序，因此读到日期不大于上一个快照的快照时拒绝。
+ */
+@Component
+public class ReconciliationBulkImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationBulkImporter.class);
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${reconciliation-bulk.chunk-size:50}")
+    private int chunkSize;
+
+    /**
+     * 读取请求体中的快照数组并分块写入，返回新建、替换的快照数和写入的存款记录数
+     */
+    public BulkImportResponse importSnapshots(Long userId, InputStream body) {
+        Set<Long> accountIds = new HashSet<>(accountRepository.findIdsByUserId(userId));
+        LocalDate previous = null;
+        List<SaveReconciliationRequest> chunk = new ArrayList<>(chunkSize);
+        Progress progress = new Progress();
+        int index = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new RuntimeException("请求体必须是快照数组");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new RuntimeException("请求体不完整");
+                }
+                SaveReconciliationRequest snapshot = objectMapper.readValue(parser, SaveReconciliationRequest.class);
+                String error = validate(snapshot, accountIds, previous);
+                if (error != null) {
+                    throw new RuntimeException(importError(index, error, progress));
+                }
+                previous = snapshot.getDate();
+                chunk.add(snapshot);
+                index++;
+                if (chunk.size() >= chunkSize) {
+                    write(userId, chunk, index, progress);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(importError(index, "JSON 格式不正确：" + e.getOriginalMessage(), progress));
+        } catch (IOException e) {
+            throw new RuntimeException("读取请求体失败", e);
+        }
+        if (!chunk.isEmpty()) {
+            write(userId, chunk, index, progress);
+        }
+
+        logger.info("批量导入快照完成 - userId: {}, 新建: {}, 替换: {}, 存款记录: {}",
+                userId, progress.inserted, progress.replaced, progress.deposits);
+        return new BulkImportResponse(progress.inserted, progress.replaced, progress.deposits);
+    }
+
+    /**
+     * 写入一个分块（一个事务），end 为分块之后的快照序号
+     */
+    private void write(Long userId, List<SaveReconciliationRequest> chunk, int end, Progress progress) {
+        int replaced;
+        try {
+            replaced = reconciliationService.importSnapshots(userId, chunk);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("第 " + (end - chunk.size() + 1) + " 至 " + end + " 个快照写入失败：" + e.getMessage()
+                    + "（前 " + progress.imported() + " 个快照已导入）", e);
+        }
+        progress.replaced += replaced;
+        progress.inserted += chunk.size() - replaced;
+        for (SaveReconciliationRequest snapshot : chunk) {
+            if (snapshot.getAccounts() != null) {
+                for (SaveReconciliationRequest.AccountDepositData accountData : snapshot.getAccounts()) {
+                    progress.deposits += accountData.getDeposits() != null ? accountData.getDeposits().size() : 0;
+                }
+            }
+        }
+        chunk.clear();
+    }
+
+    /**
+     * 校验单个快照（规则与批量存款记录操作一致），previous 为上一个快照的日期，返回错误信息，通过时为 null
+     */
+    private String validate(SaveReconciliationRequest snapshot, Set<Long> accountIds, LocalDate previous) {
+        if (snapshot.getDate() == null) {
+            return "对账日期不能为空";
+        }
+        if (previous != null && snapshot.getDate().isEqual(previous)) {
+            return "同一日期只能出现一次";
+        }
+        if (previous != null && snapshot.getDate().isBefore(previous)) {
+            return "对账日期必须按升序排列";
+        }
+        if (snapshot.getAccounts() == null) {
+            return null;
+        }
+        for (SaveReconciliationRequest.AccountDepositData accountData : snapshot.getAccounts()) {
+            if (accountData.getAccountId() == null || !accountIds.contains(accountData.getAccountId())) {
+                return "账户不存在或不属于当前用户";
+            }
+            if (accountData.getDeposits() == null) {
+                continue;
+            }
+            for (SaveReconciliationRequest.DepositData deposit : accountData.getDeposits()) {
+                if (deposit.getDepositType() == null || deposit.getDepositType().isBlank()) {
+                    return "存款类型不能为空";
+                }
+                if (deposit.getDepositTime() == null) {
+                    return "存款时间不能为空";
+                }
+                if (deposit.getAmount() == null) {
+                    return "金额不能为空";
+                }
+                if (deposit.getAmount().signum() <= 0) {
+                    return "金额必须大于0";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String importError(int index, String message, Progress progress) {
+        return "第 " + (index + 1) + " 个快照：" + message + "（前 " + progress.imported() + " 个快照已导入）";
+    }
+
+    /**
+     * 已提交的分块累计结果
+     */
+    private static class Progress {
+        int inserted;
+        int replaced;
+        int deposits;
+
+        int imported() {
+            return inserted + replaced;
+        }
+    }
+}
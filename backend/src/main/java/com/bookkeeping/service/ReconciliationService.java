@@ -1,17 +1,26 @@
 package com.bookkeeping.service;
 
+import com.bookkeeping.config.MoneyScaleConverter;
+import com.bookkeeping.dto.DepositResponse;
 import com.bookkeeping.dto.ReconciliationDataResponse;
 import com.bookkeeping.dto.ReconciliationHistoryResponse;
+import com.bookkeeping.dto.ReconciliationViewResponse;
+import com.bookkeeping.dto.SaveAccountsRequest;
+import com.bookkeeping.dto.SaveAccountsResponse;
 import com.bookkeeping.dto.SaveReconciliationRequest;
-import com.bookkeeping.entity.Account;
+import com.bookkeeping.dto.SaveReconciliationResponse;
 import com.bookkeeping.entity.Deposit;
 import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.event.UserDataChangedEvent;
+import com.bookkeeping.exception.ConflictException;
+import com.bookkeeping.exception.PreconditionRequiredException;
 import com.bookkeeping.repository.AccountRepository;
 import com.bookkeeping.repository.DepositRepository;
 import com.bookkeeping.repository.ReconciliationSnapshotRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,8 +28,15 @@ import java.math.BigDecimal;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -30,8 +46,11 @@ public class ReconciliationService {
     
     private static final Logger logger = LoggerFactory.getLogger(ReconciliationService.class);
     
+    /** 历史记录不指定 before 时的游标，晚于所有日期 */
+    private static final String HISTORY_CURSOR_MAX = "9999-12-31";
+    
     @Autowired
-    private DepositRepository depositRepository;
+    private DepositStore depositStore;
     
     @Autowired
     private AccountRepository accountRepository;
@@ -39,146 +58,194 @@ public class ReconciliationService {
     @Autowired
     private ReconciliationSnapshotRepository snapshotRepository;
     
+    @Autowired
+    private SnapshotDateIndex snapshotDateIndex;
+    
+    @Autowired
+    private ReconciliationViewCache reconciliationViewCache;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     /**
      * 获取对账数据
+     * 快照、要显示的账户和存款记录由一次联表查询按账户顺序返回，这里按账户ID顺序一次遍历组装；
+     * 该日期没有快照时返回空数据（不返回启用的账户，让前端知道该日期没有快照）
      */
+    @Transactional(readOnly = true)
     public ReconciliationDataResponse getReconciliationData(Long userId, LocalDate date) {
         logger.debug("获取对账数据 - userId: {}, date: {}", userId, date);
         
-        // 检查该日期是否有快照（只基于快照表判断）
-        Optional<ReconciliationSnapshot> snapshotOpt = snapshotRepository.findByUserIdAndReconciliationDate(userId, date);
-        
-        List<Deposit> deposits;
-        String note = null;
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        boolean hasSnapshot = snapshotOpt.isPresent();
-        
-        logger.debug("快照查询结果 - hasSnapshot: {}", hasSnapshot);
-        
-        if (hasSnapshot) {
-            // 快照表中有记录，该日期有快照
-            ReconciliationSnapshot snapshot = snapshotOpt.get();
-            note = snapshot.getNote();
-            totalAmount = snapshot.getTotalAmount();
-            // 获取该快照的存款记录
-            deposits = depositRepository.findByUserIdAndReconciliationDate(userId, date);
-            logger.debug("快照存在 - note: {}, totalAmount: {}, deposits count: {}", note, totalAmount, deposits.size());
-        } else {
-            // 快照表中没有记录，该日期没有快照，返回空数据（不返回启用的账户）
-            deposits = new ArrayList<>();
-            totalAmount = BigDecimal.ZERO;
-            note = null;
+        List<DepositRepository.ReconciliationRow> rows = depositStore.findReconciliationRows(userId, date);
+        if (rows.isEmpty()) {
             logger.debug("快照不存在 - 返回空数据");
+            return new ReconciliationDataResponse(date, null, BigDecimal.ZERO, new ArrayList<>());
         }
         
-        // 按账户分组
-        Map<Long, List<Deposit>> depositsByAccount = deposits.stream()
-                .collect(Collectors.groupingBy(Deposit::getAccountId));
-        
-        // 决定显示哪些账户
-        List<Account> accountsToShow = new ArrayList<>();
-        if (hasSnapshot) {
-            // 快照存在
-            Set<Long> accountIdsInSnapshot = depositsByAccount.keySet();
-            logger.debug("快照中的账户ID: {}", accountIdsInSnapshot);
-            if (!accountIdsInSnapshot.isEmpty()) {
-                // 有存款记录，显示快照中涉及的账户和启用的账户（即使当前已禁用，保留历史事实）,注意去重
-                accountsToShow = accountRepository.findByUserIdAndIdIn(userId, new ArrayList<>(accountIdsInSnapshot));
-                List<Account> activeAccounts = accountRepository.findByUserIdAndStatus(userId, Account.AccountStatus.ACTIVE);
-                for (Account account : activeAccounts) {
-                    if (!accountsToShow.contains(account)) {
-                        accountsToShow.add(account);
-                    }
-                }
-            } else {
-                // 空快照（没有存款记录），显示所有启用的账户，让用户可以添加存款记录
-                accountsToShow = accountRepository.findByUserIdAndStatus(userId, Account.AccountStatus.ACTIVE);
-                logger.debug("空快照，显示所有启用的账户，数量: {}", accountsToShow.size());
+        DepositRepository.ReconciliationRow header = rows.get(0);
+        List<ReconciliationDataResponse.AccountDepositData> accountDataList = new ArrayList<>();
+        List<DepositResponse> currentDeposits = null;
+        long currentAccountId = 0;
+        for (DepositRepository.ReconciliationRow row : rows) {
+            if (row.getAccountId() == null) {
+                // 没有要显示的账户，只有快照本身
+                continue;
+            }
+            long accountId = row.getAccountId();
+            if (currentDeposits == null || accountId != currentAccountId) {
+                currentAccountId = accountId;
+                currentDeposits = new ArrayList<>();
+                accountDataList.add(new ReconciliationDataResponse.AccountDepositData(accountId, row.getAccountName(), currentDeposits));
+            }
+            if (row.getDepositId() != null) {
+                currentDeposits.add(new DepositResponse(
+                    row.getDepositId(),
+                    accountId,
+                    row.getDepositType(),
+                    LocalDate.parse(row.getDepositTime()),
+                    row.getAmount(),
+                    row.getInterestRate(),
+                    row.getTerm(),
+                    row.getDepositNote(),
+                    date
+                ));
             }
-            logger.debug("显示的账户数量: {}", accountsToShow.size());
-        } else {
-            // 快照不存在，也返回空账户列表（不显示启用的账户，让前端知道该日期没有快照）
-            accountsToShow = new ArrayList<>();
-            logger.debug("无快照，返回空账户列表");
         }
         
-        // 构建响应数据
-        List<ReconciliationDataResponse.AccountDepositData> accountDataList = new ArrayList<>();
-        
-        for (Account account : accountsToShow) {
-            List<Deposit> accountDeposits = depositsByAccount.getOrDefault(account.getId(), new ArrayList<>());
-            
-            // 构建存款记录响应
-            List<com.bookkeeping.dto.DepositResponse> depositResponses = accountDeposits.stream()
-                    .map(deposit -> com.bookkeeping.dto.DepositResponse.fromEntity(deposit))
-                    .collect(Collectors.toList());
-            
-            accountDataList.add(new ReconciliationDataResponse.AccountDepositData(
-                account.getId(),
-                account.getName(),
-                depositResponses
-            ));
+        for (ReconciliationDataResponse.AccountDepositData accountData : accountDataList) {
+            accountData.setVersion(AccountDepositsVersion.of(accountData.getDeposits()));
         }
         
-        ReconciliationDataResponse response = new ReconciliationDataResponse(date, note, totalAmount, accountDataList);
+        ReconciliationDataResponse response = new ReconciliationDataResponse(date, header.getNote(), header.getTotalAmount(),
+                accountDataList, header.getSnapshotVersion());
         logger.debug("返回数据 - date: {}, totalAmount: {}, accounts count: {}", response.getDate(), response.getTotalAmount(), response.getAccounts().size());
         
         return response;
     }
     
+    /**
+     * 查询快照版本（没有快照时为 null），用于条件 GET（If-None-Match），不加载对账数据
+     */
+    @Transactional(readOnly = true)
+    public Long getSnapshotVersion(Long userId, LocalDate date) {
+        return snapshotRepository.findVersion(userId, date).orElse(null);
+    }
+    
+    /**
+     * 进入写队列前校验客户端提交的快照版本（只读查询），版本已过期的写请求直接失败，不在写队列中等待
+     * 写操作执行时在写事务中会再校验一次
+     */
+    @Transactional(readOnly = true)
+    public void checkSnapshotVersion(Long userId, LocalDate date, Long expectedVersion) {
+        checkVersion(getSnapshotVersion(userId, date), expectedVersion);
+    }
+    
+    /**
+     * 比较快照当前版本与客户端提交的版本：快照已存在时必须提交版本且一致，快照不存在时不能提交版本
+     */
+    static void checkVersion(Long currentVersion, Long expectedVersion) {
+        if (currentVersion == null) {
+            if (expectedVersion != null) {
+                throw new ConflictException("快照不存在，请刷新后重试");
+            }
+            return;
+        }
+        if (expectedVersion == null) {
+            throw new PreconditionRequiredException("请提交快照版本（If-Match）");
+        }
+        if (!currentVersion.equals(expectedVersion)) {
+            throw new ConflictException("快照已被修改，请刷新后重试");
+        }
+    }
+    
+    /**
+     * 获取对账页面一次导航的数据：对账数据以及上一个、下一个、最近一次快照日期
+     * 对账数据优先从预取缓存读取；返回后在后台预取上一个、下一个快照的对账数据
+     */
+    @Transactional(readOnly = true)
+    public ReconciliationViewResponse getReconciliationView(Long userId, LocalDate date) {
+        ReconciliationDataResponse data = reconciliationViewCache.get(userId, date)
+                .orElseGet(() -> getReconciliationData(userId, date));
+        LocalDate previousDate = snapshotDateIndex.lower(userId, date).orElse(null);
+        LocalDate nextDate = snapshotDateIndex.higher(userId, date).orElse(null);
+        LocalDate latestDate = snapshotDateIndex.latest(userId).orElse(null);
+        
+        reconciliationViewCache.prefetch(userId, Arrays.asList(previousDate, nextDate),
+                neighbour -> getReconciliationData(userId, neighbour));
+        return new ReconciliationViewResponse(data, previousDate, nextDate, latestDate);
+    }
+    
     /**
      * 保存对账快照
+     * 
+     * 与数据库中该日期已有的存款记录按 ID 比对，只写入有变化的部分：
+     * 请求中带有该日期记录 ID 且内容有变化的更新，没有 ID（或 ID 不属于该日期）的新增，
+     * 该日期已有但请求中没有的删除；内容未变化的记录不写入，updated_at 保持不变。
+     * expectedVersion 为读取时的快照版本，快照已存在时必须与当前版本一致；新建快照时为 null。
      */
+    @QueuedWrite
     @Transactional
-    public void saveReconciliation(Long userId, LocalDate date, SaveReconciliationRequest request) {
-        // 验证所有账户是否属于用户
-        for (SaveReconciliationRequest.AccountDepositData accountData : request.getAccounts()) {
-            if (!accountRepository.existsByIdAndUserId(accountData.getAccountId(), userId)) {
-                throw new RuntimeException("账户不存在或不属于当前用户");
-            }
+    public SaveReconciliationResponse saveReconciliation(Long userId, LocalDate date, SaveReconciliationRequest request,
+                                                         Long expectedVersion) {
+        List<SaveReconciliationRequest.AccountDepositData> accounts =
+                request.getAccounts() != null ? request.getAccounts() : new ArrayList<>();
+        
+        // 验证所有账户是否属于用户（一次 IN 查询）
+        Set<Long> accountIds = accounts.stream()
+                .map(SaveReconciliationRequest.AccountDepositData::getAccountId)
+                .collect(Collectors.toSet());
+        if (!accountIds.isEmpty() && accountRepository.countByUserIdAndIdIn(userId, accountIds) != accountIds.size()) {
+            throw new RuntimeException("账户不存在或不属于当前用户");
         }
         
-        // 删除该日期的旧数据（包括存款记录和快照）
-        depositRepository.deleteByUserIdAndReconciliationDate(userId, date);
-        snapshotRepository.deleteByUserIdAndReconciliationDate(userId, date);
+        // 先保存或更新快照记录（时态存储只能在已有快照的日期上写入存款记录），总金额最后再设置
+        Optional<ReconciliationSnapshot> existingSnapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date);
+        checkVersion(existingSnapshot.map(ReconciliationSnapshot::getVersion).orElse(null), expectedVersion);
+        ReconciliationSnapshot snapshot;
+        if (existingSnapshot.isPresent()) {
+            snapshot = existingSnapshot.get();
+        } else {
+            snapshot = new ReconciliationSnapshot();
+            snapshot.setUserId(userId);
+            snapshot.setReconciliationDate(date);
+            snapshot.setTotalAmount(BigDecimal.ZERO);
+        }
+        if (!Objects.equals(snapshot.getNote(), request.getNote())) {
+            snapshot.setNote(request.getNote());
+        }
+        snapshot = snapshotRepository.save(snapshot);
+        
+        // 该日期已有的存款记录，按 ID 索引
+        Map<Long, Deposit> existingById = depositStore.findByUserIdAndDate(userId, date).stream()
+                .collect(Collectors.toMap(Deposit::getId, deposit -> deposit));
         
-        // 计算总金额
+        List<Deposit> toInsert = new ArrayList<>();
+        List<Deposit> toUpdate = new ArrayList<>();
+        int unchanged = 0;
         BigDecimal totalAmount = BigDecimal.ZERO;
         
-        // 保存新数据
-        for (SaveReconciliationRequest.AccountDepositData accountData : request.getAccounts()) {
+        for (SaveReconciliationRequest.AccountDepositData accountData : accounts) {
+            if (accountData.getDeposits() == null) {
+                continue;
+            }
             for (SaveReconciliationRequest.DepositData depositData : accountData.getDeposits()) {
-                Deposit deposit;
-                
-                if (depositData.getId() != null) {
-                    // 检查该ID是否属于当前日期（防止使用历史记录的ID）
-                    Optional<Deposit> existingDeposit = depositRepository.findByIdAndUserId(depositData.getId(), userId);
-                    if (existingDeposit.isPresent() && existingDeposit.get().getReconciliationDate().equals(date)) {
-                        // 该ID属于当前日期，更新
-                        deposit = existingDeposit.get();
+                // 只有属于当前日期的 ID 才更新（防止使用历史记录的ID），每条已有记录只匹配一次
+                Deposit existing = depositData.getId() != null ? existingById.remove(depositData.getId()) : null;
+                if (existing != null) {
+                    if (applyChanges(existing, depositData)) {
+                        toUpdate.add(existing);
                     } else {
-                        // 该ID不属于当前日期（可能是历史记录的ID），创建新记录
-                        deposit = new Deposit();
-                        deposit.setUserId(userId);
-                        deposit.setAccountId(accountData.getAccountId());
+                        unchanged++;
                     }
                 } else {
-                    // 创建新记录
-                    deposit = new Deposit();
+                    Deposit deposit = new Deposit();
                     deposit.setUserId(userId);
                     deposit.setAccountId(accountData.getAccountId());
+                    deposit.setReconciliationDate(date);
+                    applyChanges(deposit, depositData);
+                    toInsert.add(deposit);
                 }
                 
-                deposit.setDepositType(depositData.getDepositType());
-                deposit.setDepositTime(depositData.getDepositTime());
-                deposit.setAmount(depositData.getAmount());
-                deposit.setInterestRate(depositData.getInterestRate());
-                deposit.setTerm(depositData.getTerm());
-                deposit.setNote(depositData.getNote());
-                deposit.setReconciliationDate(date);
-                
-                depositRepository.save(deposit);
-                
                 // 累加总金额
                 if (depositData.getAmount() != null) {
                     totalAmount = totalAmount.add(depositData.getAmount());
@@ -186,43 +253,277 @@ public class ReconciliationService {
             }
         }
         
-        // 保存或更新快照记录
-        Optional<ReconciliationSnapshot> existingSnapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date);
-        ReconciliationSnapshot snapshot;
-        if (existingSnapshot.isPresent()) {
-            snapshot = existingSnapshot.get();
+        // 请求中没有的已有记录删除，有变化的更新，新增记录批量 INSERT
+        Collection<Deposit> toDelete = existingById.values();
+        depositStore.deleteAll(toDelete);
+        depositStore.updateAll(toUpdate);
+        depositStore.insertAll(toInsert);
+        
+        // 总金额没有变化时不写入
+        if (snapshot.getTotalAmount() == null || snapshot.getTotalAmount().compareTo(totalAmount) != 0) {
+            snapshot.setTotalAmount(totalAmount);
+        }
+        // 快照本身的修改由 @Version 递增版本，只有存款记录变化时另外递增
+        if (!toInsert.isEmpty() || !toUpdate.isEmpty() || !toDelete.isEmpty()) {
+            snapshotRepository.incrementVersion(userId, date);
         } else {
-            snapshot = new ReconciliationSnapshot();
-            snapshot.setUserId(userId);
-            snapshot.setReconciliationDate(date);
+            snapshotRepository.flush();
+        }
+        Long version = snapshotRepository.findVersion(userId, date).orElse(null);
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        
+        logger.debug("保存对账快照 - userId: {}, date: {}, 新增: {}, 更新: {}, 删除: {}, 未变化: {}",
+                userId, date, toInsert.size(), toUpdate.size(), toDelete.size(), unchanged);
+        return new SaveReconciliationResponse(toInsert.size(), toUpdate.size(), toDelete.size(), unchanged, version);
+    }
+    
+    /**
+     * 按账户保存对账快照：只比对、写入请求中账户的存款记录，其他账户的记录不读取也不修改
+     * 
+     * 每个账户必须带上读取时的版本，与数据库中该账户当前记录的版本不一致时（其他页面已修改该账户）整体失败；
+     * 不同账户的修改互不影响。快照总金额按这些账户的金额变化调整，快照必须已存在。
+     */
+    @QueuedWrite
+    @Transactional
+    public SaveAccountsResponse saveAccounts(Long userId, LocalDate date, SaveAccountsRequest request) {
+        if (!snapshotRepository.existsByUserIdAndReconciliationDate(userId, date)) {
+            throw new RuntimeException("该日期没有快照");
+        }
+        Set<Long> accountIds = new HashSet<>();
+        for (SaveReconciliationRequest.AccountDepositData accountData : request.getAccounts()) {
+            if (!accountIds.add(accountData.getAccountId())) {
+                throw new RuntimeException("同一账户只能提交一次");
+            }
+            if (accountData.getVersion() == null) {
+                throw new RuntimeException("账户版本不能为空");
+            }
+        }
+        if (accountRepository.countByUserIdAndIdIn(userId, accountIds) != accountIds.size()) {
+            throw new RuntimeException("账户不存在或不属于当前用户");
+        }
+        
+        List<Deposit> toInsert = new ArrayList<>();
+        List<Deposit> toUpdate = new ArrayList<>();
+        List<Deposit> toDelete = new ArrayList<>();
+        Map<Long, List<Deposit>> resultByAccount = new LinkedHashMap<>();
+        // 新增记录在结果中的位置：所在账户的结果列表及下标，与 toInsert 一一对应
+        List<List<Deposit>> insertLists = new ArrayList<>();
+        List<Integer> insertPositions = new ArrayList<>();
+        int unchanged = 0;
+        long deltaCents = 0;
+        
+        for (SaveReconciliationRequest.AccountDepositData accountData : request.getAccounts()) {
+            Long accountId = accountData.getAccountId();
+            List<Deposit> existing = depositStore.findByAccountIdAndDate(accountId, date);
+            String currentVersion = AccountDepositsVersion.of(existing.stream()
+                    .map(DepositResponse::fromEntity)
+                    .collect(Collectors.toList()));
+            if (!currentVersion.equals(accountData.getVersion())) {
+                throw new ConflictException("账户的存款记录已被修改，请刷新后重试");
+            }
+            
+            Map<Long, Deposit> existingById = new HashMap<>();
+            for (Deposit deposit : existing) {
+                existingById.put(deposit.getId(), deposit);
+                deltaCents -= MoneyScaleConverter.toCents(deposit.getAmount());
+            }
+            List<Deposit> result = new ArrayList<>();
+            List<SaveReconciliationRequest.DepositData> deposits =
+                    accountData.getDeposits() != null ? accountData.getDeposits() : new ArrayList<>();
+            for (SaveReconciliationRequest.DepositData depositData : deposits) {
+                // 只有属于该账户、该日期的 ID 才更新，每条已有记录只匹配一次
+                Deposit deposit = depositData.getId() != null ? existingById.remove(depositData.getId()) : null;
+                if (deposit != null) {
+                    if (applyChanges(deposit, depositData)) {
+                        toUpdate.add(deposit);
+                    } else {
+                        unchanged++;
+                    }
+                } else {
+                    deposit = new Deposit();
+                    deposit.setUserId(userId);
+                    deposit.setAccountId(accountId);
+                    deposit.setReconciliationDate(date);
+                    applyChanges(deposit, depositData);
+                    toInsert.add(deposit);
+                    insertLists.add(result);
+                    insertPositions.add(result.size());
+                }
+                if (deposit.getAmount() == null) {
+                    throw new RuntimeException("金额不能为空");
+                }
+                deltaCents += MoneyScaleConverter.toCents(deposit.getAmount());
+                result.add(deposit);
+            }
+            toDelete.addAll(existingById.values());
+            resultByAccount.put(accountId, result);
         }
         
-        snapshot.setTotalAmount(totalAmount);
-        snapshot.setNote(request.getNote());
-        snapshotRepository.save(snapshot);
+        depositStore.deleteAll(toDelete);
+        depositStore.updateAll(toUpdate);
+        List<Deposit> inserted = depositStore.insertAll(toInsert);
+        // 时态存储新增返回的是新对象（带版本 ID），替换结果中对应的记录
+        for (int i = 0; i < inserted.size(); i++) {
+            insertLists.get(i).set(insertPositions.get(i), inserted.get(i));
+        }
+        if (deltaCents != 0) {
+            snapshotRepository.addTotalAmountCents(userId, date, deltaCents);
+        } else if (!toInsert.isEmpty() || !toUpdate.isEmpty() || !toDelete.isEmpty()) {
+            snapshotRepository.incrementVersion(userId, date);
+        }
+        Long snapshotVersion = snapshotRepository.findVersion(userId, date).orElse(null);
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        
+        Map<Long, String> versions = new LinkedHashMap<>();
+        resultByAccount.forEach((accountId, result) -> versions.put(accountId, AccountDepositsVersion.of(
+                result.stream().map(DepositResponse::fromEntity).collect(Collectors.toList()))));
+        logger.debug("按账户保存对账快照 - userId: {}, date: {}, accounts: {}, 新增: {}, 更新: {}, 删除: {}, 未变化: {}",
+                userId, date, accountIds, toInsert.size(), toUpdate.size(), toDelete.size(), unchanged);
+        return new SaveAccountsResponse(toInsert.size(), toUpdate.size(), toDelete.size(), unchanged, versions, snapshotVersion);
     }
     
     /**
-     * 更新快照备注
+     * 批量导入一组快照（POST /api/reconciliation/bulk 的一个分块，见 ReconciliationBulkImporter），在一个事务中写入，返回替换的已有快照数
+     * 
+     * 每个快照整体替换该日期已有的快照备注、总金额和存款记录，请求中的存款记录 ID 忽略，全部新增；
+     * 参数和账户归属由调用方校验。已有快照一次 IN 查询，快照批量写入后按日期顺序替换存款记录
+     * （时态存储中新日期会继承之前的有效版本，同样先删除再新增）。
      */
+    @QueuedWrite
     @Transactional
-    public void updateSnapshotNote(Long userId, LocalDate date, String note) {
+    public int importSnapshots(Long userId, List<SaveReconciliationRequest> snapshots) {
+        List<SaveReconciliationRequest> sorted = snapshots.stream()
+                .sorted(Comparator.comparing(SaveReconciliationRequest::getDate))
+                .collect(Collectors.toList());
+        List<String> dates = sorted.stream().map(snapshot -> snapshot.getDate().toString()).collect(Collectors.toList());
+        Map<LocalDate, ReconciliationSnapshot> existing = snapshotRepository.findByUserIdAndReconciliationDateIn(userId, dates).stream()
+                .collect(Collectors.toMap(ReconciliationSnapshot::getReconciliationDate, snapshot -> snapshot));
+        
+        // 先写入快照（时态存储只能在已有快照的日期上写入存款记录）
+        List<ReconciliationSnapshot> entities = new ArrayList<>(sorted.size());
+        for (SaveReconciliationRequest request : sorted) {
+            ReconciliationSnapshot snapshot = existing.get(request.getDate());
+            if (snapshot == null) {
+                snapshot = new ReconciliationSnapshot();
+                snapshot.setUserId(userId);
+                snapshot.setReconciliationDate(request.getDate());
+            }
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            for (SaveReconciliationRequest.AccountDepositData accountData : accounts(request)) {
+                for (SaveReconciliationRequest.DepositData depositData : deposits(accountData)) {
+                    totalAmount = totalAmount.add(depositData.getAmount());
+                }
+            }
+            if (!Objects.equals(snapshot.getNote(), request.getNote())) {
+                snapshot.setNote(request.getNote());
+            }
+            if (snapshot.getTotalAmount() == null || snapshot.getTotalAmount().compareTo(totalAmount) != 0) {
+                snapshot.setTotalAmount(totalAmount);
+            }
+            entities.add(snapshot);
+        }
+        snapshotRepository.saveAllAndFlush(entities);
+        
+        for (SaveReconciliationRequest request : sorted) {
+            LocalDate date = request.getDate();
+            depositStore.deleteAll(depositStore.findByUserIdAndDate(userId, date));
+            List<Deposit> toInsert = new ArrayList<>();
+            for (SaveReconciliationRequest.AccountDepositData accountData : accounts(request)) {
+                for (SaveReconciliationRequest.DepositData depositData : deposits(accountData)) {
+                    Deposit deposit = new Deposit();
+                    deposit.setUserId(userId);
+                    deposit.setAccountId(accountData.getAccountId());
+                    deposit.setReconciliationDate(date);
+                    applyChanges(deposit, depositData);
+                    toInsert.add(deposit);
+                }
+            }
+            depositStore.insertAll(toInsert);
+        }
+        // 替换了存款记录的已有快照递增版本（新快照的版本从 0 开始）
+        if (!existing.isEmpty()) {
+            snapshotRepository.incrementVersions(userId, existing.keySet().stream()
+                    .map(LocalDate::toString)
+                    .collect(Collectors.toList()));
+        }
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        
+        logger.debug("批量导入快照 - userId: {}, 快照: {}, 替换: {}", userId, sorted.size(), existing.size());
+        return existing.size();
+    }
+    
+    private static List<SaveReconciliationRequest.AccountDepositData> accounts(SaveReconciliationRequest request) {
+        return request.getAccounts() != null ? request.getAccounts() : List.of();
+    }
+    
+    private static List<SaveReconciliationRequest.DepositData> deposits(SaveReconciliationRequest.AccountDepositData accountData) {
+        return accountData.getDeposits() != null ? accountData.getDeposits() : List.of();
+    }
+    
+    /**
+     * 把请求中的字段写入存款记录，返回是否有变化
+     * 金额类字段按数值比较（SQLite 读回的标度可能与请求不同），数值相同时不修改，避免无意义的 UPDATE
+     */
+    private boolean applyChanges(Deposit deposit, SaveReconciliationRequest.DepositData data) {
+        boolean changed = false;
+        if (!Objects.equals(deposit.getDepositType(), data.getDepositType())) {
+            deposit.setDepositType(data.getDepositType());
+            changed = true;
+        }
+        if (!Objects.equals(deposit.getDepositTime(), data.getDepositTime())) {
+            deposit.setDepositTime(data.getDepositTime());
+            changed = true;
+        }
+        if (!sameNumber(deposit.getAmount(), data.getAmount())) {
+            deposit.setAmount(data.getAmount());
+            changed = true;
+        }
+        if (!sameNumber(deposit.getInterestRate(), data.getInterestRate())) {
+            deposit.setInterestRate(data.getInterestRate());
+            changed = true;
+        }
+        if (!sameNumber(deposit.getTerm(), data.getTerm())) {
+            deposit.setTerm(data.getTerm());
+            changed = true;
+        }
+        if (!Objects.equals(deposit.getNote(), data.getNote())) {
+            deposit.setNote(data.getNote());
+            changed = true;
+        }
+        return changed;
+    }
+    
+    private boolean sameNumber(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+    
+    /**
+     * 更新快照备注，返回更新后的快照版本
+     * expectedVersion 为读取时的快照版本，必须与当前版本一致
+     */
+    @QueuedWrite
+    @Transactional
+    public Long updateSnapshotNote(Long userId, LocalDate date, String note, Long expectedVersion) {
         Optional<ReconciliationSnapshot> snapshotOpt = snapshotRepository.findByUserIdAndReconciliationDate(userId, date);
         if (snapshotOpt.isEmpty()) {
             throw new RuntimeException("该日期的对账快照不存在");
         }
         ReconciliationSnapshot snapshot = snapshotOpt.get();
+        checkVersion(snapshot.getVersion(), expectedVersion);
         snapshot.setNote(note);
-        snapshotRepository.save(snapshot);
+        snapshot = snapshotRepository.saveAndFlush(snapshot);
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        return snapshot.getVersion();
     }
     
     /**
      * 获取最近一次对账日期（只基于快照表）
      */
+    @Transactional(readOnly = true)
     public LocalDate getLatestReconciliationDate(Long userId) {
         logger.debug("获取最近一次对账日期 - userId: {}", userId);
-        // 只从快照表查询，判断是否有快照应该基于快照表
-        LocalDate latestDate = snapshotRepository.findMaxReconciliationDateByUserId(userId).orElse(null);
+        // 只基于快照表（快照日期索引）判断是否有快照
+        LocalDate latestDate = snapshotDateIndex.latest(userId).orElse(null);
         logger.debug("最近一次对账日期: {}", latestDate);
         return latestDate;
     }
@@ -230,131 +531,82 @@ public class ReconciliationService {
     /**
      * 获取历史对账记录（只基于快照表，判断是否有快照应该基于快照表）
      */
+    @Transactional(readOnly = true)
     public ReconciliationHistoryResponse getReconciliationHistory(Long userId) {
-        // 只从快照表获取日期，判断是否有快照应该基于快照表
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
+        return getReconciliationHistory(userId, null, null);
+    }
+    
+    /**
+     * 分页获取历史对账记录：早于 before 的最多 limit 个快照日期，按日期倒序
+     * before 为空时从最新的快照开始，limit 为空时不分页
+     */
+    @Transactional(readOnly = true)
+    public ReconciliationHistoryResponse getReconciliationHistory(Long userId, LocalDate before, Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new RuntimeException("每页条数必须大于0");
+        }
+        // 多取一行判断是否还有下一页
+        String cursor = before != null ? before.toString() : HISTORY_CURSOR_MAX;
+        List<ReconciliationSnapshotRepository.HistoryRow> rows =
+                snapshotRepository.findHistoryBefore(userId, cursor, limit != null ? limit + 1 : -1);
         
-        // 对每个快照日期，统计该日期的存款记录数
-        List<ReconciliationHistoryResponse.HistoryItem> historyItems = allSnapshots.stream()
-                .map(snapshot -> {
-                    LocalDate date = snapshot.getReconciliationDate();
-                    // 统计该日期的存款记录数
-                    long recordCount = depositRepository.countByUserIdAndReconciliationDate(userId, date);
-                    return new ReconciliationHistoryResponse.HistoryItem(date, recordCount);
-                })
+        boolean hasMore = limit != null && rows.size() > limit;
+        List<ReconciliationHistoryResponse.HistoryItem> historyItems = (hasMore ? rows.subList(0, limit) : rows).stream()
+                .map(row -> new ReconciliationHistoryResponse.HistoryItem(
+                        LocalDate.parse(row.getReconciliationDate()),
+                        row.getRecordCount(),
+                        row.getTotalAmount(),
+                        row.getNote(),
+                        row.getVersion()))
                 .collect(Collectors.toList());
         
-        return new ReconciliationHistoryResponse(historyItems);
+        LocalDate nextBefore = hasMore ? historyItems.get(historyItems.size() - 1).getDate() : null;
+        return new ReconciliationHistoryResponse(historyItems, nextBefore);
     }
     
     /**
      * 获取所有快照日期列表（只基于快照表，判断是否有快照应该基于快照表）
      */
+    @Transactional(readOnly = true)
     public List<LocalDate> getSnapshotDates(Long userId) {
         logger.debug("获取所有快照日期 - userId: {}", userId);
-        // 只从快照表查询，判断是否有快照应该基于快照表
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-        List<LocalDate> dates = allSnapshots.stream()
-                .map(ReconciliationSnapshot::getReconciliationDate)
-                .collect(Collectors.toList());
+        // 只基于快照表（快照日期索引）判断是否有快照
+        List<LocalDate> dates = snapshotDateIndex.datesDescending(userId);
         logger.debug("快照日期列表 (倒序): {}, 总数: {}", dates, dates.size());
         return dates;
     }
     
     /**
      * 获取上一个快照日期（更早的快照）
+     * 当前日期是否为快照日期都取小于它的最近一个快照日期，已经是最早时返回 null
      */
+    @Transactional(readOnly = true)
     public LocalDate getPreviousSnapshotDate(Long userId, LocalDate currentDate) {
         logger.debug("获取上一个快照日期 - userId: {}, currentDate: {}", userId, currentDate);
-        List<LocalDate> snapshotDates = getSnapshotDates(userId);
-        
-        if (snapshotDates.isEmpty()) {
-            logger.debug("没有任何快照，返回 null");
-            return null; // 没有任何快照
-        }
-        
-        // 如果当前日期不在快照列表中，找到最近的快照日期（小于当前日期的第一个）
-        if (!snapshotDates.contains(currentDate)) {
-            // 找到第一个小于当前日期的快照日期（最近的，因为列表是倒序的）
-            Optional<LocalDate> nearestDate = snapshotDates.stream()
-                    .filter(date -> date.isBefore(currentDate))
-                    .findFirst();
-            if (nearestDate.isPresent()) {
-                // 如果找到了最近的快照，直接返回它（这就是"上一个快照"）
-                logger.debug("找到最近的上一个快照日期: {}", nearestDate.get());
-                return nearestDate.get();
-            } else {
-                // 当前日期早于所有快照，返回null（已经是最早的）
-                logger.debug("当前日期早于所有快照，返回 null");
-                return null;
-            }
-        }
-        
-        // 如果当前日期本身就是一个快照日期，找到列表中比它更早的快照
-        int index = snapshotDates.indexOf(currentDate);
-        logger.debug("当前日期在快照列表中的索引: {}", index);
-        if (index < snapshotDates.size() - 1) {
-            // 还有更早的快照（在列表中索引+1的位置，因为列表是倒序的）
-            LocalDate previousDate = snapshotDates.get(index + 1);
-            logger.debug("找到上一个快照日期: {}", previousDate);
-            return previousDate;
-        } else {
-            // 这是最早的快照
-            logger.debug("这是最早的快照，返回 null");
-            return null;
-        }
+        LocalDate previousDate = snapshotDateIndex.lower(userId, currentDate).orElse(null);
+        logger.debug("上一个快照日期: {}", previousDate);
+        return previousDate;
     }
     
     /**
      * 获取下一个快照日期（更新的快照）
+     * 当前日期是否为快照日期都取大于它的最近一个快照日期，已经是最新时返回 null
      */
+    @Transactional(readOnly = true)
     public LocalDate getNextSnapshotDate(Long userId, LocalDate currentDate) {
         logger.debug("获取下一个快照日期 - userId: {}, currentDate: {}", userId, currentDate);
-        List<LocalDate> snapshotDates = getSnapshotDates(userId);
-        
-        if (snapshotDates.isEmpty()) {
-            logger.debug("没有任何快照，返回 null");
-            return null; // 没有任何快照
-        }
-        
-        // 如果当前日期不在快照列表中，找到最近的快照日期（大于当前日期的第一个）
-        if (!snapshotDates.contains(currentDate)) {
-            // 找到第一个大于当前日期的快照日期（最近的，因为列表是倒序的）
-            Optional<LocalDate> nearestDate = snapshotDates.stream()
-                    .filter(date -> date.isAfter(currentDate))
-                    .findFirst();
-            if (nearestDate.isPresent()) {
-                // 如果找到了最近的快照，直接返回它（这就是"下一个快照"）
-                logger.debug("找到最近的下一个快照日期: {}", nearestDate.get());
-                return nearestDate.get();
-            } else {
-                // 当前日期晚于所有快照，返回null（已经是最新的）
-                logger.debug("当前日期晚于所有快照，返回 null");
-                return null;
-            }
-        }
-        
-        // 如果当前日期本身就是一个快照日期，找到列表中比它更新的快照
-        int index = snapshotDates.indexOf(currentDate);
-        logger.debug("当前日期在快照列表中的索引: {}", index);
-        if (index > 0) {
-            // 还有更新的快照（在列表中索引-1的位置，因为列表是倒序的）
-            LocalDate nextDate = snapshotDates.get(index - 1);
-            logger.debug("找到下一个快照日期: {}", nextDate);
-            return nextDate;
-        } else {
-            // 这是最新的快照
-            logger.debug("这是最新的快照，返回 null");
-            return null;
-        }
+        LocalDate nextDate = snapshotDateIndex.higher(userId, currentDate).orElse(null);
+        logger.debug("下一个快照日期: {}", nextDate);
+        return nextDate;
     }
     
     /**
      * 新建对账：将选中日期之前最近一次快照复制到选中日期并保存到数据库
-     * 如果选中日期之前没有历史快照，则创建一个空快照（总金额为0，没有存款记录）
+     * 如果选中日期之前没有历史快照，则创建一个空快照（总金额为0，没有存款记录），返回新快照的版本
      */
+    @QueuedWrite
     @Transactional
-    public void createNewReconciliation(Long userId, LocalDate targetDate) {
+    public Long createNewReconciliation(Long userId, LocalDate targetDate) {
         // 检查目标日期是否已有快照（只基于快照表判断）
         boolean hasSnapshot = snapshotRepository.existsByUserIdAndReconciliationDate(userId, targetDate);
         if (hasSnapshot) {
@@ -364,60 +616,32 @@ public class ReconciliationService {
         // 查找目标日期之前最近的一次快照日期
         LocalDate previousDate = findLatestSnapshotDateBefore(userId, targetDate);
         
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        List<Deposit> depositsToCopy = new ArrayList<>();
-        
-        if (previousDate != null) {
-            // 有前一次快照，获取其存款记录
-            depositsToCopy = depositRepository.findByUserIdAndReconciliationDate(userId, previousDate);
-            
-            // 复制存款记录到目标日期
-            for (Deposit previousDeposit : depositsToCopy) {
-                Deposit newDeposit = new Deposit();
-                newDeposit.setUserId(userId);
-                newDeposit.setAccountId(previousDeposit.getAccountId());
-                newDeposit.setDepositType(previousDeposit.getDepositType());
-                newDeposit.setDepositTime(previousDeposit.getDepositTime());
-                newDeposit.setAmount(previousDeposit.getAmount());
-                newDeposit.setInterestRate(previousDeposit.getInterestRate());
-                newDeposit.setTerm(previousDeposit.getTerm());
-                newDeposit.setNote(previousDeposit.getNote());
-                newDeposit.setReconciliationDate(targetDate);
-                
-                depositRepository.save(newDeposit);
-                
-                // 累加总金额
-                if (previousDeposit.getAmount() != null) {
-                    totalAmount = totalAmount.add(previousDeposit.getAmount());
-                }
-            }
-        }
-        // 如果没有前一次快照，depositsToCopy 为空，totalAmount 为 0，创建空快照
+        // 上一次快照的总金额（精确汇总），没有前一次快照时为 0，创建空快照
+        BigDecimal totalAmount = previousDate != null
+                ? depositStore.sumAmountByUserIdAndDate(userId, previousDate)
+                : BigDecimal.ZERO;
         
-        // 创建目标日期的快照记录（备注清空）
+        // 先创建目标日期的快照记录（备注清空），时态存储只能在已有快照的日期上写入存款记录
         ReconciliationSnapshot newSnapshot = new ReconciliationSnapshot();
         newSnapshot.setUserId(userId);
         newSnapshot.setReconciliationDate(targetDate);
         newSnapshot.setTotalAmount(totalAmount);
         newSnapshot.setNote(null); // 备注清空
-        snapshotRepository.save(newSnapshot);
+        newSnapshot = snapshotRepository.save(newSnapshot);
+        
+        if (previousDate != null) {
+            // 有前一次快照，把其存款记录复制到目标日期（快照存储在数据库内复制，时态存储不需要写入）
+            depositStore.copy(userId, previousDate, targetDate);
+        }
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId));
+        return newSnapshot.getVersion();
     }
     
     /**
      * 查找指定日期之前最近的一次快照日期（只基于快照表）
      */
     private LocalDate findLatestSnapshotDateBefore(Long userId, LocalDate beforeDate) {
-        // 只从快照表获取，判断是否有快照应该基于快照表
-        List<LocalDate> snapshotDates = getSnapshotDates(userId);
-        
-        if (snapshotDates.isEmpty()) {
-            return null; // 没有任何快照
-        }
-        
-        // 找到第一个小于 beforeDate 的日期（最近的，因为列表是倒序的）
-        return snapshotDates.stream()
-                .filter(date -> date.isBefore(beforeDate))
-                .findFirst()
-                .orElse(null); // 如果没有找到，返回 null（表示没有前一次快照）
+        // 只从快照表获取，判断是否有快照应该基于快照表；没有前一次快照时返回 null
+        return snapshotDateIndex.lower(userId, beforeDate).orElse(null);
     }
 }
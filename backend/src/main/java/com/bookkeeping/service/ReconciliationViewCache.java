@@ -0,0 +1,214 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.dto.ReconciliationDataResponse;
+import com.bookkeeping.event.UserDataChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 对账页面相邻快照的预取缓存
+ *
+ * 返回一个日期的对账数据后，在后台线程（只读事务）加载上一个、下一个快照的对账数据放入缓存，
+ * 用户接着点上一个/下一个时直接从内存返回。缓存只保留 ttl-seconds 秒，最多 max-entries 条；
+ * 用户的账户、存款记录或快照变化（UserDataChangedEvent）时丢弃该用户的缓存。
+ */
+@Component
+public class ReconciliationViewCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationViewCache.class);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${reconciliation-view.prefetch-threads:2}")
+    private int prefetchThreads;
+
+    @Value("${reconciliation-view.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${reconciliation-view.max-entries:1000}")
+    private int maxEntries;
+
+    private final Map<Key, CachedView> entries = new ConcurrentHashMap<>();
+
+    /** 正在预取的日期，避免重复提交 */
+    private final Set<Key> inFlight = ConcurrentHashMap.newKeySet();
+
+    /** 每次丢弃缓存加一；预取期间有丢弃时不放入加载结果，避免缓存写入前读到的旧数据 */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+
+    private TransactionTemplate readOnlyTx;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxEntries),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "reconciliation-prefetch-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时放弃预取，下次点击时正常查询
+                new ThreadPoolExecutor.DiscardPolicy());
+
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+
+        hits = Counter.builder("bookkeeping.reconciliation.view.cache")
+                .tag("result", "hit")
+                .description("对账导航从预取缓存返回的次数")
+                .register(meterRegistry);
+        misses = Counter.builder("bookkeeping.reconciliation.view.cache")
+                .tag("result", "miss")
+                .description("对账导航需要查询数据库的次数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 读取缓存的对账数据（未缓存或已过期时为空）
+     */
+    public Optional<ReconciliationDataResponse> get(Long userId, LocalDate date) {
+        Key key = new Key(userId, date);
+        CachedView cached = entries.get(key);
+        if (cached != null && cached.expiresAt() > System.nanoTime()) {
+            hits.increment();
+            return Optional.of(cached.data());
+        }
+        if (cached != null) {
+            entries.remove(key, cached);
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * 在后台加载并缓存指定日期的对账数据（已缓存、正在加载或为 null 的日期跳过）
+     * loader 在后台线程的只读事务中执行
+     */
+    public void prefetch(Long userId, Collection<LocalDate> dates, Function<LocalDate, ReconciliationDataResponse> loader) {
+        for (LocalDate date : dates) {
+            if (date == null) {
+                continue;
+            }
+            Key key = new Key(userId, date);
+            CachedView cached = entries.get(key);
+            if (cached != null && cached.expiresAt() > System.nanoTime()) {
+                continue;
+            }
+            if (!inFlight.add(key)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> load(key, loader));
+            } catch (RuntimeException e) {
+                inFlight.remove(key);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 用户数据变化时丢弃该用户的缓存；在事务中时提交或回滚后再丢弃一次，
+     * 避免事务提交前开始的预取把旧数据放回缓存
+     */
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        Long userId = event.getUserId();
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 丢弃用户的全部缓存
+     */
+    public void evict(Long userId) {
+        invalidations.incrementAndGet();
+        entries.keySet().removeIf(key -> key.userId().equals(userId));
+    }
+
+    /**
+     * 当前缓存条数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void load(Key key, Function<LocalDate, ReconciliationDataResponse> loader) {
+        try {
+            long before = invalidations.get();
+            ReconciliationDataResponse data = readOnlyTx.execute(status -> loader.apply(key.date()));
+            if (data == null || invalidations.get() != before) {
+                return;
+            }
+            if (entries.size() >= maxEntries) {
+                long now = System.nanoTime();
+                entries.values().removeIf(cached -> cached.expiresAt() <= now);
+                if (entries.size() >= maxEntries) {
+                    return;
+                }
+            }
+            entries.put(key, new CachedView(data, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds)));
+            // 放入后再检查一次：放入期间发生的丢弃可能没有看到这条缓存
+            if (invalidations.get() != before) {
+                entries.remove(key);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("预取对账数据失败 - userId: {}, date: {}", key.userId(), key.date(), e);
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private record Key(Long userId, LocalDate date) {
+    }
+
+    private record CachedView(ReconciliationDataResponse data, long expiresAt) {
+    }
+}
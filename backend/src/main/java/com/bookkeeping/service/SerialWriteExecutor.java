@@ -0,0 +1,236 @@
+package com.bookkeeping.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单写线程执行器
+ *
+ * SQLite 只允许一个写者，多个请求同时写入只会在写锁上互相等待（甚至 SQLITE_BUSY）。
+ * 这里把所有写操作放进一个有界队列，由唯一的写线程逐个取出执行；
+ * 写线程每次最多取出 max-batch-size 个已排队的操作，放在同一个事务里执行、一次提交（一次 fsync），
+ * 每个调用方仍然拿到自己那次调用的返回值或异常。
+ *
+ * 合并提交的事务中任何一个操作失败，整个事务回滚，然后逐个单独重新执行，
+ * 保证一个操作的失败不会影响同批次的其他操作。
+ */
+@Component
+public class SerialWriteExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialWriteExecutor.class);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${write-queue.capacity:1000}")
+    private int capacity;
+
+    @Value("${write-queue.max-batch-size:32}")
+    private int maxBatchSize;
+
+    @Value("${write-queue.offer-timeout-ms:5000}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<PendingWrite<?>> queue;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Thread writerThread;
+
+    private volatile boolean running = true;
+
+    private DistributionSummary batchSizeSummary;
+
+    private Timer commitTimer;
+
+    /**
+     * 写操作
+     */
+    @FunctionalInterface
+    public interface WriteCommand<T> {
+        T execute() throws Throwable;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Gauge.builder("bookkeeping.write.queue.depth", queue, BlockingQueue::size)
+                .description("等待写线程执行的写操作数量")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("bookkeeping.write.batch.size")
+                .description("每次提交包含的写操作数量")
+                .register(meterRegistry);
+        commitTimer = Timer.builder("bookkeeping.write.commit")
+                .description("每个批次从开始执行到提交完成的耗时")
+                .register(meterRegistry);
+
+        writerThread = new Thread(this::runLoop, "sqlite-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writerThread.interrupt();
+    }
+
+    /**
+     * 执行写操作，阻塞直到该操作提交（或失败）
+     */
+    public <T> T execute(WriteCommand<T> command) throws Throwable {
+        // 已经在事务中（或就在写线程上）时直接执行，加入当前事务
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                || Thread.currentThread() == writerThread) {
+            return command.execute();
+        }
+
+        PendingWrite<T> pending = new PendingWrite<>(command);
+        if (!queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new RuntimeException("系统繁忙，请稍后重试");
+        }
+        try {
+            return pending.future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 当前排队中的写操作数量
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+                runBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable t) {
+                // runBatch 已经把异常交给各个调用方，这里只防止写线程意外退出
+                logger.error("写线程执行异常", t);
+            } finally {
+                batch.clear();
+            }
+        }
+        // 停止后仍在排队的操作直接失败，避免调用方永久等待
+        PendingWrite<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RuntimeException("服务正在停止，写操作未执行"));
+        }
+    }
+
+    private void runBatch(List<PendingWrite<?>> batch) {
+        batchSizeSummary.record(batch.size());
+        if (batch.size() == 1) {
+            runSingle(batch.get(0));
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Object> results = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingWrite<?> pending : batch) {
+                    try {
+                        results.add(pending.command.execute());
+                    } catch (RuntimeException | Error e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw new BatchAbortedException(t);
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            // 合并提交失败：整个事务已回滚，逐个单独执行以得到各自准确的结果
+            logger.debug("合并提交失败，逐个重新执行 {} 个写操作: {}", batch.size(), t.getMessage());
+            for (PendingWrite<?> pending : batch) {
+                runSingle(pending);
+            }
+            return;
+        }
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private void runSingle(PendingWrite<?> pending) {
+        long start = System.nanoTime();
+        try {
+            Object result = transactionTemplate.execute(status -> {
+                try {
+                    return pending.command.execute();
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new BatchAbortedException(t);
+                }
+            });
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            pending.complete(result);
+        } catch (BatchAbortedException e) {
+            pending.future.completeExceptionally(e.getCause());
+        } catch (Throwable t) {
+            pending.future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * 排队中的写操作
+     */
+    private static class PendingWrite<T> {
+        private final WriteCommand<T> command;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        PendingWrite(WriteCommand<T> command) {
+            this.command = command;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+
+    /**
+     * 包装受检异常，使其可以穿过 TransactionTemplate
+     */
+    private static class BatchAbortedException extends RuntimeException {
+        BatchAbortedException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 每个用户的快照日期索引（内存）
+ *
+ * 对账页面每次切换日期都要查上一个/下一个快照日期，这里按用户缓存有序的快照日期集合，
+ * 导航只是一次 lower/higher 查找，不访问数据库。
+ * 用户第一次导航时从快照表加载。快照实体新增、删除时先记在当前事务中，提交后再修改集合，其他请求不会看到未提交的日期；
+ * 同一事务内随后的导航查询合并本事务的变化。事务回滚时丢弃该用户的索引，下次重新加载。
+ * 最多缓存 max-users 个用户，超出时淘汰最久未访问的用户。
+ */
+@Component
+public class SnapshotDateIndex {
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${snapshot-date-index.max-users:1000}")
+    private int maxUsers;
+
+    /** 按访问顺序排列，访问和修改都在 this 上同步 */
+    private Map<Long, NavigableSet<LocalDate>> index;
+
+    /** 每次修改索引加一；加载期间有修改时不缓存加载结果，避免覆盖更新的数据 */
+    private final AtomicLong modifications = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        index = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, NavigableSet<LocalDate>> eldest) {
+                return size() > maxUsers;
+            }
+        };
+        Gauge.builder("bookkeeping.snapshot.date.index.users", this, SnapshotDateIndex::size)
+                .description("快照日期索引中缓存的用户数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 用户所有快照日期，按日期倒序
+     */
+    public List<LocalDate> datesDescending(Long userId) {
+        return new ArrayList<>(dates(userId).descendingSet());
+    }
+
+    /**
+     * 用户所有快照日期（只读，按日期升序）
+     */
+    public NavigableSet<LocalDate> snapshotDates(Long userId) {
+        return Collections.unmodifiableNavigableSet(dates(userId));
+    }
+
+    /**
+     * 用户最新的快照日期
+     */
+    public Optional<LocalDate> latest(Long userId) {
+        NavigableSet<LocalDate> dates = dates(userId);
+        return dates.isEmpty() ? Optional.empty() : Optional.of(dates.last());
+    }
+
+    /**
+     * 早于指定日期的最近一个快照日期
+     */
+    public Optional<LocalDate> lower(Long userId, LocalDate date) {
+        return Optional.ofNullable(dates(userId).lower(date));
+    }
+
+    /**
+     * 晚于指定日期的最近一个快照日期
+     */
+    public Optional<LocalDate> higher(Long userId, LocalDate date) {
+        return Optional.ofNullable(dates(userId).higher(date));
+    }
+
+    /**
+     * 新增快照时调用（见 SnapshotDateIndexListener）：事务提交后，用户已在索引中时加入该日期
+     */
+    public void add(Long userId, LocalDate date) {
+        record(userId, date, true);
+    }
+
+    /**
+     * 删除快照时调用：事务提交后，用户已在索引中时移除该日期
+     */
+    public void remove(Long userId, LocalDate date) {
+        record(userId, date, false);
+    }
+
+    /**
+     * 丢弃用户的索引，下次访问时重新加载
+     */
+    public void evict(Long userId) {
+        modifications.incrementAndGet();
+        synchronized (this) {
+            index.remove(userId);
+        }
+    }
+
+    /**
+     * 当前缓存的用户数
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 在事务中时把修改记在当前事务的 PendingChanges 中，提交后应用；不在事务中时直接应用
+     */
+    private void record(Long userId, LocalDate date, boolean added) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(userId, date, added);
+            return;
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.changes.computeIfAbsent(userId, id -> new TreeMap<>()).put(date, added);
+    }
+
+    /**
+     * 修改用户的索引（不在索引中时不需要修改，下次访问时加载）
+     */
+    private void apply(Long userId, LocalDate date, boolean added) {
+        modifications.incrementAndGet();
+        NavigableSet<LocalDate> dates;
+        synchronized (this) {
+            dates = index.get(userId);
+        }
+        if (dates == null) {
+            return;
+        }
+        if (added) {
+            dates.add(date);
+        } else {
+            dates.remove(date);
+        }
+    }
+
+    /**
+     * 当前事务中该用户尚未提交的修改，没有时为 null
+     */
+    private Map<LocalDate, Boolean> pendingChanges(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        return pending != null ? pending.changes.get(userId) : null;
+    }
+
+    /**
+     * 用户的快照日期；当前事务有未提交的修改时返回合并了这些修改的副本
+     */
+    private NavigableSet<LocalDate> dates(Long userId) {
+        Map<LocalDate, Boolean> pending = pendingChanges(userId);
+        NavigableSet<LocalDate> dates = committedDates(userId, pending == null);
+        if (pending == null) {
+            return dates;
+        }
+        NavigableSet<LocalDate> merged = new TreeSet<>(dates);
+        pending.forEach((date, added) -> {
+            if (added) {
+                merged.add(date);
+            } else {
+                merged.remove(date);
+            }
+        });
+        return merged;
+    }
+
+    /**
+     * 索引中的快照日期，不在索引中时从快照表加载
+     *
+     * @param cacheable 加载结果能否放入索引：当前事务修改过该用户的快照时，查询结果含有未提交的数据，不放入索引
+     */
+    private NavigableSet<LocalDate> committedDates(Long userId, boolean cacheable) {
+        synchronized (this) {
+            NavigableSet<LocalDate> dates = index.get(userId);
+            if (dates != null) {
+                return dates;
+            }
+        }
+        long before = modifications.get();
+        NavigableSet<LocalDate> loaded = snapshotRepository.findDatesByUserId(userId).stream()
+                .map(LocalDate::parse)
+                .collect(Collectors.toCollection(ConcurrentSkipListSet::new));
+        synchronized (this) {
+            if (!cacheable || modifications.get() != before) {
+                return loaded;
+            }
+            NavigableSet<LocalDate> existing = index.putIfAbsent(userId, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    /**
+     * 一个事务中的快照日期修改（按用户、日期，同一日期以最后一次为准）：提交后应用到索引，回滚后丢弃涉及用户的索引
+     */
+    private final class PendingChanges implements TransactionSynchronization {
+
+        final Map<Long, Map<LocalDate, Boolean>> changes = new HashMap<>();
+
+        @Override
+        public void afterCommit() {
+            changes.forEach((userId, dates) -> dates.forEach((date, added) -> apply(userId, date, added)));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(SnapshotDateIndex.this);
+            if (status != STATUS_COMMITTED) {
+                changes.keySet().forEach(SnapshotDateIndex.this::evict);
+            }
+        }
+    }
+}
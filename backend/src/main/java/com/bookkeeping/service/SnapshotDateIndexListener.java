@@ -0,0 +1,30 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreRemove;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * 快照实体的新增、删除同步到快照日期索引
+ *
+ * 直接通过仓库保存快照（导入工具、测试数据）也会更新索引；由 Hibernate 通过 Spring 容器创建。
+ * 在 persist/remove 时记入当前事务，提交后才修改索引（见 SnapshotDateIndex），同一事务内随后的导航查询就能看到新日期。
+ * 监听器在 EntityManagerFactory 创建期间实例化，索引依赖的仓库此时还不可用，因此延迟获取索引。
+ */
+public class SnapshotDateIndexListener {
+
+    @Autowired
+    private ObjectProvider<SnapshotDateIndex> snapshotDateIndex;
+
+    @PrePersist
+    public void onPersist(ReconciliationSnapshot snapshot) {
+        snapshotDateIndex.getObject().add(snapshot.getUserId(), snapshot.getReconciliationDate());
+    }
+
+    @PreRemove
+    public void onRemove(ReconciliationSnapshot snapshot) {
+        snapshotDateIndex.getObject().remove(snapshot.getUserId(), snapshot.getReconciliationDate());
+    }
+}
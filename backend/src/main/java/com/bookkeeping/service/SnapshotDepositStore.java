@@ -0,0 +1,136 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.DepositVersionRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 快照存储（默认）：每个对账日期保存一份完整的存款记录
+ *
+ * 转换为时态存储（TemporalDepositMigration）会删除快照日期上的 deposits 记录，没有反向转换；
+ * deposit_versions 中已有数据时改回快照存储会读不到这些用户的存款记录，因此拒绝启动。
+ */
+@Component
+@ConditionalOnProperty(name = "deposit-storage.mode", havingValue = "snapshot", matchIfMissing = true)
+public class SnapshotDepositStore implements DepositStore {
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private IdSequenceService idSequenceService;
+
+    @Autowired
+    private DepositVersionRepository versionRepository;
+
+    /**
+     * 数据已转换为时态存储时拒绝以快照存储启动
+     */
+    @PostConstruct
+    public void checkNotConverted() {
+        long versions = versionRepository.count();
+        if (versions > 0) {
+            throw new IllegalStateException("deposit_versions 中已有 " + versions + " 个时态存储版本，"
+                    + "对应的 deposits 记录已在转换时删除，不能以 deposit-storage.mode=snapshot 启动；"
+                    + "请继续使用 temporal 模式，或从转换前的备份恢复数据库");
+        }
+    }
+
+    @Override
+    public List<Deposit> findByUserIdAndDate(Long userId, LocalDate date) {
+        return depositRepository.findByUserIdAndReconciliationDate(userId, date);
+    }
+
+    @Override
+    public List<DepositRepository.ReconciliationRow> findReconciliationRows(Long userId, LocalDate date) {
+        return depositRepository.findReconciliationRows(userId, date.toString());
+    }
+
+    @Override
+    public List<Deposit> findByAccountIdAndDate(Long accountId, LocalDate date) {
+        return depositRepository.findByAccountIdAndReconciliationDate(accountId, date);
+    }
+
+    @Override
+    public List<Deposit> findByUserId(Long userId) {
+        return depositRepository.findByUserIdOrderByReconciliationDateDesc(userId);
+    }
+
+    @Override
+    public long countByUserIdAndDate(Long userId, LocalDate date) {
+        return depositRepository.countByUserIdAndReconciliationDate(userId, date);
+    }
+
+    @Override
+    public BigDecimal sumAmountByUserIdAndDate(Long userId, LocalDate date) {
+        return depositRepository.sumAmountByUserIdAndReconciliationDate(userId, date);
+    }
+
+    @Override
+    public boolean existsByAccountId(Long accountId) {
+        return depositRepository.existsByAccountId(accountId);
+    }
+
+    @Override
+    public Optional<Deposit> findById(Long id, Long userId, LocalDate date) {
+        return depositRepository.findByIdAndUserId(id, userId)
+                .filter(deposit -> date == null || date.equals(deposit.getReconciliationDate()));
+    }
+
+    @Override
+    public Deposit insert(Deposit deposit) {
+        return depositRepository.save(deposit);
+    }
+
+    @Override
+    public List<Deposit> insertAll(List<Deposit> deposits) {
+        return depositRepository.saveAll(deposits);
+    }
+
+    @Override
+    public Deposit update(Deposit deposit) {
+        return depositRepository.save(deposit);
+    }
+
+    @Override
+    public void updateAll(Collection<Deposit> deposits) {
+        // 已加载的实体，提交时由脏检查批量 UPDATE
+        depositRepository.saveAll(deposits);
+    }
+
+    @Override
+    public void delete(Deposit deposit) {
+        depositRepository.delete(deposit);
+    }
+
+    @Override
+    public void deleteAll(Collection<Deposit> deposits) {
+        // 一条 DELETE ... WHERE id IN
+        if (!deposits.isEmpty()) {
+            depositRepository.deleteAllInBatch(deposits);
+        }
+    }
+
+    /**
+     * 在数据库内用一条 INSERT ... SELECT 复制，不加载实体
+     */
+    @Override
+    public int copy(Long userId, LocalDate sourceDate, LocalDate targetDate) {
+        int count = (int) depositRepository.countByUserIdAndReconciliationDate(userId, sourceDate);
+        if (count > 0) {
+            long firstId = idSequenceService.reserve("deposits", count);
+            depositRepository.copyByUserIdAndReconciliationDate(userId, sourceDate, targetDate, firstId);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,63 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.User;
+import com.bookkeeping.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 快照总金额定期校验
+ *
+ * 存款记录的新增、修改、删除只按金额变化原子调整快照总金额（见 DepositService），不再重新求和。
+ * 这里定期把每个快照的总金额与快照账户合计（由触发器维护）比对，发现偏差时记录日志并修正。
+ */
+@Component
+public class SnapshotTotalVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotTotalVerifier.class);
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter driftCounter;
+
+    @PostConstruct
+    public void init() {
+        driftCounter = Counter.builder("bookkeeping.snapshot.total.drift")
+                .description("校验时发现并修正的快照总金额偏差数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 校验所有用户的快照总金额，每个用户一个写操作，返回修正的快照数
+     */
+    @Scheduled(initialDelayString = "${snapshot-total-verifier.interval-ms:3600000}",
+               fixedDelayString = "${snapshot-total-verifier.interval-ms:3600000}")
+    public int verifyAll() {
+        int repaired = 0;
+        for (User user : userRepository.findAll()) {
+            try {
+                repaired += depositService.verifySnapshotTotals(user.getId());
+            } catch (RuntimeException e) {
+                logger.error("校验快照总金额失败 - userId: {}", user.getId(), e);
+            }
+        }
+        if (repaired > 0) {
+            driftCounter.increment(repaired);
+            logger.warn("快照总金额校验完成，修正 {} 个快照", repaired);
+        }
+        return repaired;
+    }
+}
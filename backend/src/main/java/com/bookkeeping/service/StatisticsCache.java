@@ -0,0 +1,271 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.event.UserDataChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 统计结果缓存（/api/statistics/*）
+ *
+ * 按用户、接口和参数缓存 StatisticsService 的计算结果；统计以当天为截止日期，键中包含当天日期，跨天后重新计算。
+ * 最多 max-entries 条，按访问顺序排列，超出时淘汰最久未访问的条目；超过 idle-seconds 秒未访问的条目被清除。
+ * 用户的账户、存款记录或快照变化（UserDataChangedEvent）时丢弃该用户的缓存，提交或回滚后再丢弃一次（与 ReconciliationViewCache 相同）。
+ *
+ * 未命中时同一个键只计算一次：第一个请求计算，同时到达的相同请求等待同一个结果（多个标签页、多个家庭成员同时打开统计页面）。
+ * 丢弃缓存时同时丢弃该用户正在进行的计算，之后到达的请求重新计算，不会等到写入前开始的计算结果。
+ */
+@Component
+public class StatisticsCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${statistics-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${statistics-cache.idle-seconds:600}")
+    private long idleSeconds;
+
+    /** 按访问顺序排列，最久未访问的条目在最前；访问和修改都在 this 上同步 */
+    private Map<Key, Entry> entries;
+
+    /** 正在计算的键，相同键的请求等待同一个结果 */
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 每个用户丢弃缓存的次数（代数）；计算期间该用户有丢弃时不放入计算结果，避免缓存写入前读到的旧数据，
+     * 其他用户的写入不影响。代数只增不减，每个写过数据的用户一个计数器
+     */
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter coalesced;
+
+    private Counter sizeEvictions;
+
+    private Counter idleEvictions;
+
+    private Counter invalidatedEvictions;
+
+    @PostConstruct
+    public void start() {
+        hits = Counter.builder("bookkeeping.statistics.cache")
+                .tag("result", "hit")
+                .description("统计接口从缓存返回的次数")
+                .register(meterRegistry);
+        misses = Counter.builder("bookkeeping.statistics.cache")
+                .tag("result", "miss")
+                .description("统计接口需要重新计算的次数")
+                .register(meterRegistry);
+        coalesced = Counter.builder("bookkeeping.statistics.cache")
+                .tag("result", "coalesced")
+                .description("统计接口等待相同请求正在进行的计算的次数")
+                .register(meterRegistry);
+        sizeEvictions = evictionCounter("size", "缓存已满时淘汰的条目数");
+        idleEvictions = evictionCounter("idle", "空闲超时清除的条目数");
+        invalidatedEvictions = evictionCounter("invalidated", "用户数据变化时丢弃的条目数");
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                // 最久未访问的条目空闲超时时算作空闲清除
+                if (isIdle(eldest.getValue(), System.nanoTime())) {
+                    idleEvictions.increment();
+                } else {
+                    sizeEvictions.increment();
+                }
+                return true;
+            }
+        };
+        Gauge.builder("bookkeeping.statistics.cache.size", this, StatisticsCache::size)
+                .description("当前缓存的统计结果条数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 读取缓存的统计结果，未缓存时调用 loader 计算并缓存；相同键正在计算时等待该计算的结果
+     *
+     * @param endpoint 统计接口，如 monthly、trend
+     * @param params   接口参数，没有参数时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long userId, String endpoint, String params, Supplier<T> loader) {
+        Key key = new Key(userId, endpoint, params, LocalDate.now());
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                if (!isIdle(cached, now)) {
+                    cached.lastAccess = now;
+                    hits.increment();
+                    return (T) cached.value;
+                }
+                entries.remove(key);
+                idleEvictions.increment();
+            }
+        }
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return (T) await(existing);
+        }
+        misses.increment();
+        try {
+            T value = load(key, loader);
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 用户数据变化时丢弃该用户的缓存；在事务中时提交或回滚后再丢弃一次，
+     * 避免事务提交前开始的计算把旧数据放回缓存
+     */
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        Long userId = event.getUserId();
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 丢弃用户的全部缓存
+     */
+    public void evict(Long userId) {
+        generation(userId).incrementAndGet();
+        inFlight.keySet().removeIf(key -> key.userId().equals(userId));
+        synchronized (this) {
+            entries.keySet().removeIf(key -> {
+                if (key.userId().equals(userId)) {
+                    invalidatedEvictions.increment();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * 定期清除空闲超时的条目：从最久未访问的条目开始，遇到未超时的条目即停止
+     */
+    @Scheduled(fixedDelayString = "${statistics-cache.sweep-interval-ms:60000}")
+    public synchronized void evictIdle() {
+        long now = System.nanoTime();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && isIdle(it.next(), now)) {
+            it.remove();
+            idleEvictions.increment();
+        }
+    }
+
+    /**
+     * 当前缓存条数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 计算并放入缓存；计算期间该用户有丢弃时只返回结果，不放入缓存
+     */
+    private <T> T load(Key key, Supplier<T> loader) {
+        AtomicLong generation = generation(key.userId());
+        long before = generation.get();
+        T value = loader.get();
+        if (value == null || generation.get() != before) {
+            return value;
+        }
+        // 丢弃时先增加代数再在 this 上删除条目，这里在同一个锁内检查代数并放入，不会留下旧数据
+        synchronized (this) {
+            if (generation.get() == before) {
+                entries.put(key, new Entry(value, System.nanoTime()));
+            }
+        }
+        return value;
+    }
+
+    private AtomicLong generation(Long userId) {
+        return generations.computeIfAbsent(userId, id -> new AtomicLong());
+    }
+
+    /**
+     * 等待正在进行的计算，计算失败时抛出同一个异常
+     */
+    private static Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private boolean isIdle(Entry entry, long now) {
+        return now - entry.lastAccess > TimeUnit.SECONDS.toNanos(idleSeconds);
+    }
+
+    private Counter evictionCounter(String reason, String description) {
+        return Counter.builder("bookkeeping.statistics.cache.evictions")
+                .tag("reason", reason)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    private record Key(Long userId, String endpoint, String params, LocalDate today) {
+    }
+
+    private static class Entry {
+        final Object value;
+        long lastAccess;
+
+        Entry(Object value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.dto.AccountTrendStatisticsResponse;
+import com.bookkeeping.dto.DashboardStatisticsResponse;
+import com.bookkeeping.dto.MaturityStatisticsResponse;
+import com.bookkeeping.dto.MonthlyStatisticsResponse;
+import com.bookkeeping.dto.TrendStatisticsResponse;
+import com.bookkeeping.dto.YearlyStatisticsResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 统计看板（GET /api/statistics/dashboard）
+ *
+ * 在一个只读事务中一次加载余额序列、账户和最近一次快照的存款记录（StatisticsData），
+ * 然后在固定大小的线程池中并发计算五项统计。计算只读内存中的数据，不访问数据库；
+ * 线程池队列满时在请求线程中计算。
+ */
+@Service
+public class StatisticsDashboardService {
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Value("${statistics-dashboard.threads:4}")
+    private int threads;
+
+    @Value("${statistics-dashboard.queue-capacity:100}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "statistics-dashboard-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 计算统计看板
+     *
+     * @param month  按月统计的月份（yyyy-MM）
+     * @param period 趋势和账户趋势的统计周期（6m、1y、3y、all）
+     */
+    public DashboardStatisticsResponse getDashboard(Long userId, String month, String period) {
+        Optional<StatisticsData> loaded = statisticsService.loadStatisticsData(userId, month);
+        if (loaded.isEmpty()) {
+            // 没有快照记录，逐项从存款表计算（兼容历史数据）
+            return new DashboardStatisticsResponse(
+                    statisticsService.getMonthlyStatistics(userId, month),
+                    statisticsService.getTrendStatistics(userId, period),
+                    statisticsService.getAccountTrendStatistics(userId, period),
+                    statisticsService.getYearlyStatistics(userId),
+                    statisticsService.getMaturityStatistics(userId));
+        }
+
+        StatisticsData data = loaded.get();
+        CompletableFuture<MonthlyStatisticsResponse> monthly =
+                CompletableFuture.supplyAsync(() -> StatisticsService.monthlyStatistics(data), executor);
+        CompletableFuture<TrendStatisticsResponse> trend =
+                CompletableFuture.supplyAsync(() -> StatisticsService.trendStatistics(data, period), executor);
+        CompletableFuture<AccountTrendStatisticsResponse> accountTrend =
+                CompletableFuture.supplyAsync(() -> StatisticsService.accountTrendStatistics(data, period), executor);
+        CompletableFuture<YearlyStatisticsResponse> yearly =
+                CompletableFuture.supplyAsync(() -> StatisticsService.yearlyStatistics(data), executor);
+        CompletableFuture<MaturityStatisticsResponse> maturity =
+                CompletableFuture.supplyAsync(() -> StatisticsService.maturityStatistics(data), executor);
+        return new DashboardStatisticsResponse(join(monthly), join(trend), join(accountTrend), join(yearly), join(maturity));
+    }
+
+    /**
+     * 等待计算结果，计算失败时抛出原始异常
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 统计看板在一个只读事务中一次加载的用户数据（见 StatisticsService.loadStatisticsData）
+ *
+ * 加载后不再修改，五项统计在不同线程中并发读取。
+ *
+ * @param today          统计截止日期
+ * @param month          按月统计的月份（yyyy-MM）
+ * @param series         余额序列（至少有一个快照）
+ * @param accounts       用户的全部账户，按创建时间倒序
+ * @param latestDeposits 最近一次快照的存款记录
+ */
+public record StatisticsData(LocalDate today,
+                             String month,
+                             BalanceSeries series,
+                             List<Account> accounts,
+                             List<Deposit> latestDeposits) {
+
+    public StatisticsData {
+        accounts = List.copyOf(accounts);
+        latestDeposits = List.copyOf(latestDeposits);
+    }
+
+    /**
+     * 最早的快照日期
+     */
+    public LocalDate earliestDate() {
+        return series.date(0);
+    }
+}
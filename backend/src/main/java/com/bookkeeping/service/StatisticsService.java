@@ -7,12 +7,12 @@ import com.bookkeeping.dto.TrendStatisticsResponse;
 import com.bookkeeping.dto.YearlyStatisticsResponse;
 import com.bookkeeping.entity.Account;
 import com.bookkeeping.entity.Deposit;
-import com.bookkeeping.entity.ReconciliationSnapshot;
 import com.bookkeeping.repository.AccountRepository;
-import com.bookkeeping.repository.DepositRepository;
 import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import com.bookkeeping.repository.SnapshotAccountTotalRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -23,10 +23,13 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
+@Transactional(readOnly = true)
 public class StatisticsService {
     
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    
     @Autowired
-    private DepositRepository depositRepository;
+    private DepositStore depositStore;
     
     @Autowired
     private AccountRepository accountRepository;
@@ -34,377 +37,317 @@ public class StatisticsService {
     @Autowired
     private ReconciliationSnapshotRepository snapshotRepository;
     
+    @Autowired
+    private SnapshotAccountTotalRepository accountTotalRepository;
+    
+    @Autowired
+    private BalanceSeriesStore balanceSeriesStore;
+    
     /**
      * 按月统计
+     * 有快照的用户从余额序列计算：该月的最后一个快照，该月没有快照时取之前最近一个月的最后一个快照
      */
     public MonthlyStatisticsResponse getMonthlyStatistics(Long userId, String month) {
-        // 解析月份
+        // 解析月份（格式不正确时抛出异常）
         LocalDate monthStart = LocalDate.parse(month + "-01", DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        LocalDate monthEnd = monthStart.plusMonths(1).minusDays(1);
-        
-        // 优先从快照表查找，如果没有则从存款表查找（兼容历史数据）
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-        Optional<LocalDate> lastDateInMonth;
         
-        if (!allSnapshots.isEmpty()) {
-            // 有快照记录，从快照表获取日期
-            lastDateInMonth = allSnapshots.stream()
-                    .map(ReconciliationSnapshot::getReconciliationDate)
-                    .filter(date -> !date.isBefore(monthStart) && !date.isAfter(monthEnd))
-                    .distinct()
-                    .max(Comparator.naturalOrder());
-        } else {
-            // 没有快照记录，从存款表获取日期（兼容历史数据）
-            List<Deposit> allDeposits = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-            lastDateInMonth = allDeposits.stream()
-                    .map(Deposit::getReconciliationDate)
-                    .filter(date -> !date.isBefore(monthStart) && !date.isAfter(monthEnd))
-                    .distinct()
-                    .max(Comparator.naturalOrder());
+        BalanceSeries series = loadBalanceSeries(userId);
+        if (series.isEmpty()) {
+            // 没有快照记录，从存款表计算（兼容历史数据）
+            return getMonthlyStatisticsFromDeposits(userId, month, monthStart);
         }
+        return monthlyStatistics(series, month, accountRepository.findByUserIdOrderByCreatedAtDesc(userId));
+    }
+    
+    /**
+     * 在一个只读事务中一次加载统计看板所需的数据（没有快照记录时为空）
+     * 余额序列、账户和最近一次快照的存款记录各加载一次，五项统计都从这份数据计算
+     */
+    public Optional<StatisticsData> loadStatisticsData(Long userId, String month) {
+        // 解析月份（格式不正确时抛出异常）
+        LocalDate.parse(month + "-01", DateTimeFormatter.ofPattern("yyyy-MM-dd"));
         
-        LocalDate targetDate;
-        if (lastDateInMonth.isPresent()) {
-            targetDate = lastDateInMonth.get();
-        } else {
-            // 该月没有记录，向前查找最近月份
-            targetDate = findLatestDateBefore(userId, monthStart);
-            if (targetDate == null) {
-                // 完全找不到记录，返回空数据
-                return new MonthlyStatisticsResponse(month, BigDecimal.ZERO, new ArrayList<>());
-            }
+        BalanceSeries series = loadBalanceSeries(userId);
+        if (series.isEmpty()) {
+            return Optional.empty();
         }
-        
-        // 优先从快照表获取总金额，如果没有则实时计算（兼容历史数据）
-        BigDecimal totalAmount = snapshotRepository.findByUserIdAndReconciliationDate(userId, targetDate)
-                .map(ReconciliationSnapshot::getTotalAmount)
-                .orElseGet(() -> {
-                    // 没有快照记录，实时计算总金额
-                    List<Deposit> deposits = depositRepository.findByUserIdAndReconciliationDate(userId, targetDate);
-                    return deposits.stream()
-                            .map(Deposit::getAmount)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                });
-        
-        // 获取该日期的存款记录（用于计算账户分布）
-        List<Deposit> deposits = depositRepository.findByUserIdAndReconciliationDate(userId, targetDate);
-        
-        if (deposits.isEmpty()) {
-            return new MonthlyStatisticsResponse(month, totalAmount, new ArrayList<>());
+        return Optional.of(new StatisticsData(LocalDate.now(), month, series,
+                accountRepository.findByUserIdOrderByCreatedAtDesc(userId),
+                depositStore.findByUserIdAndDate(userId, series.date(series.size() - 1))));
+    }
+    
+    /**
+     * 加载用户的余额序列：数据版本与保存的序列相同时直接使用（见 BalanceSeriesStore），
+     * 否则全部快照的总金额和备注、全部快照账户合计各一次查询
+     */
+    public BalanceSeries loadBalanceSeries(Long userId) {
+        return balanceSeriesStore.get(userId, snapshotRepository.findDataVersion(userId), () -> queryBalanceSeries(userId));
+    }
+    
+    private BalanceSeries queryBalanceSeries(Long userId) {
+        BalanceSeries.Builder builder = new BalanceSeries.Builder();
+        for (ReconciliationSnapshotRepository.SeriesRow row : snapshotRepository.findSeriesRows(userId)) {
+            builder.addSnapshot(LocalDate.parse(row.getReconciliationDate()), row.getTotalCents(), row.getNote());
+        }
+        for (SnapshotAccountTotalRepository.AccountCents row : accountTotalRepository.findCentsByUserId(userId)) {
+            builder.addAccountCents(LocalDate.parse(row.getReconciliationDate()), row.getAccountId(), row.getAmountCents());
+        }
+        return builder.build();
+    }
+    
+    /**
+     * 按月统计（从一次加载的数据计算）
+     */
+    static MonthlyStatisticsResponse monthlyStatistics(StatisticsData data) {
+        return monthlyStatistics(data.series(), data.month(), data.accounts());
+    }
+    
+    /**
+     * 按余额序列构建月度统计响应：该月或之前最近一个有快照的月份的最后一个快照，账户分布按账户ID排序
+     */
+    static MonthlyStatisticsResponse monthlyStatistics(BalanceSeries series, String month, List<Account> accounts) {
+        int index = series.lastIndexInOrBeforeMonth(BalanceSeries.monthKey(LocalDate.parse(month + "-01")));
+        if (index < 0) {
+            // 完全找不到记录，返回空数据
+            return new MonthlyStatisticsResponse(month, BigDecimal.ZERO, new ArrayList<>());
         }
         
-        // 按账户分组统计
-        Map<Long, List<Deposit>> depositsByAccount = deposits.stream()
-                .collect(Collectors.groupingBy(Deposit::getAccountId));
-        
-        // 构建分布数据
+        Map<Long, String> accountNameMap = accountNames(accounts);
+        BigDecimal totalAmount = BigDecimal.valueOf(series.totalCents(index), 2);
         List<MonthlyStatisticsResponse.AccountDistributionItem> distribution = new ArrayList<>();
-        
-        for (Map.Entry<Long, List<Deposit>> entry : depositsByAccount.entrySet()) {
-            Long accountId = entry.getKey();
-            List<Deposit> accountDeposits = entry.getValue();
-            
-            // 计算该账户的总金额
-            BigDecimal accountAmount = accountDeposits.stream()
-                    .map(Deposit::getAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            // 计算百分比（保留2位小数）
-            Double percentage = totalAmount.compareTo(BigDecimal.ZERO) > 0
-                    ? accountAmount.divide(totalAmount, 4, RoundingMode.HALF_UP)
-                            .multiply(new BigDecimal("100"))
-                            .setScale(2, RoundingMode.HALF_UP)
-                            .doubleValue()
-                    : 0.0;
-            
-            // 获取账户名称
-            String accountName = accountRepository.findById(accountId)
-                    .map(Account::getName)
-                    .orElse("未知账户");
-            
-            distribution.add(new MonthlyStatisticsResponse.AccountDistributionItem(
-                accountId,
-                accountName,
-                accountAmount,
-                percentage
-            ));
+        for (int slot = 0; slot < series.accountCount(); slot++) {
+            long cents = series.accountCents(slot, index);
+            if (cents != BalanceSeries.ABSENT) {
+                long accountId = series.accountId(slot);
+                distribution.add(distributionItem(accountId, accountNameMap.get(accountId), BigDecimal.valueOf(cents, 2), totalAmount));
+            }
         }
-        
         return new MonthlyStatisticsResponse(month, totalAmount, distribution);
     }
     
     /**
-     * 趋势统计
+     * 趋势统计（从一次加载的数据计算）
      */
-    public TrendStatisticsResponse getTrendStatistics(Long userId, String period) {
-        // 优先从快照表获取，如果没有则从存款表获取（兼容历史数据）
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-        boolean hasSnapshots = !allSnapshots.isEmpty();
-        
-        // 计算时间范围
-        LocalDate endDate = LocalDate.now();
-        LocalDate startDate;
-        
-        if (hasSnapshots) {
-            // 有快照记录，从快照表获取日期范围
-            switch (period) {
-                case "6m":
-                    startDate = endDate.minusMonths(5).withDayOfMonth(1); // 最近6个月（包含当前月）
-                    break;
-                case "1y":
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1); // 最近12个月
-                    break;
-                case "3y":
-                    startDate = endDate.minusMonths(35).withDayOfMonth(1); // 最近36个月
-                    break;
-                case "all":
-                    // 找到最早的对账日期
-                    Optional<LocalDate> earliestDate = allSnapshots.stream()
-                            .map(ReconciliationSnapshot::getReconciliationDate)
-                            .min(Comparator.naturalOrder());
-                    startDate = earliestDate.orElse(endDate).withDayOfMonth(1);
-                    break;
-                default:
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
-            }
-        } else {
-            // 没有快照记录，从存款表获取日期范围
-            List<Deposit> allDeposits = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-            if (allDeposits.isEmpty()) {
-                return new TrendStatisticsResponse(period, new ArrayList<>());
-            }
-            
-            switch (period) {
-                case "6m":
-                    startDate = endDate.minusMonths(5).withDayOfMonth(1);
-                    break;
-                case "1y":
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
-                    break;
-                case "3y":
-                    startDate = endDate.minusMonths(35).withDayOfMonth(1);
-                    break;
-                case "all":
-                    Optional<LocalDate> earliestDate = allDeposits.stream()
-                            .map(Deposit::getReconciliationDate)
-                            .min(Comparator.naturalOrder());
-                    startDate = earliestDate.orElse(endDate).withDayOfMonth(1);
-                    break;
-                default:
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
+    static TrendStatisticsResponse trendStatistics(StatisticsData data, String period) {
+        return trendStatistics(data.series(), data.today(), period);
+    }
+    
+    /**
+     * 按余额序列构建趋势响应，没有快照的月份沿用前一个月的值，只有该月有快照时显示该月快照的备注
+     */
+    static TrendStatisticsResponse trendStatistics(BalanceSeries series, LocalDate today, String period) {
+        LocalDate startDate = periodStartDate(period, today, Optional.of(series.date(0)));
+        List<String> allMonths = monthsBetween(startDate, today);
+        int fromMonth = BalanceSeries.monthKey(startDate);
+        int[] monthEnds = new int[allMonths.size()];
+        series.monthEnds(fromMonth, monthEnds);
+        
+        List<TrendStatisticsResponse.TrendDataItem> items = new ArrayList<>(allMonths.size());
+        for (int k = 0; k < monthEnds.length; k++) {
+            int index = monthEnds[k];
+            BigDecimal amount = index < 0 ? BigDecimal.ZERO : BigDecimal.valueOf(series.totalCents(index), 2);
+            // 只有该月有快照时显示该月快照的备注
+            List<String> notes = new ArrayList<>();
+            if (index >= 0 && series.monthKey(index) == fromMonth + k) {
+                int first = index;
+                while (first > 0 && series.monthKey(first - 1) == fromMonth + k) {
+                    first--;
+                }
+                for (int i = first; i <= index; i++) {
+                    if (series.note(i) != null) {
+                        notes.add(series.date(i) + ": " + series.note(i));
+                    }
+                }
             }
+            items.add(new TrendStatisticsResponse.TrendDataItem(allMonths.get(k), amount, notes));
         }
-        
-        // 获取每个月的最后一次对账日期
-        Map<String, LocalDate> monthlyLastDates;
-        if (hasSnapshots) {
-            // 从快照表获取
-            monthlyLastDates = allSnapshots.stream()
-                    .filter(s -> !s.getReconciliationDate().isBefore(startDate))
-                    .collect(Collectors.groupingBy(
-                        s -> s.getReconciliationDate().format(DateTimeFormatter.ofPattern("yyyy-MM")),
-                        Collectors.collectingAndThen(
-                            Collectors.toList(),
-                            list -> list.stream()
-                                    .map(ReconciliationSnapshot::getReconciliationDate)
-                                    .max(Comparator.naturalOrder())
-                                    .orElse(null)
-                        )
-                    ));
-        } else {
-            // 从存款表获取（兼容历史数据）
-            List<Deposit> depositsForDates = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-            monthlyLastDates = depositsForDates.stream()
-                    .filter(d -> !d.getReconciliationDate().isBefore(startDate))
-                    .collect(Collectors.groupingBy(
-                        d -> d.getReconciliationDate().format(DateTimeFormatter.ofPattern("yyyy-MM")),
-                        Collectors.collectingAndThen(
-                            Collectors.toList(),
-                            list -> list.stream()
-                                    .map(Deposit::getReconciliationDate)
-                                    .max(Comparator.naturalOrder())
-                                    .orElse(null)
-                        )
-                    ));
+        return new TrendStatisticsResponse(period, items);
+    }
+    
+    /**
+     * 账户趋势统计（从一次加载的数据计算）
+     */
+    static AccountTrendStatisticsResponse accountTrendStatistics(StatisticsData data, String period) {
+        return accountTrendStatistics(data.series(), data.today(), data.accounts(), period);
+    }
+    
+    /**
+     * 按余额序列构建账户趋势响应，没有快照的月份沿用前一个月的值，快照中没有合计的账户为0
+     */
+    static AccountTrendStatisticsResponse accountTrendStatistics(BalanceSeries series, LocalDate today,
+                                                                 List<Account> accounts, String period) {
+        LocalDate startDate = periodStartDate(period, today, Optional.of(series.date(0)));
+        List<String> allMonths = monthsBetween(startDate, today);
+        if (accounts.isEmpty()) {
+            return new AccountTrendStatisticsResponse(period, allMonths, new ArrayList<>());
         }
+        int[] monthEnds = new int[allMonths.size()];
+        series.monthEnds(BalanceSeries.monthKey(startDate), monthEnds);
         
-        // 生成所有月份列表
-        List<String> allMonths = new ArrayList<>();
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            allMonths.add(current.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-            current = current.plusMonths(1);
+        List<AccountTrendStatisticsResponse.AccountSeries> accountSeries = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            int slot = series.slotOf(account.getId());
+            List<BigDecimal> amounts = new ArrayList<>(monthEnds.length);
+            for (int index : monthEnds) {
+                long cents = index < 0 || slot < 0 ? BalanceSeries.ABSENT : series.accountCents(slot, index);
+                amounts.add(cents == BalanceSeries.ABSENT ? BigDecimal.ZERO : BigDecimal.valueOf(cents, 2));
+            }
+            accountSeries.add(new AccountTrendStatisticsResponse.AccountSeries(account.getId(), account.getName(), amounts));
         }
+        return new AccountTrendStatisticsResponse(period, allMonths, accountSeries);
+    }
+    
+    /**
+     * 年度统计（从余额序列计算）
+     */
+    static YearlyStatisticsResponse yearlyStatistics(StatisticsData data) {
+        return buildYearlyResponse(data.series());
+    }
+    
+    /**
+     * 到期统计（从一次加载的数据计算，结果与 getMaturityStatistics 相同）
+     */
+    static MaturityStatisticsResponse maturityStatistics(StatisticsData data) {
+        return buildMaturityResponse(data.latestDeposits(), accountNames(data.accounts()), data.today());
+    }
+    
+    private static Map<Long, String> accountNames(List<Account> accounts) {
+        return accounts.stream().collect(Collectors.toMap(Account::getId, Account::getName));
+    }
+    
+    /**
+     * 趋势统计
+     */
+    public TrendStatisticsResponse getTrendStatistics(Long userId, String period) {
+        BalanceSeries series = loadBalanceSeries(userId);
+        if (series.isEmpty()) {
+            // 没有快照记录，从存款表计算（兼容历史数据）
+            return getTrendStatisticsFromDeposits(userId, period);
+        }
+        return trendStatistics(series, LocalDate.now(), period);
+    }
+
+    /**
+     * 账户趋势统计（堆叠面积图）
+     */
+    public AccountTrendStatisticsResponse getAccountTrendStatistics(Long userId, String period) {
+        BalanceSeries series = loadBalanceSeries(userId);
+        if (series.isEmpty()) {
+            // 没有快照记录，从存款表计算（兼容历史数据）
+            return getAccountTrendStatisticsFromDeposits(userId, period);
+        }
+        return accountTrendStatistics(series, LocalDate.now(), accountRepository.findByUserIdOrderByCreatedAtDesc(userId), period);
+    }
+    
+    /**
+     * 没有快照记录时的按月统计：取该月（或之前最近）一次对账日期的账户合计
+     */
+    private MonthlyStatisticsResponse getMonthlyStatisticsFromDeposits(Long userId, String month, LocalDate monthStart) {
+        LocalDate monthEnd = monthStart.plusMonths(1).minusDays(1);
         
-        // 获取每个月的总额和备注
-        List<TrendStatisticsResponse.TrendDataItem> data = new ArrayList<>();
-        BigDecimal lastAmount = BigDecimal.ZERO; // 用于存储前一个月的值
+        // 该月最后一次对账日期，该月没有记录时向前查找最近的日期
+        Optional<LocalDate> targetDate = accountTotalRepository.findLatestDateOnOrBefore(userId, monthEnd);
+        if (targetDate.isEmpty()) {
+            // 完全找不到记录，返回空数据
+            return new MonthlyStatisticsResponse(month, BigDecimal.ZERO, new ArrayList<>());
+        }
         
-        // 按月份分组获取该月的所有快照（用于收集备注）
-        Map<String, List<ReconciliationSnapshot>> monthlySnapshots;
-        if (hasSnapshots) {
-            monthlySnapshots = allSnapshots.stream()
-                    .filter(s -> !s.getReconciliationDate().isBefore(startDate))
-                    .collect(Collectors.groupingBy(
-                        s -> s.getReconciliationDate().format(DateTimeFormatter.ofPattern("yyyy-MM"))
-                    ));
-        } else {
-            monthlySnapshots = new java.util.HashMap<>();
+        List<SnapshotAccountTotalRepository.AccountTotal> totals = accountTotalRepository.findByUserIdAndDate(userId, targetDate.get());
+        return buildMonthlyResponse(month, sumAmounts(totals), totals);
+    }
+    
+    /**
+     * 没有快照记录时的趋势统计：每月取最后一次对账日期的合计，没有备注
+     */
+    private TrendStatisticsResponse getTrendStatisticsFromDeposits(Long userId, String period) {
+        Optional<String> earliestDate = accountTotalRepository.findEarliestDate(userId);
+        if (earliestDate.isEmpty()) {
+            return new TrendStatisticsResponse(period, new ArrayList<>());
         }
         
-        for (String month : allMonths) {
-            LocalDate lastDate = monthlyLastDates.get(month);
-            BigDecimal monthAmount;
-            List<String> notes = new ArrayList<>();
-            
-            if (lastDate != null) {
-                if (hasSnapshots) {
-                    // 优先从快照表获取总金额
-                    Optional<ReconciliationSnapshot> lastSnapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, lastDate);
-                    monthAmount = lastSnapshot
-                            .map(ReconciliationSnapshot::getTotalAmount)
-                            .orElseGet(() -> {
-                                // 没有快照记录，实时计算
-                                List<Deposit> monthDeposits = depositRepository.findByUserIdAndReconciliationDate(userId, lastDate);
-                                return monthDeposits.stream()
-                                        .map(Deposit::getAmount)
-                                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                            });
-                    
-                    // 收集该月的快照备注
-                    // 如果该月有任何快照有备注，则收集该月所有有备注的快照备注
-                    List<ReconciliationSnapshot> monthSnapshots = monthlySnapshots.getOrDefault(month, new ArrayList<>());
-                    boolean hasAnyNote = monthSnapshots.stream()
-                            .anyMatch(s -> s.getNote() != null && !s.getNote().trim().isEmpty());
-                    if (hasAnyNote) {
-                        // 该月有快照有备注，收集该月所有有备注的快照备注
-                        notes = monthSnapshots.stream()
-                                .filter(s -> s.getNote() != null && !s.getNote().trim().isEmpty())
-                                .sorted(Comparator.comparing(ReconciliationSnapshot::getReconciliationDate))
-                                .map(s -> s.getReconciliationDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) + ": " + s.getNote())
-                                .collect(Collectors.toList());
-                    }
-                    // 如果该月没有任何快照有备注，notes 保持为空列表（不显示任何备注）
-                } else {
-                    // 从存款表实时计算总金额（兼容历史数据，没有快照备注）
-                    List<Deposit> monthDeposits = depositRepository.findByUserIdAndReconciliationDate(userId, lastDate);
-                    monthAmount = monthDeposits.stream()
-                            .map(Deposit::getAmount)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    // notes 保持为空列表（没有快照记录）
-                }
-                lastAmount = monthAmount; // 更新前一个月的值
-            } else {
-                // 该月没有记录，使用前一个月的值
-                monthAmount = lastAmount;
-                // notes 保持为空列表（没有快照记录）
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = periodStartDate(period, endDate, earliestDate.map(LocalDate::parse));
+        Map<String, List<SnapshotAccountTotalRepository.AccountTotal>> monthlyTotals = monthlyLastDateTotals(userId, startDate);
+        
+        List<TrendStatisticsResponse.TrendDataItem> data = new ArrayList<>();
+        BigDecimal lastAmount = BigDecimal.ZERO;
+        for (String month : monthsBetween(startDate, endDate)) {
+            List<SnapshotAccountTotalRepository.AccountTotal> totals = monthlyTotals.get(month);
+            if (totals != null) {
+                lastAmount = sumAmounts(totals);
             }
-            
-            data.add(new TrendStatisticsResponse.TrendDataItem(month, monthAmount, notes));
+            data.add(new TrendStatisticsResponse.TrendDataItem(month, lastAmount, new ArrayList<>()));
         }
         
         return new TrendStatisticsResponse(period, data);
     }
-
+    
     /**
-     * 账户趋势统计（堆叠面积图）
+     * 没有快照记录时的账户趋势统计
      */
-    public AccountTrendStatisticsResponse getAccountTrendStatistics(Long userId, String period) {
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-        boolean hasSnapshots = !allSnapshots.isEmpty();
-
-        LocalDate endDate = LocalDate.now();
-        LocalDate startDate;
-
-        if (hasSnapshots) {
-            switch (period) {
-                case "6m":
-                    startDate = endDate.minusMonths(5).withDayOfMonth(1);
-                    break;
-                case "1y":
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
-                    break;
-                case "3y":
-                    startDate = endDate.minusMonths(35).withDayOfMonth(1);
-                    break;
-                case "all":
-                    Optional<LocalDate> earliestDate = allSnapshots.stream()
-                            .map(ReconciliationSnapshot::getReconciliationDate)
-                            .min(Comparator.naturalOrder());
-                    startDate = earliestDate.orElse(endDate).withDayOfMonth(1);
-                    break;
-                default:
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
-            }
-        } else {
-            List<Deposit> allDeposits = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-            if (allDeposits.isEmpty()) {
-                return new AccountTrendStatisticsResponse(period, new ArrayList<>(), new ArrayList<>());
-            }
-
-            switch (period) {
-                case "6m":
-                    startDate = endDate.minusMonths(5).withDayOfMonth(1);
-                    break;
-                case "1y":
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
-                    break;
-                case "3y":
-                    startDate = endDate.minusMonths(35).withDayOfMonth(1);
-                    break;
-                case "all":
-                    Optional<LocalDate> earliestDate = allDeposits.stream()
-                            .map(Deposit::getReconciliationDate)
-                            .min(Comparator.naturalOrder());
-                    startDate = earliestDate.orElse(endDate).withDayOfMonth(1);
-                    break;
-                default:
-                    startDate = endDate.minusMonths(11).withDayOfMonth(1);
-            }
-        }
-
-        Map<String, LocalDate> monthlyLastDates;
-        if (hasSnapshots) {
-            monthlyLastDates = allSnapshots.stream()
-                    .filter(s -> !s.getReconciliationDate().isBefore(startDate))
-                    .collect(Collectors.groupingBy(
-                            s -> s.getReconciliationDate().format(DateTimeFormatter.ofPattern("yyyy-MM")),
-                            Collectors.collectingAndThen(
-                                    Collectors.toList(),
-                                    list -> list.stream()
-                                            .map(ReconciliationSnapshot::getReconciliationDate)
-                                            .max(Comparator.naturalOrder())
-                                            .orElse(null)
-                            )
-                    ));
-        } else {
-            List<Deposit> depositsForDates = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-            monthlyLastDates = depositsForDates.stream()
-                    .filter(d -> !d.getReconciliationDate().isBefore(startDate))
-                    .collect(Collectors.groupingBy(
-                            d -> d.getReconciliationDate().format(DateTimeFormatter.ofPattern("yyyy-MM")),
-                            Collectors.collectingAndThen(
-                                    Collectors.toList(),
-                                    list -> list.stream()
-                                            .map(Deposit::getReconciliationDate)
-                                            .max(Comparator.naturalOrder())
-                                            .orElse(null)
-                            )
-                    ));
+    private AccountTrendStatisticsResponse getAccountTrendStatisticsFromDeposits(Long userId, String period) {
+        Optional<String> earliestDate = accountTotalRepository.findEarliestDate(userId);
+        if (earliestDate.isEmpty()) {
+            return new AccountTrendStatisticsResponse(period, new ArrayList<>(), new ArrayList<>());
         }
 
-        List<String> allMonths = new ArrayList<>();
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            allMonths.add(current.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-            current = current.plusMonths(1);
-        }
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = periodStartDate(period, endDate, earliestDate.map(LocalDate::parse));
+        List<String> allMonths = monthsBetween(startDate, endDate);
 
         List<Account> accounts = accountRepository.findByUserIdOrderByCreatedAtDesc(userId);
         if (accounts.isEmpty()) {
             return new AccountTrendStatisticsResponse(period, allMonths, new ArrayList<>());
         }
 
+        Map<String, Map<Long, BigDecimal>> monthlySums = new HashMap<>();
+        monthlyLastDateTotals(userId, startDate).forEach((month, totals) -> monthlySums.put(month, totals.stream()
+                .collect(Collectors.toMap(SnapshotAccountTotalRepository.AccountTotal::getAccountId,
+                        SnapshotAccountTotalRepository.AccountTotal::getAmount))));
+        return buildAccountTrendResponse(period, allMonths, accounts, monthlySums);
+    }
+    
+    /**
+     * 按账户合计构建月度统计响应（账户按ID排序，分布顺序稳定）
+     */
+    static MonthlyStatisticsResponse buildMonthlyResponse(String month, BigDecimal totalAmount,
+                                                           List<SnapshotAccountTotalRepository.AccountTotal> accountTotals) {
+        List<MonthlyStatisticsResponse.AccountDistributionItem> distribution = new ArrayList<>();
+        for (SnapshotAccountTotalRepository.AccountTotal accountTotal : accountTotals) {
+            distribution.add(distributionItem(accountTotal.getAccountId(), accountTotal.getAccountName(),
+                    accountTotal.getAmount(), totalAmount));
+        }
+        
+        return new MonthlyStatisticsResponse(month, totalAmount, distribution);
+    }
+    
+    /**
+     * 账户分布中的一项（账户已不存在时名称为"未知账户"）
+     */
+    private static MonthlyStatisticsResponse.AccountDistributionItem distributionItem(Long accountId, String accountName,
+                                                                                     BigDecimal accountAmount, BigDecimal totalAmount) {
+        // 计算百分比（保留2位小数）
+        Double percentage = totalAmount.compareTo(BigDecimal.ZERO) > 0
+                ? accountAmount.divide(totalAmount, 4, RoundingMode.HALF_UP)
+                        .multiply(new BigDecimal("100"))
+                        .setScale(2, RoundingMode.HALF_UP)
+                        .doubleValue()
+                : 0.0;
+        
+        return new MonthlyStatisticsResponse.AccountDistributionItem(
+            accountId,
+            accountName != null ? accountName : "未知账户",
+            accountAmount,
+            percentage
+        );
+    }
+    
+    /**
+     * 按每月的账户金额构建账户趋势响应，没有记录的月份沿用前一个月的值
+     */
+    static AccountTrendStatisticsResponse buildAccountTrendResponse(String period, List<String> allMonths,
+                                                                     List<Account> accounts,
+                                                                     Map<String, Map<Long, BigDecimal>> monthlySums) {
         Map<Long, List<BigDecimal>> accountMonthlyAmounts = new LinkedHashMap<>();
         Map<Long, BigDecimal> lastAmounts = new HashMap<>();
         for (Account account : accounts) {
@@ -413,25 +356,12 @@ public class StatisticsService {
         }
 
         for (String month : allMonths) {
-            LocalDate lastDate = monthlyLastDates.get(month);
-            if (lastDate != null) {
-                List<Deposit> monthDeposits = depositRepository.findByUserIdAndReconciliationDate(userId, lastDate);
-                Map<Long, BigDecimal> monthSums = monthDeposits.stream()
-                        .collect(Collectors.groupingBy(
-                                Deposit::getAccountId,
-                                Collectors.mapping(Deposit::getAmount,
-                                        Collectors.reducing(BigDecimal.ZERO, BigDecimal::add))
-                        ));
-
-                for (Account account : accounts) {
-                    BigDecimal amount = monthSums.getOrDefault(account.getId(), BigDecimal.ZERO);
-                    lastAmounts.put(account.getId(), amount);
-                    accountMonthlyAmounts.get(account.getId()).add(amount);
-                }
-            } else {
-                for (Account account : accounts) {
-                    accountMonthlyAmounts.get(account.getId()).add(lastAmounts.get(account.getId()));
+            Map<Long, BigDecimal> monthSums = monthlySums.get(month);
+            for (Account account : accounts) {
+                if (monthSums != null) {
+                    lastAmounts.put(account.getId(), monthSums.getOrDefault(account.getId(), BigDecimal.ZERO));
                 }
+                accountMonthlyAmounts.get(account.getId()).add(lastAmounts.get(account.getId()));
             }
         }
 
@@ -448,135 +378,77 @@ public class StatisticsService {
     }
     
     /**
-     * 年度统计：统计每年的资产变化增值
+     * 统计周期的起始日期（月初）
      */
-    public YearlyStatisticsResponse getYearlyStatistics(Long userId) {
-        // 获取所有快照记录，按日期从早到晚排序
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-        if (allSnapshots.isEmpty()) {
-            // 没有快照记录，返回空列表
-            return new YearlyStatisticsResponse(new ArrayList<>());
+    static LocalDate periodStartDate(String period, LocalDate endDate, Optional<LocalDate> earliestDate) {
+        switch (period) {
+            case "6m":
+                return endDate.minusMonths(5).withDayOfMonth(1); // 最近6个月（包含当前月）
+            case "1y":
+                return endDate.minusMonths(11).withDayOfMonth(1); // 最近12个月
+            case "3y":
+                return endDate.minusMonths(35).withDayOfMonth(1); // 最近36个月
+            case "all":
+                return earliestDate.orElse(endDate).withDayOfMonth(1); // 从最早的对账日期开始
+            default:
+                return endDate.minusMonths(11).withDayOfMonth(1);
         }
-        
-        // 按日期从早到晚排序
-        allSnapshots.sort(Comparator.comparing(ReconciliationSnapshot::getReconciliationDate));
-        
-        // 找到第一年（最早的快照所在的年份）
-        LocalDate earliestDate = allSnapshots.get(0).getReconciliationDate();
-        int firstYear = earliestDate.getYear();
-        
-        // 找到最晚的日期，确定年份范围
-        LocalDate latestDate = allSnapshots.get(allSnapshots.size() - 1).getReconciliationDate();
-        int lastYear = latestDate.getYear();
-        
-        // 按年份分组，获取每年的第一次和最后一次快照
-        Map<Integer, List<ReconciliationSnapshot>> snapshotsByYear = allSnapshots.stream()
-                .collect(Collectors.groupingBy(s -> s.getReconciliationDate().getYear()));
-        
-        // 生成所有年份列表（从第一年到最后一年）
-        List<Integer> allYears = new ArrayList<>();
-        for (int year = firstYear; year <= lastYear; year++) {
-            allYears.add(year);
-        }
-        
-        // 计算每年的增值
-        List<YearlyStatisticsResponse.YearlyDataItem> data = new ArrayList<>();
-        BigDecimal previousYearLastAmount = null; // 上一年最后一次快照的总额
-        
-        for (int year : allYears) {
-            List<ReconciliationSnapshot> yearSnapshots = snapshotsByYear.get(year);
-            BigDecimal increase;
-            
-            if (yearSnapshots == null || yearSnapshots.isEmpty()) {
-                // 该年没有快照记录，增值为0
-                increase = BigDecimal.ZERO;
-                // lastYearEndAmount 保持不变，继续用于后续年份的计算
-            } else {
-                // 获取该年的第一次和最后一次快照
-                ReconciliationSnapshot firstSnapshot = yearSnapshots.get(0);
-                ReconciliationSnapshot lastSnapshot = yearSnapshots.get(yearSnapshots.size() - 1);
-                
-                if (year == firstYear) {
-                    // 第一年：最后一次 - 第一次
-                    // 特殊情况：如果第一年只有一次快照，增值 = totalAmount（视为从0开始）
-                    if (firstSnapshot.getId().equals(lastSnapshot.getId())) {
-                        increase = lastSnapshot.getTotalAmount();
-                    } else {
-                        increase = lastSnapshot.getTotalAmount().subtract(firstSnapshot.getTotalAmount());
-                    }
-                } else {
-                    // 第二年开始：该年最后一次 - 上一年最后一次
-                    if (previousYearLastAmount != null) {
-                        // 上一年有快照（或更早的年份有快照），直接用上一年最后一次
-                        increase = lastSnapshot.getTotalAmount().subtract(previousYearLastAmount);
-                    } else {
-                        // 上一年没有快照，需要查找前一年（或更早）的最后一次快照
-                        Optional<ReconciliationSnapshot> previousYearLastSnapshot = findLastSnapshotBeforeYear(userId, year, allSnapshots);
-                        if (previousYearLastSnapshot.isPresent()) {
-                            BigDecimal previousYearAmount = previousYearLastSnapshot.get().getTotalAmount();
-                            increase = lastSnapshot.getTotalAmount().subtract(previousYearAmount);
-                            previousYearLastAmount = previousYearAmount; // 更新上一年最后一次
-                        } else {
-                            // 找不到前一年的快照（这种情况理论上不应该发生，因为第一年一定有快照）
-                            // 使用该年的第一次快照作为起始值（相当于这一年从0开始）
-                            increase = lastSnapshot.getTotalAmount().subtract(firstSnapshot.getTotalAmount());
-                        }
-                    }
-                }
-                
-                // 更新上一年最后一次快照的总额（用于下一年计算）
-                previousYearLastAmount = lastSnapshot.getTotalAmount();
-            }
-            
-            data.add(new YearlyStatisticsResponse.YearlyDataItem(
-                String.valueOf(year),
-                increase
-            ));
+    }
+    
+    /**
+     * 生成 [startDate, endDate] 内的所有月份（yyyy-MM）
+     */
+    static List<String> monthsBetween(LocalDate startDate, LocalDate endDate) {
+        List<String> allMonths = new ArrayList<>();
+        LocalDate current = startDate;
+        while (!current.isAfter(endDate)) {
+            allMonths.add(current.format(MONTH_FORMAT));
+            current = current.plusMonths(1);
         }
-        
-        return new YearlyStatisticsResponse(data);
+        return allMonths;
     }
     
     /**
-     * 查找指定年份之前最近的一次快照（用于计算跨年增值）
+     * startDate 及之后每个月最后一次对账日期的账户合计（一次查询），按月份索引
      */
-    private Optional<ReconciliationSnapshot> findLastSnapshotBeforeYear(Long userId, int year, List<ReconciliationSnapshot> allSnapshots) {
-        LocalDate yearStart = LocalDate.of(year, 1, 1);
-        return allSnapshots.stream()
-                .filter(s -> s.getReconciliationDate().isBefore(yearStart))
-                .max(Comparator.comparing(ReconciliationSnapshot::getReconciliationDate));
+    private Map<String, List<SnapshotAccountTotalRepository.AccountTotal>> monthlyLastDateTotals(Long userId, LocalDate startDate) {
+        return accountTotalRepository.findMonthEndsFromDate(userId, startDate).stream()
+                .collect(Collectors.groupingBy(total -> total.getReconciliationDate().substring(0, 7)));
+    }
+    
+    private BigDecimal sumAmounts(List<SnapshotAccountTotalRepository.AccountTotal> totals) {
+        return totals.stream()
+                .map(SnapshotAccountTotalRepository.AccountTotal::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
     }
     
     /**
-     * 向前查找最近的对账日期
+     * 年度统计：统计每年的资产变化增值
      */
-    private LocalDate findLatestDateBefore(Long userId, LocalDate beforeDate) {
-        // 优先从快照表获取，如果没有则从存款表获取（兼容历史数据）
-        List<ReconciliationSnapshot> allSnapshots = snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId);
-        List<LocalDate> uniqueDates;
-        
-        if (!allSnapshots.isEmpty()) {
-            // 从快照表获取日期
-            uniqueDates = allSnapshots.stream()
-                    .map(ReconciliationSnapshot::getReconciliationDate)
-                    .distinct()
-                    .sorted(Comparator.reverseOrder())
-                    .collect(Collectors.toList());
-        } else {
-            // 从存款表获取日期（兼容历史数据）
-            uniqueDates = depositRepository.findByUserIdOrderByReconciliationDateDesc(userId)
-                    .stream()
-                    .map(Deposit::getReconciliationDate)
-                    .distinct()
-                    .sorted(Comparator.reverseOrder())
-                    .collect(Collectors.toList());
+    public YearlyStatisticsResponse getYearlyStatistics(Long userId) {
+        BalanceSeries series = loadBalanceSeries(userId);
+        if (series.isEmpty()) {
+            // 没有快照记录，返回空列表
+            return new YearlyStatisticsResponse(new ArrayList<>());
         }
-        
-        // 找到第一个小于beforeDate的日期
-        return uniqueDates.stream()
-                .filter(date -> date.isBefore(beforeDate))
-                .findFirst()
-                .orElse(null);
+        return buildYearlyResponse(series);
+    }
+    
+    /**
+     * 按余额序列构建年度统计响应
+     * 第一年：最后一次 - 第一次（只有一次快照时视为从0开始，增值 = 该次总金额）；
+     * 之后每年：该年最后一次 - 之前最近一年的最后一次；没有快照的年份增值为0
+     */
+    static YearlyStatisticsResponse buildYearlyResponse(BalanceSeries series) {
+        long[] increases = series.yearlyIncreaseCents();
+        List<YearlyStatisticsResponse.YearlyDataItem> data = new ArrayList<>(increases.length);
+        for (int i = 0; i < increases.length; i++) {
+            data.add(new YearlyStatisticsResponse.YearlyDataItem(
+                String.valueOf(series.firstYear() + i),
+                increases[i] == BalanceSeries.ABSENT ? BigDecimal.ZERO : BigDecimal.valueOf(increases[i], 2)
+            ));
+        }
+        return new YearlyStatisticsResponse(data);
     }
     
     /**
@@ -584,7 +456,6 @@ public class StatisticsService {
      */
     public MaturityStatisticsResponse getMaturityStatistics(Long userId) {
         LocalDate now = LocalDate.now();
-        LocalDate oneYearLater = now.plusDays(365);
         
         // 获取最近一次快照日期
         LocalDate latestSnapshotDate = getLatestSnapshotDate(userId);
@@ -594,13 +465,21 @@ public class StatisticsService {
         }
         
         // 获取最近一次快照的所有存款记录
-        List<Deposit> deposits = depositRepository.findByUserIdAndReconciliationDate(userId, latestSnapshotDate);
+        List<Deposit> deposits = depositStore.findByUserIdAndDate(userId, latestSnapshotDate);
         
         // 获取相关账户信息
         Set<Long> accountIds = deposits.stream().map(Deposit::getAccountId).collect(Collectors.toSet());
         List<Account> accounts = accountRepository.findAllById(accountIds);
         Map<Long, String> accountNameMap = accounts.stream()
                 .collect(Collectors.toMap(Account::getId, Account::getName));
+        return buildMaturityResponse(deposits, accountNameMap, now);
+    }
+    
+    /**
+     * 从快照的存款记录中筛选 1 年内到期的定期存款
+     */
+    static MaturityStatisticsResponse buildMaturityResponse(List<Deposit> deposits, Map<Long, String> accountNameMap, LocalDate now) {
+        LocalDate oneYearLater = now.plusDays(365);
         
         // 筛选定期存款并计算到期信息
         List<MaturityStatisticsResponse.MaturityDataItem> maturityData = deposits.stream()
@@ -638,10 +517,6 @@ public class StatisticsService {
      * 获取最近一次快照日期
      */
     private LocalDate getLatestSnapshotDate(Long userId) {
-        return snapshotRepository.findByUserIdOrderByReconciliationDateDesc(userId)
-                .stream()
-                .findFirst()
-                .map(ReconciliationSnapshot::getReconciliationDate)
-                .orElse(null);
+        return snapshotRepository.findMaxReconciliationDateByUserId(userId).orElse(null);
     }
 }
@@ -0,0 +1,340 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.DepositVersion;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.DepositVersionRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * 时态存储：存款记录按版本保存有效区间 [validFromDate, validToDate)
+ *
+ * 区间两端始终是对账快照日期（validToDate 为空表示一直有效），因此：
+ * - 新建快照时，上一次快照有效的版本在新日期自然有效，不需要写入任何存款记录
+ * - 修改、删除某个日期的记录时，把版本在该日期前后拆开（前段、后段保留原内容），
+ *   只改动该日期到下一个快照日期之间的部分，其他日期看到的内容不变
+ *
+ * 返回的 Deposit 不是受管理的实体：ID 是版本 ID，reconciliationDate 是查询的日期。
+ */
+@Component
+@ConditionalOnProperty(name = "deposit-storage.mode", havingValue = "temporal")
+public class TemporalDepositStore implements DepositStore {
+
+    @Autowired
+    private DepositVersionRepository versionRepository;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private SnapshotDateIndex snapshotDateIndex;
+
+    @Override
+    public List<Deposit> findByUserIdAndDate(Long userId, LocalDate date) {
+        return toDeposits(versionRepository.findValidAt(userId, date), date);
+    }
+
+    @Override
+    public List<DepositRepository.ReconciliationRow> findReconciliationRows(Long userId, LocalDate date) {
+        return versionRepository.findReconciliationRows(userId, date.toString());
+    }
+
+    @Override
+    public List<Deposit> findByAccountIdAndDate(Long accountId, LocalDate date) {
+        return toDeposits(versionRepository.findValidAtByAccountId(accountId, date), date);
+    }
+
+    /**
+     * 把每个版本展开到其有效区间内的所有快照日期
+     */
+    @Override
+    public List<Deposit> findByUserId(Long userId) {
+        NavigableSet<LocalDate> snapshotDates = snapshotDates(userId);
+        List<Deposit> deposits = new ArrayList<>();
+        for (DepositVersion version : versionRepository.findByUserIdOrderByValidFromDate(userId)) {
+            for (LocalDate date : datesInRange(snapshotDates, version)) {
+                deposits.add(toDeposit(version, date));
+            }
+        }
+        deposits.sort(Comparator.comparing(Deposit::getReconciliationDate).reversed()
+                .thenComparing(Deposit::getId));
+        return deposits;
+    }
+
+    @Override
+    public long countByUserIdAndDate(Long userId, LocalDate date) {
+        return versionRepository.countValidAt(userId, date.toString());
+    }
+
+    @Override
+    public BigDecimal sumAmountByUserIdAndDate(Long userId, LocalDate date) {
+        return BigDecimal.valueOf(versionRepository.sumAmountCentsValidAt(userId, date.toString()), 2);
+    }
+
+    @Override
+    public boolean existsByAccountId(Long accountId) {
+        return versionRepository.existsByAccountId(accountId);
+    }
+
+    @Override
+    public Optional<Deposit> findById(Long id, Long userId, LocalDate date) {
+        Optional<DepositVersion> versionOpt = versionRepository.findByIdAndUserId(id, userId);
+        if (versionOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        DepositVersion version = versionOpt.get();
+        if (date != null) {
+            if (!isValidAt(version, date) || !snapshotRepository.existsByUserIdAndReconciliationDate(userId, date)) {
+                return Optional.empty();
+            }
+            return Optional.of(toDeposit(version, date));
+        }
+
+        // 未指定日期：只有版本恰好属于一个快照日期时才能确定
+        NavigableSet<LocalDate> dates = datesInRange(snapshotDates(userId), version);
+        if (dates.isEmpty()) {
+            return Optional.empty();
+        }
+        if (dates.size() > 1) {
+            throw new RuntimeException("该存款记录跨多个对账日期，请指定对账日期");
+        }
+        return Optional.of(toDeposit(version, dates.first()));
+    }
+
+    /**
+     * 新版本从该日期开始，到下一个快照日期为止（没有下一个快照时一直有效）
+     */
+    @Override
+    public Deposit insert(Deposit deposit) {
+        return insertAll(List.of(deposit)).get(0);
+    }
+
+    @Override
+    public List<Deposit> insertAll(List<Deposit> deposits) {
+        Map<LocalDate, Optional<LocalDate>> nextDates = new HashMap<>();
+        List<DepositVersion> versions = new ArrayList<>(deposits.size());
+        for (Deposit deposit : deposits) {
+            LocalDate date = deposit.getReconciliationDate();
+            Optional<LocalDate> next = nextDates.computeIfAbsent(date,
+                    d -> nextSnapshotDate(deposit.getUserId(), d));
+            DepositVersion version = new DepositVersion();
+            version.setUserId(deposit.getUserId());
+            version.setAccountId(deposit.getAccountId());
+            copyContent(deposit, version);
+            version.setValidFromDate(date);
+            version.setValidToDate(next.orElse(null));
+            versions.add(version);
+        }
+        versionRepository.saveAll(versions);
+
+        List<Deposit> result = new ArrayList<>(versions.size());
+        for (int i = 0; i < versions.size(); i++) {
+            result.add(toDeposit(versions.get(i), deposits.get(i).getReconciliationDate()));
+        }
+        return result;
+    }
+
+    /**
+     * 版本拆成三段：[validFrom, date) 保留原内容（新版本），[date, 下一个快照) 为新内容（沿用原 ID），
+     * [下一个快照, validTo) 保留原内容（新版本）
+     */
+    @Override
+    public Deposit update(Deposit deposit) {
+        LocalDate date = deposit.getReconciliationDate();
+        DepositVersion version = loadValidVersion(deposit);
+        LocalDate next = nextSnapshotDate(deposit.getUserId(), date).orElse(null);
+
+        List<DepositVersion> pieces = new ArrayList<>(2);
+        if (version.getValidFromDate().isBefore(date)) {
+            pieces.add(split(version, version.getValidFromDate(), date));
+        }
+        if (extendsPast(version, next)) {
+            pieces.add(split(version, next, version.getValidToDate()));
+            version.setValidToDate(next);
+        }
+        versionRepository.saveAll(pieces);
+
+        copyContent(deposit, version);
+        version.setValidFromDate(date);
+        version = versionRepository.save(version);
+        return toDeposit(version, date);
+    }
+
+    @Override
+    public void updateAll(Collection<Deposit> deposits) {
+        for (Deposit deposit : deposits) {
+            update(deposit);
+        }
+    }
+
+    /**
+     * 从版本的有效区间中去掉 [date, 下一个快照)
+     */
+    @Override
+    public void delete(Deposit deposit) {
+        LocalDate date = deposit.getReconciliationDate();
+        DepositVersion version = loadValidVersion(deposit);
+        LocalDate next = nextSnapshotDate(deposit.getUserId(), date).orElse(null);
+
+        boolean hasHead = version.getValidFromDate().isBefore(date);
+        boolean hasTail = extendsPast(version, next);
+        if (hasHead) {
+            if (hasTail) {
+                versionRepository.save(split(version, next, version.getValidToDate()));
+            }
+            version.setValidToDate(date);
+            versionRepository.save(version);
+        } else if (hasTail) {
+            version.setValidFromDate(next);
+            versionRepository.save(version);
+        } else {
+            versionRepository.delete(version);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Deposit> deposits) {
+        for (Deposit deposit : deposits) {
+            delete(deposit);
+        }
+    }
+
+    /**
+     * 已在目标日期有效的版本直接共享（新建快照时上一次快照的版本都属于这种情况，不产生写入），
+     * 其余版本按目标日期新增
+     */
+    @Override
+    public int copy(Long userId, LocalDate sourceDate, LocalDate targetDate) {
+        List<DepositVersion> sourceVersions = versionRepository.findValidAt(userId, sourceDate);
+        List<Deposit> toInsert = new ArrayList<>();
+        for (DepositVersion version : sourceVersions) {
+            if (!isValidAt(version, targetDate)) {
+                Deposit deposit = toDeposit(version, targetDate);
+                deposit.setId(null);
+                deposit.setCreatedAt(null);
+                deposit.setUpdatedAt(null);
+                toInsert.add(deposit);
+            }
+        }
+        if (!toInsert.isEmpty()) {
+            insertAll(toInsert);
+        }
+        return sourceVersions.size();
+    }
+
+    private DepositVersion loadValidVersion(Deposit deposit) {
+        DepositVersion version = versionRepository.findByIdAndUserId(deposit.getId(), deposit.getUserId())
+                .orElseThrow(() -> new RuntimeException("存款记录不存在"));
+        if (!isValidAt(version, deposit.getReconciliationDate())) {
+            throw new RuntimeException("存款记录不存在");
+        }
+        requireSnapshot(deposit.getUserId(), deposit.getReconciliationDate());
+        return version;
+    }
+
+    /**
+     * 版本区间的两端必须是快照日期，所以只能在已有快照的日期上写入
+     */
+    private void requireSnapshot(Long userId, LocalDate date) {
+        if (!snapshotRepository.existsByUserIdAndReconciliationDate(userId, date)) {
+            throw new RuntimeException("该日期没有对账快照");
+        }
+    }
+
+    private Optional<LocalDate> nextSnapshotDate(Long userId, LocalDate date) {
+        requireSnapshot(userId, date);
+        return Optional.ofNullable(snapshotDates(userId).higher(date));
+    }
+
+    /**
+     * 版本在下一个快照日期之后是否仍然有效
+     */
+    private boolean extendsPast(DepositVersion version, LocalDate next) {
+        return next != null && (version.getValidToDate() == null || version.getValidToDate().isAfter(next));
+    }
+
+    /**
+     * 复制版本的原内容，作为 [from, to) 区间的新版本
+     */
+    private DepositVersion split(DepositVersion version, LocalDate from, LocalDate to) {
+        DepositVersion piece = new DepositVersion();
+        piece.setUserId(version.getUserId());
+        piece.setAccountId(version.getAccountId());
+        piece.setDepositType(version.getDepositType());
+        piece.setDepositTime(version.getDepositTime());
+        piece.setAmount(version.getAmount());
+        piece.setInterestRate(version.getInterestRate());
+        piece.setTerm(version.getTerm());
+        piece.setNote(version.getNote());
+        piece.setValidFromDate(from);
+        piece.setValidToDate(to);
+        piece.setCreatedAt(version.getCreatedAt());
+        piece.setUpdatedAt(version.getUpdatedAt());
+        return piece;
+    }
+
+    private void copyContent(Deposit deposit, DepositVersion version) {
+        version.setAccountId(deposit.getAccountId());
+        version.setDepositType(deposit.getDepositType());
+        version.setDepositTime(deposit.getDepositTime());
+        version.setAmount(deposit.getAmount());
+        version.setInterestRate(deposit.getInterestRate());
+        version.setTerm(deposit.getTerm());
+        version.setNote(deposit.getNote());
+    }
+
+    private boolean isValidAt(DepositVersion version, LocalDate date) {
+        return !version.getValidFromDate().isAfter(date)
+                && (version.getValidToDate() == null || version.getValidToDate().isAfter(date));
+    }
+
+    /**
+     * 快照日期从索引读取（合并了当前事务中新增、删除的快照），不按次查询快照表
+     */
+    private NavigableSet<LocalDate> snapshotDates(Long userId) {
+        return snapshotDateIndex.snapshotDates(userId);
+    }
+
+    private NavigableSet<LocalDate> datesInRange(NavigableSet<LocalDate> snapshotDates, DepositVersion version) {
+        NavigableSet<LocalDate> tail = snapshotDates.tailSet(version.getValidFromDate(), true);
+        return version.getValidToDate() == null ? tail : tail.headSet(version.getValidToDate(), false);
+    }
+
+    private List<Deposit> toDeposits(List<DepositVersion> versions, LocalDate date) {
+        return versions.stream()
+                .map(version -> toDeposit(version, date))
+                .collect(Collectors.toList());
+    }
+
+    private Deposit toDeposit(DepositVersion version, LocalDate date) {
+        Deposit deposit = new Deposit();
+        deposit.setId(version.getId());
+        deposit.setUserId(version.getUserId());
+        deposit.setAccountId(version.getAccountId());
+        deposit.setDepositType(version.getDepositType());
+        deposit.setDepositTime(version.getDepositTime());
+        deposit.setAmount(version.getAmount());
+        deposit.setInterestRate(version.getInterestRate());
+        deposit.setTerm(version.getTerm());
+        deposit.setNote(version.getNote());
+        deposit.setReconciliationDate(date);
+        deposit.setCreatedAt(version.getCreatedAt());
+        deposit.setUpdatedAt(version.getUpdatedAt());
+        return deposit;
+    }
+}
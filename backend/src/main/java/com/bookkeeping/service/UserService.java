@@ -27,6 +27,7 @@ public class UserService {
     /**
      * 用户注册
      */
+    @QueuedWrite
     @Transactional
     public AuthResponse register(RegisterRequest request) {
         // 检查用户名是否已存在
@@ -58,6 +59,7 @@ public class UserService {
     /**
      * 用户登录
      */
+    @Transactional(readOnly = true)
     public AuthResponse login(LoginRequest request) {
         // 查找用户
         User user = userRepository.findByUsername(request.getUsername())
@@ -77,6 +79,7 @@ public class UserService {
     /**
      * 获取当前用户信息
      */
+    @Transactional(readOnly = true)
     public UserInfoResponse getCurrentUser(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
@@ -0,0 +1,45 @@
+-- V3__normalize_date_columns.sql
+-- 将历史遗留的时间戳格式日期（毫秒或秒）统一改写为 'YYYY-MM-DD' 文本，并补齐按日期查询所需的索引
+-- 日期统一后，仓库层的原生 SQL 可以直接使用 reconciliation_date = :date，命中 (user_id, reconciliation_date) 索引
+-- 本脚本所有语句均可重复执行，由 DatabaseMigrationRunner 在启动时自动执行
+
+-- 1. 存款表：对账日期
+UPDATE deposits
+SET reconciliation_date = date(
+        CASE WHEN CAST(reconciliation_date AS INTEGER) < 10000000000
+             THEN CAST(reconciliation_date AS INTEGER)
+             ELSE CAST(reconciliation_date AS INTEGER) / 1000 END,
+        'unixepoch')
+WHERE typeof(reconciliation_date) IN ('integer', 'real')
+   OR (typeof(reconciliation_date) = 'text'
+       AND reconciliation_date GLOB '[0-9]*'
+       AND reconciliation_date NOT GLOB '*[^0-9]*');
+
+-- 2. 存款表：存款时间
+UPDATE deposits
+SET deposit_time = date(
+        CASE WHEN CAST(deposit_time AS INTEGER) < 10000000000
+             THEN CAST(deposit_time AS INTEGER)
+             ELSE CAST(deposit_time AS INTEGER) / 1000 END,
+        'unixepoch')
+WHERE typeof(deposit_time) IN ('integer', 'real')
+   OR (typeof(deposit_time) = 'text'
+       AND deposit_time GLOB '[0-9]*'
+       AND deposit_time NOT GLOB '*[^0-9]*');
+
+-- 3. 快照表：对账日期
+UPDATE reconciliation_snapshots
+SET reconciliation_date = date(
+        CASE WHEN CAST(reconciliation_date AS INTEGER) < 10000000000
+             THEN CAST(reconciliation_date AS INTEGER)
+             ELSE CAST(reconciliation_date AS INTEGER) / 1000 END,
+        'unixepoch')
+WHERE typeof(reconciliation_date) IN ('integer', 'real')
+   OR (typeof(reconciliation_date) = 'text'
+       AND reconciliation_date GLOB '[0-9]*'
+       AND reconciliation_date NOT GLOB '*[^0-9]*');
+
+-- 4. 索引（Hibernate ddl-auto 建表时不会创建这些索引）
+CREATE INDEX IF NOT EXISTS idx_deposits_user_reconciliation ON deposits(user_id, reconciliation_date);
+CREATE INDEX IF NOT EXISTS idx_deposits_account_reconciliation ON deposits(account_id, reconciliation_date);
+CREATE INDEX IF NOT EXISTS idx_snapshots_user_date ON reconciliation_snapshots(user_id, reconciliation_date);
@@ -0,0 +1,12 @@
+-- ID 号段表：BlockIdGenerator 每次从这里取走一段 ID（next_val 为下一个未分配的 ID）
+-- 替换 IncrementGenerator 后，用各表当前的最大 ID 初始化序列
+
+CREATE TABLE IF NOT EXISTS id_sequences (
+    name VARCHAR(100) PRIMARY KEY,
+    next_val INTEGER NOT NULL
+);
+
+INSERT OR IGNORE INTO id_sequences (name, next_val) SELECT 'users', COALESCE(MAX(id), 0) + 1 FROM users;
+INSERT OR IGNORE INTO id_sequences (name, next_val) SELECT 'accounts', COALESCE(MAX(id), 0) + 1 FROM accounts;
+INSERT OR IGNORE INTO id_sequences (name, next_val) SELECT 'deposits', COALESCE(MAX(id), 0) + 1 FROM deposits;
+INSERT OR IGNORE INTO id_sequences (name, next_val) SELECT 'reconciliation_snapshots', COALESCE(MAX(id), 0) + 1 FROM reconciliation_snapshots;
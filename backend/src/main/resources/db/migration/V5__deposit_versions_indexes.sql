@@ -0,0 +1,5 @@
+-- 时态存储模式（deposit-storage.mode: temporal）的存款版本表索引
+-- 按日期读取是区间包含查询：valid_from_date <= ? AND (valid_to_date IS NULL OR valid_to_date > ?)
+
+CREATE INDEX IF NOT EXISTS idx_deposit_versions_user_from ON deposit_versions(user_id, valid_from_date);
+CREATE INDEX IF NOT EXISTS idx_deposit_versions_account_from ON deposit_versions(account_id, valid_from_date);
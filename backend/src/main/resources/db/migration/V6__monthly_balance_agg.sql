@@ -0,0 +1,89 @@
+-- 月度余额汇总（monthly_balance_agg，由 Hibernate 建表）的索引，以及待重新计算月份的标记
+-- 存款记录、快照、存款版本的任何写入（包括原生 SQL 批量复制）都由触发器把受影响的 (user_id, 月份) 记入 monthly_balance_dirty，
+-- 写操作结束前由 MonthlyBalanceService 在同一事务中重新计算这些月份
+-- 触发器体内有分号，本脚本的语句之间用单独一行的 $$ 分隔
+
+CREATE INDEX IF NOT EXISTS idx_monthly_balance_agg_user_month ON monthly_balance_agg(user_id, month)
+$$
+
+CREATE TABLE IF NOT EXISTS monthly_balance_dirty (
+    user_id INTEGER NOT NULL,
+    month VARCHAR(7) NOT NULL,
+    PRIMARY KEY (user_id, month)
+)
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposits_insert_monthly_balance AFTER INSERT ON deposits
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (NEW.user_id, substr(NEW.reconciliation_date, 1, 7));
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposits_update_monthly_balance AFTER UPDATE ON deposits
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (OLD.user_id, substr(OLD.reconciliation_date, 1, 7));
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (NEW.user_id, substr(NEW.reconciliation_date, 1, 7));
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposits_delete_monthly_balance AFTER DELETE ON deposits
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (OLD.user_id, substr(OLD.reconciliation_date, 1, 7));
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_insert_monthly_balance AFTER INSERT ON reconciliation_snapshots
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (NEW.user_id, substr(NEW.reconciliation_date, 1, 7));
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_update_monthly_balance AFTER UPDATE ON reconciliation_snapshots
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (OLD.user_id, substr(OLD.reconciliation_date, 1, 7));
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (NEW.user_id, substr(NEW.reconciliation_date, 1, 7));
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_delete_monthly_balance AFTER DELETE ON reconciliation_snapshots
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month) VALUES (OLD.user_id, substr(OLD.reconciliation_date, 1, 7));
+END
+$$
+
+-- 存款版本对其有效区间内的所有快照日期生效，标记区间内有快照的月份
+CREATE TRIGGER IF NOT EXISTS trg_deposit_versions_insert_monthly_balance AFTER INSERT ON deposit_versions
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month)
+        SELECT user_id, substr(reconciliation_date, 1, 7) FROM reconciliation_snapshots
+        WHERE user_id = NEW.user_id AND reconciliation_date >= NEW.valid_from_date
+          AND (NEW.valid_to_date IS NULL OR reconciliation_date < NEW.valid_to_date);
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposit_versions_update_monthly_balance AFTER UPDATE ON deposit_versions
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month)
+        SELECT user_id, substr(reconciliation_date, 1, 7) FROM reconciliation_snapshots
+        WHERE user_id = OLD.user_id AND reconciliation_date >= OLD.valid_from_date
+          AND (OLD.valid_to_date IS NULL OR reconciliation_date < OLD.valid_to_date);
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month)
+        SELECT user_id, substr(reconciliation_date, 1, 7) FROM reconciliation_snapshots
+        WHERE user_id = NEW.user_id AND reconciliation_date >= NEW.valid_from_date
+          AND (NEW.valid_to_date IS NULL OR reconciliation_date < NEW.valid_to_date);
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposit_versions_delete_monthly_balance AFTER DELETE ON deposit_versions
+BEGIN
+    INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month)
+        SELECT user_id, substr(reconciliation_date, 1, 7) FROM reconciliation_snapshots
+        WHERE user_id = OLD.user_id AND reconciliation_date >= OLD.valid_from_date
+          AND (OLD.valid_to_date IS NULL OR reconciliation_date < OLD.valid_to_date);
+END
+$$
+
+-- 已有数据：所有有快照的月份都需要计算（启动时由 MonthlyBalanceService 处理）
+INSERT OR IGNORE INTO monthly_balance_dirty (user_id, month)
+    SELECT user_id, substr(reconciliation_date, 1, 7) FROM reconciliation_snapshots
+$$
@@ -0,0 +1,156 @@
+-- 快照账户合计（snapshot_account_totals，由 Hibernate 建表）的索引、维护触发器和初始数据
+-- 每个 (user_id, reconciliation_date, account_id) 一行，金额按分累加。
+-- deposits 的写入直接加减对应日期；deposit_versions 的写入加减有效区间内所有快照日期；
+-- 新增/删除快照时加减当时对该日期有效的存款版本（快照存储模式下 deposit_versions 为空，不影响）。
+-- 触发器体内有分号，本脚本的语句之间用单独一行的 $$ 分隔
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_snapshot_account_totals_user_date_account
+    ON snapshot_account_totals(user_id, reconciliation_date, account_id)
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposits_insert_account_totals AFTER INSERT ON deposits
+BEGIN
+    INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+        VALUES (NEW.user_id, NEW.reconciliation_date, NEW.account_id, CAST(ROUND(NEW.amount * 100) AS INTEGER), 1)
+        ON CONFLICT (user_id, reconciliation_date, account_id) DO UPDATE SET
+            amount_cents = amount_cents + excluded.amount_cents,
+            deposit_count = deposit_count + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposits_update_account_totals AFTER UPDATE ON deposits
+WHEN OLD.amount IS NOT NEW.amount OR OLD.account_id IS NOT NEW.account_id
+  OR OLD.reconciliation_date IS NOT NEW.reconciliation_date OR OLD.user_id IS NOT NEW.user_id
+BEGIN
+    UPDATE snapshot_account_totals
+        SET amount_cents = amount_cents - CAST(ROUND(OLD.amount * 100) AS INTEGER), deposit_count = deposit_count - 1
+        WHERE user_id = OLD.user_id AND reconciliation_date = OLD.reconciliation_date AND account_id = OLD.account_id;
+    DELETE FROM snapshot_account_totals
+        WHERE user_id = OLD.user_id AND reconciliation_date = OLD.reconciliation_date AND account_id = OLD.account_id
+          AND deposit_count <= 0;
+    INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+        VALUES (NEW.user_id, NEW.reconciliation_date, NEW.account_id, CAST(ROUND(NEW.amount * 100) AS INTEGER), 1)
+        ON CONFLICT (user_id, reconciliation_date, account_id) DO UPDATE SET
+            amount_cents = amount_cents + excluded.amount_cents,
+            deposit_count = deposit_count + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposits_delete_account_totals AFTER DELETE ON deposits
+BEGIN
+    UPDATE snapshot_account_totals
+        SET amount_cents = amount_cents - CAST(ROUND(OLD.amount * 100) AS INTEGER), deposit_count = deposit_count - 1
+        WHERE user_id = OLD.user_id AND reconciliation_date = OLD.reconciliation_date AND account_id = OLD.account_id;
+    DELETE FROM snapshot_account_totals
+        WHERE user_id = OLD.user_id AND reconciliation_date = OLD.reconciliation_date AND account_id = OLD.account_id
+          AND deposit_count <= 0;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposit_versions_insert_account_totals AFTER INSERT ON deposit_versions
+BEGIN
+    INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+        SELECT user_id, reconciliation_date, NEW.account_id, CAST(ROUND(NEW.amount * 100) AS INTEGER), 1
+        FROM reconciliation_snapshots
+        WHERE user_id = NEW.user_id AND reconciliation_date >= NEW.valid_from_date
+          AND (NEW.valid_to_date IS NULL OR reconciliation_date < NEW.valid_to_date)
+        ON CONFLICT (user_id, reconciliation_date, account_id) DO UPDATE SET
+            amount_cents = amount_cents + excluded.amount_cents,
+            deposit_count = deposit_count + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposit_versions_update_account_totals AFTER UPDATE ON deposit_versions
+WHEN OLD.amount IS NOT NEW.amount OR OLD.account_id IS NOT NEW.account_id OR OLD.user_id IS NOT NEW.user_id
+  OR OLD.valid_from_date IS NOT NEW.valid_from_date OR OLD.valid_to_date IS NOT NEW.valid_to_date
+BEGIN
+    UPDATE snapshot_account_totals
+        SET amount_cents = amount_cents - CAST(ROUND(OLD.amount * 100) AS INTEGER), deposit_count = deposit_count - 1
+        WHERE user_id = OLD.user_id AND account_id = OLD.account_id
+          AND reconciliation_date >= OLD.valid_from_date
+          AND (OLD.valid_to_date IS NULL OR reconciliation_date < OLD.valid_to_date)
+          AND reconciliation_date IN (SELECT reconciliation_date FROM reconciliation_snapshots WHERE user_id = OLD.user_id);
+    DELETE FROM snapshot_account_totals
+        WHERE user_id = OLD.user_id AND account_id = OLD.account_id AND deposit_count <= 0;
+    INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+        SELECT user_id, reconciliation_date, NEW.account_id, CAST(ROUND(NEW.amount * 100) AS INTEGER), 1
+        FROM reconciliation_snapshots
+        WHERE user_id = NEW.user_id AND reconciliation_date >= NEW.valid_from_date
+          AND (NEW.valid_to_date IS NULL OR reconciliation_date < NEW.valid_to_date)
+        ON CONFLICT (user_id, reconciliation_date, account_id) DO UPDATE SET
+            amount_cents = amount_cents + excluded.amount_cents,
+            deposit_count = deposit_count + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_deposit_versions_delete_account_totals AFTER DELETE ON deposit_versions
+BEGIN
+    UPDATE snapshot_account_totals
+        SET amount_cents = amount_cents - CAST(ROUND(OLD.amount * 100) AS INTEGER), deposit_count = deposit_count - 1
+        WHERE user_id = OLD.user_id AND account_id = OLD.account_id
+          AND reconciliation_date >= OLD.valid_from_date
+          AND (OLD.valid_to_date IS NULL OR reconciliation_date < OLD.valid_to_date)
+          AND reconciliation_date IN (SELECT reconciliation_date FROM reconciliation_snapshots WHERE user_id = OLD.user_id);
+    DELETE FROM snapshot_account_totals
+        WHERE user_id = OLD.user_id AND account_id = OLD.account_id AND deposit_count <= 0;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_insert_account_totals AFTER INSERT ON reconciliation_snapshots
+BEGIN
+    INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+        SELECT NEW.user_id, NEW.reconciliation_date, account_id, SUM(CAST(ROUND(amount * 100) AS INTEGER)), COUNT(*)
+        FROM deposit_versions
+        WHERE user_id = NEW.user_id AND valid_from_date <= NEW.reconciliation_date
+          AND (valid_to_date IS NULL OR valid_to_date > NEW.reconciliation_date)
+        GROUP BY account_id
+        ON CONFLICT (user_id, reconciliation_date, account_id) DO UPDATE SET
+            amount_cents = amount_cents + excluded.amount_cents,
+            deposit_count = deposit_count + excluded.deposit_count;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_delete_account_totals AFTER DELETE ON reconciliation_snapshots
+BEGIN
+    UPDATE snapshot_account_totals
+        SET amount_cents = amount_cents - (
+                SELECT SUM(CAST(ROUND(v.amount * 100) AS INTEGER)) FROM deposit_versions v
+                WHERE v.user_id = OLD.user_id AND v.account_id = snapshot_account_totals.account_id
+                  AND v.valid_from_date <= OLD.reconciliation_date
+                  AND (v.valid_to_date IS NULL OR v.valid_to_date > OLD.reconciliation_date)),
+            deposit_count = deposit_count - (
+                SELECT COUNT(*) FROM deposit_versions v
+                WHERE v.user_id = OLD.user_id AND v.account_id = snapshot_account_totals.account_id
+                  AND v.valid_from_date <= OLD.reconciliation_date
+                  AND (v.valid_to_date IS NULL OR v.valid_to_date > OLD.reconciliation_date))
+        WHERE user_id = OLD.user_id AND reconciliation_date = OLD.reconciliation_date
+          AND account_id IN (
+                SELECT account_id FROM deposit_versions
+                WHERE user_id = OLD.user_id AND valid_from_date <= OLD.reconciliation_date
+                  AND (valid_to_date IS NULL OR valid_to_date > OLD.reconciliation_date));
+    DELETE FROM snapshot_account_totals
+        WHERE user_id = OLD.user_id AND reconciliation_date = OLD.reconciliation_date AND deposit_count <= 0;
+END
+$$
+
+-- 已有数据：按 deposits 和（时态存储模式下）快照日期上有效的存款版本重新汇总
+DELETE FROM snapshot_account_totals
+$$
+
+INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+    SELECT user_id, reconciliation_date, account_id, SUM(CAST(ROUND(amount * 100) AS INTEGER)), COUNT(*)
+    FROM deposits
+    GROUP BY user_id, reconciliation_date, account_id
+$$
+
+INSERT INTO snapshot_account_totals (user_id, reconciliation_date, account_id, amount_cents, deposit_count)
+    SELECT s.user_id, s.reconciliation_date, v.account_id, SUM(CAST(ROUND(v.amount * 100) AS INTEGER)), COUNT(*)
+    FROM reconciliation_snapshots s
+    JOIN deposit_versions v ON v.user_id = s.user_id AND v.valid_from_date <= s.reconciliation_date
+        AND (v.valid_to_date IS NULL OR v.valid_to_date > s.reconciliation_date)
+    WHERE true
+    GROUP BY s.user_id, s.reconciliation_date, v.account_id
+    ON CONFLICT (user_id, reconciliation_date, account_id) DO UPDATE SET
+        amount_cents = amount_cents + excluded.amount_cents,
+        deposit_count = deposit_count + excluded.deposit_count
+$$
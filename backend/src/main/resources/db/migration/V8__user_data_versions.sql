@@ -0,0 +1,64 @@
+-- 用户数据版本（余额序列的有效性标记）
+-- 每个用户一行，快照（日期、总金额、备注）或快照账户合计的任何写入都由触发器在同一事务中把版本加一，
+-- 包括原生 SQL 批量写入和由 deposits / deposit_versions 触发器级联的合计变化。
+-- 没有行的用户版本视为 0；行不删除，版本只增不减（BalanceSeriesStore 据此判断持久化的余额序列是否仍然有效）。
+-- 触发器体内有分号，本脚本的语句之间用单独一行的 $$ 分隔
+
+CREATE TABLE IF NOT EXISTS user_data_versions (
+    user_id INTEGER PRIMARY KEY,
+    version INTEGER NOT NULL
+)
+$$
+
+CREATE INDEX IF NOT EXISTS idx_user_data_versions_version ON user_data_versions(version)
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_insert_data_version AFTER INSERT ON reconciliation_snapshots
+BEGIN
+    INSERT INTO user_data_versions (user_id, version) VALUES (NEW.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_update_data_version AFTER UPDATE ON reconciliation_snapshots
+WHEN OLD.reconciliation_date IS NOT NEW.reconciliation_date OR OLD.total_amount IS NOT NEW.total_amount
+  OR OLD.note IS NOT NEW.note OR OLD.user_id IS NOT NEW.user_id
+BEGIN
+    INSERT INTO user_data_versions (user_id, version) VALUES (OLD.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+    INSERT INTO user_data_versions (user_id, version) SELECT NEW.user_id, 1 WHERE NEW.user_id IS NOT OLD.user_id
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_delete_data_version AFTER DELETE ON reconciliation_snapshots
+BEGIN
+    INSERT INTO user_data_versions (user_id, version) VALUES (OLD.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_account_totals_insert_data_version AFTER INSERT ON snapshot_account_totals
+BEGIN
+    INSERT INTO user_data_versions (user_id, version) VALUES (NEW.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_account_totals_update_data_version AFTER UPDATE ON snapshot_account_totals
+WHEN OLD.amount_cents IS NOT NEW.amount_cents OR OLD.account_id IS NOT NEW.account_id
+  OR OLD.reconciliation_date IS NOT NEW.reconciliation_date OR OLD.user_id IS NOT NEW.user_id
+BEGIN
+    INSERT INTO user_data_versions (user_id, version) VALUES (OLD.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+    INSERT INTO user_data_versions (user_id, version) SELECT NEW.user_id, 1 WHERE NEW.user_id IS NOT OLD.user_id
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+END
+$$
+
+CREATE TRIGGER IF NOT EXISTS trg_account_totals_delete_data_version AFTER DELETE ON snapshot_account_totals
+BEGIN
+    INSERT INTO user_data_versions (user_id, version) VALUES (OLD.user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET version = version + 1;
+END
+$$
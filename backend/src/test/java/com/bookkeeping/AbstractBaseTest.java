@@ -11,6 +11,7 @@ import org.springframework.transaction.annotation.Transactional;
 @SpringBootTest
 @TestPropertySource(properties = {
     "spring.datasource.url=jdbc:sqlite:./data/test-bookkeeping.db",
+    "balance-series-store.path=./data/test-balance-series.bin",
     "spring.jpa.hibernate.ddl-auto=update",
     "spring.jpa.show-sql=false",  // 测试时关闭SQL日志，减少输出
     "jwt.secret=test-secret-key-for-testing-only",
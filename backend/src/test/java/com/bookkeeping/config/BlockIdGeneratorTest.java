@@ -0,0 +1,161 @@
+package com.bookkeeping.config;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.repository.AccountRepository;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.service.UserService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BlockIdGenerator 测试
+ *
+ * 测试覆盖：
+ * - 批量保存时 ID 不重复，INSERT 合并为批量执行
+ * - 事务回滚后丢弃号段，之后分配的 ID 不与已提交的数据冲突
+ */
+@DisplayName("BlockIdGenerator 主键生成测试")
+public class BlockIdGeneratorTest extends AbstractBaseTest {
+
+    private static final int DEPOSIT_COUNT = 300;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long userId;
+    private Account account;
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        account = new Account();
+        account.setUserId(userId);
+        account.setName("测试账户");
+        account.setType("定期存款");
+        account.setStatus(Account.AccountStatus.ACTIVE);
+        account = accountRepository.save(account);
+    }
+
+    @Test
+    @DisplayName("UC-ID-001: 保存 300 条存款，ID 不重复且 INSERT 批量执行")
+    public void testSaveAllUsesBatchedInserts() {
+        LocalDate date = LocalDate.of(2024, 1, 31);
+        List<Deposit> deposits = new ArrayList<>();
+        for (int i = 0; i < DEPOSIT_COUNT; i++) {
+            deposits.add(newDeposit(date, new BigDecimal("100.00")));
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        boolean enabled = statistics.isStatisticsEnabled();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        long prepared;
+        try {
+            depositRepository.saveAll(deposits);
+            entityManager.flush();
+            prepared = statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(enabled);
+        }
+
+        Set<Long> ids = new HashSet<>();
+        deposits.forEach(d -> ids.add(d.getId()));
+        assertEquals(DEPOSIT_COUNT, ids.size(), "存在重复的 ID");
+        assertEquals(DEPOSIT_COUNT, depositRepository.countByUserIdAndReconciliationDate(userId, date));
+
+        // 逐条执行需要 300 条 INSERT；批量执行时只有几个批次加上取号
+        assertTrue(prepared < 50, "保存 300 条存款准备了 " + prepared + " 条语句");
+
+        System.out.println("✓ UC-ID-001: 保存 300 条存款，ID 不重复且 INSERT 批量执行 - 通过（语句数: " + prepared + "）");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("UC-ID-002: 事务回滚后，新分配的 ID 不与已提交的数据冲突")
+    public void testRollbackDiscardsBlock() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        LocalDate date = LocalDate.of(2024, 3, 31);
+        // 本测试不在测试事务中，setUp 创建的用户和账户已真实提交，结束时手动清理
+        try {
+            // 回滚的事务：号段分配随之回滚
+            tx.executeWithoutResult(status -> {
+                depositRepository.save(newDeposit(date, new BigDecimal("1.00")));
+                entityManager.flush();
+                status.setRollbackOnly();
+            });
+            // 已提交的事务
+            Long committedId = tx.execute(status -> depositRepository.save(newDeposit(date, new BigDecimal("2.00"))).getId());
+            // 再提交一条，两条都应该存在且 ID 不同
+            Long nextId = tx.execute(status -> depositRepository.save(newDeposit(date, new BigDecimal("3.00"))).getId());
+
+            assertNotEquals(committedId, nextId);
+            assertEquals(2, depositRepository.countByUserIdAndReconciliationDate(userId, date));
+            Long nextVal = jdbcTemplate.queryForObject(
+                    "SELECT next_val FROM id_sequences WHERE name = 'deposits'", Long.class);
+            assertTrue(nextVal > nextId, "序列没有越过已分配的 ID");
+        } finally {
+            jdbcTemplate.update("DELETE FROM deposits WHERE user_id = ?", userId);
+            jdbcTemplate.update("DELETE FROM accounts WHERE user_id = ?", userId);
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+        }
+
+        System.out.println("✓ UC-ID-002: 事务回滚后，新分配的 ID 不与已提交的数据冲突 - 通过");
+    }
+
+    private Deposit newDeposit(LocalDate date, BigDecimal amount) {
+        Deposit deposit = new Deposit();
+        deposit.setUserId(userId);
+        deposit.setAccountId(account.getId());
+        deposit.setDepositType("定期存款");
+        deposit.setDepositTime(date);
+        deposit.setAmount(amount);
+        deposit.setReconciliationDate(date);
+        return deposit;
+    }
+}
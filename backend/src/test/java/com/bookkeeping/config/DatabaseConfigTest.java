@@ -0,0 +1,97 @@
+package com.bookkeeping.config;
+
+import com.bookkeeping.AbstractBaseTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 数据源配置测试
+ *
+ * 测试覆盖：
+ * - 数据库以 WAL 模式打开
+ * - 只读事务路由到只读连接池
+ * - 写事务未提交时，只读事务不被阻塞
+ */
+@DisplayName("数据源配置测试")
+public class DatabaseConfigTest extends AbstractBaseTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @DisplayName("UC-DB-001: 数据库使用 WAL 模式")
+    public void testJournalModeIsWal() {
+        String journalMode = jdbcTemplate.queryForObject("PRAGMA journal_mode", String.class);
+        assertEquals("wal", journalMode);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("UC-DB-002: 只读事务使用只读连接，不能写入")
+    public void testReadOnlyTransactionRoutesToReader() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Exception e = assertThrows(Exception.class, () -> readOnly.executeWithoutResult(status ->
+                jdbcTemplate.update("INSERT INTO schema_version (version, script) VALUES ('TEST', 'test')")));
+        assertTrue(e.getMessage().contains("readonly"), e.getMessage());
+        // 写事务可以正常写入（随后回滚）
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        readWrite.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO schema_version (version, script) VALUES ('TEST', 'test')");
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("UC-DB-003: 写事务进行中时，只读事务不被阻塞")
+    public void testReaderNotBlockedByOpenWriteTransaction() throws Exception {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch readDone = new CountDownLatch(1);
+
+        // 写线程：写入后保持事务不提交，直到读线程完成
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+            readWrite.executeWithoutResult(status -> {
+                jdbcTemplate.update("INSERT INTO schema_version (version, script) VALUES ('TEST', 'test')");
+                written.countDown();
+                try {
+                    readDone.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                status.setRollbackOnly();
+            });
+        });
+
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        long start = System.currentTimeMillis();
+        Integer count = readOnly.execute(status ->
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM schema_version WHERE version = 'TEST'", Integer.class));
+        long elapsed = System.currentTimeMillis() - start;
+        readDone.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+
+        // 读不到未提交的数据，且没有等待写锁
+        assertEquals(0, count);
+        assertTrue(elapsed < 1000, "只读事务被阻塞了 " + elapsed + "ms");
+    }
+}
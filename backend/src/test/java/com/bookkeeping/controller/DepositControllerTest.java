@@ -0,0 +1,219 @@
+package com.bookkeeping.controller;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.BatchDepositRequest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.UpdateDepositRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.repository.AccountRepository;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import com.bookkeeping.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * DepositController 集成测试
+ *
+ * 测试覆盖：
+ * - POST /api/deposits、PUT /api/deposits/{id}、DELETE /api/deposits/{id} - If-Match 快照版本（409、428），返回新的 ETag
+ * - POST /api/deposits/batch - 请求体中按对账日期提交快照版本（409、428），返回新的快照版本
+ */
+@DisplayName("DepositController 集成测试")
+@AutoConfigureMockMvc
+public class DepositControllerTest extends AbstractBaseTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private AccountRepository accountRepository;
+    
+    @Autowired
+    private DepositRepository depositRepository;
+    
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+    
+    private String validToken;
+    private Long testUserId;
+    private Account account;
+    private Deposit deposit;
+    private LocalDate date;
+    
+    @BeforeEach
+    public void setUp() {
+        // 创建测试用户并获取Token
+        RegisterRequest registerRequest = new RegisterRequest();
+        String shortUsername = "d" + System.currentTimeMillis() % 1000000000L;
+        registerRequest.setUsername(shortUsername.length() > 20 ? shortUsername.substring(0, 20) : shortUsername);
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        com.bookkeeping.dto.AuthResponse authResponse = userService.register(registerRequest);
+        testUserId = authResponse.getId();
+        validToken = authResponse.getToken();
+        
+        account = new Account();
+        account.setUserId(testUserId);
+        account.setName("测试账户");
+        account.setType("定期存款");
+        account.setStatus(Account.AccountStatus.ACTIVE);
+        account = accountRepository.save(account);
+        
+        // 快照及其中的一条存款记录
+        date = LocalDate.of(2024, 1, 15);
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(testUserId);
+        snapshot.setReconciliationDate(date);
+        snapshot.setTotalAmount(new BigDecimal("1000.00"));
+        snapshotRepository.save(snapshot);
+        deposit = new Deposit();
+        deposit.setUserId(testUserId);
+        deposit.setAccountId(account.getId());
+        deposit.setDepositType("定期");
+        deposit.setDepositTime(date);
+        deposit.setAmount(new BigDecimal("1000.00"));
+        deposit.setReconciliationDate(date);
+        deposit = depositRepository.save(deposit);
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-CTRL-001: 新增、更新、删除存款记录时 If-Match 缺少返回 428、过期返回 409")
+    public void testDepositWrites_IfMatch() throws Exception {
+        String etag = "\"" + snapshotRepository.findVersion(testUserId, date).orElseThrow() + "\"";
+        CreateDepositRequest create = new CreateDepositRequest();
+        create.setAccountId(account.getId());
+        create.setDepositType("活期");
+        create.setDepositTime(date);
+        create.setAmount(new BigDecimal("100.00"));
+        create.setReconciliationDate(date);
+        
+        // 缺少 If-Match 返回 428，不写入
+        mockMvc.perform(post("/api/deposits")
+                .header("Authorization", "Bearer " + validToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(create)))
+                .andExpect(status().isPreconditionRequired());
+        assertEquals(1, depositRepository.findByUserIdAndReconciliationDate(testUserId, date).size());
+        
+        // 用读取时的版本新增成功，返回新的 ETag 和快照版本
+        String createdEtag = mockMvc.perform(post("/api/deposits")
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(create)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.snapshotVersion").isNumber())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(etag, createdEtag);
+        
+        // 仍用旧版本更新返回 409
+        UpdateDepositRequest update = new UpdateDepositRequest();
+        update.setDepositType("定期");
+        update.setDepositTime(date);
+        update.setAmount(new BigDecimal("1200.00"));
+        mockMvc.perform(put("/api/deposits/" + deposit.getId())
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", etag)
+                .param("date", date.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("快照已被修改，请刷新后重试"));
+        
+        // 不传日期时在写事务中按记录所在的快照校验
+        String updatedEtag = mockMvc.perform(put("/api/deposits/" + deposit.getId())
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", createdEtag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.amount").value(1200.00))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        // 删除：缺少 If-Match 返回 428，用最新版本删除成功并返回删除后的快照版本
+        mockMvc.perform(delete("/api/deposits/" + deposit.getId())
+                .header("Authorization", "Bearer " + validToken)
+                .param("date", date.toString()))
+                .andExpect(status().isPreconditionRequired());
+        mockMvc.perform(delete("/api/deposits/" + deposit.getId())
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", updatedEtag)
+                .param("date", date.toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.data").value(snapshotRepository.findVersion(testUserId, date).orElseThrow()));
+        assertFalse(depositRepository.findById(deposit.getId()).isPresent());
+        
+        System.out.println("✓ UC-DEPOSIT-CTRL-001: 新增、更新、删除存款记录时 If-Match 缺少返回 428、过期返回 409 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-CTRL-002: 批量操作按对账日期提交快照版本，缺少返回 428、过期返回 409")
+    public void testBatch_SnapshotVersions() throws Exception {
+        long version = snapshotRepository.findVersion(testUserId, date).orElseThrow();
+        BatchDepositRequest.Operation operation = new BatchDepositRequest.Operation();
+        operation.setType(BatchDepositRequest.OperationType.UPDATE);
+        operation.setId(deposit.getId());
+        operation.setReconciliationDate(date);
+        operation.setDepositType("定期");
+        operation.setDepositTime(date);
+        operation.setAmount(new BigDecimal("1500.00"));
+        BatchDepositRequest request = new BatchDepositRequest();
+        request.setOperations(List.of(operation));
+        
+        // 受影响的快照缺少版本返回 428
+        mockMvc.perform(post("/api/deposits/batch")
+                .header("Authorization", "Bearer " + validToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isPreconditionRequired());
+        
+        // 版本过期返回 409
+        request.setSnapshotVersions(Map.of(date, version - 1));
+        mockMvc.perform(post("/api/deposits/batch")
+                .header("Authorization", "Bearer " + validToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict());
+        assertEquals(0, new BigDecimal("1000.00").compareTo(depositRepository.findById(deposit.getId()).orElseThrow().getAmount()));
+        
+        // 版本一致时执行，返回每个受影响快照的新版本
+        request.setSnapshotVersions(Map.of(date, version));
+        mockMvc.perform(post("/api/deposits/batch")
+                .header("Authorization", "Bearer " + validToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.results[0].deposit.amount").value(1500.00))
+                .andExpect(jsonPath("$.data.snapshotVersions['" + date + "']")
+                        .value(snapshotRepository.findVersion(testUserId, date).orElseThrow()));
+        assertTrue(snapshotRepository.findVersion(testUserId, date).orElseThrow() > version);
+        
+        System.out.println("✓ UC-DEPOSIT-CTRL-002: 批量操作按对账日期提交快照版本，缺少返回 428、过期返回 409 - 通过");
+    }
+}
@@ -1,7 +1,9 @@
 package com.bookkeeping.controller;
 
 import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.ReconciliationDataResponse;
 import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.SaveAccountsRequest;
 import com.bookkeeping.dto.SaveReconciliationRequest;
 import com.bookkeeping.dto.UpdateSnapshotNoteRequest;
 import com.bookkeeping.entity.Account;
@@ -10,6 +12,7 @@ import com.bookkeeping.entity.ReconciliationSnapshot;
 import com.bookkeeping.repository.AccountRepository;
 import com.bookkeeping.repository.DepositRepository;
 import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import com.bookkeeping.service.ReconciliationService;
 import com.bookkeeping.service.UserService;
 import com.bookkeeping.util.JwtUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -43,6 +46,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * - POST /api/reconciliation/create-new - 新建对账
  * - PUT /api/reconciliation/note - 更新快照备注
  * - GET /api/reconciliation/snapshot-dates - 获取所有快照日期列表
+ * - GET /api/reconciliation/view - 对账数据和相邻快照日期
+ * - POST /api/reconciliation/save-accounts - 按账户保存（版本冲突返回 409）
+ * - 快照版本：ETag / If-None-Match（304）、If-Match（409、428）
+ * - POST /api/reconciliation/bulk - 批量导入快照
  * - JWT认证验证
  */
 @DisplayName("ReconciliationController 集成测试")
@@ -58,6 +65,9 @@ public class ReconciliationControllerTest extends AbstractBaseTest {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private ReconciliationService reconciliationService;
+    
     @Autowired
     private AccountRepository accountRepository;
     
@@ -352,12 +362,15 @@ public class ReconciliationControllerTest extends AbstractBaseTest {
         request.setNote("更新后的备注");
         String requestBody = objectMapper.writeValueAsString(request);
         
-        // When & Then: 发送更新备注请求
+        Long version = snapshotRepository.findVersion(testUserId, date3).orElseThrow();
+        
+        // When & Then: 发送更新备注请求（If-Match 为读取时的快照版本）
         mockMvc.perform(put("/api/reconciliation/note")
                 .param("date", date3.toString()) // date3原本没有备注
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(requestBody)
-                .header("Authorization", "Bearer " + validToken))
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", "\"" + version + "\""))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.message").value("更新备注成功"));
@@ -414,4 +427,171 @@ public class ReconciliationControllerTest extends AbstractBaseTest {
         
         System.out.println("✓ UC-RECON-CTRL-014: GET /api/reconciliation/next 没有下一个快照，返回null - 通过");
     }
+    
+    @Test
+    @DisplayName("UC-RECON-CTRL-015: GET /api/reconciliation/view 一次返回对账数据和相邻快照日期")
+    public void testGetReconciliationView_Success() throws Exception {
+        // When & Then: 中间的快照，上一个、下一个都有
+        mockMvc.perform(get("/api/reconciliation/view")
+                .param("date", date2.toString())
+                .header("Authorization", "Bearer " + validToken))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.message").value("操作成功"))
+                .andExpect(jsonPath("$.data.data.date").value(date2.toString()))
+                .andExpect(jsonPath("$.data.data.note").value("备注2"))
+                .andExpect(jsonPath("$.data.data.accounts.length()").value(2))
+                .andExpect(jsonPath("$.data.previousDate").value(date1.toString()))
+                .andExpect(jsonPath("$.data.nextDate").value(date3.toString()))
+                .andExpect(jsonPath("$.data.latestDate").value(date3.toString()));
+        
+        // 不传日期时取最近一次快照，没有下一个快照
+        mockMvc.perform(get("/api/reconciliation/view")
+                .header("Authorization", "Bearer " + validToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.data.date").value(date3.toString()))
+                .andExpect(jsonPath("$.data.previousDate").value(date2.toString()))
+                .andExpect(jsonPath("$.data.nextDate").isEmpty());
+        
+        System.out.println("✓ UC-RECON-CTRL-015: GET /api/reconciliation/view 一次返回对账数据和相邻快照日期 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-CTRL-016: POST /api/reconciliation/save-accounts 按账户保存，版本过期返回 409")
+    public void testSaveAccounts_VersionConflict() throws Exception {
+        // 读取账户1的版本和存款记录
+        ReconciliationDataResponse data = reconciliationService.getReconciliationData(testUserId, date1);
+        ReconciliationDataResponse.AccountDepositData account = data.getAccounts().get(0);
+        Deposit deposit = depositRepository.findByAccountIdAndReconciliationDate(account1.getId(), date1).get(0);
+        
+        SaveReconciliationRequest.DepositData depositData = new SaveReconciliationRequest.DepositData();
+        depositData.setId(deposit.getId());
+        depositData.setDepositType(deposit.getDepositType());
+        depositData.setDepositTime(deposit.getDepositTime());
+        depositData.setAmount(new BigDecimal("61000.00"));
+        SaveReconciliationRequest.AccountDepositData accountData = new SaveReconciliationRequest.AccountDepositData();
+        accountData.setAccountId(account1.getId());
+        accountData.setVersion(account.getVersion());
+        accountData.setDeposits(List.of(depositData));
+        SaveAccountsRequest request = new SaveAccountsRequest();
+        request.setAccounts(List.of(accountData));
+        
+        // 第一次保存成功，返回新版本
+        mockMvc.perform(post("/api/reconciliation/save-accounts")
+                .header("Authorization", "Bearer " + validToken)
+                .param("date", date1.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("保存成功"))
+                .andExpect(jsonPath("$.data.updated").value(1))
+                .andExpect(jsonPath("$.data.versions." + account1.getId()).isNotEmpty());
+        
+        // 用旧版本再次保存返回 409
+        mockMvc.perform(post("/api/reconciliation/save-accounts")
+                .header("Authorization", "Bearer " + validToken)
+                .param("date", date1.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("账户的存款记录已被修改，请刷新后重试"));
+        
+        System.out.println("✓ UC-RECON-CTRL-016: POST /api/reconciliation/save-accounts 按账户保存，版本过期返回 409 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-CTRL-017: 快照版本作为 ETag，写请求 If-Match 过期返回 409、缺少返回 428")
+    public void testSnapshotVersion_ETagAndIfMatch() throws Exception {
+        // 读取时返回快照版本和 ETag
+        String etag = mockMvc.perform(get("/api/reconciliation")
+                .header("Authorization", "Bearer " + validToken)
+                .param("date", date1.toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.data.version").isNumber())
+                .andReturn().getResponse().getHeader("ETag");
+        
+        // 版本未变化时条件 GET 返回 304
+        mockMvc.perform(get("/api/reconciliation")
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-None-Match", etag)
+                .param("date", date1.toString()))
+                .andExpect(status().isNotModified());
+        
+        // 缺少 If-Match 返回 428
+        UpdateSnapshotNoteRequest request = new UpdateSnapshotNoteRequest();
+        request.setNote("页面A");
+        mockMvc.perform(put("/api/reconciliation/note")
+                .header("Authorization", "Bearer " + validToken)
+                .param("date", date1.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isPreconditionRequired());
+        
+        // 页面 A 用读取时的版本修改成功，返回新的 ETag
+        String newEtag = mockMvc.perform(put("/api/reconciliation/note")
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", etag)
+                .param("date", date1.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(etag, newEtag);
+        
+        // 页面 B 仍用旧版本修改返回 409，备注保持页面 A 的修改
+        request.setNote("页面B");
+        mockMvc.perform(put("/api/reconciliation/note")
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-Match", etag)
+                .param("date", date1.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("快照已被修改，请刷新后重试"));
+        assertEquals("页面A", snapshotRepository.findByUserIdAndReconciliationDate(testUserId, date1).orElseThrow().getNote());
+        
+        // 旧 ETag 的条件 GET 返回新数据
+        mockMvc.perform(get("/api/reconciliation")
+                .header("Authorization", "Bearer " + validToken)
+                .header("If-None-Match", etag)
+                .param("date", date1.toString()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", newEtag))
+                .andExpect(jsonPath("$.data.note").value("页面A"));
+        
+        System.out.println("✓ UC-RECON-CTRL-017: 快照版本作为 ETag，写请求 If-Match 过期返回 409、缺少返回 428 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-CTRL-018: POST /api/reconciliation/bulk 批量导入快照")
+    public void testBulkImport() throws Exception {
+        LocalDate newDate = LocalDate.of(2024, 6, 1);
+        String body = "[{\"date\": \"" + date1 + "\", \"note\": \"导入\", \"accounts\": [{\"accountId\": " + account1.getId()
+                + ", \"deposits\": [{\"depositType\": \"活期存款\", \"depositTime\": \"2024-01-01\", \"amount\": 1000.00}]}]},"
+                + " {\"date\": \"" + newDate + "\", \"accounts\": []}]";
+        
+        mockMvc.perform(post("/api/reconciliation/bulk")
+                .header("Authorization", "Bearer " + validToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("导入成功"))
+                .andExpect(jsonPath("$.data.inserted").value(1))
+                .andExpect(jsonPath("$.data.replaced").value(1))
+                .andExpect(jsonPath("$.data.deposits").value(1));
+        
+        assertEquals(1, depositRepository.findByUserIdAndReconciliationDate(testUserId, date1).size());
+        assertTrue(snapshotRepository.findByUserIdAndReconciliationDate(testUserId, newDate).isPresent());
+        
+        // 不是数组返回 400
+        mockMvc.perform(post("/api/reconciliation/bulk")
+                .header("Authorization", "Bearer " + validToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("请求体必须是快照数组"));
+        
+        System.out.println("✓ UC-RECON-CTRL-018: POST /api/reconciliation/bulk 批量导入快照 - 通过");
+    }
 }
@@ -31,6 +31,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * - GET /api/statistics/monthly - 月度统计
  * - GET /api/statistics/trend - 趋势统计（最近一年、最近半年、全部）
  * - GET /api/statistics/yearly - 年度统计
+ * - GET /api/statistics/dashboard - 统计看板（五项统计一次返回）
  * - JWT认证验证
  */
 @DisplayName("StatisticsController 集成测试")
@@ -301,4 +302,30 @@ public class StatisticsControllerTest extends AbstractBaseTest {
         
         System.out.println("✓ UC-STAT-CTRL-010: GET /api/statistics/monthly 获取无数据的月度统计 - 通过");
     }
+    
+    @Test
+    @DisplayName("UC-STAT-CTRL-012: GET /api/statistics/dashboard 五项统计一次返回")
+    public void testGetDashboardStatistics_Success() throws Exception {
+        mockMvc.perform(get("/api/statistics/dashboard")
+                .param("month", "2024-02")
+                .param("period", "all")
+                .header("Authorization", "Bearer " + validToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("操作成功"))
+                .andExpect(jsonPath("$.data.monthly.month").value("2024-02"))
+                .andExpect(jsonPath("$.data.monthly.totalAmount").value(200000.00))
+                .andExpect(jsonPath("$.data.trend.period").value("all"))
+                .andExpect(jsonPath("$.data.trend.data[0].month").value("2023-01"))
+                .andExpect(jsonPath("$.data.accountTrend.months[0]").value("2023-01"))
+                .andExpect(jsonPath("$.data.yearly.data.length()").value(2))
+                .andExpect(jsonPath("$.data.maturity.data").isArray());
+        
+        // 月份格式错误
+        mockMvc.perform(get("/api/statistics/dashboard")
+                .param("month", "2024/02")
+                .header("Authorization", "Bearer " + validToken))
+                .andExpect(status().isBadRequest());
+        
+        System.out.println("✓ UC-STAT-CTRL-012: GET /api/statistics/dashboard 五项统计一次返回 - 通过");
+    }
 }
@@ -0,0 +1,106 @@
+package com.bookkeeping.repository;
+
+import com.bookkeeping.AbstractBaseTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 仓库层原生 SQL 执行计划测试
+ *
+ * 对 DepositRepository、ReconciliationSnapshotRepository、DepositVersionRepository、MonthlyBalanceRepository、
+ * SnapshotAccountTotalRepository 中的每条原生 SQL 执行 EXPLAIN QUERY PLAN，断言对这些表的访问都是索引查找（SEARCH），没有全表扫描（SCAN）。
+ * 日期列上的 CASE typeof(...) 包装会让索引失效，新增查询时这里会直接失败。
+ */
+@DisplayName("仓库层查询执行计划测试")
+public class RepositoryQueryPlanTest extends AbstractBaseTest {
+
+    private static final String[] INDEXED_TABLES = {"deposits", "reconciliation_snapshots", "deposit_versions",
+            "monthly_balance_agg", "monthly_balance_dirty", "snapshot_account_totals", "user_data_versions"};
+
+    private static final Pattern DATE_PREDICATE = Pattern.compile("WHERE .*(reconciliation_date|valid_from_date|month)\\s*(=|<|>|IN)", Pattern.DOTALL);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("UC-PLAN-001: 存款表原生查询全部走索引")
+    public void testDepositRepositoryQueriesUseIndex() {
+        assertAllNativeQueriesUseIndex(DepositRepository.class);
+    }
+
+    @Test
+    @DisplayName("UC-PLAN-002: 快照表原生查询全部走索引")
+    public void testSnapshotRepositoryQueriesUseIndex() {
+        assertAllNativeQueriesUseIndex(ReconciliationSnapshotRepository.class);
+    }
+
+    @Test
+    @DisplayName("UC-PLAN-003: 存款版本表原生查询全部走索引")
+    public void testDepositVersionRepositoryQueriesUseIndex() {
+        assertAllNativeQueriesUseIndex(DepositVersionRepository.class);
+    }
+
+    @Test
+    @DisplayName("UC-PLAN-004: 月度汇总表原生查询全部走索引")
+    public void testMonthlyBalanceRepositoryQueriesUseIndex() {
+        assertAllNativeQueriesUseIndex(MonthlyBalanceRepository.class);
+    }
+
+    @Test
+    @DisplayName("UC-PLAN-005: 快照账户合计表原生查询全部走索引")
+    public void testSnapshotAccountTotalRepositoryQueriesUseIndex() {
+        assertAllNativeQueriesUseIndex(SnapshotAccountTotalRepository.class);
+    }
+
+    private void assertAllNativeQueriesUseIndex(Class<?> repositoryClass) {
+        int checked = 0;
+        for (Method method : repositoryClass.getDeclaredMethods()) {
+            Query query = method.getAnnotation(Query.class);
+            if (query == null || !query.nativeQuery()) {
+                continue;
+            }
+            // 命名参数替换为占位符，EXPLAIN 不需要绑定实际值
+            String sql = query.value().replaceAll(":[A-Za-z]\\w*", "?");
+            List<String> plan = explain(sql);
+            String planText = String.join(" | ", plan);
+
+            for (String table : INDEXED_TABLES) {
+                for (String detail : plan) {
+                    assertFalse(detail.startsWith("SCAN " + table),
+                            method.getName() + " 对 " + table + " 全表扫描: " + planText);
+                }
+            }
+            assertTrue(plan.stream().anyMatch(detail -> detail.startsWith("SEARCH ") && detail.contains("USING")),
+                    method.getName() + " 没有使用索引: " + planText);
+            // 按日期过滤的查询，日期条件本身也必须落在索引上（而不是只用 user_id 定位后逐行判断）
+            Matcher datePredicate = DATE_PREDICATE.matcher(sql);
+            if (datePredicate.find()) {
+                String dateColumn = datePredicate.group(1);
+                assertTrue(plan.stream().anyMatch(detail -> detail.startsWith("SEARCH ") && detail.contains(dateColumn)),
+                        method.getName() + " 的日期条件没有使用索引: " + planText);
+            }
+            checked++;
+        }
+        assertTrue(checked > 0, repositoryClass.getSimpleName() + " 中没有原生查询");
+        System.out.println("✓ " + repositoryClass.getSimpleName() + ": " + checked + " 条原生 SQL 均走索引");
+    }
+
+    private List<String> explain(String sql) {
+        List<String> details = new ArrayList<>();
+        jdbcTemplate.query("EXPLAIN QUERY PLAN " + sql, rs -> {
+            details.add(rs.getString("detail"));
+        });
+        return details;
+    }
+}
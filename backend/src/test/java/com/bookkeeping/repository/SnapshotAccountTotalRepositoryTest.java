@@ -0,0 +1,203 @@
+package com.bookkeeping.repository;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.DepositResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.dto.UpdateDepositRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.service.DepositService;
+import com.bookkeeping.service.ReconciliationService;
+import com.bookkeeping.service.UserService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 快照账户合计测试（快照存储模式）
+ *
+ * 测试覆盖：
+ * - 保存对账、新增/修改/删除存款记录、新建对账（数据库内复制）后，合计与按存款记录分组汇总的结果一致
+ * - 合计联表带出账户名称，记录全部删除后该账户的合计行也删除
+ */
+@DisplayName("快照账户合计测试")
+public class SnapshotAccountTotalRepositoryTest extends AbstractBaseTest {
+
+    private static final LocalDate JAN = LocalDate.of(2024, 1, 31);
+    private static final LocalDate FEB = LocalDate.of(2024, 2, 29);
+
+    @Autowired
+    private SnapshotAccountTotalRepository accountTotalRepository;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+    private Account account1;
+    private Account account2;
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        account1 = createAccount("测试账户1");
+        account2 = createAccount("测试账户2");
+    }
+
+    @Test
+    @DisplayName("UC-TOTALS-001: 写操作后账户合计与存款记录一致")
+    public void testTotalsFollowWrites() {
+        // Given: 1 月保存快照，2 月复制 1 月
+        saveSnapshot(JAN, account1, "100.10", "200.20");
+        saveSnapshot(JAN, account2, "0.30");
+        reconciliationService.createNewReconciliation(userId, FEB);
+
+        // When: 修改、新增、删除 2 月的记录
+        DepositResponse added = depositService.createDeposit(createRequest(account2, "0.70", FEB), userId);
+        DepositResponse first = depositService.getDepositsByAccount(account1.getId(), userId, FEB).get(0);
+        depositService.updateDeposit(first.getId(), updateRequest(first, "150.15"), userId);
+        depositService.deleteDeposit(added.getId(), userId);
+        depositService.createDeposit(createRequest(account2, "1.05", FEB), userId);
+
+        // Then
+        assertEquals(expectedTotals(JAN), actualTotals(JAN));
+        assertEquals(expectedTotals(FEB), actualTotals(FEB));
+        assertEquals(List.of("测试账户1:300.30x2", "测试账户2:0.30x1"), actualTotals(JAN));
+
+        System.out.println("✓ UC-TOTALS-001: 写操作后账户合计与存款记录一致 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-TOTALS-002: 账户记录全部删除后合计行删除")
+    public void testTotalRowRemovedWhenEmpty() {
+        saveSnapshot(JAN, account1, "100.00");
+        saveSnapshot(JAN, account2, "50.00");
+        DepositResponse only = depositService.getDepositsByAccount(account2.getId(), userId, JAN).get(0);
+
+        depositService.deleteDeposit(only.getId(), userId);
+
+        assertEquals(List.of("测试账户1:100.00x1"), actualTotals(JAN));
+        assertEquals(JAN, accountTotalRepository.findLatestDateOnOrBefore(userId, FEB).orElseThrow());
+        assertEquals(JAN.toString(), accountTotalRepository.findEarliestDate(userId).orElseThrow());
+
+        System.out.println("✓ UC-TOTALS-002: 账户记录全部删除后合计行删除 - 通过");
+    }
+
+    private Account createAccount(String name) {
+        Account account = new Account();
+        account.setUserId(userId);
+        account.setName(name);
+        account.setType("活期存款");
+        account.setStatus(Account.AccountStatus.ACTIVE);
+        return accountRepository.save(account);
+    }
+
+    /**
+     * 保存对账时请求中没有的账户记录会被删除，因此把该日期已有的其他账户记录一并带上
+     */
+    private void saveSnapshot(LocalDate date, Account account, String... amounts) {
+        SaveReconciliationRequest request = new SaveReconciliationRequest();
+        request.setDate(date);
+        List<SaveReconciliationRequest.AccountDepositData> accounts = new ArrayList<>();
+        for (Account other : List.of(account1, account2)) {
+            if (other.getId().equals(account.getId())) {
+                continue;
+            }
+            List<SaveReconciliationRequest.DepositData> existing = depositService.getDepositsByAccount(other.getId(), userId, date).stream()
+                    .map(deposit -> depositData(deposit.getId(), deposit.getAmount()))
+                    .collect(Collectors.toList());
+            accounts.add(accountData(other, existing));
+        }
+        accounts.add(accountData(account, Arrays.stream(amounts)
+                .map(amount -> depositData(null, new BigDecimal(amount)))
+                .collect(Collectors.toList())));
+        request.setAccounts(accounts);
+        reconciliationService.saveReconciliation(userId, date, request, reconciliationService.getSnapshotVersion(userId, date));
+    }
+
+    private SaveReconciliationRequest.AccountDepositData accountData(Account account, List<SaveReconciliationRequest.DepositData> deposits) {
+        SaveReconciliationRequest.AccountDepositData data = new SaveReconciliationRequest.AccountDepositData();
+        data.setAccountId(account.getId());
+        data.setDeposits(deposits);
+        return data;
+    }
+
+    private SaveReconciliationRequest.DepositData depositData(Long id, BigDecimal amount) {
+        SaveReconciliationRequest.DepositData data = new SaveReconciliationRequest.DepositData();
+        data.setId(id);
+        data.setDepositType("活期");
+        data.setDepositTime(JAN);
+        data.setAmount(amount);
+        return data;
+    }
+
+    private CreateDepositRequest createRequest(Account account, String amount, LocalDate date) {
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(account.getId());
+        request.setDepositType("活期");
+        request.setDepositTime(date);
+        request.setAmount(new BigDecimal(amount));
+        request.setReconciliationDate(date);
+        return request;
+    }
+
+    private UpdateDepositRequest updateRequest(DepositResponse deposit, String amount) {
+        UpdateDepositRequest request = new UpdateDepositRequest();
+        request.setDepositType(deposit.getDepositType());
+        request.setDepositTime(deposit.getDepositTime());
+        request.setAmount(new BigDecimal(amount));
+        return request;
+    }
+
+    private List<String> actualTotals(LocalDate date) {
+        return accountTotalRepository.findByUserIdAndDate(userId, date).stream()
+                .map(total -> total.getAccountName() + ":" + total.getAmount().toPlainString() + "x" + total.getDepositCount())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 直接按存款记录分组汇总
+     */
+    private List<String> expectedTotals(LocalDate date) {
+        entityManager.flush();
+        return jdbcTemplate.query(
+                "SELECT a.name, SUM(CAST(ROUND(d.amount * 100) AS INTEGER)) AS cents, COUNT(*) AS cnt " +
+                "FROM deposits d JOIN accounts a ON a.id = d.account_id " +
+                "WHERE d.user_id = ? AND d.reconciliation_date = ? GROUP BY d.account_id ORDER BY d.account_id",
+                (rs, i) -> rs.getString("name") + ":" + BigDecimal.valueOf(rs.getLong("cents"), 2).toPlainString()
+                        + "x" + rs.getInt("cnt"),
+                userId, date.toString());
+    }
+}
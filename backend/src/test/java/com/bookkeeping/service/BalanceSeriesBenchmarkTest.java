@@ -0,0 +1,269 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.AccountTrendStatisticsResponse;
+import com.bookkeeping.dto.TrendStatisticsResponse;
+import com.bookkeeping.dto.YearlyStatisticsResponse;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BalanceSeries 单元测试与基准
+ *
+ * 测试覆盖：
+ * - 月末下标（沿用前一个月）、账户槽位、年度增值（含没有快照的年份）
+ * - 快照必须按日期顺序添加
+ * - 趋势、账户趋势、年度统计在余额序列上计算与原来在实体列表上计算的结果相同，
+ *   并输出两种方式每次计算的耗时（ns/op）和分配字节数（B/op）
+ */
+@DisplayName("BalanceSeries 单元测试与基准")
+public class BalanceSeriesBenchmarkTest extends AbstractBaseTest {
+
+    private static final int YEARS = 10;
+
+    private static final int ACCOUNTS = 8;
+
+    private static final int WARMUP = 2_000;
+
+    private static final int ITERATIONS = 2_000;
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final LocalDate today = LocalDate.now();
+
+    private List<Account> accounts;
+    private List<ReconciliationSnapshot> snapshots;
+    private Map<LocalDate, Map<Long, BigDecimal>> accountTotals;
+    private StatisticsData data;
+
+    @BeforeEach
+    public void setUp() {
+        accounts = new ArrayList<>();
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setId(100L + i);
+            account.setName("序列账户" + i);
+            accounts.add(account);
+        }
+
+        // 最近 10 年每周一个快照，每 5 周一条备注；每个账户在部分快照中没有合计
+        snapshots = new ArrayList<>();
+        accountTotals = new HashMap<>();
+        BalanceSeries.Builder builder = new BalanceSeries.Builder();
+        LocalDate date = today.minusYears(YEARS);
+        for (int w = 0; !date.isAfter(today); w++, date = date.plusWeeks(1)) {
+            Map<Long, BigDecimal> totals = new TreeMap<>();
+            long total = 0;
+            for (int a = 0; a < ACCOUNTS; a++) {
+                if ((w + a) % 7 == 0) {
+                    continue;
+                }
+                long cents = 1_000_000L * (a + 1) + w * 1_234L + a * 7;
+                totals.put(accounts.get(a).getId(), BigDecimal.valueOf(cents, 2));
+                builder.addAccountCents(date, accounts.get(a).getId(), cents);
+                total += cents;
+            }
+            ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+            snapshot.setId((long) w + 1);
+            snapshot.setReconciliationDate(date);
+            snapshot.setTotalAmount(BigDecimal.valueOf(total, 2));
+            snapshot.setNote(w % 5 == 0 ? "第" + (w + 1) + "周" : null);
+            snapshots.add(snapshot);
+            accountTotals.put(date, totals);
+            builder.addSnapshot(date, total, snapshot.getNote());
+        }
+        data = new StatisticsData(today, today.format(MONTH_FORMAT), builder.build(), accounts, List.of());
+    }
+
+    @Test
+    @DisplayName("UC-SERIES-001: 月末下标、账户槽位和年度增值")
+    public void testSeriesOperations() {
+        BalanceSeries series = new BalanceSeries.Builder()
+                .addSnapshot(LocalDate.of(2020, 3, 5), 10000, "开户")
+                .addSnapshot(LocalDate.of(2020, 3, 20), 12000, "  ")
+                .addSnapshot(LocalDate.of(2020, 5, 1), 15000, null)
+                .addSnapshot(LocalDate.of(2022, 2, 1), 9000, null)
+                .addAccountCents(LocalDate.of(2020, 3, 20), 7L, 12000)
+                .addAccountCents(LocalDate.of(2022, 2, 1), 3L, 9000)
+                .addAccountCents(LocalDate.of(2021, 1, 1), 5L, 1) // 没有对应快照，忽略
+                .build();
+
+        assertEquals(4, series.size());
+        assertEquals("开户", series.note(0));
+        assertNull(series.note(1));
+        assertEquals(3, series.accountCount());
+        assertEquals(-1, series.slotOf(4L));
+        assertEquals(BalanceSeries.ABSENT, series.accountCents(series.slotOf(7L), 0));
+        assertEquals(12000, series.accountCents(series.slotOf(7L), 1));
+        assertEquals(9000, series.accountCents(series.slotOf(3L), 3));
+
+        int march = BalanceSeries.monthKey(LocalDate.of(2020, 3, 1));
+        assertEquals(-1, series.lastIndexInOrBeforeMonth(march - 1));
+        assertEquals(1, series.lastIndexInOrBeforeMonth(march));
+        assertEquals(2, series.lastIndexInOrBeforeMonth(march + 20));
+
+        // 2020-02 到 2020-07：首个快照之前为 -1，4 月沿用 3 月，6、7 月沿用 5 月
+        int[] ends = new int[6];
+        series.monthEnds(march - 1, ends);
+        assertArrayEquals(new int[]{-1, 1, 1, 2, 2, 2}, ends);
+        // 不沿用范围之前的快照（与趋势统计一致：范围内第一个有快照的月份之前为 0）
+        series.monthEnds(march + 1, ends);
+        assertArrayEquals(new int[]{-1, 2, 2, 2, 2, 2}, ends);
+
+        assertEquals(2020, series.firstYear());
+        assertArrayEquals(new long[]{5000, BalanceSeries.ABSENT, -6000}, series.yearlyIncreaseCents());
+        // 第一年只有一次快照时增值为该次总金额
+        assertArrayEquals(new long[]{800}, new BalanceSeries.Builder()
+                .addSnapshot(LocalDate.of(2024, 6, 1), 800, null).build().yearlyIncreaseCents());
+
+        System.out.println("✓ UC-SERIES-001: 月末下标、账户槽位和年度增值 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-SERIES-002: 快照必须按日期顺序添加")
+    public void testSnapshotsMustBeOrdered() {
+        BalanceSeries.Builder builder = new BalanceSeries.Builder().addSnapshot(LocalDate.of(2024, 6, 1), 800, null);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> builder.addSnapshot(LocalDate.of(2024, 6, 1), 900, null));
+        assertEquals("快照必须按日期顺序添加", e.getMessage());
+
+        System.out.println("✓ UC-SERIES-002: 快照必须按日期顺序添加 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-BENCH-003: 余额序列与实体列表计算趋势、账户趋势、年度统计的耗时和分配")
+    public void benchmarkSeriesAgainstEntities() {
+        for (String period : new String[]{"6m", "1y", "3y", "all"}) {
+            assertEquals(entityTrend(period), StatisticsService.trendStatistics(data, period), period);
+            assertEquals(entityAccountTrend(period), StatisticsService.accountTrendStatistics(data, period), period);
+        }
+        assertEquals(entityYearly(), StatisticsService.yearlyStatistics(data));
+
+        System.out.println("余额统计计算（" + snapshots.size() + " 个快照，" + ACCOUNTS + " 个账户，period=all，"
+                + ITERATIONS + " 次）:");
+        report("趋势     实体列表", () -> entityTrend("all"));
+        report("趋势     余额序列", () -> StatisticsService.trendStatistics(data, "all"));
+        report("账户趋势 实体列表", () -> entityAccountTrend("all"));
+        report("账户趋势 余额序列", () -> StatisticsService.accountTrendStatistics(data, "all"));
+        report("年度     实体列表", this::entityYearly);
+        report("年度     余额序列", () -> StatisticsService.yearlyStatistics(data));
+
+        System.out.println("✓ UC-BENCH-003: 余额序列与实体列表计算趋势、账户趋势、年度统计的耗时和分配 - 通过");
+    }
+
+    /**
+     * 预热后输出每次调用的平均耗时和当前线程分配的字节数
+     */
+    private void report(String name, Supplier<Object> operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Object sink = null;
+        for (int i = 0; i < WARMUP; i++) {
+            sink = operation.get();
+        }
+        long bytes = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = operation.get();
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+        assertNotNull(sink);
+        System.out.printf("  %s: %,10d ns/op, %,10d B/op%n", name, nanos / ITERATIONS, bytes / ITERATIONS);
+    }
+
+    // ========== 原实现：按 "yyyy-MM" 字符串分组实体，BigDecimal 计算 ==========
+
+    /**
+     * 原实现中每个月的汇总对象（月末快照的总金额、账户金额和该月的备注）
+     */
+    private record MonthEnd(BigDecimal totalAmount, Map<Long, BigDecimal> accountAmounts, List<String> notes) {
+    }
+
+    private Map<String, MonthEnd> entityBalancesByMonth() {
+        Map<String, List<ReconciliationSnapshot>> byMonth = snapshots.stream()
+                .collect(Collectors.groupingBy(s -> s.getReconciliationDate().format(MONTH_FORMAT)));
+        Map<String, MonthEnd> balances = new HashMap<>();
+        byMonth.forEach((month, monthSnapshots) -> {
+            ReconciliationSnapshot last = monthSnapshots.get(monthSnapshots.size() - 1);
+            balances.put(month, new MonthEnd(last.getTotalAmount(), accountTotals.get(last.getReconciliationDate()),
+                    monthSnapshots.stream()
+                            .filter(s -> s.getNote() != null && !s.getNote().trim().isEmpty())
+                            .map(s -> s.getReconciliationDate() + ": " + s.getNote())
+                            .collect(Collectors.toList())));
+        });
+        return balances;
+    }
+
+    private List<String> entityMonths(String period) {
+        LocalDate earliest = snapshots.get(0).getReconciliationDate();
+        return StatisticsService.monthsBetween(StatisticsService.periodStartDate(period, today, Optional.of(earliest)), today);
+    }
+
+    private TrendStatisticsResponse entityTrend(String period) {
+        Map<String, MonthEnd> balances = entityBalancesByMonth();
+        List<TrendStatisticsResponse.TrendDataItem> items = new ArrayList<>();
+        BigDecimal lastAmount = BigDecimal.ZERO;
+        for (String month : entityMonths(period)) {
+            MonthEnd balance = balances.get(month);
+            if (balance != null) {
+                lastAmount = balance.totalAmount();
+                items.add(new TrendStatisticsResponse.TrendDataItem(month, lastAmount, new ArrayList<>(balance.notes())));
+            } else {
+                items.add(new TrendStatisticsResponse.TrendDataItem(month, lastAmount, new ArrayList<>()));
+            }
+        }
+        return new TrendStatisticsResponse(period, items);
+    }
+
+    private AccountTrendStatisticsResponse entityAccountTrend(String period) {
+        Map<String, Map<Long, BigDecimal>> monthlySums = new HashMap<>();
+        entityBalancesByMonth().forEach((month, balance) -> monthlySums.put(month, balance.accountAmounts()));
+        return StatisticsService.buildAccountTrendResponse(period, entityMonths(period), accounts, monthlySums);
+    }
+
+    private YearlyStatisticsResponse entityYearly() {
+        int firstYear = snapshots.get(0).getReconciliationDate().getYear();
+        int lastYear = snapshots.get(snapshots.size() - 1).getReconciliationDate().getYear();
+        Map<Integer, List<ReconciliationSnapshot>> byYear = snapshots.stream()
+                .collect(Collectors.groupingBy(s -> s.getReconciliationDate().getYear()));
+        List<YearlyStatisticsResponse.YearlyDataItem> items = new ArrayList<>();
+        BigDecimal previousYearLast = null;
+        for (int year = firstYear; year <= lastYear; year++) {
+            List<ReconciliationSnapshot> yearSnapshots = byYear.get(year);
+            BigDecimal increase = BigDecimal.ZERO;
+            if (yearSnapshots != null) {
+                ReconciliationSnapshot first = yearSnapshots.get(0);
+                ReconciliationSnapshot last = yearSnapshots.get(yearSnapshots.size() - 1);
+                if (year == firstYear) {
+                    increase = first.getId().equals(last.getId())
+                            ? last.getTotalAmount()
+                            : last.getTotalAmount().subtract(first.getTotalAmount());
+                } else {
+                    increase = last.getTotalAmount().subtract(previousYearLast);
+                }
+                previousYearLast = last.getTotalAmount();
+            }
+            items.add(new YearlyStatisticsResponse.YearlyDataItem(String.valueOf(year), increase));
+        }
+        return new YearlyStatisticsResponse(items);
+    }
+}
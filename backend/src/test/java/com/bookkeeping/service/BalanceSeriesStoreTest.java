@@ -0,0 +1,425 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.CreateAccountRequest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.TrendStatisticsResponse;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 余额序列存储测试
+ *
+ * 写操作在写线程的事务中提交，存储只在只读事务中使用，因此这里不使用测试事务，测试结束后手动清理。
+ *
+ * 测试覆盖：
+ * - 编码后解码得到相同的序列（备注、没有合计的账户、空序列）
+ * - 快照和存款记录的写入使数据版本加一，只读取不改变版本
+ * - 写入文件后新实例（模拟重启）映射文件，版本未变时不再查询数据库，版本变化后重新加载
+ * - 数据块损坏时只忽略该用户，文件头损坏或文件版本大于数据库时忽略整个文件，末尾不完整的记录被忽略
+ * - 趋势统计经过存储：保存存款后立即读到新数据，写事务中不经过存储
+ * - 内存中最多 max-users 个用户，淘汰和空闲清除的用户从文件读取；新序列追加到文件末尾，失效记录过多时整理文件
+ */
+@DisplayName("余额序列存储测试")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BalanceSeriesStoreTest extends AbstractBaseTest {
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    private Path tempDir;
+
+    private Long userId;
+    private Long accountId;
+    private final LocalDate date = LocalDate.now().minusMonths(2).withDayOfMonth(10);
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        CreateAccountRequest accountRequest = new CreateAccountRequest();
+        accountRequest.setName("余额序列存储测试账户");
+        accountRequest.setType("活期存款");
+        accountId = accountService.createAccount(accountRequest, userId).getId();
+
+        reconciliationService.createNewReconciliation(userId, date);
+        depositService.createDeposit(depositRequest(new BigDecimal("100.00")), userId);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM deposits WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM reconciliation_snapshots WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM snapshot_account_totals WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM monthly_balance_agg WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM monthly_balance_dirty WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM accounts WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+    }
+
+    @Test
+    @DisplayName("UC-SERIESSTORE-001: 编码后解码得到相同的序列")
+    public void testEncodeDecode() {
+        BalanceSeries series = new BalanceSeries.Builder()
+                .addSnapshot(LocalDate.of(2023, 12, 31), 150000, "年终 ✓ 对账")
+                .addSnapshot(LocalDate.of(2024, 1, 15), -2500, null)
+                .addSnapshot(LocalDate.of(2024, 3, 1), 99999999999L, "")
+                .addAccountCents(LocalDate.of(2023, 12, 31), 9L, 100000)
+                .addAccountCents(LocalDate.of(2023, 12, 31), 4L, 50000)
+                .addAccountCents(LocalDate.of(2024, 3, 1), 9L, 99999999999L)
+                .build();
+
+        assertSeriesEquals(series, BalanceSeriesStore.decode(ByteBuffer.wrap(BalanceSeriesStore.encode(series))));
+        BalanceSeries empty = new BalanceSeries.Builder().build();
+        assertSeriesEquals(empty, BalanceSeriesStore.decode(ByteBuffer.wrap(BalanceSeriesStore.encode(empty))));
+
+        System.out.println("✓ UC-SERIESSTORE-001: 编码后解码得到相同的序列 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-SERIESSTORE-002: 快照和存款记录的写入使数据版本加一")
+    public void testDataVersionBumpedByWrites() {
+        long initial = snapshotRepository.findDataVersion(userId);
+        assertTrue(initial > 0);
+
+        depositService.createDeposit(depositRequest(new BigDecimal("20.00")), userId);
+        long afterDeposit = snapshotRepository.findDataVersion(userId);
+        assertTrue(afterDeposit > initial);
+
+        Long snapshotVersion = reconciliationService.getSnapshotVersion(userId, date);
+        reconciliationService.updateSnapshotNote(userId, date, "备注变化", snapshotVersion);
+        long afterNote = snapshotRepository.findDataVersion(userId);
+        assertTrue(afterNote > afterDeposit);
+
+        // 只读取不改变版本，其他用户的版本不受影响
+        readOnly(() -> statisticsService.getTrendStatistics(userId, "all"));
+        assertEquals(afterNote, snapshotRepository.findDataVersion(userId));
+        assertEquals(0L, snapshotRepository.findDataVersion(userId + 1_000_000));
+        assertTrue(snapshotRepository.findMaxDataVersion() >= afterNote);
+
+        System.out.println("✓ UC-SERIESSTORE-002: 快照和存款记录的写入使数据版本加一 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-SERIESSTORE-003: 重启后映射文件，版本未变时不再查询数据库")
+    public void testSurvivesRestart() {
+        Path file = tempDir.resolve("balance-series.bin");
+        AtomicInteger queries = new AtomicInteger();
+        Supplier<BalanceSeries> loader = () -> {
+            queries.incrementAndGet();
+            return statisticsService.loadBalanceSeries(userId);
+        };
+        long version = snapshotRepository.findDataVersion(userId);
+
+        BalanceSeriesStore before = standaloneStore(file);
+        long start = System.nanoTime();
+        BalanceSeries loaded = readOnly(() -> before.get(userId, version, loader));
+        long coldNanos = System.nanoTime() - start;
+        assertEquals(1, queries.get());
+        start = System.nanoTime();
+        assertSame(loaded, readOnly(() -> before.get(userId, version, loader)));
+        long warmNanos = System.nanoTime() - start;
+        assertEquals(1, queries.get());
+        before.stop();
+        assertTrue(Files.exists(file));
+
+        // 模拟重启：新实例映射同一个文件
+        BalanceSeriesStore after = standaloneStore(file);
+        start = System.nanoTime();
+        BalanceSeries restored = readOnly(() -> after.get(userId, version, loader));
+        long restartNanos = System.nanoTime() - start;
+        assertEquals(1, queries.get());
+        assertSeriesEquals(loaded, restored);
+        assertEquals(1, after.size());
+
+        // 数据变化后版本不同，重新加载
+        depositService.createDeposit(depositRequest(new BigDecimal("30.00")), userId);
+        long newVersion = snapshotRepository.findDataVersion(userId);
+        BalanceSeries reloaded = readOnly(() -> after.get(userId, newVersion, loader));
+        assertEquals(2, queries.get());
+        assertEquals(13000, reloaded.totalCents(reloaded.size() - 1));
+
+        System.out.printf("余额序列读取: 查询数据库 %.3f ms, 内存 %.3f ms, 重启后从文件 %.3f ms%n",
+                coldNanos / 1_000_000.0, warmNanos / 1_000_000.0, restartNanos / 1_000_000.0);
+        System.out.println("✓ UC-SERIESSTORE-003: 重启后映射文件，版本未变时不再查询数据库 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-SERIESSTORE-004: 文件损坏或版本大于数据库时忽略")
+    public void testCorruptFileIgnored() throws IOException {
+        Path file = tempDir.resolve("balance-series.bin");
+        AtomicInteger queries = new AtomicInteger();
+        Supplier<BalanceSeries> loader = () -> {
+            queries.incrementAndGet();
+            return statisticsService.loadBalanceSeries(userId);
+        };
+        long version = snapshotRepository.findDataVersion(userId);
+        BalanceSeriesStore writer = standaloneStore(file);
+        readOnly(() -> writer.get(userId, version, loader));
+        writer.stop();
+        byte[] original = Files.readAllBytes(file);
+
+        // 数据块损坏：只忽略该用户
+        byte[] corrupt = original.clone();
+        corrupt[corrupt.length - 1] ^= 0x5A;
+        Files.write(file, corrupt);
+        BalanceSeriesStore blockCorrupt = standaloneStore(file);
+        readOnly(() -> blockCorrupt.get(userId, version, loader));
+        assertEquals(2, queries.get());
+
+        // 文件头损坏：忽略整个文件
+        corrupt = original.clone();
+        corrupt[4] ^= 0x01;
+        Files.write(file, corrupt);
+        BalanceSeriesStore headerCorrupt = standaloneStore(file);
+        assertNull(ReflectionTestUtils.getField(headerCorrupt, "mapped"));
+
+        // 追加时中断：末尾不完整的记录被忽略，之前的记录仍然有效
+        Files.write(file, original);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(original.length);
+            raf.write(BalanceSeriesStore.record(userId + 1, 1, new byte[64]), 0, 40);
+        }
+        BalanceSeriesStore torn = standaloneStore(file);
+        readOnly(() -> torn.get(userId, version, loader));
+        assertEquals(2, queries.get());
+
+        // 文件中的版本大于数据库（数据库被替换或恢复过）：忽略整个文件
+        Path restoredFile = tempDir.resolve("restored.bin");
+        BalanceSeriesStore newer = standaloneStore(restoredFile);
+        readOnly(() -> newer.get(userId, snapshotRepository.findMaxDataVersion() + 1, loader));
+        newer.stop();
+        BalanceSeriesStore restored = standaloneStore(restoredFile);
+        assertNull(ReflectionTestUtils.getField(restored, "mapped"));
+
+        // 原文件可以正常读取
+        Files.write(file, original);
+        BalanceSeriesStore intact = standaloneStore(file);
+        readOnly(() -> intact.get(userId, version, loader));
+        assertEquals(3, queries.get());
+
+        System.out.println("✓ UC-SERIESSTORE-004: 文件损坏或版本大于数据库时忽略 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-SERIESSTORE-005: 趋势统计经过存储，保存后立即读到新数据")
+    public void testTrendThroughStore() {
+        double memory = count("memory");
+        TrendStatisticsResponse first = statisticsService.getTrendStatistics(userId, "6m");
+        statisticsService.getTrendStatistics(userId, "1y");
+        assertTrue(count("memory") >= memory + 1);
+        assertEquals(0, new BigDecimal("100.00").compareTo(lastAmount(first)));
+
+        depositService.createDeposit(depositRequest(new BigDecimal("50.00")), userId);
+        assertEquals(0, new BigDecimal("150.00").compareTo(lastAmount(statisticsService.getTrendStatistics(userId, "6m"))));
+
+        // 写事务中读到的数据可能被回滚，不经过存储
+        double loads = count("memory") + count("file") + count("database");
+        new TransactionTemplate(transactionManager).execute(status -> statisticsService.getTrendStatistics(userId, "6m"));
+        assertEquals(loads, count("memory") + count("file") + count("database"));
+
+        System.out.println("✓ UC-SERIESSTORE-005: 趋势统计经过存储，保存后立即读到新数据 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-SERIESSTORE-006: 内存有上限，清除的用户从文件读取，新序列追加到文件")
+    public void testBoundedMemoryBackedByFile() throws IOException {
+        Path file = tempDir.resolve("balance-series.bin");
+        BalanceSeriesStore store = standaloneStore(file, 2);
+        AtomicInteger queries = new AtomicInteger();
+        long[] users = {userId + 1_000_000, userId + 1_000_001, userId + 1_000_002};
+        for (long user : users) {
+            readOnly(() -> store.get(user, 1, () -> {
+                queries.incrementAndGet();
+                return syntheticSeries(user, 10);
+            }));
+        }
+        // 最多保留 2 个用户；达到 2 个未写入的序列时已经写入文件
+        assertEquals(2, store.size());
+        assertEquals(3, queries.get());
+        store.flush();
+        assertTrue(Files.exists(file));
+
+        // 被淘汰的用户从文件读取，不再调用 loader
+        BalanceSeries first = readOnly(() -> store.get(users[0], 1, () -> {
+            queries.incrementAndGet();
+            return syntheticSeries(users[0], 10);
+        }));
+        assertEquals(3, queries.get());
+        assertSeriesEquals(syntheticSeries(users[0], 10), first);
+
+        // 空闲清除后同样从文件读取
+        ReflectionTestUtils.setField(store, "idleSeconds", 0L);
+        store.evictIdle();
+        assertEquals(0, store.size());
+        ReflectionTestUtils.setField(store, "idleSeconds", 600L);
+        readOnly(() -> store.get(users[1], 1, () -> {
+            queries.incrementAndGet();
+            return syntheticSeries(users[1], 10);
+        }));
+        assertEquals(3, queries.get());
+
+        // 新版本追加到文件末尾，之前的内容不变
+        byte[] before = Files.readAllBytes(file);
+        readOnly(() -> store.get(users[2], 2, () -> syntheticSeries(users[2], 11)));
+        store.flush();
+        byte[] after = Files.readAllBytes(file);
+        int recordBytes = BalanceSeriesStore.RECORD_HEADER_BYTES + BalanceSeriesStore.encode(syntheticSeries(users[2], 11)).length;
+        assertEquals(before.length + recordBytes, after.length);
+        assertArrayEquals(before, Arrays.copyOf(after, before.length));
+
+        // 新实例（模拟重启）读到每个用户最后追加的记录
+        BalanceSeriesStore restarted = standaloneStore(file, 2);
+        assertSeriesEquals(syntheticSeries(users[0], 10), readOnly(() -> restarted.get(users[0], 1, () -> null)));
+        assertSeriesEquals(syntheticSeries(users[2], 11), readOnly(() -> restarted.get(users[2], 2, () -> null)));
+
+        // 同一用户反复更新，失效记录超过有效记录且超过 1MB 时整理文件
+        long largest = 0;
+        for (int version = 3; version < 40; version++) {
+            int snapshots = 2000 + version;
+            long stamp = version;
+            readOnly(() -> store.get(users[2], stamp, () -> syntheticSeries(users[2], snapshots)));
+            store.flush();
+            largest = Math.max(largest, Files.size(file));
+        }
+        assertTrue(Files.size(file) < largest);
+        assertTrue(largest < 4 * BalanceSeriesStore.COMPACT_MIN_BYTES);
+
+        // 整理后其他用户的记录仍然有效
+        ReflectionTestUtils.setField(store, "idleSeconds", 0L);
+        store.evictIdle();
+        ReflectionTestUtils.setField(store, "idleSeconds", 600L);
+        assertSeriesEquals(syntheticSeries(users[0], 10), readOnly(() -> store.get(users[0], 1, () -> null)));
+        assertSeriesEquals(syntheticSeries(users[1], 10), readOnly(() -> store.get(users[1], 1, () -> null)));
+        assertSeriesEquals(syntheticSeries(users[2], 2039), readOnly(() -> store.get(users[2], 39, () -> null)));
+
+        System.out.println("✓ UC-SERIESSTORE-006: 内存有上限，清除的用户从文件读取，新序列追加到文件 - 通过");
+    }
+
+    private BalanceSeriesStore standaloneStore(Path file) {
+        return standaloneStore(file, 1000);
+    }
+
+    private BalanceSeriesStore standaloneStore(Path file, int maxUsers) {
+        BalanceSeriesStore store = new BalanceSeriesStore();
+        ReflectionTestUtils.setField(store, "snapshotRepository", snapshotRepository);
+        ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "path", file.toString());
+        ReflectionTestUtils.setField(store, "maxUsers", maxUsers);
+        ReflectionTestUtils.setField(store, "idleSeconds", 600L);
+        store.start();
+        return store;
+    }
+
+    /**
+     * 按用户和快照数生成的序列（每天一个快照，两个账户）
+     */
+    private static BalanceSeries syntheticSeries(long user, int snapshots) {
+        BalanceSeries.Builder builder = new BalanceSeries.Builder();
+        LocalDate first = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < snapshots; i++) {
+            LocalDate day = first.plusDays(i);
+            builder.addSnapshot(day, user + i * 100L, i % 7 == 0 ? "备注 " + i : null)
+                    .addAccountCents(day, 1L, user + i * 60L)
+                    .addAccountCents(day, 2L, i * 40L);
+        }
+        return builder.build();
+    }
+
+    private <T> T readOnly(Supplier<T> action) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> action.get());
+    }
+
+    private double count(String source) {
+        return meterRegistry.get("bookkeeping.balance-series.load").tag("source", source).counter().count();
+    }
+
+    private static BigDecimal lastAmount(TrendStatisticsResponse trend) {
+        return trend.getData().get(trend.getData().size() - 1).getTotalAmount();
+    }
+
+    private static void assertSeriesEquals(BalanceSeries expected, BalanceSeries actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.epochDay(i), actual.epochDay(i));
+            assertEquals(expected.monthKey(i), actual.monthKey(i));
+            assertEquals(expected.totalCents(i), actual.totalCents(i));
+            assertEquals(expected.note(i), actual.note(i));
+        }
+        assertEquals(expected.accountCount(), actual.accountCount());
+        for (int slot = 0; slot < expected.accountCount(); slot++) {
+            assertEquals(expected.accountId(slot), actual.accountId(slot));
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.accountCents(slot, i), actual.accountCents(slot, i));
+            }
+        }
+    }
+
+    private CreateDepositRequest depositRequest(BigDecimal amount) {
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(accountId);
+        request.setDepositType("活期");
+        request.setDepositTime(date);
+        request.setAmount(amount);
+        request.setReconciliationDate(date);
+        return request;
+    }
+}
@@ -1,15 +1,24 @@
 package com.bookkeeping.service;
 
 import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.BatchDepositRequest;
+import com.bookkeeping.dto.BatchDepositResponse;
 import com.bookkeeping.dto.CreateDepositRequest;
 import com.bookkeeping.dto.RegisterRequest;
 import com.bookkeeping.dto.UpdateDepositRequest;
 import com.bookkeeping.entity.Account;
 import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.DepositVersion;
 import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.exception.ConflictException;
+import com.bookkeeping.exception.PreconditionRequiredException;
 import com.bookkeeping.repository.AccountRepository;
 import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.DepositVersionRepository;
 import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -17,6 +26,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,7 +40,12 @@ import static org.junit.jupiter.api.Assertions.*;
  * - 创建存款记录（同步更新快照总金额）
  * - 更新存款记录（同步更新快照总金额）
  * - 删除存款记录（同步更新快照总金额）
+ * - 快照总金额按差额调整，不重新读取该日期的存款记录
+ * - 快照总金额校验与修正（不递增快照版本）
+ * - 批量新增、更新、删除（跨对账日期，每个快照总金额调整一次）
+ * - 写操作校验快照版本（缺少时 428、过期时 409），返回写入后的快照版本
  * - 获取账户存款记录
+ * - 数据已转换为时态存储时拒绝以快照存储启动
  */
 @DisplayName("DepositService 单元测试")
 public class DepositServiceTest extends AbstractBaseTest {
@@ -48,6 +65,15 @@ public class DepositServiceTest extends AbstractBaseTest {
     @Autowired
     private ReconciliationSnapshotRepository snapshotRepository;
     
+    @Autowired
+    private EntityManager entityManager;
+    
+    @Autowired
+    private SnapshotDepositStore snapshotDepositStore;
+    
+    @Autowired
+    private DepositVersionRepository versionRepository;
+    
     private Long userId;
     private Account account1;
     private Account account2;
@@ -311,7 +337,7 @@ public class DepositServiceTest extends AbstractBaseTest {
         // Then: 验证快照总金额变为0
         ReconciliationSnapshot updatedSnapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate)
                 .orElseThrow();
-        assertEquals(BigDecimal.ZERO, updatedSnapshot.getTotalAmount());
+        assertEquals(new BigDecimal("0.00"), updatedSnapshot.getTotalAmount());
         
         // 验证存款记录已删除
         assertFalse(depositRepository.findById(deposit.getId()).isPresent());
@@ -360,4 +386,276 @@ public class DepositServiceTest extends AbstractBaseTest {
         
         System.out.println("✓ UC-DEPOSIT-007: 获取账户存款记录 - 通过");
     }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-008: 200 条记录的快照中修改一条，只按差额调整快照总金额")
+    public void testUpdateDeposit_AdjustsTotalByDelta() {
+        // Given: 一个 200 条记录的快照
+        List<Deposit> deposits = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Deposit deposit = new Deposit();
+            deposit.setUserId(userId);
+            deposit.setAccountId(i % 2 == 0 ? account1.getId() : account2.getId());
+            deposit.setDepositType("定期");
+            deposit.setDepositTime(reconciliationDate);
+            deposit.setAmount(new BigDecimal("100.01"));
+            deposit.setReconciliationDate(reconciliationDate);
+            deposits.add(deposit);
+        }
+        deposits = depositRepository.saveAll(deposits);
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(userId);
+        snapshot.setReconciliationDate(reconciliationDate);
+        snapshot.setTotalAmount(new BigDecimal("20002.00"));
+        snapshotRepository.save(snapshot);
+        entityManager.flush();
+        entityManager.clear();
+        
+        // When: 修改一条记录的金额，统计读取的存款记录实体数
+        UpdateDepositRequest updateRequest = new UpdateDepositRequest();
+        updateRequest.setDepositType("定期");
+        updateRequest.setDepositTime(reconciliationDate);
+        updateRequest.setAmount(new BigDecimal("150.50"));
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        long depositLoads;
+        try {
+            depositService.updateDeposit(deposits.get(0).getId(), updateRequest, userId);
+            depositLoads = statistics.getEntityStatistics(Deposit.class.getName()).getLoadCount();
+        } finally {
+            statistics.setStatisticsEnabled(statisticsEnabled);
+        }
+        
+        // Then: 只读取被修改的那一条记录，总金额增加 50.49
+        assertEquals(1, depositLoads);
+        assertEquals(new BigDecimal("20052.49"), snapshotRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate)
+                .orElseThrow().getTotalAmount());
+        assertEquals(0, depositService.verifySnapshotTotals(userId));
+        
+        System.out.println("✓ UC-DEPOSIT-008: 200 条记录的快照中修改一条，只按差额调整快照总金额 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-009: 校验发现快照总金额偏差并修正")
+    public void testVerifySnapshotTotals_RepairsDrift() {
+        // Given: 快照总金额与存款记录合计（300.50）不一致
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(userId);
+        snapshot.setReconciliationDate(reconciliationDate);
+        snapshot.setTotalAmount(new BigDecimal("300.50"));
+        snapshotRepository.save(snapshot);
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(account1.getId());
+        request.setDepositType("定期");
+        request.setDepositTime(reconciliationDate);
+        request.setAmount(new BigDecimal("300.50"));
+        request.setReconciliationDate(reconciliationDate);
+        depositService.createDeposit(request, userId);
+        snapshotRepository.addTotalAmountCents(userId, reconciliationDate, 1234);
+        long version = snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow();
+        
+        // When & Then: 第一次校验修正一个快照，第二次没有偏差
+        assertEquals(1, depositService.verifySnapshotTotals(userId));
+        assertEquals(new BigDecimal("300.50"), snapshotRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate)
+                .orElseThrow().getTotalAmount());
+        assertEquals(0, depositService.verifySnapshotTotals(userId));
+        
+        // 修正不递增快照版本，读取时的 ETag 仍然可以用于保存
+        assertEquals(version, snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow());
+        
+        System.out.println("✓ UC-DEPOSIT-009: 校验发现快照总金额偏差并修正 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-010: 批量新增、更新、删除跨两个对账日期")
+    public void testApplyBatch_AcrossDates() {
+        // Given: 两个快照日期各有一条记录
+        LocalDate secondDate = reconciliationDate.plusMonths(1);
+        Deposit first = saveDepositWithSnapshot(reconciliationDate, "1000.00");
+        Deposit second = saveDepositWithSnapshot(secondDate, "2000.00");
+        
+        long firstVersion = snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow();
+        long secondVersion = snapshotRepository.findVersion(userId, secondDate).orElseThrow();
+        
+        // When: 第一个日期新增一条、更新一条，第二个日期删除一条并新增一条
+        BatchDepositRequest request = new BatchDepositRequest();
+        request.setSnapshotVersions(Map.of(reconciliationDate, firstVersion, secondDate, secondVersion));
+        request.setOperations(List.of(
+                batchOperation(BatchDepositRequest.OperationType.CREATE, null, reconciliationDate, "300.25"),
+                batchOperation(BatchDepositRequest.OperationType.UPDATE, first.getId(), reconciliationDate, "1200.00"),
+                batchOperation(BatchDepositRequest.OperationType.DELETE, second.getId(), secondDate, null),
+                batchOperation(BatchDepositRequest.OperationType.CREATE, null, secondDate, "50.50")
+        ));
+        BatchDepositResponse response = depositService.applyBatch(request, userId);
+        
+        // Then: 结果与请求一一对应，两个快照的总金额都已调整
+        assertEquals(4, response.getResults().size());
+        BatchDepositResponse.OperationResult created = response.getResults().get(0);
+        assertEquals(0, created.getIndex());
+        assertNotNull(created.getId());
+        assertEquals(new BigDecimal("300.25"), created.getDeposit().getAmount());
+        assertEquals(first.getId(), response.getResults().get(1).getId());
+        assertEquals(new BigDecimal("1200.00"), response.getResults().get(1).getDeposit().getAmount());
+        assertEquals(second.getId(), response.getResults().get(2).getId());
+        assertNull(response.getResults().get(2).getDeposit());
+        assertEquals(secondDate, response.getResults().get(3).getDeposit().getReconciliationDate());
+        assertEquals(snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow(),
+                response.getSnapshotVersions().get(reconciliationDate));
+        assertTrue(response.getSnapshotVersions().get(reconciliationDate) > firstVersion);
+        assertTrue(response.getSnapshotVersions().get(secondDate) > secondVersion);
+        
+        assertEquals(new BigDecimal("1500.25"), snapshotRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate)
+                .orElseThrow().getTotalAmount());
+        assertEquals(new BigDecimal("50.50"), snapshotRepository.findByUserIdAndReconciliationDate(userId, secondDate)
+                .orElseThrow().getTotalAmount());
+        assertFalse(depositRepository.findById(second.getId()).isPresent());
+        assertEquals(2, depositRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate).size());
+        assertEquals(0, depositService.verifySnapshotTotals(userId));
+        
+        System.out.println("✓ UC-DEPOSIT-010: 批量新增、更新、删除跨两个对账日期 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-011: 批量操作参数错误时指出第几个操作，不写入任何记录")
+    public void testApplyBatch_InvalidOperation() {
+        Deposit first = saveDepositWithSnapshot(reconciliationDate, "1000.00");
+        Map<LocalDate, Long> versions = Map.of(reconciliationDate, snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow());
+        
+        // 第 2 个操作的记录不存在
+        BatchDepositRequest missing = new BatchDepositRequest();
+        missing.setSnapshotVersions(versions);
+        missing.setOperations(List.of(
+                batchOperation(BatchDepositRequest.OperationType.CREATE, null, reconciliationDate, "300.00"),
+                batchOperation(BatchDepositRequest.OperationType.DELETE, -1L, reconciliationDate, null)
+        ));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> depositService.applyBatch(missing, userId));
+        assertEquals("第 2 个操作：存款记录不存在", exception.getMessage());
+        assertEquals(1, depositRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate).size());
+        
+        // 同一记录出现两次
+        BatchDepositRequest duplicate = new BatchDepositRequest();
+        duplicate.setSnapshotVersions(versions);
+        duplicate.setOperations(List.of(
+                batchOperation(BatchDepositRequest.OperationType.UPDATE, first.getId(), reconciliationDate, "10.00"),
+                batchOperation(BatchDepositRequest.OperationType.DELETE, first.getId(), reconciliationDate, null)
+        ));
+        exception = assertThrows(RuntimeException.class, () -> depositService.applyBatch(duplicate, userId));
+        assertEquals("第 2 个操作：同一存款记录只能操作一次", exception.getMessage());
+        
+        // 金额不合法
+        BatchDepositRequest invalidAmount = new BatchDepositRequest();
+        invalidAmount.setSnapshotVersions(versions);
+        invalidAmount.setOperations(List.of(
+                batchOperation(BatchDepositRequest.OperationType.UPDATE, first.getId(), reconciliationDate, "-1")
+        ));
+        exception = assertThrows(RuntimeException.class, () -> depositService.applyBatch(invalidAmount, userId));
+        assertEquals("第 1 个操作：金额必须大于0", exception.getMessage());
+        
+        System.out.println("✓ UC-DEPOSIT-011: 批量操作参数错误时指出第几个操作，不写入任何记录 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-012: 写操作校验快照版本，缺少或过期时不写入")
+    public void testWrites_CheckSnapshotVersion() {
+        Deposit first = saveDepositWithSnapshot(reconciliationDate, "1000.00");
+        long version = snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow();
+        
+        CreateDepositRequest create = new CreateDepositRequest();
+        create.setAccountId(account1.getId());
+        create.setDepositType("活期");
+        create.setDepositTime(reconciliationDate);
+        create.setAmount(new BigDecimal("100.00"));
+        create.setReconciliationDate(reconciliationDate);
+        UpdateDepositRequest update = new UpdateDepositRequest();
+        update.setDepositType("定期");
+        update.setDepositTime(reconciliationDate);
+        update.setAmount(new BigDecimal("1100.00"));
+        
+        // 快照已存在：缺少版本 428，版本过期 409，都不写入
+        assertThrows(PreconditionRequiredException.class, () -> depositService.createDeposit(create, userId, null));
+        assertThrows(ConflictException.class, () -> depositService.updateDeposit(first.getId(), update, userId, null, version - 1));
+        assertThrows(ConflictException.class, () -> depositService.deleteDeposit(first.getId(), userId, null, version + 1));
+        assertEquals(version, snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow());
+        assertEquals(1, depositRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate).size());
+        
+        // 版本一致：每次写入返回新的快照版本，下一次写入使用返回的版本
+        Long created = depositService.createDeposit(create, userId, version).getSnapshotVersion();
+        assertTrue(created > version);
+        Long updated = depositService.updateDeposit(first.getId(), update, userId, null, created).getSnapshotVersion();
+        assertTrue(updated > created);
+        Long deleted = depositService.deleteDeposit(first.getId(), userId, reconciliationDate, updated);
+        assertEquals(snapshotRepository.findVersion(userId, reconciliationDate).orElseThrow(), deleted);
+        
+        // 批量操作：受影响的快照缺少版本 428，版本过期 409
+        BatchDepositRequest batch = new BatchDepositRequest();
+        batch.setOperations(List.of(
+                batchOperation(BatchDepositRequest.OperationType.CREATE, null, reconciliationDate, "10.00")
+        ));
+        assertThrows(PreconditionRequiredException.class, () -> depositService.applyBatch(batch, userId));
+        batch.setSnapshotVersions(Map.of(reconciliationDate, updated));
+        assertThrows(ConflictException.class, () -> depositService.applyBatch(batch, userId));
+        assertEquals(1, depositRepository.findByUserIdAndReconciliationDate(userId, reconciliationDate).size());
+        
+        // 没有快照的日期不需要版本
+        LocalDate noSnapshotDate = reconciliationDate.plusDays(1);
+        create.setReconciliationDate(noSnapshotDate);
+        assertNull(depositService.createDeposit(create, userId, null).getSnapshotVersion());
+        
+        System.out.println("✓ UC-DEPOSIT-012: 写操作校验快照版本，缺少或过期时不写入 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-DEPOSIT-013: 数据已转换为时态存储时拒绝以快照存储启动")
+    public void testSnapshotStore_RefusesConvertedData() {
+        assertDoesNotThrow(() -> snapshotDepositStore.checkNotConverted());
+        
+        // 转换后 deposits 中的记录已删除，只剩版本
+        DepositVersion version = new DepositVersion();
+        version.setUserId(userId);
+        version.setAccountId(account1.getId());
+        version.setDepositType("定期");
+        version.setDepositTime(reconciliationDate);
+        version.setAmount(new BigDecimal("1000.00"));
+        version.setValidFromDate(reconciliationDate);
+        versionRepository.saveAndFlush(version);
+        
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> snapshotDepositStore.checkNotConverted());
+        assertTrue(error.getMessage().contains("deposit-storage.mode=snapshot"), error.getMessage());
+        
+        System.out.println("✓ UC-DEPOSIT-013: 数据已转换为时态存储时拒绝以快照存储启动 - 通过");
+    }
+    
+    // 辅助方法：创建快照及其中的一条存款记录
+    private Deposit saveDepositWithSnapshot(LocalDate date, String amount) {
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(userId);
+        snapshot.setReconciliationDate(date);
+        snapshot.setTotalAmount(new BigDecimal(amount));
+        snapshotRepository.save(snapshot);
+        Deposit deposit = new Deposit();
+        deposit.setUserId(userId);
+        deposit.setAccountId(account1.getId());
+        deposit.setDepositType("定期");
+        deposit.setDepositTime(date);
+        deposit.setAmount(new BigDecimal(amount));
+        deposit.setReconciliationDate(date);
+        return depositRepository.save(deposit);
+    }
+    
+    // 辅助方法：构造批量操作
+    private BatchDepositRequest.Operation batchOperation(BatchDepositRequest.OperationType type, Long id,
+                                                         LocalDate date, String amount) {
+        BatchDepositRequest.Operation operation = new BatchDepositRequest.Operation();
+        operation.setType(type);
+        operation.setId(id);
+        operation.setReconciliationDate(date);
+        operation.setAccountId(account1.getId());
+        operation.setDepositType("定期");
+        operation.setDepositTime(date);
+        operation.setAmount(amount != null ? new BigDecimal(amount) : null);
+        return operation;
+    }
 }
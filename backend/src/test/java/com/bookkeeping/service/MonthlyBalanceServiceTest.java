@@ -0,0 +1,297 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.DepositResponse;
+import com.bookkeeping.dto.MonthlyStatisticsResponse;
+import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.MonthlyBalance;
+import com.bookkeeping.entity.MonthlyBalanceId;
+import com.bookkeeping.repository.AccountRepository;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.MonthlyBalanceRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonthlyBalanceService 单元测试
+ *
+ * 测试覆盖：
+ * - 对账、存款记录的写操作只标记待更新的月份，读取时现算，刷新后写入汇总
+ * - 重建结果与增量更新一致
+ * - 多个月份一次计算，取每月最后一次快照
+ * - 绕过服务层写入的数据在读取时现算
+ * - 定期刷新只处理有待更新月份的用户
+ */
+@DisplayName("MonthlyBalanceService 单元测试")
+public class MonthlyBalanceServiceTest extends AbstractBaseTest {
+
+    @Autowired
+    private MonthlyBalanceService monthlyBalanceService;
+
+    @Autowired
+    private MonthlyBalanceRefresher monthlyBalanceRefresher;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private MonthlyBalanceRepository monthlyBalanceRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+    private Account account1;
+    private Account account2;
+
+    @BeforeEach
+    public void setUp() {
+        // 创建测试用户
+        com.bookkeeping.dto.RegisterRequest registerRequest = new com.bookkeeping.dto.RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        com.bookkeeping.dto.AuthResponse authResponse = userService.register(registerRequest);
+        userId = authResponse.getId();
+
+        // 创建测试账户
+        account1 = new Account();
+        account1.setUserId(userId);
+        account1.setName("测试账户1");
+        account1.setType("定期存款");
+        account1.setStatus(Account.AccountStatus.ACTIVE);
+        account1 = accountRepository.save(account1);
+
+        account2 = new Account();
+        account2.setUserId(userId);
+        account2.setName("测试账户2");
+        account2.setType("活期存款");
+        account2.setStatus(Account.AccountStatus.ACTIVE);
+        account2 = accountRepository.save(account2);
+    }
+
+    @Test
+    @DisplayName("UC-MONTHLY-001: 对账和存款记录写入后读取到最新汇总，刷新后写入汇总表")
+    public void testWritesKeepAggregateUpToDate() {
+        // Given: 1月10日保存快照，1月25日新建对账并新增一条存款记录
+        saveSnapshot(LocalDate.of(2024, 1, 10), "一月", new BigDecimal("1000.00"), new BigDecimal("500.00"));
+        reconciliationService.createNewReconciliation(userId, LocalDate.of(2024, 1, 25));
+        depositService.createDeposit(createRequest(account1, new BigDecimal("200.00"), LocalDate.of(2024, 1, 25)), userId);
+
+        // Then: 写操作只标记月份，读取时现算出最新的汇总
+        assertEquals(List.of("2024-01"), monthlyBalanceRepository.findDirtyMonths(userId));
+        assertEquals(0, new BigDecimal("1700.00").compareTo(
+                monthlyBalanceService.findByMonth(userId, "2024-01").orElseThrow().getTotalAmount()));
+
+        // 刷新后汇总已写入，没有待更新的月份
+        assertEquals(1, monthlyBalanceService.refresh(userId));
+        assertTrue(monthlyBalanceRepository.findDirtyMonths(userId).isEmpty());
+        MonthlyBalance balance = storedBalance("2024-01");
+        assertEquals(LocalDate.of(2024, 1, 25), balance.getLastDate());
+        assertEquals(0, new BigDecimal("1700.00").compareTo(balance.getTotalAmount()));
+        assertEquals(0, new BigDecimal("1200.00").compareTo(balance.getAccountAmounts().get(account1.getId())));
+        assertEquals(0, new BigDecimal("500.00").compareTo(balance.getAccountAmounts().get(account2.getId())));
+        assertEquals(List.of("2024-01-10: 一月"), balance.getNotes());
+
+        System.out.println("✓ UC-MONTHLY-001: 对账和存款记录写入后读取到最新汇总，刷新后写入汇总表 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-MONTHLY-002: 修改、删除存款记录和备注后刷新月度汇总")
+    public void testUpdateAndDeleteKeepAggregateUpToDate() {
+        // Given
+        LocalDate date = LocalDate.of(2024, 2, 5);
+        saveSnapshot(date, null, new BigDecimal("1000.00"), new BigDecimal("500.00"));
+        DepositResponse extra = depositService.createDeposit(createRequest(account2, new BigDecimal("300.00"), date), userId);
+
+        // When: 删除新增的记录，修改备注
+        depositService.deleteDeposit(extra.getId(), userId);
+        reconciliationService.updateSnapshotNote(userId, date, "二月", reconciliationService.getSnapshotVersion(userId, date));
+
+        // Then
+        assertEquals(1, monthlyBalanceService.refresh(userId));
+        assertTrue(monthlyBalanceRepository.findDirtyMonths(userId).isEmpty());
+        MonthlyBalance balance = storedBalance("2024-02");
+        assertEquals(0, new BigDecimal("1500.00").compareTo(balance.getTotalAmount()));
+        assertEquals(0, new BigDecimal("500.00").compareTo(balance.getAccountAmounts().get(account2.getId())));
+        assertEquals(List.of("2024-02-05: 二月"), balance.getNotes());
+
+        System.out.println("✓ UC-MONTHLY-002: 修改、删除存款记录和备注后刷新月度汇总 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-MONTHLY-003: 重建结果与增量更新一致，与余额序列的月度统计一致")
+    public void testRebuildMatchesIncrementalUpdates() {
+        // Given
+        saveSnapshot(LocalDate.of(2024, 1, 10), "一月", new BigDecimal("1000.00"), new BigDecimal("500.00"));
+        saveSnapshot(LocalDate.of(2024, 2, 20), null, new BigDecimal("1100.00"), new BigDecimal("400.00"));
+        monthlyBalanceService.refresh(userId);
+        MonthlyBalance january = storedBalance("2024-01");
+        MonthlyBalance february = storedBalance("2024-02");
+        BigDecimal januaryTotal = january.getTotalAmount();
+        BigDecimal februaryAccount1 = february.getAccountAmounts().get(account1.getId());
+
+        // When: 重建
+        int months = monthlyBalanceService.rebuild(userId);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Then
+        assertEquals(2, months);
+        assertEquals(0, januaryTotal.compareTo(storedBalance("2024-01").getTotalAmount()));
+        assertEquals(0, februaryAccount1.compareTo(storedBalance("2024-02").getAccountAmounts().get(account1.getId())));
+        assertEquals(List.of("2024-01-10: 一月"), storedBalance("2024-01").getNotes());
+
+        // 3月没有快照，月度统计取2月的最后一次快照，与2月的汇总一致
+        assertEquals(0, storedBalance("2024-02").getTotalAmount().compareTo(new BigDecimal("1500.00")));
+        MonthlyStatisticsResponse march = statisticsService.getMonthlyStatistics(userId, "2024-03");
+        assertEquals(0, new BigDecimal("1500.00").compareTo(march.getTotalAmount()));
+        assertEquals(2, march.getDistribution().size());
+        assertEquals("测试账户1", march.getDistribution().get(0).getAccountName());
+
+        System.out.println("✓ UC-MONTHLY-003: 重建结果与增量更新一致，与余额序列的月度统计一致 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-MONTHLY-004: 绕过服务层写入的月份在读取时现算")
+    public void testDirectWritesAreComputedOnRead() {
+        // Given: 已有汇总的月份，直接通过仓库新增一条存款记录
+        LocalDate date = LocalDate.of(2024, 4, 1);
+        saveSnapshot(date, null, new BigDecimal("1000.00"), new BigDecimal("500.00"));
+        monthlyBalanceService.refresh(userId);
+        Deposit deposit = new Deposit();
+        deposit.setUserId(userId);
+        deposit.setAccountId(account2.getId());
+        deposit.setDepositType("活期");
+        deposit.setDepositTime(date);
+        deposit.setAmount(new BigDecimal("250.00"));
+        deposit.setReconciliationDate(date);
+        depositRepository.save(deposit);
+
+        // When
+        List<String> dirtyMonths = monthlyBalanceRepository.findDirtyMonths(userId);
+        List<MonthlyBalance> balances = monthlyBalanceService.findByMonthRange(userId, "2024-01", "2024-12");
+
+        // Then: 触发器记录了待更新月份，读取结果包含新记录
+        assertEquals(List.of("2024-04"), dirtyMonths);
+        assertEquals(1, balances.size());
+        assertEquals(0, new BigDecimal("750.00").compareTo(balances.get(0).getAccountAmounts().get(account2.getId())));
+
+        // 刷新后写入汇总表
+        assertEquals(1, monthlyBalanceService.refresh(userId));
+        assertEquals(0, new BigDecimal("750.00").compareTo(storedBalance("2024-04").getAccountAmounts().get(account2.getId())));
+
+        System.out.println("✓ UC-MONTHLY-004: 绕过服务层写入的月份在读取时现算 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-MONTHLY-005: 多个月份一次计算，取每月最后一次快照")
+    public void testRangeComputePicksMonthEnds() {
+        // Given: 24 个月，每月两次快照，月末一次的账户1金额为 月份 * 100
+        LocalDate start = LocalDate.of(2022, 1, 1);
+        for (int i = 0; i < 24; i++) {
+            LocalDate month = start.plusMonths(i);
+            saveSnapshot(month.withDayOfMonth(5), null, new BigDecimal("1.00"), new BigDecimal("1.00"));
+            saveSnapshot(month.withDayOfMonth(20), i % 6 == 0 ? "月末" : null,
+                    BigDecimal.valueOf((i + 1) * 100L), new BigDecimal("0.50"));
+        }
+
+        // When: 全部重建后读取整个范围
+        assertEquals(24, monthlyBalanceService.rebuild(userId));
+        List<MonthlyBalance> balances = monthlyBalanceService.findByMonthRange(userId, "2022-01", "2023-12");
+
+        // Then
+        assertEquals(24, balances.size());
+        for (int i = 0; i < 24; i++) {
+            LocalDate month = start.plusMonths(i);
+            MonthlyBalance balance = balances.get(i);
+            assertEquals(month.format(MonthlyBalanceService.MONTH_FORMAT), balance.getMonth());
+            assertEquals(month.withDayOfMonth(20), balance.getLastDate());
+            assertEquals(BigDecimal.valueOf((i + 1) * 100L).add(new BigDecimal("0.50")).setScale(2), balance.getTotalAmount());
+            assertEquals(BigDecimal.valueOf((i + 1) * 10000L, 2), balance.getAccountAmounts().get(account1.getId()));
+            assertEquals(i % 6 == 0 ? List.of(month.withDayOfMonth(20) + ": 月末") : List.of(), balance.getNotes());
+        }
+
+        System.out.println("✓ UC-MONTHLY-005: 多个月份一次计算，取每月最后一次快照 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-MONTHLY-006: 定期刷新重新计算有待更新月份的用户")
+    public void testRefresherDrainsDirtyMonths() {
+        // Given: 两个月份有写入，尚未刷新
+        saveSnapshot(LocalDate.of(2024, 5, 3), null, new BigDecimal("100.00"), new BigDecimal("200.00"));
+        saveSnapshot(LocalDate.of(2024, 6, 3), null, new BigDecimal("300.00"), new BigDecimal("400.00"));
+        assertEquals(List.of("2024-05", "2024-06"), monthlyBalanceRepository.findDirtyMonths(userId));
+
+        // When
+        int months = monthlyBalanceRefresher.refreshAll();
+
+        // Then: 该用户的两个月份已写入汇总表
+        assertTrue(months >= 2);
+        assertTrue(monthlyBalanceRepository.findDirtyMonths(userId).isEmpty());
+        assertEquals(0, new BigDecimal("700.00").compareTo(storedBalance("2024-06").getTotalAmount()));
+
+        System.out.println("✓ UC-MONTHLY-006: 定期刷新重新计算有待更新月份的用户 - 通过");
+    }
+
+    private MonthlyBalance storedBalance(String month) {
+        return monthlyBalanceRepository.findById(new MonthlyBalanceId(userId, month))
+                .orElseThrow(() -> new AssertionError("没有 " + month + " 的月度汇总"));
+    }
+
+    private void saveSnapshot(LocalDate date, String note, BigDecimal amount1, BigDecimal amount2) {
+        SaveReconciliationRequest request = new SaveReconciliationRequest();
+        request.setDate(date);
+        request.setNote(note);
+        request.setAccounts(List.of(accountData(account1, amount1), accountData(account2, amount2)));
+        reconciliationService.saveReconciliation(userId, date, request, reconciliationService.getSnapshotVersion(userId, date));
+    }
+
+    private SaveReconciliationRequest.AccountDepositData accountData(Account account, BigDecimal amount) {
+        SaveReconciliationRequest.DepositData deposit = new SaveReconciliationRequest.DepositData();
+        deposit.setDepositType("活期");
+        deposit.setDepositTime(LocalDate.of(2023, 12, 1));
+        deposit.setAmount(amount);
+        SaveReconciliationRequest.AccountDepositData data = new SaveReconciliationRequest.AccountDepositData();
+        data.setAccountId(account.getId());
+        data.setDeposits(List.of(deposit));
+        return data;
+    }
+
+    private CreateDepositRequest createRequest(Account account, BigDecimal amount, LocalDate reconciliationDate) {
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(account.getId());
+        request.setDepositType("活期");
+        request.setDepositTime(reconciliationDate);
+        request.setAmount(amount);
+        request.setReconciliationDate(reconciliationDate);
+        return request;
+    }
+}
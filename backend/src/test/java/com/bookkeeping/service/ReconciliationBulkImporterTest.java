@@ -0,0 +1,248 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.BulkImportResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.repository.AccountRepository;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ReconciliationBulkImporter 测试
+ *
+ * 测试覆盖：
+ * - 5 年每周快照一次导入（分块提交，SQL 条数与存款记录数无关）
+ * - 整体替换已有快照
+ * - 参数、账户归属、重复日期和 JSON 格式错误
+ */
+@DisplayName("ReconciliationBulkImporter 测试")
+public class ReconciliationBulkImporterTest extends AbstractBaseTest {
+
+    @Autowired
+    private ReconciliationBulkImporter bulkImporter;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+    private Account account1;
+    private Account account2;
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        account1 = createAccount("导入账户1");
+        account2 = createAccount("导入账户2");
+    }
+
+    @Test
+    @DisplayName("UC-BULK-001: 一次导入 5 年每周快照")
+    public void testImportFiveYearsOfWeeklySnapshots() throws Exception {
+        // Given: 261 个每周快照，每个快照两个账户各 4 条存款记录
+        LocalDate start = LocalDate.of(2019, 1, 6);
+        List<SaveReconciliationRequest> snapshots = new ArrayList<>();
+        for (int week = 0; week < 261; week++) {
+            LocalDate date = start.plusWeeks(week);
+            snapshots.add(snapshot(date, "第" + (week + 1) + "周",
+                    accountData(account1, "1000.00", "2000.00", "3000.00", String.valueOf(100 + week)),
+                    accountData(account2, "500.50", "600.00", "700.00", "800.00")));
+        }
+        byte[] body = objectMapper.writeValueAsBytes(snapshots);
+
+        // When
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsEnabled = statistics.isStatisticsEnabled();
+        long statements;
+        long elapsed;
+        BulkImportResponse result;
+        try {
+            statistics.setStatisticsEnabled(true);
+            statistics.clear();
+            long startNanos = System.nanoTime();
+            result = bulkImporter.importSnapshots(userId, new ByteArrayInputStream(body));
+            elapsed = (System.nanoTime() - startNanos) / 1_000_000;
+            statements = statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(statisticsEnabled);
+        }
+
+        // Then
+        assertEquals(261, result.getInserted());
+        assertEquals(0, result.getReplaced());
+        assertEquals(261 * 8, result.getDeposits());
+        assertEquals(261, snapshotRepository.findDatesByUserId(userId).size());
+        LocalDate last = start.plusWeeks(260);
+        assertEquals(new BigDecimal("8960.50"), reconciliationService.getReconciliationData(userId, last).getTotalAmount());
+        assertEquals(8, depositRepository.findByUserIdAndReconciliationDate(userId, last).size());
+        assertEquals(0, depositService.verifySnapshotTotals(userId));
+        // 存款记录批量写入：SQL 条数只与快照数有关，与存款记录数无关
+        assertTrue(statements < 261 * 4, "导入执行了 " + statements + " 条 SQL");
+        System.out.println("导入 261 个快照、" + result.getDeposits() + " 条存款记录耗时 " + elapsed + " ms，SQL " + statements + " 条");
+
+        System.out.println("✓ UC-BULK-001: 一次导入 5 年每周快照 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-BULK-002: 导入已有日期时整体替换快照和存款记录")
+    public void testImportReplacesExistingSnapshot() throws Exception {
+        // Given: 已有快照和存款记录
+        LocalDate date = LocalDate.of(2024, 3, 1);
+        ReconciliationSnapshot existing = new ReconciliationSnapshot();
+        existing.setUserId(userId);
+        existing.setReconciliationDate(date);
+        existing.setTotalAmount(new BigDecimal("100.00"));
+        existing.setNote("旧备注");
+        snapshotRepository.save(existing);
+        Deposit old = new Deposit();
+        old.setUserId(userId);
+        old.setAccountId(account1.getId());
+        old.setDepositType("活期存款");
+        old.setDepositTime(date);
+        old.setAmount(new BigDecimal("100.00"));
+        old.setReconciliationDate(date);
+        depositRepository.save(old);
+        long version = reconciliationService.getSnapshotVersion(userId, date);
+
+        // When: 导入该日期和一个新日期
+        List<SaveReconciliationRequest> snapshots = List.of(
+                snapshot(date, "新备注", accountData(account2, "300.00")),
+                snapshot(date.plusDays(7), null, accountData(account1, "50.00")));
+        BulkImportResponse result = bulkImporter.importSnapshots(userId, json(snapshots));
+
+        // Then: 旧的存款记录被替换，版本递增
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getReplaced());
+        assertEquals(2, result.getDeposits());
+        List<Deposit> deposits = depositRepository.findByUserIdAndReconciliationDate(userId, date);
+        assertEquals(1, deposits.size());
+        assertEquals(account2.getId(), deposits.get(0).getAccountId());
+        assertEquals(new BigDecimal("300.00"), reconciliationService.getReconciliationData(userId, date).getTotalAmount());
+        assertEquals("新备注", reconciliationService.getReconciliationData(userId, date).getNote());
+        assertTrue(reconciliationService.getSnapshotVersion(userId, date) > version);
+        assertEquals(0, depositService.verifySnapshotTotals(userId));
+
+        System.out.println("✓ UC-BULK-002: 导入已有日期时整体替换快照和存款记录 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-BULK-003: 参数错误、其他用户的账户、重复日期、JSON 格式错误时失败")
+    public void testImportValidation() throws Exception {
+        LocalDate date = LocalDate.of(2024, 4, 1);
+
+        // 第 2 个快照的金额为空（同一分块，之前的快照也不写入）
+        SaveReconciliationRequest invalid = snapshot(date.plusDays(1), null, accountData(account1, "10.00"));
+        invalid.getAccounts().get(0).getDeposits().get(0).setAmount(null);
+        RuntimeException missingAmount = assertThrows(RuntimeException.class, () -> bulkImporter.importSnapshots(userId,
+                json(List.of(snapshot(date, null, accountData(account1, "10.00")), invalid))));
+        assertEquals("第 2 个快照：金额不能为空（前 0 个快照已导入）", missingAmount.getMessage());
+        assertTrue(snapshotRepository.findDatesByUserId(userId).isEmpty());
+
+        // 不属于当前用户的账户
+        Account foreign = new Account();
+        foreign.setUserId(userId + 100000);
+        foreign.setId(Long.MAX_VALUE);
+        SaveReconciliationRequest foreignSnapshot = snapshot(date, null, accountData(foreign, "10.00"));
+        RuntimeException foreignAccount = assertThrows(RuntimeException.class,
+                () -> bulkImporter.importSnapshots(userId, json(List.of(foreignSnapshot))));
+        assertEquals("第 1 个快照：账户不存在或不属于当前用户（前 0 个快照已导入）", foreignAccount.getMessage());
+
+        // 重复日期
+        RuntimeException duplicate = assertThrows(RuntimeException.class, () -> bulkImporter.importSnapshots(userId,
+                json(List.of(snapshot(date, null), snapshot(date, null)))));
+        assertEquals("第 2 个快照：同一日期只能出现一次（前 0 个快照已导入）", duplicate.getMessage());
+
+        // 不是数组、JSON 不完整
+        RuntimeException notArray = assertThrows(RuntimeException.class, () -> bulkImporter.importSnapshots(userId,
+                new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("请求体必须是快照数组", notArray.getMessage());
+        RuntimeException truncated = assertThrows(RuntimeException.class, () -> bulkImporter.importSnapshots(userId,
+                new ByteArrayInputStream("[{\"date\": \"2024-04-01\"}, {\"date\":".getBytes(StandardCharsets.UTF_8))));
+        assertTrue(truncated.getMessage().startsWith("第 2 个快照：JSON 格式不正确"), truncated.getMessage());
+
+        System.out.println("✓ UC-BULK-003: 参数错误、其他用户的账户、重复日期、JSON 格式错误时失败 - 通过");
+    }
+
+    private Account createAccount(String name) {
+        Account account = new Account();
+        account.setUserId(userId);
+        account.setName(name);
+        account.setType("定期存款");
+        account.setStatus(Account.AccountStatus.ACTIVE);
+        return accountRepository.save(account);
+    }
+
+    private InputStream json(List<SaveReconciliationRequest> snapshots) throws Exception {
+        return new ByteArrayInputStream(objectMapper.writeValueAsBytes(snapshots));
+    }
+
+    private SaveReconciliationRequest snapshot(LocalDate date, String note, SaveReconciliationRequest.AccountDepositData... accounts) {
+        SaveReconciliationRequest snapshot = new SaveReconciliationRequest();
+        snapshot.setDate(date);
+        snapshot.setNote(note);
+        snapshot.setAccounts(new ArrayList<>(List.of(accounts)));
+        return snapshot;
+    }
+
+    private SaveReconciliationRequest.AccountDepositData accountData(Account account, String... amounts) {
+        SaveReconciliationRequest.AccountDepositData accountData = new SaveReconciliationRequest.AccountDepositData();
+        accountData.setAccountId(account.getId());
+        List<SaveReconciliationRequest.DepositData> deposits = new ArrayList<>();
+        for (String amount : amounts) {
+            SaveReconciliationRequest.DepositData deposit = new SaveReconciliationRequest.DepositData();
+            deposit.setDepositType("定期存款");
+            deposit.setDepositTime(LocalDate.of(2018, 12, 1));
+            deposit.setAmount(new BigDecimal(amount));
+            deposits.add(deposit);
+        }
+        accountData.setDeposits(deposits);
+        return accountData;
+    }
+}
@@ -0,0 +1,135 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.repository.AccountRepository;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 新建对账（复制快照）耗时基准
+ *
+ * 分别在每个快照 10、100、1000 条存款记录的情况下连续新建对账，输出每次复制耗时的中位数和最大值，
+ * 同时校验复制结果（记录数、总金额）正确。数据在测试事务中，结束后回滚。
+ */
+@DisplayName("新建对账复制耗时基准")
+public class ReconciliationCloneBenchmarkTest extends AbstractBaseTest {
+
+    private static final int[] SIZES = {10, 100, 1000};
+
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+    private Account account;
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        account = new Account();
+        account.setUserId(userId);
+        account.setName("基准测试账户");
+        account.setType("定期存款");
+        account.setStatus(Account.AccountStatus.ACTIVE);
+        account = accountRepository.save(account);
+    }
+
+    @Test
+    @DisplayName("UC-BENCH-001: 新建对账复制 10/100/1000 条存款的耗时")
+    public void benchmarkCreateNewReconciliation() {
+        System.out.println("新建对账复制耗时（每种规模 " + ROUNDS + " 次）:");
+        for (int i = 0; i < SIZES.length; i++) {
+            int size = SIZES[i];
+            // 不同规模使用不同年份，互不影响
+            LocalDate sourceDate = LocalDate.of(2021 + i, 1, 1);
+            BigDecimal amount = new BigDecimal("123.45");
+            BigDecimal expectedTotal = amount.multiply(BigDecimal.valueOf(size));
+            createSnapshot(sourceDate, size, amount, expectedTotal);
+
+            long[] nanos = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                LocalDate targetDate = sourceDate.plusMonths(round + 1);
+                long start = System.nanoTime();
+                reconciliationService.createNewReconciliation(userId, targetDate);
+                entityManager.flush();
+                nanos[round] = System.nanoTime() - start;
+                entityManager.clear();
+
+                assertEquals(size, depositRepository.countByUserIdAndReconciliationDate(userId, targetDate));
+                ReconciliationSnapshot snapshot = snapshotRepository
+                        .findByUserIdAndReconciliationDate(userId, targetDate).orElseThrow();
+                assertEquals(0, expectedTotal.compareTo(snapshot.getTotalAmount()),
+                        "总金额不正确: " + snapshot.getTotalAmount());
+            }
+
+            Arrays.sort(nanos);
+            System.out.printf("  %5d 条存款: 中位数 %.2f ms, 最大 %.2f ms%n",
+                    size, nanos[ROUNDS / 2] / 1_000_000.0, nanos[ROUNDS - 1] / 1_000_000.0);
+        }
+
+        System.out.println("✓ UC-BENCH-001: 新建对账复制 10/100/1000 条存款的耗时 - 通过");
+    }
+
+    private void createSnapshot(LocalDate date, int size, BigDecimal amount, BigDecimal totalAmount) {
+        List<Deposit> deposits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Deposit deposit = new Deposit();
+            deposit.setUserId(userId);
+            deposit.setAccountId(account.getId());
+            deposit.setDepositType("定期存款");
+            deposit.setDepositTime(date);
+            deposit.setAmount(amount);
+            deposit.setInterestRate(new BigDecimal("2.10"));
+            deposit.setTerm(new BigDecimal("1.0"));
+            deposit.setReconciliationDate(date);
+            deposits.add(deposit);
+        }
+        depositRepository.saveAll(deposits);
+
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(userId);
+        snapshot.setReconciliationDate(date);
+        snapshot.setTotalAmount(totalAmount);
+        snapshotRepository.save(snapshot);
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -1,15 +1,27 @@
 package com.bookkeeping.service;
 
 import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.DepositResponse;
 import com.bookkeeping.dto.ReconciliationDataResponse;
 import com.bookkeeping.dto.ReconciliationHistoryResponse;
+import com.bookkeeping.dto.SaveAccountsRequest;
+import com.bookkeeping.dto.SaveAccountsResponse;
 import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.dto.SaveReconciliationResponse;
+import com.bookkeeping.dto.UpdateAccountRequest;
+import com.bookkeeping.dto.UpdateDepositRequest;
 import com.bookkeeping.entity.Account;
 import com.bookkeeping.entity.Deposit;
 import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.exception.ConflictException;
+import com.bookkeeping.exception.PreconditionRequiredException;
 import com.bookkeeping.repository.AccountRepository;
 import com.bookkeeping.repository.DepositRepository;
 import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,6 +31,7 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,11 +39,14 @@ import static org.junit.jupiter.api.Assertions.*;
  * ReconciliationService 单元测试
  * 
  * 测试覆盖：
- * - 获取对账数据（有快照/无快照）
- * - 保存对账快照
+ * - 获取对账数据（有快照/无快照，一次联表查询组装）
+ * - 保存对账快照（只写入有变化的记录）
+ * - 按账户保存（版本校验，不同账户互不覆盖）
+ * - 快照版本（随修改递增，过期或缺少版本的写入失败）
  * - 更新快照备注
  * - 获取最近一次对账日期
  * - 获取快照日期列表
+ * - 对账历史记录（键集分页）
  * - 上一个/下一个快照日期导航
  * - 新建对账（复制快照）
  */
@@ -40,6 +56,12 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
     @Autowired
     private ReconciliationService reconciliationService;
     
+    @Autowired
+    private DepositService depositService;
+    
+    @Autowired
+    private AccountService accountService;
+    
     @Autowired
     private UserService userService;
     
@@ -52,6 +74,9 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
     @Autowired
     private ReconciliationSnapshotRepository snapshotRepository;
     
+    @Autowired
+    private EntityManager entityManager;
+    
     private Long userId;
     private Account account1;
     private Account account2;
@@ -194,7 +219,7 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
         request.setAccounts(accountDataList);
         
         // When: 保存对账快照
-        reconciliationService.saveReconciliation(userId, date, request);
+        reconciliationService.saveReconciliation(userId, date, request, reconciliationService.getSnapshotVersion(userId, date));
         
         // Then: 验证快照和存款记录已保存
         ReconciliationSnapshot savedSnapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date)
@@ -223,7 +248,7 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
         
         // When: 更新备注
         String newNote = "更新后的备注";
-        reconciliationService.updateSnapshotNote(userId, date, newNote);
+        reconciliationService.updateSnapshotNote(userId, date, newNote, reconciliationService.getSnapshotVersion(userId, date));
         
         // Then: 验证备注已更新
         ReconciliationSnapshot updatedSnapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date)
@@ -242,7 +267,7 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
         
         // When & Then: 应该抛出异常
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            reconciliationService.updateSnapshotNote(userId, date, "新备注");
+            reconciliationService.updateSnapshotNote(userId, date, "新备注", reconciliationService.getSnapshotVersion(userId, date));
         });
         
         assertEquals("该日期的对账快照不存在", exception.getMessage());
@@ -379,7 +404,8 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
         
         List<Deposit> newDeposits = depositRepository.findByUserIdAndReconciliationDate(userId, targetDate);
         assertEquals(1, newDeposits.size());
-        assertEquals(previousDepositAmount, newDeposits.get(0).getAmount());
+        // 复制在数据库内完成，读回的金额标度取决于 SQLite 的存储方式，按数值比较
+        assertEquals(0, previousDepositAmount.compareTo(newDeposits.get(0).getAmount()));
         assertEquals(targetDate, newDeposits.get(0).getReconciliationDate());
         
         System.out.println("✓ UC-RECON-010: 新建对账（复制前一次快照） - 通过");
@@ -460,6 +486,411 @@ public class ReconciliationServiceTest extends AbstractBaseTest {
         System.out.println("✓ UC-RECON-013: 获取对账历史记录 - 通过");
     }
     
+    @Test
+    @DisplayName("UC-RECON-014: 保存对账快照只写入有变化的记录")
+    public void testSaveReconciliation_WritesOnlyChanges() {
+        // Given: 该日期已有三条存款记录
+        LocalDate date = LocalDate.of(2024, 7, 1);
+        createSnapshot(userId, date, new BigDecimal("600.00"));
+        createDeposit(userId, account1.getId(), date, new BigDecimal("100.00"));
+        createDeposit(userId, account1.getId(), date, new BigDecimal("200.00"));
+        createDeposit(userId, account2.getId(), date, new BigDecimal("300.00"));
+        entityManager.flush();
+        entityManager.clear();
+        List<Deposit> before = depositRepository.findByUserIdAndReconciliationDate(userId, date);
+        before.sort(java.util.Comparator.comparing(Deposit::getAmount));
+        Deposit unchangedDeposit = before.get(0);
+        Deposit changedDeposit = before.get(1);
+        entityManager.clear();
+        
+        // 第一条不变（金额标度不同但数值相同），第二条改金额，第三条删除，新增一条
+        SaveReconciliationRequest request = new SaveReconciliationRequest();
+        request.setDate(date);
+        request.setNote("7月对账");
+        SaveReconciliationRequest.AccountDepositData accountData = new SaveReconciliationRequest.AccountDepositData();
+        accountData.setAccountId(account1.getId());
+        List<SaveReconciliationRequest.DepositData> deposits = new ArrayList<>();
+        deposits.add(toDepositData(unchangedDeposit, new BigDecimal("100")));
+        deposits.add(toDepositData(changedDeposit, new BigDecimal("250.00")));
+        SaveReconciliationRequest.DepositData newDeposit = new SaveReconciliationRequest.DepositData();
+        newDeposit.setDepositType("活期存款");
+        newDeposit.setDepositTime(date);
+        newDeposit.setAmount(new BigDecimal("50.00"));
+        deposits.add(newDeposit);
+        accountData.setDeposits(deposits);
+        request.setAccounts(List.of(accountData));
+        
+        // When: 保存
+        SaveReconciliationResponse result = reconciliationService.saveReconciliation(userId, date, request, reconciliationService.getSnapshotVersion(userId, date));
+        entityManager.flush();
+        entityManager.clear();
+        
+        // Then: 只有变化的记录被写入
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+        assertEquals(1, result.getUnchanged());
+        
+        List<Deposit> after = depositRepository.findByUserIdAndReconciliationDate(userId, date);
+        assertEquals(3, after.size());
+        Deposit reloadedUnchanged = depositRepository.findById(unchangedDeposit.getId()).orElseThrow();
+        assertEquals(unchangedDeposit.getUpdatedAt(), reloadedUnchanged.getUpdatedAt());
+        Deposit reloadedChanged = depositRepository.findById(changedDeposit.getId()).orElseThrow();
+        assertEquals(0, new BigDecimal("250.00").compareTo(reloadedChanged.getAmount()));
+        
+        ReconciliationSnapshot snapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date).orElseThrow();
+        assertEquals(0, new BigDecimal("400.00").compareTo(snapshot.getTotalAmount()));
+        assertEquals("7月对账", snapshot.getNote());
+        
+        System.out.println("✓ UC-RECON-014: 保存对账快照只写入有变化的记录 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-015: 保存对账快照失败（账户不属于当前用户）")
+    public void testSaveReconciliation_AccountNotOwned() {
+        SaveReconciliationRequest request = new SaveReconciliationRequest();
+        request.setDate(LocalDate.of(2024, 7, 1));
+        SaveReconciliationRequest.AccountDepositData ownAccount = new SaveReconciliationRequest.AccountDepositData();
+        ownAccount.setAccountId(account1.getId());
+        ownAccount.setDeposits(new ArrayList<>());
+        SaveReconciliationRequest.AccountDepositData otherAccount = new SaveReconciliationRequest.AccountDepositData();
+        otherAccount.setAccountId(-1L);
+        otherAccount.setDeposits(new ArrayList<>());
+        request.setAccounts(List.of(ownAccount, otherAccount));
+        
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> reconciliationService.saveReconciliation(userId, request.getDate(), request, reconciliationService.getSnapshotVersion(userId, request.getDate())));
+        assertEquals("账户不存在或不属于当前用户", e.getMessage());
+        
+        System.out.println("✓ UC-RECON-015: 保存对账快照失败（账户不属于当前用户） - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-016: 上一个/下一个快照日期（当前日期不是快照日期及边界）")
+    public void testAdjacentSnapshotDates_NotSnapshotAndBounds() {
+        // Given
+        LocalDate date1 = LocalDate.of(2024, 1, 15);
+        LocalDate date2 = LocalDate.of(2024, 2, 15);
+        createSnapshot(userId, date1, new BigDecimal("100000.00"));
+        createSnapshot(userId, date2, new BigDecimal("110000.00"));
+        LocalDate between = LocalDate.of(2024, 2, 1);
+        
+        // Then: 不是快照日期时取两侧最近的快照，最早/最新时返回 null
+        assertEquals(date1, reconciliationService.getPreviousSnapshotDate(userId, between));
+        assertEquals(date2, reconciliationService.getNextSnapshotDate(userId, between));
+        assertNull(reconciliationService.getPreviousSnapshotDate(userId, date1));
+        assertNull(reconciliationService.getNextSnapshotDate(userId, date2));
+        assertEquals(date2, reconciliationService.getPreviousSnapshotDate(userId, LocalDate.of(2024, 12, 31)));
+        
+        System.out.println("✓ UC-RECON-016: 上一个/下一个快照日期（当前日期不是快照日期及边界） - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-017: 分页获取对账历史记录（记录数、总金额、备注）")
+    public void testGetReconciliationHistory_Paged() {
+        // Given: 3 个快照，最早的一个带备注
+        LocalDate date1 = LocalDate.of(2024, 9, 1);
+        LocalDate date2 = LocalDate.of(2024, 9, 15);
+        LocalDate date3 = LocalDate.of(2024, 10, 1);
+        createSnapshot(userId, date1, new BigDecimal("300.50"));
+        createSnapshot(userId, date2, BigDecimal.ZERO);
+        createSnapshot(userId, date3, new BigDecimal("100.00"));
+        reconciliationService.updateSnapshotNote(userId, date1, "九月", reconciliationService.getSnapshotVersion(userId, date1));
+        createDeposit(userId, account1.getId(), date1, new BigDecimal("100.25"));
+        createDeposit(userId, account2.getId(), date1, new BigDecimal("200.25"));
+        createDeposit(userId, account1.getId(), date3, new BigDecimal("100.00"));
+        
+        // When: 每页 2 条
+        ReconciliationHistoryResponse first = reconciliationService.getReconciliationHistory(userId, null, 2);
+        ReconciliationHistoryResponse second = reconciliationService.getReconciliationHistory(userId, first.getNextBefore(), 2);
+        
+        // Then
+        assertEquals(List.of(date3, date2), first.getDates().stream()
+                .map(ReconciliationHistoryResponse.HistoryItem::getDate).collect(Collectors.toList()));
+        assertEquals(date2, first.getNextBefore());
+        assertEquals(0, first.getDates().get(1).getRecordCount());
+        assertEquals(new BigDecimal("0.00"), first.getDates().get(1).getTotalAmount());
+        
+        assertEquals(1, second.getDates().size());
+        ReconciliationHistoryResponse.HistoryItem item = second.getDates().get(0);
+        assertEquals(date1, item.getDate());
+        assertEquals(2, item.getRecordCount());
+        assertEquals(new BigDecimal("300.50"), item.getTotalAmount());
+        assertEquals("九月", item.getNote());
+        assertNull(second.getNextBefore());
+        
+        // 不分页时返回全部，没有下一页
+        ReconciliationHistoryResponse all = reconciliationService.getReconciliationHistory(userId);
+        assertEquals(3, all.getDates().size());
+        assertNull(all.getNextBefore());
+        
+        // 总金额取快照自身的总金额，与对账页面一致（不按账户合计重新求和）
+        snapshotRepository.repairTotalAmountCents(userId, date3, 12345);
+        assertEquals(new BigDecimal("123.45"),
+                reconciliationService.getReconciliationHistory(userId, null, 1).getDates().get(0).getTotalAmount());
+        
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> reconciliationService.getReconciliationHistory(userId, null, 0));
+        assertEquals("每页条数必须大于0", e.getMessage());
+        
+        System.out.println("✓ UC-RECON-017: 分页获取对账历史记录（记录数、总金额、备注） - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-018: 获取对账数据一次联表查询（账户顺序、已禁用账户、空账户，SQL 条数）")
+    public void testGetReconciliationData_SingleJoinQuery() {
+        // Given: account1 有两条记录，account3 有记录但已禁用，account2 启用但没有记录，account4 已禁用且没有记录
+        LocalDate date = LocalDate.of(2024, 11, 30);
+        Account account3 = createAccount("已禁用有记录", Account.AccountStatus.DISABLED);
+        createAccount("已禁用无记录", Account.AccountStatus.DISABLED);
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(userId);
+        snapshot.setReconciliationDate(date);
+        snapshot.setTotalAmount(new BigDecimal("1300.75"));
+        snapshot.setNote("十一月");
+        snapshotRepository.save(snapshot);
+        
+        Deposit fixed = new Deposit();
+        fixed.setUserId(userId);
+        fixed.setAccountId(account1.getId());
+        fixed.setDepositType("定期存款");
+        fixed.setDepositTime(LocalDate.of(2024, 6, 1));
+        fixed.setAmount(new BigDecimal("1000.50"));
+        fixed.setInterestRate(new BigDecimal("2.15"));
+        fixed.setTerm(new BigDecimal("1.5"));
+        fixed.setNote("一年半");
+        fixed.setReconciliationDate(date);
+        fixed = depositRepository.save(fixed);
+        createDeposit(userId, account1.getId(), date, new BigDecimal("200"));
+        createDeposit(userId, account3.getId(), date, new BigDecimal("100.25"));
+        // 其他日期的记录不应出现
+        createDeposit(userId, account2.getId(), date.minusDays(1), new BigDecimal("50.00"));
+        entityManager.flush();
+        entityManager.clear();
+        
+        List<Deposit> account1Deposits = depositRepository.findByAccountIdAndReconciliationDate(account1.getId(), date);
+        List<Deposit> account3Deposits = depositRepository.findByAccountIdAndReconciliationDate(account3.getId(), date);
+        entityManager.clear();
+        
+        // When: 统计一次调用执行的 SQL 条数
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        ReconciliationDataResponse response;
+        long statements;
+        try {
+            response = reconciliationService.getReconciliationData(userId, date);
+            statements = statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(statisticsEnabled);
+        }
+        
+        // Then: 快照中有记录的账户按ID在前（含已禁用），其余启用账户在后；存款记录按ID排序，金额保留列定义的小数位
+        DepositResponse expectedFixed = new DepositResponse(fixed.getId(), account1.getId(), "定期存款", LocalDate.of(2024, 6, 1),
+                new BigDecimal("1000.50"), new BigDecimal("2.15"), new BigDecimal("1.5"), "一年半", date);
+        DepositResponse expectedSmall = new DepositResponse(account1Deposits.get(1).getId(), account1.getId(), "定期存款", date,
+                new BigDecimal("200.00"), null, null, null, date);
+        DepositResponse expectedDisabled = new DepositResponse(account3Deposits.get(0).getId(), account3.getId(), "定期存款", date,
+                new BigDecimal("100.25"), null, null, null, date);
+        ReconciliationDataResponse expected = new ReconciliationDataResponse(date, "十一月", new BigDecimal("1300.75"), List.of(
+                new ReconciliationDataResponse.AccountDepositData(account1.getId(), account1.getName(), List.of(expectedFixed, expectedSmall),
+                        AccountDepositsVersion.of(List.of(expectedFixed, expectedSmall))),
+                new ReconciliationDataResponse.AccountDepositData(account3.getId(), account3.getName(), List.of(expectedDisabled),
+                        AccountDepositsVersion.of(List.of(expectedDisabled))),
+                new ReconciliationDataResponse.AccountDepositData(account2.getId(), account2.getName(), List.of(),
+                        AccountDepositsVersion.of(List.of()))
+        ), snapshotRepository.findVersion(userId, date).orElseThrow());
+        assertEquals(fixed.getId(), account1Deposits.get(0).getId());
+        assertEquals(expected, response);
+        assertTrue(statements >= 1 && statements <= 2, "获取对账数据执行了 " + statements + " 条 SQL");
+        
+        // 空快照只显示启用的账户
+        LocalDate emptyDate = date.plusDays(1);
+        createSnapshot(userId, emptyDate, BigDecimal.ZERO);
+        ReconciliationDataResponse empty = reconciliationService.getReconciliationData(userId, emptyDate);
+        assertEquals(List.of(account1.getId(), account2.getId()), empty.getAccounts().stream()
+                .map(ReconciliationDataResponse.AccountDepositData::getAccountId).collect(Collectors.toList()));
+        assertEquals(new BigDecimal("0.00"), empty.getTotalAmount());
+        
+        System.out.println("✓ UC-RECON-018: 获取对账数据一次联表查询（账户顺序、已禁用账户、空账户，SQL 条数） - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-019: 按账户保存，两个页面分别修改不同账户互不覆盖")
+    public void testSaveAccounts_DifferentAccountsDoNotOverwrite() {
+        // Given: 快照中两个账户各有一笔存款，两个页面同时打开
+        LocalDate date = LocalDate.of(2024, 12, 1);
+        createSnapshot(userId, date, new BigDecimal("300.00"));
+        createDeposit(userId, account1.getId(), date, new BigDecimal("100.00"));
+        createDeposit(userId, account2.getId(), date, new BigDecimal("200.00"));
+        ReconciliationDataResponse tabA = reconciliationService.getReconciliationData(userId, date);
+        ReconciliationDataResponse tabB = reconciliationService.getReconciliationData(userId, date);
+        Deposit deposit1 = depositRepository.findByAccountIdAndReconciliationDate(account1.getId(), date).get(0);
+        Deposit deposit2 = depositRepository.findByAccountIdAndReconciliationDate(account2.getId(), date).get(0);
+        
+        // When: 页面 A 只提交账户1（修改金额并新增一笔）
+        SaveReconciliationRequest.AccountDepositData changeA = new SaveReconciliationRequest.AccountDepositData();
+        changeA.setAccountId(account1.getId());
+        changeA.setVersion(tabA.getAccounts().get(0).getVersion());
+        SaveReconciliationRequest.DepositData added = new SaveReconciliationRequest.DepositData();
+        added.setDepositType("活期存款");
+        added.setDepositTime(date);
+        added.setAmount(new BigDecimal("50.00"));
+        changeA.setDeposits(List.of(toDepositData(deposit1, new BigDecimal("150.00")), added));
+        SaveAccountsResponse responseA = reconciliationService.saveAccounts(userId, date, saveAccountsRequest(changeA));
+        
+        // 页面 B 用最初读取的版本只提交账户2，不受页面 A 保存的影响
+        SaveReconciliationRequest.AccountDepositData changeB = new SaveReconciliationRequest.AccountDepositData();
+        changeB.setAccountId(account2.getId());
+        changeB.setVersion(tabB.getAccounts().get(1).getVersion());
+        changeB.setDeposits(List.of(toDepositData(deposit2, new BigDecimal("220.00"))));
+        SaveAccountsResponse responseB = reconciliationService.saveAccounts(userId, date, saveAccountsRequest(changeB));
+        
+        // Then: 两个账户的修改都保留，快照总金额按差额调整
+        assertEquals(1, responseA.getInserted());
+        assertEquals(1, responseA.getUpdated());
+        assertEquals(0, responseA.getDeleted());
+        assertEquals(1, responseB.getUpdated());
+        ReconciliationDataResponse after = reconciliationService.getReconciliationData(userId, date);
+        assertEquals(new BigDecimal("420.00"), after.getTotalAmount());
+        List<BigDecimal> account1Amounts = after.getAccounts().get(0).getDeposits().stream()
+                .map(DepositResponse::getAmount).collect(Collectors.toList());
+        assertEquals(List.of(new BigDecimal("150.00"), new BigDecimal("50.00")), account1Amounts);
+        assertEquals(new BigDecimal("220.00"), after.getAccounts().get(1).getDeposits().get(0).getAmount());
+        assertEquals(after.getAccounts().get(0).getVersion(), responseA.getVersions().get(account1.getId()));
+        assertEquals(after.getAccounts().get(1).getVersion(), responseB.getVersions().get(account2.getId()));
+        assertEquals(0, depositService.verifySnapshotTotals(userId));
+        
+        System.out.println("✓ UC-RECON-019: 按账户保存，两个页面分别修改不同账户互不覆盖 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-020: 按账户保存，账户已被其他页面修改时拒绝保存")
+    public void testSaveAccounts_StaleVersionConflict() {
+        // Given: 两个页面读取同一账户，页面 A 先保存
+        LocalDate date = LocalDate.of(2024, 12, 2);
+        createSnapshot(userId, date, new BigDecimal("100.00"));
+        createDeposit(userId, account1.getId(), date, new BigDecimal("100.00"));
+        String version = reconciliationService.getReconciliationData(userId, date).getAccounts().get(0).getVersion();
+        Deposit deposit = depositRepository.findByAccountIdAndReconciliationDate(account1.getId(), date).get(0);
+        
+        SaveReconciliationRequest.AccountDepositData changeA = new SaveReconciliationRequest.AccountDepositData();
+        changeA.setAccountId(account1.getId());
+        changeA.setVersion(version);
+        changeA.setDeposits(List.of(toDepositData(deposit, new BigDecimal("120.00"))));
+        reconciliationService.saveAccounts(userId, date, saveAccountsRequest(changeA));
+        
+        // When: 页面 B 用旧版本提交同一账户
+        SaveReconciliationRequest.AccountDepositData changeB = new SaveReconciliationRequest.AccountDepositData();
+        changeB.setAccountId(account1.getId());
+        changeB.setVersion(version);
+        changeB.setDeposits(List.of(toDepositData(deposit, new BigDecimal("130.00"))));
+        ConflictException exception = assertThrows(ConflictException.class,
+                () -> reconciliationService.saveAccounts(userId, date, saveAccountsRequest(changeB)));
+        
+        // Then: 页面 A 的修改保留
+        assertEquals("账户的存款记录已被修改，请刷新后重试", exception.getMessage());
+        ReconciliationDataResponse after = reconciliationService.getReconciliationData(userId, date);
+        assertEquals(new BigDecimal("120.00"), after.getAccounts().get(0).getDeposits().get(0).getAmount());
+        assertEquals(new BigDecimal("120.00"), after.getTotalAmount());
+        
+        // 缺少版本时拒绝
+        changeB.setVersion(null);
+        RuntimeException missing = assertThrows(RuntimeException.class,
+                () -> reconciliationService.saveAccounts(userId, date, saveAccountsRequest(changeB)));
+        assertEquals("账户版本不能为空", missing.getMessage());
+        
+        System.out.println("✓ UC-RECON-020: 按账户保存，账户已被其他页面修改时拒绝保存 - 通过");
+    }
+    
+    @Test
+    @DisplayName("UC-RECON-021: 快照版本随快照、存款记录和账户修改递增，过期或缺少版本的写入失败")
+    public void testSnapshotVersion() {
+        // Given: 一个快照
+        LocalDate date = LocalDate.of(2024, 12, 3);
+        createSnapshot(userId, date, new BigDecimal("100.00"));
+        createDeposit(userId, account1.getId(), date, new BigDecimal("100.00"));
+        long v0 = reconciliationService.getReconciliationData(userId, date).getVersion();
+        
+        // 修改备注、新增存款记录（金额变化）、修改存款记录备注（金额不变）、修改账户名称都递增版本
+        long v1 = reconciliationService.updateSnapshotNote(userId, date, "十二月", v0);
+        assertTrue(v1 > v0);
+        CreateDepositRequest create = new CreateDepositRequest();
+        create.setAccountId(account2.getId());
+        create.setDepositType("活期存款");
+        create.setDepositTime(date);
+        create.setAmount(new BigDecimal("50.00"));
+        create.setReconciliationDate(date);
+        DepositResponse created = depositService.createDeposit(create, userId);
+        long v2 = reconciliationService.getSnapshotVersion(userId, date);
+        assertTrue(v2 > v1);
+        UpdateDepositRequest update = new UpdateDepositRequest();
+        update.setDepositType(created.getDepositType());
+        update.setDepositTime(created.getDepositTime());
+        update.setAmount(created.getAmount());
+        update.setNote("只改备注");
+        depositService.updateDeposit(created.getId(), update, userId);
+        long v3 = reconciliationService.getSnapshotVersion(userId, date);
+        assertTrue(v3 > v2);
+        UpdateAccountRequest rename = new UpdateAccountRequest();
+        rename.setName("改名后的账户");
+        rename.setType(account1.getType());
+        accountService.updateAccount(account1.getId(), rename, userId);
+        long v4 = reconciliationService.getSnapshotVersion(userId, date);
+        assertTrue(v4 > v3);
+        assertEquals(v4, reconciliationService.getReconciliationData(userId, date).getVersion());
+        
+        // 用过期的版本保存失败，数据不变
+        SaveReconciliationRequest request = new SaveReconciliationRequest();
+        request.setDate(date);
+        request.setAccounts(new ArrayList<>());
+        assertThrows(ConflictException.class, () -> reconciliationService.saveReconciliation(userId, date, request, v0));
+        assertThrows(ConflictException.class, () -> reconciliationService.updateSnapshotNote(userId, date, "旧页面", v3));
+        // 快照已存在时必须提交版本
+        assertThrows(PreconditionRequiredException.class, () -> reconciliationService.saveReconciliation(userId, date, request, null));
+        assertEquals(new BigDecimal("150.00"), reconciliationService.getReconciliationData(userId, date).getTotalAmount());
+        assertEquals("十二月", reconciliationService.getReconciliationData(userId, date).getNote());
+        
+        // 用当前版本保存成功，返回新版本
+        SaveReconciliationResponse result = reconciliationService.saveReconciliation(userId, date, request, v4);
+        assertEquals(2, result.getDeleted());
+        assertTrue(result.getVersion() > v4);
+        assertEquals(result.getVersion(), reconciliationService.getSnapshotVersion(userId, date));
+        
+        System.out.println("✓ UC-RECON-021: 快照版本随快照、存款记录和账户修改递增，过期或缺少版本的写入失败 - 通过");
+    }
+    
+    // 辅助方法：创建账户
+    private Account createAccount(String name, Account.AccountStatus status) {
+        Account account = new Account();
+        account.setUserId(userId);
+        account.setName(name);
+        account.setType("定期存款");
+        account.setStatus(status);
+        return accountRepository.save(account);
+    }
+    
+    // 辅助方法：把已有存款记录转换为保存请求中的记录
+    private SaveReconciliationRequest.DepositData toDepositData(Deposit deposit, BigDecimal amount) {
+        SaveReconciliationRequest.DepositData data = new SaveReconciliationRequest.DepositData();
+        data.setId(deposit.getId());
+        data.setDepositType(deposit.getDepositType());
+        data.setDepositTime(deposit.getDepositTime());
+        data.setAmount(amount);
+        data.setInterestRate(deposit.getInterestRate());
+        data.setTerm(deposit.getTerm());
+        data.setNote(deposit.getNote());
+        return data;
+    }
+    
+    // 辅助方法：按账户保存请求
+    private SaveAccountsRequest saveAccountsRequest(SaveReconciliationRequest.AccountDepositData... accounts) {
+        SaveAccountsRequest request = new SaveAccountsRequest();
+        request.setAccounts(List.of(accounts));
+        return request;
+    }
+    
     // 辅助方法：创建快照
     private void createSnapshot(Long userId, LocalDate date, BigDecimal totalAmount) {
         ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
@@ -0,0 +1,159 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.CreateAccountRequest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.ReconciliationDataResponse;
+import com.bookkeeping.dto.ReconciliationViewResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对账导航预取缓存测试
+ *
+ * 预取在后台线程的只读事务中执行，只能看到已提交的数据，因此这里不使用测试事务，测试结束后手动清理。
+ *
+ * 测试覆盖：
+ * - 导航返回后预取上一个快照，再导航到该日期时从缓存返回
+ * - 用户数据变化后丢弃缓存，导航返回最新数据
+ */
+@DisplayName("对账导航预取缓存测试")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ReconciliationViewCacheTest extends AbstractBaseTest {
+
+    private static final long PREFETCH_TIMEOUT_MS = 5000;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private ReconciliationViewCache reconciliationViewCache;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long userId;
+    private Long accountId;
+    private final LocalDate date1 = LocalDate.of(2024, 6, 30);
+    private final LocalDate date2 = LocalDate.of(2024, 7, 31);
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        CreateAccountRequest accountRequest = new CreateAccountRequest();
+        accountRequest.setName("预取测试账户");
+        accountRequest.setType("活期存款");
+        accountId = accountService.createAccount(accountRequest, userId).getId();
+
+        reconciliationService.createNewReconciliation(userId, date1);
+        depositService.createDeposit(depositRequest(date1, new BigDecimal("100.00")), userId);
+        reconciliationService.createNewReconciliation(userId, date2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM deposits WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM reconciliation_snapshots WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM snapshot_account_totals WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM monthly_balance_agg WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM monthly_balance_dirty WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM accounts WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+    }
+
+    @Test
+    @DisplayName("UC-VIEW-001: 预取上一个快照，导航到该日期时从缓存返回")
+    public void testNeighbourServedFromCache() throws Exception {
+        // When: 查看 date2，后台预取 date1
+        ReconciliationViewResponse view = reconciliationService.getReconciliationView(userId, date2);
+        assertEquals(date1, view.getPreviousDate());
+        assertNull(view.getNextDate());
+        assertEquals(date2, view.getLatestDate());
+        awaitCached(date1);
+
+        // Then: 导航到 date1 命中缓存
+        double hitsBefore = hitCount();
+        ReconciliationViewResponse previous = reconciliationService.getReconciliationView(userId, date1);
+        assertEquals(hitsBefore + 1, hitCount());
+        assertEquals(date1, previous.getData().getDate());
+        assertEquals(0, new BigDecimal("100.00").compareTo(previous.getData().getTotalAmount()));
+        assertNull(previous.getPreviousDate());
+        assertEquals(date2, previous.getNextDate());
+
+        System.out.println("✓ UC-VIEW-001: 预取上一个快照，导航到该日期时从缓存返回 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-VIEW-002: 用户数据变化后丢弃缓存")
+    public void testCacheEvictedOnWrite() throws Exception {
+        // Given: date1 已预取
+        reconciliationService.getReconciliationView(userId, date2);
+        awaitCached(date1);
+
+        // When: date1 新增一条存款记录
+        depositService.createDeposit(depositRequest(date1, new BigDecimal("50.00")), userId);
+
+        // Then: 缓存已丢弃，导航返回新数据
+        assertTrue(reconciliationViewCache.get(userId, date1).isEmpty());
+        ReconciliationDataResponse data = reconciliationService.getReconciliationView(userId, date1).getData();
+        assertEquals(0, new BigDecimal("150.00").compareTo(data.getTotalAmount()));
+        assertEquals(2, data.getAccounts().get(0).getDeposits().size());
+
+        System.out.println("✓ UC-VIEW-002: 用户数据变化后丢弃缓存 - 通过");
+    }
+
+    private void awaitCached(LocalDate date) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PREFETCH_TIMEOUT_MS;
+        Optional<ReconciliationDataResponse> cached = reconciliationViewCache.get(userId, date);
+        while (cached.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            cached = reconciliationViewCache.get(userId, date);
+        }
+        assertTrue(cached.isPresent(), "预取没有在 " + PREFETCH_TIMEOUT_MS + "ms 内完成");
+    }
+
+    private double hitCount() {
+        return meterRegistry.get("bookkeeping.reconciliation.view.cache").tag("result", "hit").counter().count();
+    }
+
+    private CreateDepositRequest depositRequest(LocalDate date, BigDecimal amount) {
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(accountId);
+        request.setDepositType("活期");
+        request.setDepositTime(date);
+        request.setAmount(amount);
+        request.setReconciliationDate(date);
+        return request;
+    }
+}
@@ -0,0 +1,212 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.AccountResponse;
+import com.bookkeeping.dto.CreateAccountRequest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.DepositResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SerialWriteExecutor 测试
+ *
+ * 写队列只在调用方不处于事务中时生效，因此这里不使用测试事务，数据真实提交，测试结束后手动清理。
+ *
+ * 测试覆盖：
+ * - 排队的多个写操作合并到一个事务提交，每个调用方拿到各自的结果
+ * - 同批次中一个操作失败不影响其他操作
+ */
+@DisplayName("SerialWriteExecutor 写队列测试")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SerialWriteExecutorTest extends AbstractBaseTest {
+
+    private static final int CONCURRENT_WRITES = 10;
+
+    @Autowired
+    private SerialWriteExecutor writeExecutor;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** 每个写操作一个调用线程，避免公共线程池线程数不足导致写操作无法同时排队 */
+    private final ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_WRITES + 1);
+
+    private Long userId;
+    private Long accountId;
+    private final LocalDate date = LocalDate.of(2024, 3, 31);
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        CreateAccountRequest accountRequest = new CreateAccountRequest();
+        accountRequest.setName("写队列测试账户");
+        accountRequest.setType("活期存款");
+        AccountResponse account = accountService.createAccount(accountRequest, userId);
+        accountId = account.getId();
+
+        // 空快照，之后每次创建存款都会更新它的总金额
+        reconciliationService.createNewReconciliation(userId, date);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+        jdbcTemplate.update("DELETE FROM deposits WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM reconciliation_snapshots WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM accounts WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+    }
+
+    @Test
+    @DisplayName("UC-WRITE-001: 排队的写操作合并提交，各自返回结果")
+    public void testQueuedWritesAreGroupCommitted() throws Exception {
+        // 先占住写线程，让后续写操作在队列里堆积
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = occupyWriterThread(release);
+
+        List<CompletableFuture<DepositResponse>> futures = new ArrayList<>();
+        for (int i = 1; i <= CONCURRENT_WRITES; i++) {
+            CreateDepositRequest request = depositRequest(accountId, new BigDecimal(i * 100));
+            futures.add(CompletableFuture.supplyAsync(() -> depositService.createDeposit(request, userId), callers));
+        }
+        waitForQueueDepth(CONCURRENT_WRITES);
+        double maxBatchBefore = meterRegistry.get("bookkeeping.write.batch.size").summary().max();
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+
+        Set<Long> ids = new HashSet<>();
+        for (CompletableFuture<DepositResponse> future : futures) {
+            DepositResponse response = future.get(10, TimeUnit.SECONDS);
+            assertNotNull(response.getId());
+            ids.add(response.getId());
+        }
+        assertEquals(CONCURRENT_WRITES, ids.size());
+
+        // 100 + 200 + ... + 1000
+        ReconciliationSnapshot snapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date).orElseThrow();
+        assertEquals(0, new BigDecimal("5500").compareTo(snapshot.getTotalAmount()));
+
+        double maxBatch = meterRegistry.get("bookkeeping.write.batch.size").summary().max();
+        assertTrue(maxBatch >= CONCURRENT_WRITES || maxBatchBefore >= CONCURRENT_WRITES,
+                "排队的写操作没有合并提交，最大批次: " + maxBatch);
+
+        System.out.println("✓ UC-WRITE-001: 排队的写操作合并提交，各自返回结果 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-WRITE-002: 同批次中一个写操作失败，不影响其他写操作")
+    public void testFailedWriteDoesNotAffectBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = occupyWriterThread(release);
+
+        CompletableFuture<DepositResponse> ok1 = CompletableFuture.supplyAsync(
+                () -> depositService.createDeposit(depositRequest(accountId, new BigDecimal("100")), userId), callers);
+        waitForQueueDepth(1);
+        CompletableFuture<DepositResponse> failed = CompletableFuture.supplyAsync(
+                () -> depositService.createDeposit(depositRequest(-1L, new BigDecimal("200")), userId), callers);
+        waitForQueueDepth(2);
+        CompletableFuture<DepositResponse> ok2 = CompletableFuture.supplyAsync(
+                () -> depositService.createDeposit(depositRequest(accountId, new BigDecimal("300")), userId), callers);
+        waitForQueueDepth(3);
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+
+        assertNotNull(ok1.get(10, TimeUnit.SECONDS).getId());
+        assertNotNull(ok2.get(10, TimeUnit.SECONDS).getId());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertEquals("账户不存在", e.getCause().getMessage());
+
+        ReconciliationSnapshot snapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, date).orElseThrow();
+        assertEquals(0, new BigDecimal("400").compareTo(snapshot.getTotalAmount()));
+
+        System.out.println("✓ UC-WRITE-002: 同批次中一个写操作失败，不影响其他写操作 - 通过");
+    }
+
+    /**
+     * 在写线程上执行一个等待 release 的操作，返回时写线程已被占住
+     */
+    private CompletableFuture<Object> occupyWriterThread(CountDownLatch release) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = CompletableFuture.supplyAsync(() -> {
+            try {
+                return writeExecutor.execute(() -> {
+                    started.countDown();
+                    return release.await(10, TimeUnit.SECONDS);
+                });
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }, callers);
+        assertTrue(started.await(10, TimeUnit.SECONDS), "写线程没有开始执行");
+        return blocker;
+    }
+
+    private CreateDepositRequest depositRequest(Long accountId, BigDecimal amount) {
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(accountId);
+        request.setDepositType("活期");
+        request.setDepositTime(date);
+        request.setAmount(amount);
+        request.setReconciliationDate(date);
+        return request;
+    }
+
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (writeExecutor.getQueueDepth() < depth) {
+            assertTrue(System.currentTimeMillis() < deadline, "写操作没有进入队列");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SnapshotDateIndex 单元测试
+ *
+ * 测试覆盖：
+ * - 导航查询（上一个/下一个/最新）与快照表一致
+ * - 索引加载后新增、删除快照实体同步更新索引
+ * - 缓存用户数超过上限时淘汰最久未访问的用户
+ * - 未提交的新增只在本事务中可见，提交后其他请求才看到；回滚后丢弃
+ *
+ * UC-DATEINDEX-002、003 需要提交快照，不使用测试事务，测试结束后手动清理。
+ */
+@DisplayName("SnapshotDateIndex 单元测试")
+public class SnapshotDateIndexTest extends AbstractBaseTest {
+
+    @Autowired
+    private SnapshotDateIndex snapshotDateIndex;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long userId;
+
+    private final List<Long> createdUsers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        userId = registerUser();
+        createdUsers.add(userId);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        // 使用测试事务的用例已回滚，这里只清理提交过的数据
+        for (Long id : createdUsers) {
+            jdbcTemplate.update("DELETE FROM reconciliation_snapshots WHERE user_id = ?", id);
+            jdbcTemplate.update("DELETE FROM monthly_balance_dirty WHERE user_id = ?", id);
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", id);
+            snapshotDateIndex.evict(id);
+        }
+    }
+
+    @Test
+    @DisplayName("UC-DATEINDEX-001: 索引加载后新增、删除快照同步更新")
+    public void testIndexFollowsSnapshotWrites() {
+        // Given: 两个快照，导航一次加载索引
+        LocalDate jan = LocalDate.of(2024, 1, 15);
+        LocalDate mar = LocalDate.of(2024, 3, 15);
+        createSnapshot(userId, jan);
+        ReconciliationSnapshot march = createSnapshot(userId, mar);
+        assertEquals(Optional.of(jan), snapshotDateIndex.lower(userId, mar));
+
+        // When: 新增 2 月快照，删除 3 月快照
+        LocalDate feb = LocalDate.of(2024, 2, 15);
+        createSnapshot(userId, feb);
+        snapshotRepository.delete(march);
+
+        // Then
+        assertEquals(Optional.of(feb), snapshotDateIndex.lower(userId, mar));
+        assertEquals(Optional.of(feb), snapshotDateIndex.higher(userId, jan));
+        assertEquals(Optional.empty(), snapshotDateIndex.higher(userId, feb));
+        assertEquals(Optional.of(feb), snapshotDateIndex.latest(userId));
+        assertEquals(List.of(feb, jan), snapshotDateIndex.datesDescending(userId));
+
+        System.out.println("✓ UC-DATEINDEX-001: 索引加载后新增、删除快照同步更新 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-DATEINDEX-002: 超过用户数上限时淘汰最久未访问的用户")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testLeastRecentlyUsedUserEvicted() {
+        Object maxUsers = ReflectionTestUtils.getField(snapshotDateIndex, "maxUsers");
+        ReflectionTestUtils.setField(snapshotDateIndex, "maxUsers", 2);
+        try {
+            Long other = registerUser();
+            Long third = registerUser();
+            createdUsers.add(other);
+            createdUsers.add(third);
+            LocalDate date = LocalDate.of(2024, 5, 1);
+            createSnapshot(userId, date);
+            createSnapshot(other, date);
+            createSnapshot(third, date);
+            snapshotDateIndex.evict(userId);
+            snapshotDateIndex.evict(other);
+            snapshotDateIndex.evict(third);
+            int baseline = snapshotDateIndex.size();
+
+            // When: 依次访问三个用户，再访问第一个
+            snapshotDateIndex.latest(userId);
+            snapshotDateIndex.latest(other);
+            snapshotDateIndex.latest(userId);
+            snapshotDateIndex.latest(third);
+
+            // Then: 缓存不超过上限，最久未访问的 other 被淘汰后仍能重新加载
+            assertTrue(snapshotDateIndex.size() <= Math.max(2, baseline));
+            assertEquals(Optional.of(date), snapshotDateIndex.latest(other));
+            assertEquals(Optional.of(date), snapshotDateIndex.latest(third));
+        } finally {
+            ReflectionTestUtils.setField(snapshotDateIndex, "maxUsers", maxUsers);
+        }
+
+        System.out.println("✓ UC-DATEINDEX-002: 超过用户数上限时淘汰最久未访问的用户 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-DATEINDEX-003: 提交后才更新索引，回滚时丢弃")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testChangesAppliedAfterCommit() {
+        LocalDate jan = LocalDate.of(2024, 1, 15);
+        LocalDate feb = LocalDate.of(2024, 2, 15);
+        LocalDate mar = LocalDate.of(2024, 3, 15);
+        createSnapshot(userId, jan);
+        assertEquals(Optional.of(jan), snapshotDateIndex.latest(userId));
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // 提交前：本事务看到新日期，其他请求看不到
+        transaction.executeWithoutResult(status -> {
+            createSnapshot(userId, feb);
+            assertEquals(Optional.of(feb), snapshotDateIndex.latest(userId));
+            assertEquals(Optional.of(jan), CompletableFuture.supplyAsync(() -> snapshotDateIndex.latest(userId)).join());
+        });
+        // 提交后
+        assertEquals(Optional.of(feb), snapshotDateIndex.latest(userId));
+        assertEquals(List.of(feb, jan), snapshotDateIndex.datesDescending(userId));
+
+        // 回滚：丢弃该用户的索引，重新加载后没有回滚的日期
+        transaction.executeWithoutResult(status -> {
+            createSnapshot(userId, mar);
+            assertEquals(Optional.of(mar), snapshotDateIndex.latest(userId));
+            status.setRollbackOnly();
+        });
+        assertEquals(Optional.of(feb), snapshotDateIndex.latest(userId));
+        assertEquals(List.of(feb, jan), snapshotDateIndex.datesDescending(userId));
+
+        System.out.println("✓ UC-DATEINDEX-003: 提交后才更新索引，回滚时丢弃 - 通过");
+    }
+
+    private Long registerUser() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        return userService.register(registerRequest).getId();
+    }
+
+    private ReconciliationSnapshot createSnapshot(Long userId, LocalDate date) {
+        ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+        snapshot.setUserId(userId);
+        snapshot.setReconciliationDate(date);
+        snapshot.setTotalAmount(BigDecimal.ZERO);
+        return snapshotRepository.save(snapshot);
+    }
+}
@@ -0,0 +1,377 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.CreateAccountRequest;
+import com.bookkeeping.dto.CreateDepositRequest;
+import com.bookkeeping.dto.MonthlyStatisticsResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 统计结果缓存测试
+ *
+ * 写操作在写线程的事务中提交，并发读取需要看到已提交的数据，因此这里不使用测试事务，测试结束后手动清理。
+ *
+ * 测试覆盖：
+ * - 相同接口和参数命中缓存，不同参数分别缓存
+ * - 保存后丢弃该用户的缓存，不影响其他用户
+ * - 并发读取期间连续保存，保存返回后的读取不会读到旧数据
+ * - 缓存已满时淘汰最久未访问的条目，空闲超时的条目被清除
+ * - 同时到达的相同请求只计算一次，计算失败时都收到同一个异常
+ * - 计算期间用户数据变化时，之后到达的请求重新计算
+ * - 计算期间其他用户的数据变化不影响结果放入缓存
+ */
+@DisplayName("统计结果缓存测试")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class StatisticsCacheTest extends AbstractBaseTest {
+
+    private static final String MONTH = "2024-06";
+
+    @Autowired
+    private StatisticsCache statisticsCache;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long userId;
+    private Long accountId;
+    private final LocalDate date = LocalDate.of(2024, 6, 30);
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        CreateAccountRequest accountRequest = new CreateAccountRequest();
+        accountRequest.setName("统计缓存测试账户");
+        accountRequest.setType("活期存款");
+        accountId = accountService.createAccount(accountRequest, userId).getId();
+
+        reconciliationService.createNewReconciliation(userId, date);
+        depositService.createDeposit(depositRequest(new BigDecimal("100.00")), userId);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM deposits WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM reconciliation_snapshots WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM snapshot_account_totals WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM monthly_balance_agg WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM monthly_balance_dirty WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM accounts WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-001: 相同接口和参数命中缓存")
+    public void testHitAndMiss() {
+        double hits = count("result", "hit");
+        double misses = count("result", "miss");
+
+        MonthlyStatisticsResponse first = monthly(MONTH);
+        MonthlyStatisticsResponse second = monthly(MONTH);
+        monthly("2024-05");
+
+        assertSame(first, second);
+        assertEquals(hits + 1, count("result", "hit"));
+        assertEquals(misses + 2, count("result", "miss"));
+        assertEquals(0, new BigDecimal("100.00").compareTo(first.getTotalAmount()));
+
+        System.out.println("✓ UC-STATCACHE-001: 相同接口和参数命中缓存 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-002: 保存后丢弃该用户的缓存，不影响其他用户")
+    public void testEvictedOnWrite() {
+        monthly(MONTH);
+        Object otherUser = statisticsCache.get(userId + 100000, "yearly", null, Object::new);
+        double invalidated = count("reason", "invalidated");
+
+        depositService.createDeposit(depositRequest(new BigDecimal("50.00")), userId);
+
+        assertTrue(count("reason", "invalidated") >= invalidated + 1);
+        assertEquals(0, new BigDecimal("150.00").compareTo(monthly(MONTH).getTotalAmount()));
+        assertSame(otherUser, statisticsCache.get(userId + 100000, "yearly", null, Object::new));
+        statisticsCache.evict(userId + 100000);
+
+        System.out.println("✓ UC-STATCACHE-002: 保存后丢弃该用户的缓存，不影响其他用户 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-003: 并发读取期间连续保存，保存返回后不会读到旧数据")
+    public void testNoStaleReadsUnderConcurrentWrites() throws Exception {
+        int writes = 20;
+        int readers = 4;
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        List<Future<?>> readerFutures = new ArrayList<>();
+        try {
+            // 读线程不断读取并放入缓存，与保存竞争
+            for (int i = 0; i < readers; i++) {
+                readerFutures.add(executor.submit(() -> {
+                    while (running.get()) {
+                        monthly(MONTH);
+                    }
+                }));
+            }
+
+            AtomicInteger staleReads = new AtomicInteger();
+            BigDecimal expected = new BigDecimal("100.00");
+            for (int i = 0; i < writes; i++) {
+                depositService.createDeposit(depositRequest(new BigDecimal("10.00")), userId);
+                expected = expected.add(new BigDecimal("10.00"));
+                // 保存返回后，任何读取都必须看到本次保存
+                if (expected.compareTo(monthly(MONTH).getTotalAmount()) != 0) {
+                    staleReads.incrementAndGet();
+                }
+            }
+
+            running.set(false);
+            for (Future<?> future : readerFutures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(0, staleReads.get(), "保存后读到旧数据");
+            assertEquals(0, expected.compareTo(monthly(MONTH).getTotalAmount()));
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+
+        System.out.println("✓ UC-STATCACHE-003: 并发读取期间连续保存，保存返回后不会读到旧数据 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-004: 缓存已满时淘汰最久未访问的条目，空闲超时的条目被清除")
+    public void testSizeAndIdleEviction() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StatisticsCache cache = standaloneCache(registry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+
+        // 缓存已满：a 刚被访问，淘汰 b
+        cache.get(1L, "monthly", "a", () -> "a");
+        Thread.sleep(2);
+        cache.get(1L, "monthly", "b", () -> "b");
+        Thread.sleep(2);
+        cache.get(1L, "monthly", "a", () -> "a2");
+        cache.get(1L, "monthly", "c", () -> "c");
+        assertEquals(2, cache.size());
+        assertEquals(1, registry.get("bookkeeping.statistics.cache.evictions").tag("reason", "size").counter().count());
+        assertEquals("a", cache.get(1L, "monthly", "a", () -> "a3"));
+        assertEquals("b2", cache.get(1L, "monthly", "b", () -> "b2"));
+
+        // 空闲超时
+        ReflectionTestUtils.setField(cache, "idleSeconds", 0L);
+        Thread.sleep(2);
+        cache.evictIdle();
+        assertEquals(0, cache.size());
+        assertEquals(2, registry.get("bookkeeping.statistics.cache.evictions").tag("reason", "idle").counter().count());
+
+        System.out.println("✓ UC-STATCACHE-004: 缓存已满时淘汰最久未访问的条目，空闲超时的条目被清除 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-005: 同时到达的相同请求只计算一次")
+    public void testConcurrentIdenticalRequestsCoalesced() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StatisticsCache cache = standaloneCache(registry);
+        int callers = 8;
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            // 第一个请求开始计算后阻塞，其余请求同时到达
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> cache.get(1L, "trend", "1y", () -> {
+                    computations.incrementAndGet();
+                    await(release);
+                    return new Object();
+                })));
+            }
+            awaitCount(registry, "coalesced", callers - 1);
+            release.countDown();
+
+            Object first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, computations.get());
+            assertEquals(1, registry.get("bookkeeping.statistics.cache").tag("result", "miss").counter().count());
+
+            // 计算失败时等待的请求收到同一个异常，之后的请求重新计算
+            CountDownLatch failRelease = new CountDownLatch(1);
+            RuntimeException failure = new RuntimeException("计算失败");
+            List<Future<Object>> failed = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                failed.add(executor.submit(() -> cache.get(1L, "yearly", null, () -> {
+                    await(failRelease);
+                    throw failure;
+                })));
+            }
+            awaitCount(registry, "coalesced", callers);
+            failRelease.countDown();
+            for (Future<Object> result : failed) {
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        () -> result.get(10, TimeUnit.SECONDS));
+                assertSame(failure, e.getCause());
+            }
+            assertEquals("ok", cache.get(1L, "yearly", null, () -> "ok"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        System.out.println("✓ UC-STATCACHE-005: 同时到达的相同请求只计算一次 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-006: 计算期间用户数据变化时，之后到达的请求重新计算")
+    public void testInvalidationDetachesInFlightComputation() throws Exception {
+        StatisticsCache cache = standaloneCache(new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 写入前开始的计算
+            Future<Object> stale = executor.submit(() -> cache.get(1L, "maturity", null, () -> {
+                started.countDown();
+                await(release);
+                return "旧数据";
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // 写入后到达的请求不等待旧计算，旧计算的结果也不放入缓存
+            cache.evict(1L);
+            assertEquals("新数据", cache.get(1L, "maturity", null, () -> "新数据"));
+            release.countDown();
+            assertEquals("旧数据", stale.get(10, TimeUnit.SECONDS));
+            assertEquals("新数据", cache.get(1L, "maturity", null, () -> "再次计算"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        System.out.println("✓ UC-STATCACHE-006: 计算期间用户数据变化时，之后到达的请求重新计算 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-STATCACHE-007: 计算期间其他用户的数据变化不影响结果放入缓存")
+    public void testOtherUserInvalidationKeepsInFlightResult() throws Exception {
+        StatisticsCache cache = standaloneCache(new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> loading = executor.submit(() -> cache.get(1L, "maturity", null, () -> {
+                started.countDown();
+                await(release);
+                return "用户1的数据";
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // 计算期间另一个用户写入
+            cache.evict(2L);
+            release.countDown();
+            assertEquals("用户1的数据", loading.get(10, TimeUnit.SECONDS));
+            assertEquals("用户1的数据", cache.get(1L, "maturity", null, () -> "再次计算"));
+            assertEquals(1, cache.size());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        System.out.println("✓ UC-STATCACHE-007: 计算期间其他用户的数据变化不影响结果放入缓存 - 通过");
+    }
+
+    private StatisticsCache standaloneCache(SimpleMeterRegistry registry) {
+        StatisticsCache cache = new StatisticsCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", registry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "idleSeconds", 600L);
+        cache.start();
+        return cache;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void awaitCount(SimpleMeterRegistry registry, String result, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (registry.get("bookkeeping.statistics.cache").tag("result", result).counter().count() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, registry.get("bookkeeping.statistics.cache").tag("result", result).counter().count());
+    }
+
+    private MonthlyStatisticsResponse monthly(String month) {
+        return statisticsCache.get(userId, "monthly", month, () -> statisticsService.getMonthlyStatistics(userId, month));
+    }
+
+    private double count(String tag, String value) {
+        String name = tag.equals("result") ? "bookkeeping.statistics.cache" : "bookkeeping.statistics.cache.evictions";
+        return meterRegistry.get(name).tag(tag, value).counter().count();
+    }
+
+    private CreateDepositRequest depositRequest(BigDecimal amount) {
+        CreateDepositRequest request = new CreateDepositRequest();
+        request.setAccountId(accountId);
+        request.setDepositType("活期");
+        request.setDepositTime(date);
+        request.setAmount(amount);
+        request.setReconciliationDate(date);
+        return request;
+    }
+}
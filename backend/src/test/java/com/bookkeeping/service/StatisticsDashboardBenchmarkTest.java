@@ -0,0 +1,187 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.dto.DashboardStatisticsResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.repository.AccountRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 统计看板与五个单独统计接口的对比
+ *
+ * 5 年每月一个快照、3 个账户的数据，校验看板的五项结果与单独计算的结果相同，
+ * 并输出两种方式的耗时中位数和 SQL 条数。数据在测试事务中，结束后回滚。
+ */
+@DisplayName("统计看板对比基准")
+public class StatisticsDashboardBenchmarkTest extends AbstractBaseTest {
+
+    private static final int MONTHS = 60;
+
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private StatisticsDashboardService statisticsDashboardService;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Account account = new Account();
+            account.setUserId(userId);
+            account.setName("看板账户" + i);
+            account.setType("定期存款");
+            account.setStatus(Account.AccountStatus.ACTIVE);
+            accounts.add(accountRepository.save(account));
+        }
+
+        // 最近 60 个月每月 15 日一个快照，每个账户 3 条存款记录（含 1 年期定期，最近的快照有 1 年内到期的存款）
+        List<SaveReconciliationRequest> snapshots = new ArrayList<>();
+        LocalDate first = today.withDayOfMonth(15).minusMonths(MONTHS - 1);
+        for (int m = 0; m < MONTHS; m++) {
+            LocalDate date = first.plusMonths(m);
+            SaveReconciliationRequest snapshot = new SaveReconciliationRequest();
+            snapshot.setDate(date);
+            snapshot.setNote(m % 6 == 0 ? "第" + (m + 1) + "个月" : null);
+            List<SaveReconciliationRequest.AccountDepositData> accountData = new ArrayList<>();
+            for (Account account : accounts) {
+                SaveReconciliationRequest.AccountDepositData data = new SaveReconciliationRequest.AccountDepositData();
+                data.setAccountId(account.getId());
+                data.setDeposits(List.of(
+                        deposit("定期", date.minusMonths(6), String.valueOf(10000 + m * 100), new BigDecimal("1")),
+                        deposit("定期", date.minusMonths(1), "5000.50", new BigDecimal("3")),
+                        deposit("活期", date, String.valueOf(300 + m), null)));
+                accountData.add(data);
+            }
+            snapshot.setAccounts(accountData);
+            snapshots.add(snapshot);
+        }
+        reconciliationService.importSnapshots(userId, snapshots);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    @DisplayName("UC-DASH-001: 看板结果与五个单独统计相同")
+    public void testDashboardMatchesSeparateEndpoints() {
+        String currentMonth = YearMonth.now().toString();
+        String[][] cases = {
+                {currentMonth, "1y"},
+                {currentMonth, "all"},
+                {YearMonth.now().minusMonths(30).toString(), "6m"},
+                {YearMonth.now().minusMonths(MONTHS + 12).toString(), "3y"}, // 最早快照之前的月份
+                {YearMonth.now().plusMonths(2).toString(), "1y"}             // 当月之后的月份
+        };
+        for (String[] c : cases) {
+            String month = c[0];
+            String period = c[1];
+            DashboardStatisticsResponse dashboard = statisticsDashboardService.getDashboard(userId, month, period);
+            assertEquals(statisticsService.getMonthlyStatistics(userId, month), dashboard.getMonthly(), month);
+            assertEquals(statisticsService.getTrendStatistics(userId, period), dashboard.getTrend(), period);
+            assertEquals(statisticsService.getAccountTrendStatistics(userId, period), dashboard.getAccountTrend(), period);
+            assertEquals(statisticsService.getYearlyStatistics(userId), dashboard.getYearly());
+            assertEquals(statisticsService.getMaturityStatistics(userId), dashboard.getMaturity());
+        }
+        assertFalse(statisticsDashboardService.getDashboard(userId, currentMonth, "1y").getMaturity().getData().isEmpty());
+
+        System.out.println("✓ UC-DASH-001: 看板结果与五个单独统计相同 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-BENCH-002: 统计看板与五个单独统计的耗时和 SQL 条数")
+    public void benchmarkDashboard() {
+        String month = YearMonth.now().toString();
+        String period = "all";
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsEnabled = statistics.isStatisticsEnabled();
+        long[] separateNanos = new long[ROUNDS];
+        long[] dashboardNanos = new long[ROUNDS];
+        long separateStatements = 0;
+        long dashboardStatements = 0;
+        try {
+            statistics.setStatisticsEnabled(true);
+            for (int round = 0; round < ROUNDS; round++) {
+                entityManager.clear();
+                statistics.clear();
+                long start = System.nanoTime();
+                statisticsService.getMonthlyStatistics(userId, month);
+                statisticsService.getTrendStatistics(userId, period);
+                statisticsService.getAccountTrendStatistics(userId, period);
+                statisticsService.getYearlyStatistics(userId);
+                statisticsService.getMaturityStatistics(userId);
+                separateNanos[round] = System.nanoTime() - start;
+                separateStatements = statistics.getPrepareStatementCount();
+
+                entityManager.clear();
+                statistics.clear();
+                start = System.nanoTime();
+                statisticsDashboardService.getDashboard(userId, month, period);
+                dashboardNanos[round] = System.nanoTime() - start;
+                dashboardStatements = statistics.getPrepareStatementCount();
+            }
+        } finally {
+            statistics.setStatisticsEnabled(statisticsEnabled);
+        }
+
+        Arrays.sort(separateNanos);
+        Arrays.sort(dashboardNanos);
+        System.out.println("统计看板对比（" + MONTHS + " 个月快照，" + ROUNDS + " 次）:");
+        System.out.printf("  五个单独统计: 中位数 %.2f ms, 最大 %.2f ms, SQL %d 条%n",
+                separateNanos[ROUNDS / 2] / 1_000_000.0, separateNanos[ROUNDS - 1] / 1_000_000.0, separateStatements);
+        System.out.printf("  统计看板:     中位数 %.2f ms, 最大 %.2f ms, SQL %d 条%n",
+                dashboardNanos[ROUNDS / 2] / 1_000_000.0, dashboardNanos[ROUNDS - 1] / 1_000_000.0, dashboardStatements);
+        assertTrue(dashboardStatements < separateStatements,
+                "看板 SQL " + dashboardStatements + " 条，单独统计 " + separateStatements + " 条");
+
+        System.out.println("✓ UC-BENCH-002: 统计看板与五个单独统计的耗时和 SQL 条数 - 通过");
+    }
+
+    private SaveReconciliationRequest.DepositData deposit(String type, LocalDate time, String amount, BigDecimal term) {
+        SaveReconciliationRequest.DepositData deposit = new SaveReconciliationRequest.DepositData();
+        deposit.setDepositType(type);
+        deposit.setDepositTime(time);
+        deposit.setAmount(new BigDecimal(amount));
+        deposit.setTerm(term);
+        return deposit;
+    }
+}
@@ -0,0 +1,396 @@
+package com.bookkeeping.service;
+
+import com.bookkeeping.AbstractBaseTest;
+import com.bookkeeping.config.TemporalDepositMigration;
+import com.bookkeeping.dto.BulkImportResponse;
+import com.bookkeeping.dto.DepositResponse;
+import com.bookkeeping.dto.ReconciliationDataResponse;
+import com.bookkeeping.dto.RegisterRequest;
+import com.bookkeeping.dto.SaveReconciliationRequest;
+import com.bookkeeping.dto.UpdateDepositRequest;
+import com.bookkeeping.entity.Account;
+import com.bookkeeping.entity.Deposit;
+import com.bookkeeping.entity.DepositVersion;
+import com.bookkeeping.entity.ReconciliationSnapshot;
+import com.bookkeeping.repository.AccountRepository;
+import com.bookkeeping.repository.DepositRepository;
+import com.bookkeeping.repository.DepositVersionRepository;
+import com.bookkeeping.repository.ReconciliationSnapshotRepository;
+import com.bookkeeping.repository.SnapshotAccountTotalRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 时态存储（deposit-storage.mode=temporal）测试
+ *
+ * 测试覆盖：
+ * - 新建快照不写入任何存款版本
+ * - 修改、删除中间日期的记录不影响前后日期
+ * - 快照存储的数据转换为版本后，各日期读到的内容与转换前一致
+ * - 快照账户合计随版本的拆分、删除、转换同步更新
+ * - 对账数据按日期读取有效的版本
+ * - 批量导入跨分块时日期未按升序排列被拒绝，之前的分块保留，各日期读到的内容正确
+ */
+@DisplayName("时态存储测试")
+@TestPropertySource(properties = {
+    "deposit-storage.mode=temporal",
+    "deposit-storage.convert-on-startup=false"
+})
+public class TemporalDepositStoreTest extends AbstractBaseTest {
+
+    private static final LocalDate JAN = LocalDate.of(2024, 1, 31);
+    private static final LocalDate FEB = LocalDate.of(2024, 2, 29);
+    private static final LocalDate MAR = LocalDate.of(2024, 3, 31);
+
+    @Autowired
+    private DepositStore depositStore;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private DepositService depositService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TemporalDepositMigration migration;
+
+    @Autowired
+    private ReconciliationBulkImporter bulkImporter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private DepositRepository depositRepository;
+
+    @Autowired
+    private DepositVersionRepository versionRepository;
+
+    @Autowired
+    private ReconciliationSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private SnapshotAccountTotalRepository accountTotalRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Long userId;
+    private Account account;
+
+    @BeforeEach
+    public void setUp() {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setUsername(generateUniqueUsername());
+        registerRequest.setPassword("testPassword123");
+        registerRequest.setEmail(generateUniqueEmail());
+        userId = userService.register(registerRequest).getId();
+
+        account = new Account();
+        account.setUserId(userId);
+        account.setName("测试账户");
+        account.setType("定期存款");
+        account.setStatus(Account.AccountStatus.ACTIVE);
+        account = accountRepository.save(account);
+    }
+
+    @Test
+    @DisplayName("UC-TEMPORAL-001: 使用时态存储")
+    public void testTemporalStoreSelected() {
+        assertInstanceOf(TemporalDepositStore.class, depositStore);
+        System.out.println("✓ UC-TEMPORAL-001: 使用时态存储 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-TEMPORAL-002: 新建快照不写入存款版本")
+    public void testCreateSnapshotWritesNoVersions() {
+        saveSnapshot(JAN, "100.00", "200.00", "300.00");
+        List<DepositVersion> before = versions();
+        assertEquals(3, before.size());
+
+        reconciliationService.createNewReconciliation(userId, FEB);
+        flushAndClear();
+
+        // 版本表没有任何变化
+        List<DepositVersion> after = versions();
+        assertEquals(3, after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getId(), after.get(i).getId());
+            assertEquals(JAN, after.get(i).getValidFromDate());
+            assertNull(after.get(i).getValidToDate());
+        }
+
+        // 新快照读到的内容与上一次相同
+        assertEquals(List.of("100", "200", "300"), amountsAt(FEB));
+        ReconciliationSnapshot snapshot = snapshotRepository.findByUserIdAndReconciliationDate(userId, FEB).orElseThrow();
+        assertEquals(0, new BigDecimal("600.00").compareTo(snapshot.getTotalAmount()));
+        assertEquals(3, depositStore.countByUserIdAndDate(userId, FEB));
+
+        System.out.println("✓ UC-TEMPORAL-002: 新建快照不写入存款版本 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-TEMPORAL-003: 修改中间日期的记录不影响前后日期")
+    public void testUpdateMiddleDate() {
+        saveSnapshot(JAN, "100.00", "200.00");
+        reconciliationService.createNewReconciliation(userId, FEB);
+        reconciliationService.createNewReconciliation(userId, MAR);
+        flushAndClear();
+
+        Deposit target = depositStore.findByUserIdAndDate(userId, FEB).get(0);
+
+        // 记录跨多个日期，不指定日期时无法确定修改哪一天
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> depositService.updateDeposit(target.getId(), updateRequest(target, "150.00"), userId));
+        assertEquals("该存款记录跨多个对账日期，请指定对账日期", exception.getMessage());
+
+        depositService.updateDeposit(target.getId(), updateRequest(target, "150.00"), userId, FEB);
+        flushAndClear();
+
+        assertEquals(List.of("100", "200"), amountsAt(JAN));
+        assertEquals(List.of("150", "200"), amountsAt(FEB));
+        assertEquals(List.of("100", "200"), amountsAt(MAR));
+        // 被修改的记录拆成三段，另一条记录不变
+        assertEquals(4, versions().size());
+        assertEquals(0, new BigDecimal("350.00").compareTo(
+                snapshotRepository.findByUserIdAndReconciliationDate(userId, FEB).orElseThrow().getTotalAmount()));
+        assertEquals(0, new BigDecimal("300.00").compareTo(
+                snapshotRepository.findByUserIdAndReconciliationDate(userId, MAR).orElseThrow().getTotalAmount()));
+        assertEquals("300.00 x2", accountTotalAt(JAN));
+        assertEquals("350.00 x2", accountTotalAt(FEB));
+        assertEquals("300.00 x2", accountTotalAt(MAR));
+        // 对账数据的联表查询读取该日期有效的版本
+        ReconciliationDataResponse data = reconciliationService.getReconciliationData(userId, FEB);
+        assertEquals(1, data.getAccounts().size());
+        assertEquals(List.of(new BigDecimal("150.00"), new BigDecimal("200.00")), data.getAccounts().get(0).getDeposits().stream()
+                .map(DepositResponse::getAmount).sorted().collect(Collectors.toList()));
+        assertTrue(data.getAccounts().get(0).getDeposits().stream().allMatch(deposit -> FEB.equals(deposit.getReconciliationDate())));
+
+        System.out.println("✓ UC-TEMPORAL-003: 修改中间日期的记录不影响前后日期 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-TEMPORAL-004: 删除中间日期的记录不影响前后日期")
+    public void testDeleteMiddleDate() {
+        saveSnapshot(JAN, "100.00", "200.00");
+        reconciliationService.createNewReconciliation(userId, FEB);
+        reconciliationService.createNewReconciliation(userId, MAR);
+        flushAndClear();
+
+        Deposit target = depositStore.findByUserIdAndDate(userId, FEB).get(0);
+        depositService.deleteDeposit(target.getId(), userId, FEB);
+        flushAndClear();
+
+        assertEquals(List.of("100", "200"), amountsAt(JAN));
+        assertEquals(List.of("200"), amountsAt(FEB));
+        assertEquals(List.of("100", "200"), amountsAt(MAR));
+        assertEquals(0, new BigDecimal("200.00").compareTo(
+                snapshotRepository.findByUserIdAndReconciliationDate(userId, FEB).orElseThrow().getTotalAmount()));
+
+        // 按日期展开的全部记录：1 月 2 条、2 月 1 条、3 月 2 条
+        Map<LocalDate, Long> countByDate = depositStore.findByUserId(userId).stream()
+                .collect(Collectors.groupingBy(Deposit::getReconciliationDate, Collectors.counting()));
+        assertEquals(Map.of(JAN, 2L, FEB, 1L, MAR, 2L), countByDate);
+        assertEquals("300.00 x2", accountTotalAt(JAN));
+        assertEquals("200.00 x1", accountTotalAt(FEB));
+        assertEquals("300.00 x2", accountTotalAt(MAR));
+
+        System.out.println("✓ UC-TEMPORAL-004: 删除中间日期的记录不影响前后日期 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-TEMPORAL-005: 12 个月快照转换为版本，读取结果与转换前一致")
+    public void testConvertSnapshots() {
+        // 12 个月，每月 5 条存款，7 月起第 3 条金额变化
+        Map<LocalDate, List<String>> expected = new HashMap<>();
+        List<LocalDate> dates = new ArrayList<>();
+        for (int month = 1; month <= 12; month++) {
+            LocalDate date = LocalDate.of(2023, month, 1).plusMonths(1).minusDays(1);
+            dates.add(date);
+            List<Deposit> deposits = new ArrayList<>();
+            for (int i = 1; i <= 5; i++) {
+                String amount = (i == 3 && month >= 7) ? "3500.00" : i + "000.00";
+                Deposit deposit = new Deposit();
+                deposit.setUserId(userId);
+                deposit.setAccountId(account.getId());
+                deposit.setDepositType("定期存款");
+                deposit.setDepositTime(LocalDate.of(2023, 1, i));
+                deposit.setAmount(new BigDecimal(amount));
+                deposit.setInterestRate(new BigDecimal("2.10"));
+                deposit.setTerm(new BigDecimal("1.0"));
+                deposit.setReconciliationDate(date);
+                deposits.add(deposit);
+            }
+            depositRepository.saveAll(deposits);
+
+            ReconciliationSnapshot snapshot = new ReconciliationSnapshot();
+            snapshot.setUserId(userId);
+            snapshot.setReconciliationDate(date);
+            snapshot.setTotalAmount(new BigDecimal("15000.00"));
+            snapshotRepository.save(snapshot);
+        }
+        flushAndClear();
+        for (LocalDate date : dates) {
+            expected.put(date, depositRepository.findByUserIdAndReconciliationDate(userId, date).stream()
+                    .map(this::content)
+                    .sorted()
+                    .collect(Collectors.toList()));
+        }
+
+        int created = migration.convertUser(userId);
+        flushAndClear();
+
+        // 5 条不变的版本 + 第 3 条在 7 月的新版本
+        assertEquals(6, created);
+        assertEquals(6, versions().size());
+        for (LocalDate date : dates) {
+            List<String> actual = depositStore.findByUserIdAndDate(userId, date).stream()
+                    .map(this::content)
+                    .sorted()
+                    .collect(Collectors.toList());
+            assertEquals(expected.get(date), actual, date + " 的存款记录与转换前不一致");
+            assertEquals(date.getMonthValue() >= 7 ? "15500.00 x5" : "15000.00 x5", accountTotalAt(date));
+            assertEquals(0, depositRepository.countByUserIdAndReconciliationDate(userId, date));
+        }
+
+        // 已转换的用户再次转换时跳过
+        assertEquals(0, migration.convertUser(userId));
+
+        System.out.println("✓ UC-TEMPORAL-005: 12 个月快照转换为版本，读取结果与转换前一致 - 通过");
+    }
+
+    @Test
+    @DisplayName("UC-TEMPORAL-006: 批量导入跨分块时日期未按升序排列被拒绝")
+    public void testBulkImportRejectsUnsortedDatesAcrossChunks() throws Exception {
+        LocalDate apr = LocalDate.of(2024, 4, 30);
+        int chunkSize = (int) ReflectionTestUtils.getField(bulkImporter, "chunkSize");
+        ReflectionTestUtils.setField(bulkImporter, "chunkSize", 2);
+        try {
+            // 第一个分块（1 月、3 月）按升序写入，第二个分块中的 2 月早于 3 月
+            byte[] unsorted = objectMapper.writeValueAsBytes(List.of(
+                    importRequest(JAN, "100.00"), importRequest(MAR, "300.00"), importRequest(FEB, "200.00")));
+            RuntimeException error = assertThrows(RuntimeException.class,
+                    () -> bulkImporter.importSnapshots(userId, new ByteArrayInputStream(unsorted)));
+            assertEquals("第 3 个快照：对账日期必须按升序排列（前 2 个快照已导入）", error.getMessage());
+            flushAndClear();
+            assertFalse(snapshotRepository.existsByUserIdAndReconciliationDate(userId, FEB));
+            assertEquals(List.of("100"), amountsAt(JAN));
+            assertEquals(List.of("300"), amountsAt(MAR));
+
+            // 按升序重新提交：2 月插在已有的 1 月和 3 月之间，跨分块写入 4 月
+            byte[] sorted = objectMapper.writeValueAsBytes(List.of(
+                    importRequest(FEB, "200.00"), importRequest(MAR, "310.00"), importRequest(apr, "400.00")));
+            BulkImportResponse result = bulkImporter.importSnapshots(userId, new ByteArrayInputStream(sorted));
+            flushAndClear();
+            assertEquals(2, result.getInserted());
+            assertEquals(1, result.getReplaced());
+            assertEquals(List.of("100"), amountsAt(JAN));
+            assertEquals(List.of("200"), amountsAt(FEB));
+            assertEquals(List.of("310"), amountsAt(MAR));
+            assertEquals(List.of("400"), amountsAt(apr));
+            assertEquals(0, depositService.verifySnapshotTotals(userId));
+        } finally {
+            ReflectionTestUtils.setField(bulkImporter, "chunkSize", chunkSize);
+        }
+
+        System.out.println("✓ UC-TEMPORAL-006: 批量导入跨分块时日期未按升序排列被拒绝 - 通过");
+    }
+
+    /**
+     * 通过保存对账创建快照，金额为给定的各条存款
+     */
+    private void saveSnapshot(LocalDate date, String... amounts) {
+        SaveReconciliationRequest request = importRequest(date, amounts);
+        reconciliationService.saveReconciliation(userId, date, request, reconciliationService.getSnapshotVersion(userId, date));
+        flushAndClear();
+    }
+
+    /**
+     * 保存对账的请求体，金额为给定的各条存款
+     */
+    private SaveReconciliationRequest importRequest(LocalDate date, String... amounts) {
+        SaveReconciliationRequest.AccountDepositData accountData = new SaveReconciliationRequest.AccountDepositData();
+        accountData.setAccountId(account.getId());
+        List<SaveReconciliationRequest.DepositData> deposits = new ArrayList<>();
+        for (String amount : amounts) {
+            SaveReconciliationRequest.DepositData data = new SaveReconciliationRequest.DepositData();
+            data.setDepositType("定期存款");
+            data.setDepositTime(date);
+            data.setAmount(new BigDecimal(amount));
+            deposits.add(data);
+        }
+        accountData.setDeposits(deposits);
+
+        SaveReconciliationRequest request = new SaveReconciliationRequest();
+        request.setDate(date);
+        request.setAccounts(List.of(accountData));
+        return request;
+    }
+
+    private UpdateDepositRequest updateRequest(Deposit deposit, String amount) {
+        UpdateDepositRequest request = new UpdateDepositRequest();
+        request.setDepositType(deposit.getDepositType());
+        request.setDepositTime(deposit.getDepositTime());
+        request.setAmount(new BigDecimal(amount));
+        request.setInterestRate(deposit.getInterestRate());
+        request.setTerm(deposit.getTerm());
+        request.setNote(deposit.getNote());
+        return request;
+    }
+
+    private List<String> amountsAt(LocalDate date) {
+        return depositStore.findByUserIdAndDate(userId, date).stream()
+                .map(deposit -> deposit.getAmount().stripTrailingZeros().toPlainString())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 账户在指定日期的合计，格式为 "金额 x记录数"
+     */
+    private String accountTotalAt(LocalDate date) {
+        List<SnapshotAccountTotalRepository.AccountTotal> totals = accountTotalRepository.findByUserIdAndDate(userId, date);
+        assertEquals(1, totals.size());
+        return totals.get(0).getAmount().toPlainString() + " x" + totals.get(0).getDepositCount();
+    }
+
+    private String content(Deposit deposit) {
+        return deposit.getAccountId() + "|" + deposit.getDepositType() + "|" + deposit.getDepositTime() + "|"
+                + deposit.getAmount().stripTrailingZeros().toPlainString() + "|"
+                + deposit.getInterestRate().stripTrailingZeros().toPlainString() + "|"
+                + deposit.getTerm().stripTrailingZeros().toPlainString() + "|" + deposit.getNote();
+    }
+
+    private List<DepositVersion> versions() {
+        return versionRepository.findByUserIdOrderByValidFromDate(userId);
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
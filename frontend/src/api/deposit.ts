@@ -10,6 +10,7 @@ export interface Deposit {
   term?: number
   note?: string
   reconciliationDate: string
+  snapshotVersion?: number | null // 写操作后该对账日期的快照版本
 }
 
 export interface CreateDepositRequest {
@@ -32,6 +33,38 @@ export interface UpdateDepositRequest {
   note?: string
 }
 
+export type BatchOperationType = 'CREATE' | 'UPDATE' | 'DELETE'
+
+// 批量操作：新增时 accountId、reconciliationDate 必填；更新、删除时 id 必填，reconciliationDate 为记录所在的对账日期
+export interface BatchDepositOperation {
+  type: BatchOperationType
+  id?: number
+  reconciliationDate?: string
+  accountId?: number
+  depositType?: string
+  depositTime?: string
+  amount?: number
+  interestRate?: number
+  term?: number
+  note?: string
+}
+
+export interface BatchDepositResult {
+  index: number
+  type: BatchOperationType
+  id: number
+  deposit: Deposit | null
+}
+
+export interface BatchDepositResponse {
+  results: BatchDepositResult[]
+  snapshotVersions: Record<string, number> // 受影响的快照更新后的版本（对账日期 -> 版本）
+}
+
+// 对账日期已有快照时写操作必须带上读取时的快照版本（没有快照时不带）
+const ifMatch = (version?: number | null) =>
+  version != null ? { 'If-Match': `"${version}"` } : {}
+
 export const depositApi = {
   // 获取账户的存款记录
   getDepositsByAccount(accountId: number, date?: string) {
@@ -42,18 +75,32 @@ export const depositApi = {
     return request.get<Deposit[]>(`/accounts/${accountId}/deposits`, { params })
   },
 
-  // 创建存款记录
-  createDeposit(data: CreateDepositRequest) {
-    return request.post<Deposit>('/deposits', data)
+  // 创建存款记录（version 为读取时的快照版本）
+  createDeposit(data: CreateDepositRequest, version?: number | null) {
+    return request.post<Deposit>('/deposits', data, { headers: ifMatch(version) })
   },
 
-  // 更新存款记录
-  updateDeposit(id: number, data: UpdateDepositRequest) {
-    return request.put<Deposit>(`/deposits/${id}`, data)
+  // 更新存款记录（date 为记录所在的对账日期，version 为读取时的快照版本）
+  updateDeposit(id: number, data: UpdateDepositRequest, date?: string, version?: number | null) {
+    const params: any = {}
+    if (date) {
+      params.date = date
+    }
+    return request.put<Deposit>(`/deposits/${id}`, data, { params, headers: ifMatch(version) })
+  },
+
+  // 删除存款记录（date 为记录所在的对账日期，version 为读取时的快照版本），返回删除后的快照版本
+  deleteDeposit(id: number, date?: string, version?: number | null) {
+    const params: any = {}
+    if (date) {
+      params.date = date
+    }
+    return request.delete<number | null>(`/deposits/${id}`, { params, headers: ifMatch(version) })
   },
 
-  // 删除存款记录
-  deleteDeposit(id: number) {
-    return request.delete(`/deposits/${id}`)
+  // 批量新增、更新、删除存款记录（同一个事务，任一操作失败时整批不生效）
+  // snapshotVersions 为受影响的对账日期读取时的快照版本（对账日期 -> 版本）
+  batchDeposits(operations: BatchDepositOperation[], snapshotVersions: Record<string, number> = {}) {
+    return request.post<BatchDepositResponse>('/deposits/batch', { operations, snapshotVersions })
   }
 }
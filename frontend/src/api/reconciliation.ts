@@ -5,12 +5,14 @@ export interface ReconciliationData {
   note?: string // 快照备注
   totalAmount: number // 快照总金额
   accounts: AccountDepositData[]
+  version?: number | null // 快照版本，修改快照时通过 If-Match 提交；没有快照时为 null
 }
 
 export interface AccountDepositData {
   accountId: number
   accountName: string
   deposits: Deposit[]
+  version: string // 账户存款记录的版本，按账户保存时提交
 }
 
 export interface Deposit {
@@ -41,11 +43,40 @@ export interface SaveReconciliationRequest {
   }[]
 }
 
+export interface SaveAccountsRequest {
+  accounts: (SaveReconciliationRequest['accounts'][number] & { version: string })[]
+}
+
+export interface SaveAccountsResponse {
+  inserted: number
+  updated: number
+  deleted: number
+  unchanged: number
+  versions: Record<number, string> // 账户ID -> 保存后的版本
+  snapshotVersion: number // 保存后的快照版本
+}
+
+export interface BulkImportResponse {
+  inserted: number
+  replaced: number
+  deposits: number
+}
+
+export interface ReconciliationView {
+  data: ReconciliationData
+  previousDate: string | null // 没有更早的快照时为 null
+  nextDate: string | null // 没有更新的快照时为 null
+  latestDate: string | null // 从未对账时为 null
+}
+
 export interface ReconciliationHistory {
   dates: {
     date: string
     recordCount: number
+    totalAmount: number
+    note: string | null
   }[]
+  nextBefore: string | null
 }
 
 export const reconciliationApi = {
@@ -55,9 +86,26 @@ export const reconciliationApi = {
     return request.get<ReconciliationData>('/reconciliation', { params })
   },
 
-  // 保存对账快照
-  saveReconciliation(date: string, data: SaveReconciliationRequest) {
-    return request.post(`/reconciliation/save?date=${date}`, data)
+  // 获取对账数据以及上一个、下一个、最近一次快照日期（不传日期时取最近一次快照）
+  getReconciliationView(date?: string) {
+    const params = date ? { date } : {}
+    return request.get<ReconciliationView>('/reconciliation/view', { params })
+  },
+
+  // 保存对账快照（快照已存在时需要提交读取时的快照版本）
+  saveReconciliation(date: string, data: SaveReconciliationRequest, version?: number | null) {
+    const headers = version != null ? { 'If-Match': `"${version}"` } : {}
+    return request.post(`/reconciliation/save?date=${date}`, data, { headers })
+  },
+
+  // 按账户保存：只提交被修改的账户，账户已被其他页面修改时返回 409
+  saveAccounts(date: string, data: SaveAccountsRequest) {
+    return request.post<SaveAccountsResponse>(`/reconciliation/save-accounts?date=${date}`, data)
+  },
+
+  // 批量导入多个日期的快照（按日期升序），已有日期整体替换，不校验快照版本；出错时之前的分块已提交
+  bulkImport(snapshots: SaveReconciliationRequest[]) {
+    return request.post<BulkImportResponse>('/reconciliation/bulk', snapshots)
   },
 
   // 获取最近一次对账日期
@@ -89,8 +137,10 @@ export const reconciliationApi = {
     return request.post(`/reconciliation/create-new?date=${date}`)
   },
 
-  // 更新快照备注
-  updateSnapshotNote(date: string, note: string) {
-    return request.put(`/reconciliation/note?date=${date}`, { note })
+  // 更新快照备注，返回更新后的快照版本；快照已被其他页面修改时返回 409
+  updateSnapshotNote(date: string, note: string, version: number) {
+    return request.put<number>(`/reconciliation/note?date=${date}`, { note }, {
+      headers: { 'If-Match': `"${version}"` }
+    })
   }
 }
@@ -57,6 +57,14 @@ export interface MaturityStatistics {
   data: MaturityDataItem[];
 }
 
+export interface DashboardStatistics {
+  monthly: MonthlyStatistics;
+  trend: TrendStatistics;
+  accountTrend: AccountTrendStatistics;
+  yearly: YearlyStatistics;
+  maturity: MaturityStatistics;
+}
+
 export const statisticsApi = {
   // 按月统计
   getMonthlyStatistics(month: string) {
@@ -87,5 +95,12 @@ export const statisticsApi = {
   // 到期统计
   getMaturityStatistics() {
     return request.get<MaturityStatistics>('/statistics/maturity')
+  },
+
+  // 统计看板：五项统计一次返回
+  getDashboardStatistics(month: string, period: string) {
+    return request.get<DashboardStatistics>('/statistics/dashboard', {
+      params: { month, period }
+    })
   }
 }